@@ -1,5 +1,6 @@
 package com.springstudy.bbs.ajax;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -9,6 +10,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import com.springstudy.bbs.domain.Reply;
+import com.springstudy.bbs.interceptor.QueryBudget;
 import com.springstudy.bbs.service.BoardService;
 
 @Controller
@@ -102,6 +104,7 @@ public class BoardAjaxController {
 	// 댓글 쓰기 요청을 처리하는 메서드
 	@RequestMapping("/replyWrite.ajax")
 	@ResponseBody
+	@QueryBudget(2)
 	public List<Reply> addReply(Reply reply) {
 		
 		// 새로운 댓글을 등록한다.
@@ -144,9 +147,91 @@ public class BoardAjaxController {
 	public List<Reply> deleteReply(int no, int bbsNo) {
 		
 		// 새로운 댓글을 등록한다.
-		boardService.deleteReply(no);
+		boardService.deleteReply(no, bbsNo);
 		
 		// 새롭게 갱신된 댓글 리스트를 가져와 반환한다.
 		return boardService.replyList(bbsNo);
 	}
+	
+	/* 댓글 쓰기 요청을 처리하고 등록된 댓글 하나만 응답하는 메서드
+	 * 
+	 * 위의 댓글 쓰기, 수정, 삭제 요청은 댓글 하나가 변경되어도 게시 글의 댓글
+	 * 리스트 전체를 다시 읽어 응답하기 때문에 댓글이 많은 게시 글에서는 응답이
+	 * 커진다. 아래의 delta 요청은 변경된 댓글 하나(삭제는 댓글 번호만 담은
+	 * tombstone)와 댓글 리스트의 버전을 응답하고 reply.js가 화면에 출력된 댓글
+	 * 리스트에 변경된 댓글만 반영한다. version은 클라이언트가 화면에 출력한
+	 * 댓글 리스트의 버전이다.
+	 * 
+	 * 클라이언트의 버전이 변경 전의 버전(baseVersion)과 같으면 아래와 같이
+	 * 변경된 댓글 하나만 응답한다.
+	 * 
+	 * { "op": "add", "baseVersion": 1073741824003, "version": 1073741824004,
+	 *   "reply": { bbsNo: 100, no: 28, regDate: 1516541138000,
+	 *   	replyContent: "저도 동감이여..", replyWriter: "midas" } }
+	 * 
+	 * 그 사이에 다른 사용자가 댓글을 변경해 버전이 다르면 replyList에 댓글
+	 * 리스트 전체를 담아 응답하고 reply.js는 댓글 리스트를 다시 출력한다.
+	 **/
+	@RequestMapping("/replyWriteDelta.ajax")
+	@ResponseBody
+	public Map<String, Object> addReplyDelta(Reply reply, long version) {
+		
+		long newVersion = boardService.addReply(reply);
+		return replyDelta("add", "reply", reply, 
+				reply.getBbsNo(), version, newVersion);
+	}
+	
+	/* 댓글 수정 요청을 처리하고 수정된 댓글 하나만 응답하는 메서드
+	 * 
+	 * 요청으로 받은 Reply의 작성자와 작성일은 DB에 저장된 값과 다를 수 있으므로
+	 * 수정된 댓글을 DB에서 다시 읽어 응답한다.
+	 **/
+	@RequestMapping("/replyUpdateDelta.ajax")
+	@ResponseBody
+	public Map<String, Object> updateReplyDelta(Reply reply, long version) {
+		
+		long newVersion = boardService.updateReply(reply);
+		return replyDelta("update", "reply", 
+				boardService.getReply(reply.getNo()), 
+				reply.getBbsNo(), version, newVersion);
+	}
+	
+	/* 댓글 삭제 요청을 처리하고 삭제된 댓글의 번호만 응답하는 메서드
+	 * 
+	 * { "op": "delete", "baseVersion": 1073741824004, 
+	 *   "version": 1073741824005, "no": 28 }
+	 **/
+	@RequestMapping("/replyDeleteDelta.ajax")
+	@ResponseBody
+	public Map<String, Object> deleteReplyDelta(
+			int no, int bbsNo, long version) {
+		
+		long newVersion = boardService.deleteReply(no, bbsNo);
+		return replyDelta("delete", "no", no, bbsNo, version, newVersion);
+	}
+	
+	/* delta 요청의 응답 데이터를 Map으로 만드는 메서드
+	 * 
+	 * 댓글 하나가 변경되면 버전이 1 증가하므로 변경 전의 버전은 newVersion - 1
+	 * 이다. 트랜잭션이 커밋되기 전이라 newVersion을 알 수 없거나(0) 클라이언트의
+	 * 버전이 변경 전의 버전과 다르거나 변경된 댓글을 다시 읽지 못했으면(null)
+	 * 댓글 리스트 전체를 응답에 추가한다.
+	 **/
+	private Map<String, Object> replyDelta(String op, String key, 
+			Object value, int bbsNo, long version, long newVersion) {
+		
+		Map<String, Object> delta = new HashMap<String, Object>();
+		delta.put("op", op);
+		delta.put(key, value);
+		
+		if(newVersion == 0) {
+			newVersion = boardService.replyVersion(bbsNo);
+			delta.put("replyList", boardService.replyList(bbsNo));
+		} else if(version != newVersion - 1 || value == null) {
+			delta.put("replyList", boardService.replyList(bbsNo));
+		}
+		delta.put("baseVersion", newVersion - 1);
+		delta.put("version", newVersion);
+		return delta;
+	}
 }
@@ -0,0 +1,152 @@
+package com.springstudy.bbs.ajax;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.springstudy.bbs.cache.BoardDetailCache;
+import com.springstudy.bbs.datasource.ConnectionWatchdog;
+import com.springstudy.bbs.datasource.MonitoredDataSource;
+import com.springstudy.bbs.datasource.ReplicaRoutingDataSource;
+import com.springstudy.bbs.datasource.StatementStatsPlugin;
+import com.springstudy.bbs.download.HotFileCache;
+
+/* 캐시 등의 운영 상태를 JSON으로 응답하는 컨트롤러
+ *
+ * 운영 중에 캐시 크기 등을 조정할 수 있도록 내부 통계를 제공한다.
+ * 모든 요청은 /monitor 아래의 경로로 매핑되며 내부 정보가 노출되지 않도록
+ * MonitorAccessInterceptor가 허용된 주소의 요청만 처리한다.
+ **/
+@Controller
+@RequestMapping("/monitor")
+public class MonitorAjaxController {
+
+	@Autowired
+	private BoardDetailCache boardDetailCache;
+
+	public void setBoardDetailCache(BoardDetailCache boardDetailCache) {
+		this.boardDetailCache = boardDetailCache;
+	}
+
+	@Autowired
+	private HotFileCache hotFileCache;
+
+	public void setHotFileCache(HotFileCache hotFileCache) {
+		this.hotFileCache = hotFileCache;
+	}
+
+	@Autowired
+	private ReplicaRoutingDataSource routingDataSource;
+
+	public void setRoutingDataSource(ReplicaRoutingDataSource routingDataSource) {
+		this.routingDataSource = routingDataSource;
+	}
+
+	@Autowired
+	private List<MonitoredDataSource> monitoredDataSources;
+
+	public void setMonitoredDataSources(
+			List<MonitoredDataSource> monitoredDataSources) {
+		this.monitoredDataSources = monitoredDataSources;
+	}
+
+	@Autowired
+	private ConnectionWatchdog connectionWatchdog;
+
+	public void setConnectionWatchdog(ConnectionWatchdog connectionWatchdog) {
+		this.connectionWatchdog = connectionWatchdog;
+	}
+
+	@Autowired
+	private StatementStatsPlugin statementStatsPlugin;
+
+	public void setStatementStatsPlugin(
+			StatementStatsPlugin statementStatsPlugin) {
+		this.statementStatsPlugin = statementStatsPlugin;
+	}
+
+	/* 게시 글 상세보기 캐시의 통계를 응답하는 메서드
+	 *
+	 * { "size": 812, "capacity": 1000, "hits": 15320, "misses": 1204,
+	 *   "hitRatio": 0.927, "evictions": 35, "invalidations": 120 }
+	 **/
+	@RequestMapping("/detailCache.ajax")
+	@ResponseBody
+	public Map<String, Object> detailCache() {
+		return boardDetailCache.getStats();
+	}
+
+	/* 자주 다운로드 되는 파일 캐시의 통계와 요청이 많은 파일을 응답하는 메서드
+	 *
+	 * { "mappedFiles": 12, "mappedBytes": 3145728, "budget": 67108864,
+	 *   "hits": 9120, "misses": 410, "hitRatio": 0.957, "tracked": 230,
+	 *   "top": [ { "key": "...", "requests": 512, "mapped": true }, ... ] }
+	 **/
+	@RequestMapping("/hotFiles.ajax")
+	@ResponseBody
+	public Map<String, Object> hotFiles() {
+		return hotFileCache.getStats();
+	}
+
+	/* 주 DB와 복제 DB에서 구한 커넥션 수를 응답하는 메서드
+	 * stickyReads는 DB를 변경한 세션이라 주 DB로 보낸 조회의 수 이다.
+	 *
+	 * { "replicaEnabled": true, "stickyWindow": 5000, "primary": 1024,
+	 *   "replica": 8120, "stickyReads": 35 }
+	 **/
+	@RequestMapping("/dataSource.ajax")
+	@ResponseBody
+	public Map<String, Object> dataSource() {
+		return routingDataSource.getStats();
+	}
+
+	/* 커넥션 풀 별로 커넥션 대기 시간과 사용 시간(밀리초)의 분포, 사용 중인
+	 * 커넥션 수와 커넥션을 구한 코드의 위치별 횟수를 응답하는 메서드
+	 *
+	 * [ { "name": "primary", "maxTotal": 10, "maxIdle": 3, "active": 2,
+	 *     "idle": 3, "waiting": 0, "failures": 0,
+	 *     "waitTime": { "count": 1520, "mean": 0.02, "p50": 0.002, ... },
+	 *     "holdTime": { "count": 1518, "mean": 1.3, "p50": 1.024, ... },
+	 *     "sites": { "BoardServiceImpl.boardList:120": 812, ... } }, ... ]
+	 **/
+	@RequestMapping("/pool.ajax")
+	@ResponseBody
+	public List<Map<String, Object>> pool() {
+		List<Map<String, Object>> pools = new ArrayList<Map<String, Object>>();
+		for(MonitoredDataSource dataSource : monitoredDataSources) {
+			pools.add(dataSource.getStats());
+		}
+		return pools;
+	}
+
+	/* 지금 커넥션과 트랜잭션을 잡고 있는 스레드와 잡은 위치를 오래된 순서로
+	 * 응답하는 메서드 - elapsed는 잡고 있는 시간(밀리초)이다.
+	 *
+	 * [ { "kind": "transaction", "name": "...BoardServiceImpl.insertBoard",
+	 *     "thread": "http-nio-8080-exec-3", "threadState": "RUNNABLE",
+	 *     "elapsed": 5230, "stack": [ "...", ... ] }, ... ]
+	 **/
+	@RequestMapping("/holders.ajax")
+	@ResponseBody
+	public List<Map<String, Object>> holders() {
+		return connectionWatchdog.getHolders();
+	}
+
+	/* 매핑 구문 별 실행 횟수, 오류 수, 결과 행 수, 느린 SQL 수와 실행 시간
+	 * (밀리초)의 분포를 응답하는 메서드
+	 *
+	 * { "com.springstudy.bbs.mapper.BoardMapper.boardList": {
+	 *     "count": 1520, "errors": 0, "rows": 15200, "slow": 2,
+	 *     "time": { "count": 1520, "mean": 1.8, "p50": 1.024, ... } }, ... }
+	 **/
+	@RequestMapping("/statements.ajax")
+	@ResponseBody
+	public Map<String, Object> statements() {
+		return statementStatsPlugin.getStats();
+	}
+}
@@ -9,9 +9,12 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
-import com.springstudy.bbs.domain.Board;
+import com.fasterxml.jackson.annotation.JsonView;
+import com.springstudy.bbs.domain.BoardSummary;
+import com.springstudy.bbs.domain.Views;
 import com.springstudy.bbs.service.BoardService;
 
 
@@ -234,20 +237,35 @@ public class AjaxController {
 		return resultMap;
 	}
 		
-	// 게시 글 리스트를 json 데이터로 응답하는 메서드
+	/* 게시 글 리스트를 json 데이터로 응답하는 메서드
+	 * 
+	 * 게시 글 리스트는 게시 글 내용과 비밀번호가 없는 BoardSummary로 읽어 오고
+	 * @JsonView에 Views.Summary를 지정해 Views.Summary 뷰로 지정된
+	 * 프로퍼티만 json으로 변환되도록 했다.
+	 **/
 	@RequestMapping("boardList.ajax")
 	@ResponseBody
-	public List<Board> boardList() {
+	@JsonView(Views.Summary.class)
+	public List<BoardSummary> boardList(
+			@RequestParam(value="beforeNo", required=false,
+					defaultValue="0") int beforeNo) {
 				
 		/* MappingJackson2HttpMessageConverter에 의해서
-		 * Board 객체가 아래와 같이 json 형식으로 변환된다.
+		 * BoardSummary 객체가 아래와 같이 json 형식으로 변환된다.
 		 * 
-		
+		 * {"no": 1, "title": "안녕하세요", "writer": "midas",
+		 *  "regDate": 1516541138000, "readCount": 25}
 		 **/
 		/* Service 클래스를 이용해 1 페이지에 해당하는 게시 글 리스트를 가져온다.
-		 * 이 List<Board> 객체를 바로 반환하면 객체 배열의 json 데이터가 반환된다.
+		 * 이 List<BoardSummary> 객체를 바로 반환하면 객체 배열의 json 데이터가 반환된다.
 		 * [{"no": 1, "title": "안녕하세요", ...}, {...}, {...}]		 
+		 * 
+		 * beforeNo 요청 파라미터가 있으면 그 번호보다 작은 번호의 다음
+		 * 페이지를 keyset 페이징으로 가져온다.
 		 **/
+		if(beforeNo > 0) {
+			return boardService.boardListBefore(beforeNo, "null", "null");
+		}
 		return boardService.boardList();
 	}
 }
@@ -0,0 +1,177 @@
+package com.springstudy.bbs.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+
+/* 페이징 처리에 사용하는 게시 글 수를 캐싱하는 컴포넌트
+ *
+ * 게시 글 리스트를 요청할 때마다 COUNT(no) 쿼리로 테이블 전체를 읽지 않도록
+ * 전체 게시 글 수는 메모리에 보관하고 게시 글 등록과 삭제가 커밋될 때 증감한다.
+ * 메모리의 값이 DB와 어긋나는 경우(다른 서버나 DB 도구에서 직접 수정)를
+ * 대비해 totalTtl 마다 한 번씩 DB에서 다시 읽어 보정한다.
+ *
+ * 검색어가 있는 게시 글 수는 (type, keyword) 별로 filterTtl 동안 캐싱하고
+ * filterCapacity를 넘으면 가장 오래 사용되지 않은 항목부터 제거한다.
+ * approximate가 true인 항목은 정확한 게시 글 수가 아니라 "count 이상"을
+ * 의미하는 근사치이다.
+ **/
+@Component
+public class BoardCountCache {
+
+	// 전체 게시 글 수를 DB에서 다시 읽어오는 주기(밀리초)
+	private long totalTtl = 5 * 60 * 1000;
+
+	// 검색 결과의 게시 글 수를 캐싱하는 시간(밀리초)
+	private long filterTtl = 60 * 1000;
+
+	// 캐싱할 수 있는 검색 결과 게시 글 수의 최대 개수
+	private int filterCapacity = 1000;
+
+	// 검색 결과의 게시 글 수를 필요한 만큼만 세는 근사치 모드 사용 여부
+	private boolean approximateSearch = true;
+
+	// 전체 게시 글 수, -1이면 아직 DB에서 읽어오지 않은 상태
+	private int total = -1;
+	private long totalExpiresAt;
+
+	/* 게시 글 등록, 삭제가 반영될 때마다 증가하는 세대 번호
+	 * DB에서 게시 글 수를 읽는 동안 다른 요청이 게시 글 수를 변경했다면
+	 * 읽어온 값이 이미 오래된 값이므로 캐시에 저장하지 않는다.
+	 **/
+	private long generation;
+
+	// 검색 결과의 게시 글 수 - 접근 순서로 정렬되는 LinkedHashMap을 LRU로 사용
+	private final LinkedHashMap<String, CachedCount> filtered =
+			new LinkedHashMap<String, CachedCount>(64, 0.75f, true);
+
+	/* 캐싱된 전체 게시 글 수를 반환 하는 메서드
+	 * 캐싱된 값이 없거나 보정 주기가 지났으면 -1을 반환한다.
+	 **/
+	public synchronized int getTotal() {
+		if(total < 0 || System.currentTimeMillis() > totalExpiresAt) {
+			return -1;
+		}
+		return total;
+	}
+
+	/* DB에서 전체 게시 글 수를 읽기 전에 호출해 현재 세대 번호를 받는 메서드
+	 * 읽어온 값을 저장할 때 setTotal() 메서드의 인수로 지정한다.
+	 **/
+	public synchronized long beginLoad() {
+		return generation;
+	}
+
+	// DB에서 읽어온 전체 게시 글 수를 저장하는 메서드
+	public synchronized void setTotal(int count, long loadGeneration) {
+		if(loadGeneration == generation) {
+			total = count;
+			totalExpiresAt = System.currentTimeMillis() + totalTtl;
+		}
+	}
+
+	// 게시 글 등록이 커밋되면 호출되는 메서드
+	public synchronized void increment() {
+		generation++;
+		if(total >= 0) {
+			total++;
+		}
+	}
+
+	// 게시 글 삭제가 커밋되면 호출되는 메서드
+	public synchronized void decrement() {
+		generation++;
+		if(total > 0) {
+			total--;
+		}
+	}
+
+	/* 캐싱된 검색 결과의 게시 글 수를 반환 하는 메서드
+	 * 캐싱된 값이 없거나 만료 되었으면 null을 반환한다.
+	 **/
+	public synchronized CachedCount getFiltered(String type, String keyword) {
+
+		String key = key(type, keyword);
+		CachedCount count = filtered.get(key);
+		if(count != null && System.currentTimeMillis() > count.expiresAt) {
+			filtered.remove(key);
+			return null;
+		}
+		return count;
+	}
+
+	// 검색 결과의 게시 글 수를 캐시에 저장하고 저장한 항목을 반환 하는 메서드
+	public synchronized CachedCount putFiltered(String type,
+			String keyword, int count, boolean approximate) {
+
+		CachedCount cachedCount = new CachedCount(count,
+				approximate, System.currentTimeMillis() + filterTtl);
+		filtered.put(key(type, keyword), cachedCount);
+
+		// 최대 개수를 넘으면 가장 오래 사용되지 않은 항목부터 제거한다.
+		Iterator<Map.Entry<String, CachedCount>> it =
+				filtered.entrySet().iterator();
+		while(filtered.size() > filterCapacity && it.hasNext()) {
+			it.next();
+			it.remove();
+		}
+		return cachedCount;
+	}
+
+	// 캐싱된 게시 글 수를 모두 제거하는 메서드
+	public synchronized void clear() {
+		generation++;
+		total = -1;
+		filtered.clear();
+	}
+
+	private String key(String type, String keyword) {
+		return type + ":" + keyword;
+	}
+
+	public boolean isApproximateSearch() {
+		return approximateSearch;
+	}
+
+	public void setApproximateSearch(boolean approximateSearch) {
+		this.approximateSearch = approximateSearch;
+	}
+
+	public void setTotalTtl(long totalTtl) {
+		this.totalTtl = totalTtl;
+	}
+
+	public void setFilterTtl(long filterTtl) {
+		this.filterTtl = filterTtl;
+	}
+
+	public void setFilterCapacity(int filterCapacity) {
+		this.filterCapacity = filterCapacity;
+	}
+
+	/* 캐싱된 검색 결과의 게시 글 수
+	 * approximate가 true면 실제 게시 글 수는 count 보다 많을 수 있다.
+	 **/
+	public static class CachedCount {
+
+		private final int count;
+		private final boolean approximate;
+		private final long expiresAt;
+
+		CachedCount(int count, boolean approximate, long expiresAt) {
+			this.count = count;
+			this.approximate = approximate;
+			this.expiresAt = expiresAt;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public boolean isApproximate() {
+			return approximate;
+		}
+	}
+}
@@ -0,0 +1,251 @@
+package com.springstudy.bbs.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+
+import com.springstudy.bbs.domain.Board;
+import com.springstudy.bbs.domain.Reply;
+
+/* 게시 글 상세보기에 사용하는 게시 글과 댓글 리스트를 캐싱하는 컴포넌트
+ *
+ * 게시 글은 수정되는 횟수보다 읽히는 횟수가 훨씬 많기 때문에 게시 글 번호를
+ * 키로 게시 글과 댓글 리스트를 메모리에 보관하고 capacity를 넘으면 가장 오래
+ * 사용되지 않은 게시 글부터 제거한다. 게시 글 수정, 삭제와 댓글 등록, 수정, 삭제,
+ * 추천/땡큐가 커밋되면 BoardServiceImpl이 해당 게시 글을 캐시에서 제거한다.
+ * 이 제거는 변경을 처리한 서버의 캐시에만 적용되므로 여러 서버를 로드 밸런서
+ * 뒤에 두었을 때 다른 서버가 오래된 값을 계속 보내지 않도록 캐시에 저장한
+ * 항목은 ttl이 지나면 만료되어 DB에서 다시 읽는다.
+ *
+ * 캐시에 저장된 객체를 호출한 쪽에서 변경할 수 없도록 저장할 때와 꺼낼 때
+ * 모두 복사본을 사용한다. 게시 글 읽은 횟수는 ReadCountBuffer가 DB에 반영할
+ * 때마다 addReadCounts() 메서드로 캐싱된 값도 같이 증가시킨다.
+ **/
+@Component
+public class BoardDetailCache {
+
+	// 캐싱할 수 있는 게시 글의 최대 개수
+	private int capacity = 1000;
+
+	// 게시 글을 캐싱하는 시간(밀리초)
+	private long ttl = 60 * 1000;
+
+	/* 게시 글이 제거되거나 읽은 횟수가 반영될 때마다 증가하는 세대 번호
+	 * DB에서 게시 글을 읽는 동안 캐시가 변경되었다면 읽어온 값이 이미
+	 * 오래된 값일 수 있으므로 캐시에 저장하지 않는다.
+	 **/
+	private long generation;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long expirations;
+	private long invalidations;
+
+	// 접근 순서로 정렬되는 LinkedHashMap을 LRU로 사용
+	private final LinkedHashMap<Integer, CachedBoard> entries =
+			new LinkedHashMap<Integer, CachedBoard>(64, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, CachedBoard> eldest) {
+			if(size() > capacity) {
+				evictions++;
+				return true;
+			}
+			return false;
+		}
+	};
+
+	/* 캐싱된 게시 글의 복사본을 반환 하는 메서드
+	 * 캐싱된 게시 글이 없으면 null을 반환한다.
+	 **/
+	public synchronized Board getBoard(int no) {
+
+		CachedBoard entry = liveEntry(no);
+		if(entry == null || entry.board == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return copyOf(entry.board);
+	}
+
+	/* 캐싱된 댓글 리스트의 복사본을 반환 하는 메서드
+	 * 캐싱된 댓글 리스트가 없으면 null을 반환한다.
+	 **/
+	public synchronized List<Reply> getReplyList(int no) {
+
+		CachedBoard entry = liveEntry(no);
+		if(entry == null || entry.replyList == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return copyOf(entry.replyList);
+	}
+
+	/* 상세보기에 사용할 게시 글과 댓글 리스트의 복사본을 반환 하는 메서드
+	 * 댓글 리스트는 게시 글의 replyList에 지정하며 게시 글과 댓글 리스트가
+	 * 모두 캐싱되어 있을 때만 반환하고 하나라도 없으면 null을 반환한다.
+	 * 상세보기 한 번을 한 번의 조회로 hits, misses에 기록한다.
+	 **/
+	public synchronized Board getBoardDetail(int no) {
+
+		CachedBoard entry = liveEntry(no);
+		if(entry == null || entry.board == null || entry.replyList == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		Board board = copyOf(entry.board);
+		board.setReplyList(copyOf(entry.replyList));
+		return board;
+	}
+
+	/* DB에서 게시 글이나 댓글 리스트를 읽기 전에 호출해 현재 세대 번호를
+	 * 받는 메서드 - 읽어온 값을 저장할 때 인수로 지정한다.
+	 **/
+	public synchronized long beginLoad() {
+		return generation;
+	}
+
+	// DB에서 읽어온 게시 글의 복사본을 저장하는 메서드
+	public synchronized void putBoard(Board board, long loadGeneration) {
+		if(board != null && loadGeneration == generation) {
+			entryOf(board.getNo()).board = copyOf(board);
+		}
+	}
+
+	// DB에서 읽어온 댓글 리스트의 복사본을 저장하는 메서드
+	public synchronized void putReplyList(int no,
+			List<Reply> replyList, long loadGeneration) {
+		if(replyList != null && loadGeneration == generation) {
+			entryOf(no).replyList = copyOf(replyList);
+		}
+	}
+
+	// 게시 글이 수정, 삭제되거나 추천/땡큐가 변경되면 게시 글을 제거하는 메서드
+	public synchronized void invalidate(int no) {
+		generation++;
+		if(entries.remove(no) != null) {
+			invalidations++;
+		}
+	}
+
+	// 댓글이 변경되면 게시 글의 댓글 리스트만 제거하는 메서드
+	public synchronized void invalidateReplyList(int no) {
+		generation++;
+		CachedBoard entry = entries.get(no);
+		if(entry != null && entry.replyList != null) {
+			entry.replyList = null;
+			invalidations++;
+		}
+	}
+
+	/* ReadCountBuffer가 DB에 반영한 게시 글 읽은 횟수의 증가분을
+	 * 캐싱된 게시 글에도 더해주는 메서드 - deltas의 키는 게시 글 번호이다.
+	 **/
+	public synchronized void addReadCounts(Map<Integer, Integer> deltas) {
+		generation++;
+		for(Map.Entry<Integer, Integer> delta : deltas.entrySet()) {
+			CachedBoard entry = liveEntry(delta.getKey());
+			if(entry != null && entry.board != null) {
+				entry.board.setReadCount(
+						entry.board.getReadCount() + delta.getValue());
+			}
+		}
+	}
+
+	// 캐싱된 게시 글을 모두 제거하는 메서드
+	public synchronized void clear() {
+		generation++;
+		entries.clear();
+	}
+
+	// 캐시 크기를 정할 수 있도록 캐시 사용 통계를 반환 하는 메서드
+	public synchronized Map<String, Object> getStats() {
+
+		Map<String, Object> stats = new HashMap<String, Object>();
+		stats.put("size", entries.size());
+		stats.put("capacity", capacity);
+		stats.put("hits", hits);
+		stats.put("misses", misses);
+		stats.put("hitRatio", hits + misses == 0
+				? 0.0 : (double) hits / (hits + misses));
+		stats.put("evictions", evictions);
+		stats.put("expirations", expirations);
+		stats.put("invalidations", invalidations);
+		stats.put("ttl", ttl);
+		return stats;
+	}
+
+	public synchronized void setCapacity(int capacity) {
+		this.capacity = capacity;
+	}
+
+	public synchronized void setTtl(long ttl) {
+		this.ttl = ttl;
+	}
+
+	/* 게시 글 번호에 해당하는 항목을 반환 하는 메서드
+	 * ttl이 지난 항목은 캐시에서 제거하고 null을 반환한다.
+	 **/
+	private CachedBoard liveEntry(int no) {
+		CachedBoard entry = entries.get(no);
+		if(entry != null && System.currentTimeMillis() > entry.expiresAt) {
+			entries.remove(no);
+			expirations++;
+			return null;
+		}
+		return entry;
+	}
+
+	/* 캐시에 게시 글 번호에 해당하는 항목이 없으면 새로 추가하고 반환 하는 메서드
+	 * 새로 추가할 때 capacity를 넘으면 가장 오래 사용되지 않은 항목이 제거된다.
+	 * 항목의 만료 시간은 추가할 때 정하므로 나중에 채운 값도 그 시간에 만료된다.
+	 **/
+	private CachedBoard entryOf(int no) {
+		CachedBoard entry = liveEntry(no);
+		if(entry == null) {
+			entry = new CachedBoard(System.currentTimeMillis() + ttl);
+			entries.put(no, entry);
+		}
+		return entry;
+	}
+
+	private static Board copyOf(Board board) {
+		Board copy = new Board(board.getNo(), board.getTitle(),
+				board.getContent(), board.getWriter(), board.getRegDate(),
+				board.getReadCount(), board.getPass(), board.getFile1());
+		copy.setRecommend(board.getRecommend());
+		copy.setThank(board.getThank());
+		return copy;
+	}
+
+	private static List<Reply> copyOf(List<Reply> replyList) {
+		List<Reply> copy = new ArrayList<Reply>(replyList.size());
+		for(Reply reply : replyList) {
+			copy.add(new Reply(reply.getNo(), reply.getBbsNo(),
+					reply.getReplyContent(), reply.getReplyWriter(),
+					reply.getRegDate()));
+		}
+		return copy;
+	}
+
+	// 게시 글 번호 하나에 해당하는 게시 글과 댓글 리스트
+	private static class CachedBoard {
+		private final long expiresAt;
+		private Board board;
+		private List<Reply> replyList;
+
+		CachedBoard(long expiresAt) {
+			this.expiresAt = expiresAt;
+		}
+	}
+}
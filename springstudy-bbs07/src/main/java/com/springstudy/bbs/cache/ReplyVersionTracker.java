@@ -0,0 +1,59 @@
+package com.springstudy.bbs.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+
+/* 게시 글 마다 댓글 리스트의 버전 번호를 관리하는 컴포넌트
+ *
+ * 댓글이 등록, 수정, 삭제되어 트랜잭션이 커밋될 때마다 게시 글의 버전을 1 증가
+ * 시킨다. 클라이언트는 화면에 출력한 댓글 리스트의 버전을 가지고 있다가 댓글을
+ * 변경할 때 함께 보내고 서버는 변경된 댓글 하나와 변경 전/후의 버전을 응답한다.
+ * 클라이언트의 버전이 변경 전의 버전과 같으면 변경된 댓글 하나만 화면에
+ * 반영하면 되고 다르면 그 사이에 다른 사용자가 댓글을 변경한 것이다.
+ *
+ * 버전은 메모리에만 저장하기 때문에 애플리케이션이 다시 시작되면 처음부터
+ * 다시 센다. 재시작 전에 받은 버전이 재시작 후의 버전과 우연히 같아지지 않도록
+ * 시작할 때마다 임의의 epoch 값에서부터 버전을 센다. 자바스크립트의 숫자로
+ * 정확하게 표현할 수 있도록 epoch는 2^52 보다 작은 값으로 정했다.
+ **/
+@Component
+public class ReplyVersionTracker {
+
+	private final long epoch =
+			ThreadLocalRandom.current().nextLong(1L, 1L << 31) << 20;
+
+	// 댓글이 한 번이라도 변경된 게시 글의 버전
+	private final ConcurrentHashMap<Integer, AtomicLong> versions =
+			new ConcurrentHashMap<Integer, AtomicLong>();
+
+	// 게시 글 번호에 해당하는 댓글 리스트의 현재 버전을 반환 하는 메서드
+	public long version(int bbsNo) {
+		AtomicLong version = versions.get(bbsNo);
+		return version == null ? epoch : version.get();
+	}
+
+	/* 게시 글 번호에 해당하는 댓글 리스트의 버전을 1 증가시키고
+	 * 증가된 버전을 반환 하는 메서드
+	 **/
+	public long increment(int bbsNo) {
+		AtomicLong version = versions.get(bbsNo);
+		if(version == null) {
+			AtomicLong newVersion = new AtomicLong(epoch);
+			version = versions.putIfAbsent(bbsNo, newVersion);
+			if(version == null) {
+				version = newVersion;
+			}
+		}
+		return version.incrementAndGet();
+	}
+
+	/* 게시 글이 삭제되면 게시 글 번호에 해당하는 버전을 제거하는 메서드
+	 * 삭제된 게시 글의 버전이 계속 쌓이지 않도록 BoardServiceImpl이 호출한다.
+	 **/
+	public void remove(int bbsNo) {
+		versions.remove(bbsNo);
+	}
+}
@@ -1,42 +1,60 @@
 package com.springstudy.bbs.controller;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.TypeMismatchException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
-import org.springframework.util.FileCopyUtils;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureCallback;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.multipart.MultipartHttpServletRequest;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import com.springstudy.bbs.domain.Board;
 import com.springstudy.bbs.domain.Reply;
+import com.springstudy.bbs.download.FileSender;
+import com.springstudy.bbs.download.ZipSender;
 import com.springstudy.bbs.exception.BoardPassCheckFailException;
+import com.springstudy.bbs.interceptor.QueryBudget;
 import com.springstudy.bbs.service.BoardService;
+import com.springstudy.bbs.thumbnail.ThumbnailCache;
+import com.springstudy.bbs.upload.BlobStore;
+import com.springstudy.bbs.upload.MultipartIngestor;
+import com.springstudy.bbs.upload.MultipartUpload;
+import com.springstudy.bbs.upload.StagedUploads;
+import com.springstudy.bbs.upload.UploadStager;
 
 //스프링 MVC의 컨트롤러임을 선언하고 있다.
 @Controller
 public class BoardController {
 	
-	// 업로드한 파일을 저장할 폴더 위치를 상수로 선언하고 있다.
-	private final static String DEFAULT_PATH = "/resources/upload/";	
+	// 썸네일을 기다리는 최대 시간(밀리초) - 넘으면 503으로 응답한다.
+	private static final long THUMBNAIL_TIMEOUT = 10000;
 	
 	/* 인스턴스 필드에 @Autowired annotation을 사용하면 접근지정자가 
 	 * private이고 setter 메서드가 없다 하더라도 문제없이 주입 된다.
@@ -54,6 +72,42 @@ public class BoardController {
 		this.boardService = boardService;
 	}
 	
+	@Autowired
+	private UploadStager uploadStager;
+	
+	public void setUploadStager(UploadStager uploadStager) {
+		this.uploadStager = uploadStager;
+	}
+	
+	@Autowired
+	private FileSender fileSender;
+	
+	public void setFileSender(FileSender fileSender) {
+		this.fileSender = fileSender;
+	}
+	
+	@Autowired
+	private ZipSender zipSender;
+	
+	public void setZipSender(ZipSender zipSender) {
+		this.zipSender = zipSender;
+	}
+	
+	@Autowired
+	private ThumbnailCache thumbnailCache;
+	
+	public void setThumbnailCache(ThumbnailCache thumbnailCache) {
+		this.thumbnailCache = thumbnailCache;
+	}
+	
+	// root-context.xml에 등록된 멀티파트 요청 본문을 스트리밍으로 읽는 객체
+	@Autowired
+	private MultipartIngestor multipartIngestor;
+	
+	public void setMultipartIngestor(MultipartIngestor multipartIngestor) {
+		this.multipartIngestor = multipartIngestor;
+	}
+	
 	/* @RequestMapping 애노테이션이 적용된 메서드의 파라미터와 반환 타입
 	 * 
 	 * 1. Controller 메서드의 파라미터 타입으로 지정할 수 있는 객체와 애노테이션 
@@ -181,14 +235,23 @@ public class BoardController {
 			@RequestParam(value="type", required=false,  
 						defaultValue="null") String type,
 			@RequestParam(value="keyword", required=false,
-						defaultValue="null") String keyword) {		
+						defaultValue="null") String keyword,
+			@RequestParam(value="anchor", required=false,
+						defaultValue="0") int anchor,
+			@RequestParam(value="firstNo", required=false,
+						defaultValue="0") int firstNo,
+			@RequestParam(value="lastNo", required=false,
+						defaultValue="0") int lastNo) {		
 
 		/* Service 클래스를 이용해 게시 글 리스트를 가져온다.
 		 * Service 클래스 안에서 일반 리스트 요청인지, 검색 요청인지를
 		 * 체크해서 각각에 맞는 필요한 데이터를 반환하도록 구현하면 된다.  
+		 * 
+		 * anchor, firstNo, lastNo는 페이지 링크를 만든 페이지의 번호와
+		 * 그 페이지의 첫 번째, 마지막 게시 글 번호로 keyset 페이징의 커서로 사용된다.
 		 **/		
-		Map<String, Object> modelMap = 
-				boardService.boardList(pageNum, type, keyword);
+		Map<String, Object> modelMap = boardService.boardList(
+				pageNum, type, keyword, anchor, firstNo, lastNo);
 		
 		/* 파라미터로 받은 모델 객체에 뷰로 보낼 모델을 저장한다.
 		 * 모델에는 도메인 객체나 비즈니스 로직을 처리한 결과를 저장한다. 
@@ -223,6 +286,7 @@ public class BoardController {
 	 * 받을 수 있도록 하였다.
 	 **/
 	@RequestMapping("/boardDetail")
+	@QueryBudget(3)
 	public String boardDetail(Model model, int no, 
 			@RequestParam(value="pageNum", required=false, 
 					defaultValue="1") int pageNum,
@@ -240,22 +304,29 @@ public class BoardController {
 				|| keyword.equals("null")) ? false : true; 		
 		
 		/* @Transactional 애노테이션을 이용한 트랜잭션 처리 메서드 호출
-		 * Service 클래스를 이용해 no에 해당하는 게시 글 하나의 정보를 읽어온다.
-		 * 두 번째 인수에 true를 지정해 게시 글 읽은 횟수를 1 증가 시킨다.
+		 * Service 클래스를 이용해 no에 해당하는 게시 글 하나의 정보와 댓글 
+		 * 리스트를 한 번에 읽어오고 게시 글 읽은 횟수를 1 증가 시킨다.
+		 **/
+		/* 댓글 리스트의 버전은 댓글 리스트를 읽기 전에 가져와야 한다. 그 사이에
+		 * 댓글이 변경되면 화면의 버전이 실제보다 낮아져 다음 댓글 변경 시 댓글
+		 * 리스트 전체를 다시 받게 되지만 변경 전의 댓글 리스트를 새 버전으로
+		 * 잘못 알게 되는 일은 없다.
 		 **/
-		Board board = boardService.getBoard(no, true);
+		long replyVersion = boardService.replyVersion(no);
+		Board board = boardService.getBoardDetail(no);
 		
 		// 코드기반 트랜잭션 처리 메서드 호출
 		// Board board = boardService.getBoardCode(no, true);
 		
 		// 현재 게시 글에 해당하는 댓글 리스트
-		List<Reply> replyList = boardService.replyList(no);
+		List<Reply> replyList = board.getReplyList();
 		
 		/* 파라미터로 받은 모델 객체에 뷰로 보낼 모델을 저장한다.
 		 * 모델에는 도메인 객체나 비즈니스 로직을 처리한 결과를 저장한다. 
 		 **/	
 		model.addAttribute("board", board);
 		model.addAttribute("replyList", replyList);
+		model.addAttribute("replyVersion", replyVersion);
 		model.addAttribute("pageNum", pageNum);
 		model.addAttribute("searchOption", searchOption);
 		
@@ -281,6 +352,10 @@ public class BoardController {
 		if(board.getFile1() != null) {
 			model.addAttribute("fileName", 
 				URLEncoder.encode(board.getFile1(), "utf-8"));
+			
+			// 이미지 첨부 파일이면 상세보기에 썸네일로 미리보기를 보여준다.
+			model.addAttribute("thumbnail", 
+				ThumbnailCache.isImage(board.getFile1()));
 		}
 		
 		/* servlet-context.xml에 설정한 ViewResolver에서 prefix와 suffix에
@@ -358,45 +433,27 @@ public class BoardController {
 		 * 이 예제는 MultipartHttpServletRequest를 이용한 파일 업로드
 		 * 방법을 소개하고 있다.
 		 **/		
-		if(!multipartFile.isEmpty()) { // 업로드된 파일 데이터가 존재하면
-			
-			// Request 객체를 이용해 파일이 저장될 실제 경로를 구한다.
-			String filePath = 
-					request.getServletContext().getRealPath(DEFAULT_PATH);
-			
-			/* UUID(Universally Unique Identifier, 범용 고유 식별자)
-			 * 소프트웨어 구축에 쓰이는 식별자의 표준으로 네트워크 상에서 서로 모르는
-			 * 개체들을 식별하고 구별하기 위해서 사용된다. UUID 표준에 따라 이름을
-			 * 부여하면 고유성을 완벽하게 보장할 수는 없지만 실제 사용상에서 중복될 
-			 * 가능성이 거의 없다고 인정되기 때문에 실무에서 많이 사용되고 있다.
-			 * 
-			 * 파일 이름의 중복을 막고 고유한 파일 이름으로 저장하기 위해 java.util
-			 * 패키지의 UUID 클래스를 이용해 랜덤한 UUID 값을 생성한다.
-			 **/
-			UUID uid = UUID.randomUUID();
-			String saveName = 
-					uid.toString() + "_" + multipartFile.getOriginalFilename();
-			
-			File file = new File(filePath, saveName);
-			System.out.println("insertBoard - newName : " + file.getName());			
+		StagedUploads uploads = uploadStager.begin();
+		try {
+			if(!multipartFile.isEmpty()) { // 업로드된 파일 데이터가 존재하면
 			
-			// 업로드 되는 파일을 upload 폴더로 저장한다.
-			multipartFile.transferTo(file);
+				/* 업로드된 파일은 스테이징 폴더에 저장하면서 내용의 해시를 계산하고
+				 * 게시 글에는 참조 이름(해시_원본파일이름)을 저장한다. 같은 내용의
+				 * 파일은 업로드 폴더에 한 번만 저장된다(BlobStore 참고).
+				 **/
+				board.setFile1(uploads.stage(multipartFile));
+			}
 			
-			/* 아래와 같이 스프링이 지원하는 FileCopyUtils 클래스를
-			 * 이용해 업로드 되는 파일을 upload 폴더로 저장할 수 있다.
+			/* BoardService 클래스를 이용해
+			 * 폼에서 넘어온 게시 글 정보를 게시 글 테이블에 추가한다.
+			 * 트랜잭션이 커밋되면 스테이징 파일을 업로드 폴더로 옮긴다.
 			 **/
-			//byte[] in = multipartFile.getBytes();
-			//FileCopyUtils.copy(in, file);
-			
-			// 업로드된 파일 명을 Board 객체에 저장한다.
-			board.setFile1(saveName);
+			boardService.insertBoardStaged(
+					board, uploads, new ArrayList<String>());
+		} finally {
+			// 트랜잭션을 시작하지 못했을 때 남은 스테이징 파일을 삭제한다.
+			uploads.discard();
 		}
-		
-		/* BoardService 클래스를 이용해
-		 * 폼에서 넘어온 게시 글 정보를 게시 글 테이블에 추가한다.
-		 **/
-		boardService.insertBoard(board);
 
 		/* BoardMapper에서 게시 글 추가하는 맵핑 구문을 아래와 같이 작성했다.
 		 *
@@ -463,40 +520,24 @@ public class BoardController {
 		 * 이 예제는 MultipartHttpServletRequest를 이용한 파일 업로드
 		 * 방법을 소개하고 있다.
 		 **/	
-		if(!multipartFile.isEmpty()) { // 업로드된 파일 데이터가 존재하면
+		StagedUploads uploads = uploadStager.begin();
+		try {
+			if(!multipartFile.isEmpty()) { // 업로드된 파일 데이터가 존재하면
 			
-			// Request 객체를 이용해 파일이 저장될 실제 경로를 구한다.
-			String filePath = 
-					request.getServletContext().getRealPath(DEFAULT_PATH);
+				// 업로드된 파일을 스테이징 폴더에 저장하고 참조 이름을 Board 객체에 저장한다.
+				board.setFile1(uploads.stage(multipartFile));
+			}		
 			
-			/* UUID(Universally Unique Identifier, 범용 고유 식별자)
-			 * 소프트웨어 구축에 쓰이는 식별자의 표준으로 네트워크 상에서 서로 모르는
-			 * 개체들을 식별하고 구별하기 위해서 사용된다. UUID 표준에 따라 이름을
-			 * 부여하면 고유성을 완벽하게 보장할 수는 없지만 실제 사용상에서 중복될 
-			 * 가능성이 거의 없다고 인정되기 때문에 실무에서 많이 사용되고 있다.
-			 * 
-			 * 파일 이름의 중복을 막고 고유한 파일 이름으로 저장하기 위해 java.util
-			 * 패키지의 UUID 클래스를 이용해 랜덤한 UUID 값을 생성한다.
+			/* BoardService 클래스를 이용해 
+			 * 폼에서 넘어온 게시 글 정보를 게시 글 테이블에 추가한다.
 			 **/
-			UUID uid = UUID.randomUUID();
-			String saveName = 
-					uid.toString() + "_" + multipartFile.getOriginalFilename(); 
-			
-			File file = new File(filePath, saveName);
-			System.out.println("addBoard - newName : " + file.getName());
-			
-			// 업로드한 파일을 upload 폴더로 저장한다.
-			multipartFile.transferTo(file);
-			
-			// 업로드된 파일 명을 Board 객체에 저장한다.
-			board.setFile1(saveName);			
+			boardService.insertBoardStaged(
+					board, uploads, new ArrayList<String>());
+		} finally {
+			// 트랜잭션을 시작하지 못했을 때 남은 스테이징 파일을 삭제한다.
+			uploads.discard();
 		}		
 		
-		/* BoardService 클래스를 이용해 
-		 * 폼에서 넘어온 게시 글 정보를 게시 글 테이블에 추가한다.
-		 **/
-		boardService.insertBoard(board);	
-		
 		return "redirect:boardList";
 	}
 	
@@ -519,18 +560,14 @@ public class BoardController {
 		board.setContent(content);
 		board.setPass(pass);
 				
-		// Request 객체를 이용해 파일이 저장될 실제 경로를 구한다.
-		String filePath = 
-				request.getServletContext().getRealPath(DEFAULT_PATH);
-		
-		/* @Transactional 애노테이션을 이용한 트랜잭션 처리 메서드 호출
+		/* TransactionTemplate을 이용한 트랜잭션 처리 메서드 호출
 		 * BoardService 클래스를 이용해
 		 * 폼에서 넘어온 게시 글 정보를 게시 글 테이블에 추가한다.
 		 **/
-		//boardService.insertBoardMulti(filePath, board, multipartFile, multiFiles);
+		//boardService.insertBoardMulti(board, multipartFile, multiFiles);
 		
 		// 코드 기반 트랜잭션 처리 메서드 호출
-		boardService.insertBoardMultiCode(filePath, board, multipartFile, multiFiles);
+		boardService.insertBoardMultiCode(board, multipartFile, multiFiles);
 		
 		/* 클라이언트 요청을 처리한 후 리다이렉트 해야 할 경우 아래와 같이 redirect:
 		 * 접두어를 붙여 뷰 이름을 반환하면 된다. 뷰 이름에 redirect 접두어가 붙으면
@@ -544,6 +581,42 @@ public class BoardController {
 	}
 	
 	
+	/* 게시 글쓰기(다중 파일 업로드) 폼에서 들어오는 게시 글쓰기 요청을
+	 * 요청 본문을 스트리밍으로 읽어 처리하는 메서드
+	 * 
+	 * 이 경로는 root-context.xml의 multipartResolver에 streamingPaths로
+	 * 지정되어 있어 DispatcherServlet이 멀티파트 요청을 미리 해석하지 않는다.
+	 * 그래서 요청 파라미터와 MultipartFile을 메서드의 파라미터로 받을 수 없고
+	 * MultipartIngestor로 요청 본문을 직접 읽는다. 업로드 파일은 임시 파일을
+	 * 거치지 않고 스테이징 폴더에 바로 저장되며 크기 제한을 넘으면 그 즉시 
+	 * 읽기를 멈추고 UploadQuotaExceededException이 발생한다.
+	 **/
+	@RequestMapping(value="/writeMultiFileStream", method=RequestMethod.POST)
+	public String insertBoardMultiStream(HttpServletRequest request) 
+			throws IOException {
+		
+		StagedUploads uploads = uploadStager.begin();
+		try {
+			MultipartUpload upload = multipartIngestor.ingest(request, uploads);
+			
+			Board board = new Board();
+			board.setTitle(upload.getParameter("title"));
+			board.setWriter(upload.getParameter("writer"));
+			board.setContent(upload.getParameter("content"));
+			board.setPass(upload.getParameter("pass"));
+			board.setFile1(upload.getFileName("file1"));
+			
+			boardService.insertBoardStaged(
+					board, uploads, upload.getFileNames("files"));
+		} finally {
+			// 트랜잭션을 시작하지 못했을 때 남은 스테이징 파일을 삭제한다.
+			uploads.discard();
+		}
+		
+		return "redirect:boardList";
+	}
+	
+	
 	/* 게시 글 수정 폼 요청을 처리하는 메서드
 	 * 
 	 * 아래는 "/update"로 들어오는 GET 방식 요청을 처리하는 메서드를 지정한
@@ -886,9 +959,6 @@ public class BoardController {
 		String fileName = request.getParameter("fileName");
 		System.out.println("beforeFileName : " + fileName);		
 		
-		String filePath = 
-				request.getServletContext().getRealPath(DEFAULT_PATH);		
-		
 		/* 브라우저는 서버로 요청을 보낼때 뷰 페이지의 인코딩 설정에 따라 데이터를
 		 * 인코딩 하여 서버로 전송한다. 한글 이름을 가진 파일을 링크 형식으로 
 		 * 요청하면 GET 방식 요청이 되기 때문에 톰갯 서버에서 URIEncoding
@@ -904,15 +974,14 @@ public class BoardController {
 		//fileName = new String(fileName.getBytes("ISO-8859-1"), "UTF-8");			
 		System.out.println("afterFileName : " + fileName);
 		
-		File file = new File(filePath, fileName);
-		System.out.println("file.getName() : " + file.getName());
-		
-		// 응답 데이터에 파일 다운로드 관련 컨텐츠 타입 설정이 필요하다.
-		response.setContentType("application/download; charset=UTF-8");
-		response.setContentLength((int) file.length());
+		/* 참조 이름(해시_원본파일이름)에서 첨부 파일 저장소의 키를 구한다.
+		 * 해시 이름으로 저장되기 전의 파일은 저장된 이름 그대로 찾는다. 
+		 **/
+		String key = BlobStore.key(fileName);
+		String hash = BlobStore.hashOf(fileName);
 		
 		// 한글 파일명을 클라이언트로 바로 내려 보내기 때문에 URLEncoding이 필요하다. 		
-		fileName = URLEncoder.encode(file.getName(), "UTF-8");
+		fileName = URLEncoder.encode(BlobStore.downloadName(fileName), "UTF-8");
 		System.out.println("다운로드 fileName : " + fileName);
 		
 		// 전송되는 파일 이름을 한글 그대(원본파일 이름 그대로)로 보내주기 위한 설정이다.
@@ -922,27 +991,91 @@ public class BoardController {
 		// 파일로 전송되야 하므로 전송되는 데이터 인코딩은 바이너리로 설정해야 한다.
 		response.setHeader("Content-Transfer-Encoding", "binary");
 		
-		// 파일을 클라이언트로 보내기 위해 응답 스트림을 구한다.
-		OutputStream out = response.getOutputStream();
-		FileInputStream fis = null;
-		
-		/* FileInputStream을 통해 클라이언트로 보낼 파일을 읽어
-		 * 스프링이 제공하는 FileCopyUtils 클래스를 통해서
-		 * 데이터를 읽고 응답 스트림을 통해 클라이언트로 출력한다.
+		/* FileSender를 이용해 파일을 클라이언트로 보낸다.
+		 * Range 요청이면 요청한 범위만 보내고 클라이언트의 캐시가 유효하면
+		 * 304로 응답한다. 해시로 저장된 파일은 해시를 ETag로 사용한다.
 		 **/
-		fis = new FileInputStream(file);
+		fileSender.send(request, response, key, hash);
+	}	
+		
+	/* 게시 글의 첨부 파일을 모두 ZIP 파일 하나로 다운로드 하는 요청을 처리하는 메서드
+	 * 
+	 * file1과 다중 파일 업로드로 저장된 files 테이블의 파일을 하나씩 받지 않고
+	 * 한 번의 요청으로 받을 수 있다. ZIP 파일은 임시 파일 없이 응답으로
+	 * 바로 압축하면서 보내므로 첨부 파일의 크기와 상관없이 메모리를 일정하게 사용한다.
+	 **/
+	@RequestMapping("/fileDownloadAll")
+	public void downloadAll(HttpServletResponse response, 
+			@RequestParam("no") int no) throws Exception {
 
-		// 스프링이 제공하는 FileCopyUtils를 이용해 응답 스트림에 파일을 복사한다.
-		FileCopyUtils.copy(fis,  out);
+		List<String> references = boardService.attachmentList(no);
+		if(references.isEmpty()) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		zipSender.send(response, "attachments_" + no + ".zip", references);
+	}
+		
+	/* 이미지 첨부 파일의 썸네일 요청을 처리하는 메서드
+	 * 
+	 * 썸네일은 ThumbnailCache의 작업 스레드에서 만들고 DeferredResult로
+	 * 응답하므로 썸네일을 만드는 동안 요청 처리 스레드는 반환된다. 작업 큐가
+	 * 가득 차면 503(Service Unavailable)으로 응답한다. 썸네일은 원본의 해시로
+	 * 이름을 정해 내용이 바뀌지 않으므로 브라우저가 1년 동안 캐싱하도록 했다.
+	 **/
+	@RequestMapping("/thumbnail")
+	public DeferredResult<ResponseEntity<Resource>> thumbnail(
+			@RequestParam("fileName") String fileName, WebRequest webRequest) {
+		
+		final DeferredResult<ResponseEntity<Resource>> result = 
+				new DeferredResult<ResponseEntity<Resource>>(THUMBNAIL_TIMEOUT,
+						ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+						.<Resource>body(null));
 		
-		if(fis != null) {
-			fis.close();
+		if(! ThumbnailCache.isImage(fileName)) {
+			result.setResult(ResponseEntity.status(HttpStatus.NOT_FOUND)
+					.<Resource>body(null));
+			return result;
 		}
 		
-		/* 파일 데이터를 클라이언트로 출력한다.
-		 * 버퍼에 남아 있는 모든 데이터를 출력한다.
-		 **/
-		out.flush();	
+		// 브라우저에 캐싱된 썸네일의 ETag가 같으면 304로 응답한다.
+		final String etag = thumbnailCache.etag(fileName);
+		if(webRequest.checkNotModified(etag)) {
+			return null;
+		}
+		
+		ListenableFuture<File> future;
+		try {
+			future = thumbnailCache.thumbnail(fileName);
+		} catch(RejectedExecutionException e) {
+			result.setResult(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+					.header("Retry-After", "1").<Resource>body(null));
+			return result;
+		}
+		
+		future.addCallback(new ListenableFutureCallback<File>() {
+			@Override
+			public void onSuccess(File file) {
+				if(file == null) {
+					result.setResult(ResponseEntity.status(HttpStatus.NOT_FOUND)
+							.<Resource>body(null));
+					return;
+				}
+				result.setResult(ResponseEntity.ok()
+						.contentType(MediaType.IMAGE_JPEG)
+						.contentLength(file.length())
+						.cacheControl(CacheControl.maxAge(365, TimeUnit.DAYS)
+								.cachePublic())
+						.eTag(etag)
+						.<Resource>body(new FileSystemResource(file)));
+			}
+			
+			@Override
+			public void onFailure(Throwable e) {
+				result.setErrorResult(e);
+			}
+		});
+		return result;
 	}	
 
 	/* BadRequest(400) Exception 처리 메서드
@@ -0,0 +1,304 @@
+package com.springstudy.bbs.counter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.springstudy.bbs.cache.BoardDetailCache;
+import com.springstudy.bbs.dao.BoardDao;
+
+/* 게시 글 읽은 횟수의 증가분을 모아 두었다가 주기적으로 DB에 반영하는 컴포넌트
+ *
+ * 게시 글 상세보기 요청마다 UPDATE 쿼리로 read_count를 1씩 증가시키면
+ * 조회가 많은 게시 글의 행에 쓰기 락이 몰리고 상세보기 요청이 모두 쓰기
+ * 트랜잭션이 된다. 이 컴포넌트는 게시 글 번호별 LongAdder에 증가분을 모으고
+ * flushInterval 마다 모인 증가분을 하나의 UPDATE 쿼리로 DB에 반영한다.
+ * LongAdder는 내부적으로 여러 셀에 나눠서 더하기 때문에 같은 게시 글을 여러
+ * 스레드가 동시에 읽어도 락 없이 증가시킬 수 있다.
+ *
+ * DB에 반영할 때는 증가분을 모으던 맵을 새 맵으로 바꾸고 이전 맵의 값을
+ * 반영한다. 맵을 바꾸는 순간에 이전 맵의 LongAdder를 증가시키던 스레드가
+ * 있을 수 있으므로 반영한 맵은 다음 주기까지 보관했다가 그 사이에 늘어난
+ * 값을 한 번 더 반영한다. 애플리케이션이 종료될 때 남은 증가분을 모두 반영한다.
+ *
+ * 반영하고 있거나 반영한 LongAdder는 DB에 반영된 값과 함께 게시 글 번호별로
+ * 보관하고 나눠서 반영하는 UPDATE 쿼리가 하나 끝날 때마다 그 게시 글들의 반영된
+ * 값을 바꾼다. pending()은 LongAdder의 현재 값에서 반영된 값을 뺀 만큼만 더하므로
+ * 반영 중이거나 늦게 더해진 증가분도 두 번 세거나 빠뜨리지 않는다.
+ **/
+@Component
+public class ReadCountBuffer implements InitializingBean, DisposableBean {
+
+	private static final Logger logger =
+			LoggerFactory.getLogger(ReadCountBuffer.class);
+
+	// 한 번의 UPDATE 쿼리로 반영할 최대 게시 글 수
+	private static final int BATCH_SIZE = 500;
+
+	private BoardDao boardDao;
+
+	// DB에 반영한 증가분을 캐싱된 게시 글에도 더해준다.
+	private BoardDetailCache boardDetailCache;
+
+	// DB에 반영하는 주기(밀리초)
+	private long flushInterval = 3000;
+
+	// 증가분을 모으고 있는 맵
+	private final AtomicReference<ConcurrentHashMap<Integer, LongAdder>>
+			current = new AtomicReference<ConcurrentHashMap<Integer, LongAdder>>(
+					new ConcurrentHashMap<Integer, LongAdder>());
+
+	/* DB에 반영하고 있거나 이전 주기에 반영한 LongAdder와 DB에 반영된 값
+	 * 반영이 끝나지 않은 증가분과 맵을 바꾼 후에 늦게 더해진 증가분을 pending()에
+	 * 더하고 다음 주기에 반영하기 위해 게시 글 번호별로 보관한다. 리스트는
+	 * 변경하지 않고 flush()가 새 리스트로 바꾼다.
+	 **/
+	private final ConcurrentHashMap<Integer, List<Flushed>> flushed =
+			new ConcurrentHashMap<Integer, List<Flushed>>();
+
+	private ScheduledExecutorService scheduler;
+
+	@Autowired
+	public void setBoardDao(BoardDao boardDao) {
+		this.boardDao = boardDao;
+	}
+
+	@Autowired
+	public void setBoardDetailCache(BoardDetailCache boardDetailCache) {
+		this.boardDetailCache = boardDetailCache;
+	}
+
+	public void setFlushInterval(long flushInterval) {
+		this.flushInterval = flushInterval;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "read-count-flush");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					flush();
+				} catch(RuntimeException e) {
+					logger.error("게시 글 읽은 횟수 반영 실패", e);
+				}
+			}
+		}, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+	}
+
+	// 애플리케이션이 종료되면 남아 있는 증가분을 모두 DB에 반영한다.
+	@Override
+	public void destroy() throws InterruptedException {
+		scheduler.shutdown();
+		scheduler.awaitTermination(flushInterval, TimeUnit.MILLISECONDS);
+		
+		// 맵을 바꾼 후에 늦게 더해진 증가분까지 반영하기 위해 두 번 호출한다.
+		try {
+			flush();
+			flush();
+		} catch(RuntimeException e) {
+			logger.error("종료 전에 게시 글 읽은 횟수를 반영하지 못했습니다.", e);
+		}
+	}
+
+	// 게시 글 읽은 횟수를 1 증가시키는 메서드
+	public void increment(int no) {
+
+		ConcurrentHashMap<Integer, LongAdder> counters = current.get();
+		LongAdder counter = counters.get(no);
+		if(counter == null) {
+			LongAdder newCounter = new LongAdder();
+			counter = counters.putIfAbsent(no, newCounter);
+			if(counter == null) {
+				counter = newCounter;
+			}
+		}
+		counter.increment();
+	}
+
+	/* 아직 DB에 반영되지 않은 게시 글 읽은 횟수의 증가분을 반환 하는 메서드
+	 * DB에서 읽어온 readCount에 더해서 화면에 보여준다.
+	 **/
+	public int pending(int no) {
+
+		long sum = 0;
+		LongAdder counter = current.get().get(no);
+		if(counter != null) {
+			sum += counter.sum();
+		}
+		List<Flushed> list = flushed.get(no);
+		if(list != null) {
+			for(Flushed old : list) {
+				sum += old.counter.sum() - old.sum;
+			}
+		}
+		return (int) sum;
+	}
+
+	/* 모아 둔 증가분을 DB에 반영하는 메서드
+	 * 반영에 실패하면 증가분을 다시 모으던 맵에 더해 다음 주기에 반영한다.
+	 **/
+	public synchronized void flush() {
+
+		ConcurrentHashMap<Integer, LongAdder> counters =
+				current.getAndSet(new ConcurrentHashMap<Integer, LongAdder>());
+
+		// 게시 글 번호 순으로 반영해야 다른 서버와 락을 잡는 순서가 같아진다.
+		Map<Integer, Integer> deltas = new TreeMap<Integer, Integer>();
+
+		/* 반영한 후에 보관할 LongAdder와 반영하지 못했을 때 보관할 LongAdder
+		 * 이전 주기의 LongAdder는 늦게 더해진 증가분을 반영하면 더 보관하지 않는다.
+		 **/
+		Map<Integer, List<Flushed>> next = new HashMap<Integer, List<Flushed>>();
+		Map<Integer, List<Flushed>> kept = new HashMap<Integer, List<Flushed>>();
+
+		// 이전 주기에 반영한 후에 늦게 더해진 증가분
+		for(Map.Entry<Integer, List<Flushed>> entry : flushed.entrySet()) {
+			next.put(entry.getKey(), new ArrayList<Flushed>());
+			for(Flushed old : entry.getValue()) {
+				long sum = old.counter.sum();
+				addDelta(deltas, old.no, sum - old.sum);
+				add(kept, new Flushed(old.no, old.counter, sum));
+			}
+		}
+
+		for(Map.Entry<Integer, LongAdder> entry : counters.entrySet()) {
+			int no = entry.getKey();
+			long sum = entry.getValue().sum();
+			addDelta(deltas, no, sum);
+			add(next, new Flushed(no, entry.getValue(), sum));
+			add(kept, new Flushed(no, entry.getValue(), sum));
+
+			// 반영이 끝날 때까지 pending()이 이 LongAdder의 값을 모두 더한다.
+			List<Flushed> list = new ArrayList<Flushed>();
+			if(flushed.containsKey(no)) {
+				list.addAll(flushed.get(no));
+			}
+			list.add(new Flushed(no, entry.getValue(), 0));
+			flushed.put(no, list);
+		}
+
+		int count = deltas.size();
+		try {
+			updateReadCounts(deltas, next);
+		} catch(RuntimeException e) {
+			/* 반영하지 못한 증가분은 모으던 맵으로 옮기므로 그 LongAdder는
+			 * 옮긴 값까지 반영된 것으로 보관한다. 반영하지 못한 LongAdder도
+			 * 늦게 더해지는 값이 있을 수 있으므로 이전 주기의 LongAdder도 보관한다.
+			 **/
+			for(Integer no : next.keySet()) {
+				retire(no, deltas.containsKey(no) ? kept.get(no) : next.get(no));
+			}
+			ConcurrentHashMap<Integer, LongAdder> target = current.get();
+			for(Map.Entry<Integer, Integer> entry : deltas.entrySet()) {
+				LongAdder counter = new LongAdder();
+				counter.add(entry.getValue());
+				LongAdder old = target.putIfAbsent(entry.getKey(), counter);
+				if(old != null) {
+					old.add(entry.getValue());
+				}
+			}
+			throw e;
+		}
+
+		// 증가분이 없어서 반영하지 않은 게시 글의 LongAdder도 바꾼다.
+		for(Integer no : next.keySet()) {
+			retire(no, next.get(no));
+		}
+
+		if(count > 0) {
+			logger.debug("게시 글 읽은 횟수 반영 - 게시 글 : {}", count);
+		}
+	}
+
+	private void addDelta(Map<Integer, Integer> deltas, int no, long delta) {
+		if(delta > 0) {
+			Integer old = deltas.get(no);
+			deltas.put(no, (int) delta + (old == null ? 0 : old));
+		}
+	}
+
+	private void add(Map<Integer, List<Flushed>> map, Flushed flushed) {
+		List<Flushed> list = map.get(flushed.no);
+		if(list == null) {
+			list = new ArrayList<Flushed>();
+			map.put(flushed.no, list);
+		}
+		list.add(flushed);
+	}
+
+	// 게시 글 번호에 해당하는 보관할 LongAdder를 list로 바꾸는 메서드
+	private void retire(int no, List<Flushed> list) {
+		if(list == null || list.isEmpty()) {
+			flushed.remove(no);
+		} else {
+			flushed.put(no, list);
+		}
+	}
+
+	/* 증가분을 BATCH_SIZE 개씩 나눠 DB에 반영하는 메서드
+	 * 반영에 성공한 게시 글은 deltas에서 제거해 실패했을 때 남은 증가분만
+	 * 다시 모을 수 있도록 했다. 반영한 게시 글은 바로 next의 LongAdder로 바꿔서
+	 * pending()이 DB에 반영된 증가분을 다시 더하지 않도록 한다.
+	 **/
+	private void updateReadCounts(Map<Integer, Integer> deltas,
+			Map<Integer, List<Flushed>> next) {
+
+		while(! deltas.isEmpty()) {
+			Map<Integer, Integer> batch = new TreeMap<Integer, Integer>();
+			for(Map.Entry<Integer, Integer> entry : deltas.entrySet()) {
+				batch.put(entry.getKey(), entry.getValue());
+				if(batch.size() == BATCH_SIZE) {
+					break;
+				}
+			}
+			boardDao.addReadCounts(batch);
+			boardDetailCache.addReadCounts(batch);
+			for(Integer no : batch.keySet()) {
+				retire(no, next.get(no));
+			}
+			deltas.keySet().removeAll(batch.keySet());
+		}
+	}
+
+	// DB에 반영한 게시 글 번호와 LongAdder, 반영할 때의 값
+	private static class Flushed {
+
+		private final int no;
+		private final LongAdder counter;
+		private final long sum;
+
+		Flushed(int no, LongAdder counter, long sum) {
+			this.no = no;
+			this.counter = counter;
+			this.sum = sum;
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package com.springstudy.bbs.counter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.springstudy.bbs.dao.BoardDao;
+import com.springstudy.bbs.domain.Board;
+
+/* 게시 글의 추천/땡큐 수를 증가시키는 컴포넌트
+ *
+ * 추천/땡큐 수를 springbbs 테이블의 게시 글 행에서 바로 증가시키면 같은 게시 글을
+ * 추천하는 요청이 모두 하나의 행 락을 기다리게 된다. 그래서 게시 글 하나의
+ * 추천/땡큐 수를 springbbs_counter 테이블의 slots 개의 행으로 나누고 요청 마다
+ * 임의의 slot 행을 증가시킨 후에 모든 slot 행을 합산해서 반환한다.
+ * 증가와 합산은 springbbs_recommend 프로시저를 한 번 호출해 처리한다.
+ **/
+@Component
+public class RecommendCounter {
+
+	private BoardDao boardDao;
+
+	// 게시 글 하나의 추천/땡큐 수를 나눠서 저장할 행의 수
+	private int slots = 16;
+
+	@Autowired
+	public void setBoardDao(BoardDao boardDao) {
+		this.boardDao = boardDao;
+	}
+
+	public void setSlots(int slots) {
+		this.slots = slots;
+	}
+
+	/* recommend가 "recommend"면 추천 수를, "thank"면 땡큐 수를 1 증가시키고
+	 * 게시 글의 추천/땡큐 수를 Map에 담아 반환 하는 메서드
+	 * 게시 글이 존재하지 않으면 null을 반환한다.
+	 **/
+	public Map<String, Integer> increment(int no, String recommend) {
+
+		int slot = ThreadLocalRandom.current().nextInt(slots);
+		Board board = boardDao.recommend(no, recommend, slot);
+		if(board == null) {
+			return null;
+		}
+
+		Map<String, Integer> map = new HashMap<String, Integer>();
+		map.put("recommend", board.getRecommend());
+		map.put("thank", board.getThank());
+		return map;
+	}
+}
@@ -1,8 +1,11 @@
 package com.springstudy.bbs.dao;
 
 import java.util.List;
+import java.util.Map;
 
+import com.springstudy.bbs.domain.AttachmentBlob;
 import com.springstudy.bbs.domain.Board;
+import com.springstudy.bbs.domain.BoardSummary;
 import com.springstudy.bbs.domain.FileName;
 import com.springstudy.bbs.domain.Reply;
 
@@ -11,8 +14,21 @@ public interface BoardDao {
 	/* 한 페이지에 보여 질 게시 글 리스트와 검색 리스트 요청 시 호출되는 메소드
 	 * 현재 페이지에 해당하는 게시 글 리스트를 DB에서 읽어와 반환 하는 메소드
 	 **/
-	public abstract List<Board> boardList(
+	public abstract List<BoardSummary> boardList(
 			int startRow, int num, String type, String keyword);
+
+	/* keyset 페이징 - beforeNo 보다 작은 번호의 게시 글을 내림차순으로
+	 * skip 개를 건너뛰고 num 개 만큼 읽어와 반환 하는 메서드
+	 * beforeNo가 0 이하면 가장 최근 게시 글부터 읽는다.
+	 **/
+	public abstract List<BoardSummary> boardListBefore(int beforeNo,
+			int skip, int num, String type, String keyword);
+
+	/* keyset 페이징 - afterNo 보다 큰 번호의 게시 글을 afterNo에 가까운
+	 * 순서로 skip 개를 건너뛰고 num 개 만큼 읽어와 내림차순으로 반환 하는 메서드
+	 **/
+	public abstract List<BoardSummary> boardListAfter(int afterNo,
+			int skip, int num, String type, String keyword);
 	
 	/* 게시 글 상세보기 요청 시 호출되는 메서드
 	 * no에 해당하는 게시 글 을 DB에서 읽어와 Board 객체로 반환 하는 메서드 
@@ -20,6 +36,17 @@ public interface BoardDao {
 	 **/
 	public abstract Board getBoard(int no, boolean isCount);
 	
+	/* 게시 글 상세보기 요청 시 호출되는 메서드
+	 * no에 해당하는 게시 글과 댓글 리스트를 한 번의 쿼리로 읽어와 
+	 * 댓글 리스트가 replyList 프로퍼티에 담긴 Board 객체로 반환 하는 메서드
+	 **/
+	public abstract Board getBoardDetail(int no);
+	
+	/* 게시 글 번호별 읽은 횟수의 증가분을 하나의 UPDATE 쿼리로 반영하는 메서드
+	 * ReadCountBuffer가 모아 둔 증가분을 주기적으로 반영할 때 사용한다.
+	 **/
+	public abstract void addReadCounts(Map<Integer, Integer> deltas);
+	
 	/* 게시 글쓰기 요청 시 호출되는 메서드
 	 * 게시 글쓰기 요청 시 게시 글 내용을 Board 객체로 받아 DB에 추가하는 메서드 
 	 **/
@@ -38,23 +65,55 @@ public interface BoardDao {
 	public abstract void updateBoard(Board board);
 	
 	/* 게시 글 삭제 요청 시 호출되는 메서드 
-	 * no에 해당 하는 게시 글을 DB에서 삭제하는 메서드 
+	 * no에 해당 하는 게시 글을 DB에서 삭제하고 삭제된 게시 글의 수를 반환하는 메서드 
 	 **/
-	public abstract void deleteBoard(int no);
+	public abstract int deleteBoard(int no);
 	
 	/* 게시 글 수를 계산하기 위해 호출되는 메서드 - paging 처리에 사용
 	 * 게시 글 리스트와 검색 리스트에 대한 게시 글 수를 반환 하는 메서드
 	 **/
 	public abstract int getBoardCount(String type, String keyword);
 	
+	/* 검색 결과의 게시 글 수를 limit 개 까지만 세어 반환 하는 메서드
+	 * 반환 값이 limit과 같으면 실제 게시 글 수는 limit 이상이다.
+	 **/
+	public abstract int getBoardCountLimited(
+			String type, String keyword, int limit);
+	
 	// 다중 파일 정보를 files 테이블에 저장하는 메서드
 	public abstract void insertFiles(List<FileName> fileNames);
 	
+	/* 게시 글 번호에 해당하는 첨부 파일의 참조 이름을 모두 가져오는 메서드
+	 * 게시 글의 file1과 files 테이블의 file2를 합쳐서 반환한다.
+	 **/
+	public abstract List<String> fileReferences(int no);
+	
+	/* 해시에 해당하는 첨부 파일의 참조 수를 1 증가시키는 메서드
+	 * attachment_blob 테이블에 행이 없으면 참조 수 1로 추가한다.
+	 **/
+	public abstract void addBlobReference(AttachmentBlob blob);
+	
+	// 해시에 해당하는 첨부 파일의 참조 수를 1 감소시키는 메서드
+	public abstract void releaseBlobReference(String hash);
+	
+	/* 참조 수가 0 이하인 해시의 행을 삭제하고 삭제된 행의 수를 반환 하는 메서드
+	 * 1을 반환하면 트랜잭션이 커밋된 후에 업로드 폴더의 파일을 삭제해야 한다.
+	 **/
+	public abstract int deleteUnreferencedBlob(String hash);
+	
+	// 해시에 해당하는 첨부 파일의 참조 수를 가져오는 메서드 - 행이 없으면 0
+	public abstract int getBlobRefCount(String hash);
+	
 	// 게시 글 번호에 해당하는 댓글 리스트를 가져오는 메서드
 	public abstract List<Reply> replyList(int no);
 	
-	// 게시 글 번호에 해당하는 추천/땡큐를 업데이트 하는 메서드
-	public abstract void updateRecommend(int no, String recommend);
+	// 댓글 번호에 해당하는 댓글을 가져오는 메서드 - 댓글이 없으면 null
+	public abstract Reply getReply(int no);
+	
+	/* 게시 글 번호에 해당하는 추천/땡큐를 slot 행에서 증가시키고
+	 * 증가된 추천/땡큐 수의 합계를 가져오는 메서드
+	 **/
+	public abstract Board recommend(int no, String recommend, int slot);
 	
 	// 게시 글 번호에 해당하는 추천/땡큐 정보를 가져오는 메서드
 	public abstract Board getRecommend(int no);
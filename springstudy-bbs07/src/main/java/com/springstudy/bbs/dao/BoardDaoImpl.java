@@ -1,5 +1,6 @@
 package com.springstudy.bbs.dao;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -8,7 +9,9 @@ import org.mybatis.spring.SqlSessionTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import com.springstudy.bbs.domain.AttachmentBlob;
 import com.springstudy.bbs.domain.Board;
+import com.springstudy.bbs.domain.BoardSummary;
 import com.springstudy.bbs.domain.FileName;
 import com.springstudy.bbs.domain.Reply;
 
@@ -48,7 +51,7 @@ public class BoardDaoImpl implements BoardDao {
 	 * 현재 페이지에 해당하는 게시 글 리스트를 DB에서 읽어와 반환 하는 메소드
 	 **/
 	@Override
-	public List<Board> boardList(
+	public List<BoardSummary> boardList(
 			int startRow, int num, String type, String keyword) {
 		
 		// SQL 파라미터가 여러 개일 경우 Map을 이용하여 지정한다.
@@ -76,7 +79,7 @@ public class BoardDaoImpl implements BoardDao {
 		 * 선택된다. 그리고 MyBatis 내부에서 JDBC 코드로 변환되어 실행된다.
 		 * 
 		 * 매핑 구문에 resultType 속성에 Board를 지정했기 때문에 요청한 
-		 * 페이지에 해당하는 게시 글 리스트가 담긴 List<Board> 객체가 
+		 * 페이지에 해당하는 게시 글 리스트가 담긴 List<BoardSummary> 객체가 
 		 * 반환된다. Board 테이블에 게시 글 정보가 하나도 없으면 null이 반환 된다. 
 		 * 
 		 * 만약 SQL 파라미터를 지정해야 한다면 두 번째 인수에 필요한 파라미터를
@@ -85,6 +88,44 @@ public class BoardDaoImpl implements BoardDao {
 		 **/
 		return sqlSession.selectList(NAME_SPACE + ".boardList", params);
 	}
+
+	/* keyset 페이징 - beforeNo 보다 작은 번호의 게시 글을 내림차순으로
+	 * skip 개를 건너뛰고 num 개 만큼 읽어와 반환 하는 메서드
+	 **/
+	@Override
+	public List<BoardSummary> boardListBefore(int beforeNo,
+			int skip, int num, String type, String keyword) {
+		
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("beforeNo", beforeNo);
+		params.put("skip", skip);
+		params.put("num", num);
+		params.put("type", type);
+		params.put("keyword", keyword);
+
+		return sqlSession.selectList(NAME_SPACE + ".boardListBefore", params);
+	}
+
+	/* keyset 페이징 - afterNo 보다 큰 번호의 게시 글을 읽어와 반환 하는 메서드
+	 * 맵핑 구문은 afterNo에 가까운 순서(오름차순)로 읽어 오기 때문에
+	 * 게시 글 리스트와 같은 내림차순이 되도록 순서를 뒤집어 반환한다.
+	 **/
+	@Override
+	public List<BoardSummary> boardListAfter(int afterNo,
+			int skip, int num, String type, String keyword) {
+		
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("afterNo", afterNo);
+		params.put("skip", skip);
+		params.put("num", num);
+		params.put("type", type);
+		params.put("keyword", keyword);
+
+		List<BoardSummary> boardList =
+				sqlSession.selectList(NAME_SPACE + ".boardListAfter", params);
+		Collections.reverse(boardList);
+		return boardList;
+	}
 	
 	/* 게시 글 수를 계산하기 위해 호출되는 메서드 - paging 처리에 사용
 	 * 게시 글 리스트와 검색 리스트에 대한 게시 글 수를 반환 하는 메서드
@@ -100,6 +141,21 @@ public class BoardDaoImpl implements BoardDao {
 		return sqlSession.selectOne(NAME_SPACE + ".getBoardCount", params);
 	}
 	
+	/* 검색 결과의 게시 글 수를 limit 개 까지만 세어 반환 하는 메서드
+	 * 반환 값이 limit과 같으면 실제 게시 글 수는 limit 이상이다.
+	 **/
+	@Override
+	public int getBoardCountLimited(String type, String keyword, int limit) {
+		
+		Map<String, Object> params = new HashMap<String, Object>();		
+		params.put("type", type);
+		params.put("keyword", keyword);
+		params.put("limit", limit);
+		
+		return sqlSession.selectOne(
+				NAME_SPACE + ".getBoardCountLimited", params);
+	}
+	
 	/* 게시 글 상세보기 요청 시 호출되는 메서드
 	 * no에 해당하는 게시 글 을 DB에서 읽어와 Board 객체로 반환 하는 메서드 
  	 * isCount == true 면 게시 글 읽은 횟수를 1 증가시킨다.
@@ -115,6 +171,26 @@ public class BoardDaoImpl implements BoardDao {
 		// getBoard 맵핑 구문을 호출하면서 게시 글 번호인 no를 파라미터로 지정했다.		 
 		return sqlSession.selectOne(NAME_SPACE + ".getBoard", no);
 	}
+	
+	/* 게시 글 상세보기 요청 시 호출되는 메서드
+	 * no에 해당하는 게시 글과 댓글 리스트를 한 번의 쿼리로 읽어와 
+	 * 댓글 리스트가 replyList 프로퍼티에 담긴 Board 객체로 반환 하는 메서드
+	 **/
+	@Override
+	public Board getBoardDetail(int no) {
+		return sqlSession.selectOne(NAME_SPACE + ".getBoardDetail", no);
+	}
+	
+	/* 게시 글 번호별 읽은 횟수의 증가분을 하나의 UPDATE 쿼리로 반영하는 메서드
+	 * deltas의 키는 게시 글 번호, 값은 증가분이다.
+	 **/
+	@Override
+	public void addReadCounts(Map<Integer, Integer> deltas) {
+		
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("deltas", deltas);
+		sqlSession.update(NAME_SPACE + ".addReadCounts", params);
+	}
 
 	/* 게시 글쓰기 요청 시 호출되는 메서드
 	 * 게시 글쓰기 요청 시 게시 글 내용을 Board 객체로 받아 DB에 추가하는 메서드 
@@ -157,13 +233,19 @@ public class BoardDaoImpl implements BoardDao {
 	}
 
 	/* 게시 글 삭제 요청 시 호출되는 메서드 
-	 * no에 해당 하는 게시 글을 DB에서 삭제하는 메서드 
+	 * no에 해당 하는 게시 글을 DB에서 삭제하고 삭제된 게시 글의 수를 반환하는 메서드 
 	 **/
 	@Override
-	public void deleteBoard(int no) {
+	public int deleteBoard(int no) {
+		
+		// 게시 글의 추천/땡큐 slot 행을 먼저 삭제한다.
+		sqlSession.delete(NAME_SPACE + ".deleteCounters", no);
+		
+		// 게시 글의 다중 파일 정보도 먼저 삭제한다.
+		sqlSession.delete(NAME_SPACE + ".deleteFiles", no);
 		
 		// deleteBoard 맵핑 구문을 호출하면서 no를 파라미터로 지정했다.
-		sqlSession.delete(NAME_SPACE + ".deleteBoard", no);
+		return sqlSession.delete(NAME_SPACE + ".deleteBoard", no);
 	}
 	
 	// 다중 파일 정보를 files 테이블에 저장하는 메서드
@@ -174,19 +256,57 @@ public class BoardDaoImpl implements BoardDao {
 		sqlSession.insert(NAME_SPACE + ".insertFileNames", fileNames);
 	}
 	
+	// 게시 글 번호에 해당하는 첨부 파일의 참조 이름을 모두 가져오는 메서드
+	@Override
+	public List<String> fileReferences(int no) {
+		return sqlSession.selectList(NAME_SPACE + ".fileReferences", no);
+	}
+	
+	// 해시에 해당하는 첨부 파일의 참조 수를 1 증가시키는 메서드
+	@Override
+	public void addBlobReference(AttachmentBlob blob) {
+		sqlSession.insert(NAME_SPACE + ".addBlobReference", blob);
+	}
+	
+	// 해시에 해당하는 첨부 파일의 참조 수를 1 감소시키는 메서드
+	@Override
+	public void releaseBlobReference(String hash) {
+		sqlSession.update(NAME_SPACE + ".releaseBlobReference", hash);
+	}
+	
+	// 참조 수가 0 이하인 해시의 행을 삭제하고 삭제된 행의 수를 반환 하는 메서드
+	@Override
+	public int deleteUnreferencedBlob(String hash) {
+		return sqlSession.delete(NAME_SPACE + ".deleteUnreferencedBlob", hash);
+	}
+	
+	// 해시에 해당하는 첨부 파일의 참조 수를 가져오는 메서드
+	@Override
+	public int getBlobRefCount(String hash) {
+		return sqlSession.selectOne(NAME_SPACE + ".getBlobRefCount", hash);
+	}
+	
 	// 게시 글 번호에 해당하는 댓글 리스트를 가져오는 메서드
 	public List<Reply> replyList(int no) {
 		return sqlSession.selectList(NAME_SPACE + ".replyList", no);
 	}
 	
-	// 게시 글 번호에 해당하는 추천/땡큐를 업데이트 하는 메서드
-	public void updateRecommend(int no, String recommend) {
+	// 댓글 번호에 해당하는 댓글을 가져오는 메서드 - 댓글이 없으면 null
+	public Reply getReply(int no) {
+		return sqlSession.selectOne(NAME_SPACE + ".getReply", no);
+	}
+	
+	/* 게시 글 번호에 해당하는 추천/땡큐를 slot 행에서 증가시키고
+	 * 증가된 추천/땡큐 수의 합계를 가져오는 메서드
+	 **/
+	public Board recommend(int no, String recommend, int slot) {
 		
 		// 맵퍼로 보낼 파라미터가 하나 이상이라 Map에 담아 맵퍼로 보냈다.
 		Map<String, Object> params = new HashMap<String, Object>();
 		params.put("no", no);
 		params.put("recommend", recommend);
-		sqlSession.update(NAME_SPACE + ".updateRecommend", params);
+		params.put("slot", slot);
+		return sqlSession.selectOne(NAME_SPACE + ".recommend", params);
 	}
 	
 	// 게시 글 번호에 해당하는 추천/땡큐 정보를 가져오는 메서드
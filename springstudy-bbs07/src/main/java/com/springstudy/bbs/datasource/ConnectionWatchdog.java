@@ -0,0 +1,215 @@
+package com.springstudy.bbs.datasource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/* 커넥션과 트랜잭션을 오래 잡고 있는 코드를 찾아 로그로 남기는 감시자
+ *
+ * 트랜잭션 안에서 파일을 저장하는 것처럼 커넥션을 오래 잡고 있는 코드가
+ * 있으면 커넥션 풀이 금방 바닥나지만 풀이 바닥난 후에는 누가 커넥션을
+ * 잡고 있는지 알기 어렵다. MonitoredDataSource는 커넥션을 빌려 줄 때,
+ * WatchedTransactionManager는 트랜잭션을 시작할 때 이 클래스에 등록하고
+ * 반환하거나 트랜잭션이 끝나면 등록을 해제한다. 등록할 때는 그 시점의
+ * 스레드와 호출 스택을 Throwable로 함께 저장한다. Throwable의 호출 스택은
+ * 실제로 출력할 때 만들어지므로 등록하는 비용은 크지 않다.
+ *
+ * checkInterval 밀리초 마다 등록된 항목을 검사해 threshold 밀리초 보다 오래
+ * 잡고 있는 항목은 커넥션(트랜잭션)을 구한 위치의 호출 스택과 잡고 있는
+ * 스레드가 지금 실행 중인 위치를 경고 로그로 한 번 남기고, 나중에 반환되면
+ * 잡고 있던 시간을 로그로 남긴다. 지금 잡고 있는 항목은 getHolders()로
+ * 언제든지 조회할 수 있다.
+ **/
+public class ConnectionWatchdog implements InitializingBean, DisposableBean {
+
+	private static final Logger logger =
+			LoggerFactory.getLogger(ConnectionWatchdog.class);
+
+	// getHolders()에서 반환할 호출 스택의 최대 줄 수
+	private static final int MAX_FRAMES = 40;
+
+	public static final String CONNECTION = "connection";
+	public static final String TRANSACTION = "transaction";
+
+	// 커넥션을 이 시간(밀리초) 보다 오래 잡고 있으면 로그를 남긴다.
+	private long connectionThreshold = 5000;
+
+	// 트랜잭션이 이 시간(밀리초) 보다 오래 진행 중이면 로그를 남긴다.
+	private long transactionThreshold = 5000;
+
+	// 등록된 항목을 검사하는 주기(밀리초)
+	private long checkInterval = 1000;
+
+	private final ConcurrentHashMap<Object, Holder> holders =
+			new ConcurrentHashMap<Object, Holder>();
+
+	private ScheduledExecutorService scheduler;
+
+	public void setConnectionThreshold(long connectionThreshold) {
+		this.connectionThreshold = connectionThreshold;
+	}
+
+	public void setTransactionThreshold(long transactionThreshold) {
+		this.transactionThreshold = transactionThreshold;
+	}
+
+	public void setCheckInterval(long checkInterval) {
+		this.checkInterval = checkInterval;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "connection-watchdog");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					check();
+				} catch(RuntimeException e) {
+					logger.warn("커넥션 감시 실패", e);
+				}
+			}
+		}, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void destroy() {
+		scheduler.shutdownNow();
+	}
+
+	/* key로 구분되는 커넥션 또는 트랜잭션을 현재 스레드가 잡았음을 등록하는 메서드
+	 * kind는 CONNECTION 또는 TRANSACTION, name은 풀 이름이나 트랜잭션 이름이다.
+	 **/
+	public void acquired(Object key, String kind, String name) {
+		holders.put(key, new Holder(kind, name, Thread.currentThread()));
+	}
+
+	// key로 등록된 항목을 해제하고 경고 로그를 남겼던 항목이면 잡고 있던 시간을 남긴다.
+	public void released(Object key) {
+
+		Holder holder = holders.remove(key);
+		if(holder != null && holder.reported) {
+			logger.warn("오래 잡고 있던 {} 반환 - {} {}ms, 스레드 {}", new Object[] {
+					holder.kind, holder.name, holder.elapsed(), holder.threadName });
+		}
+	}
+
+	// 기준 시간을 넘긴 항목 중에서 아직 로그를 남기지 않은 항목의 로그를 남긴다.
+	void check() {
+
+		for(Holder holder : holders.values()) {
+			long threshold = CONNECTION.equals(holder.kind)
+					? connectionThreshold : transactionThreshold;
+			if(holder.reported || holder.elapsed() < threshold) {
+				continue;
+			}
+			holder.reported = true;
+
+			Throwable current = new Throwable(
+					"스레드 " + holder.threadName + "가 지금 실행 중인 위치");
+			current.setStackTrace(holder.thread.getStackTrace());
+			Throwable acquired = new Throwable(holder.kind + " - 잡은 위치", current);
+			acquired.setStackTrace(holder.frames());
+
+			logger.warn("{} {}ms 이상 사용 중 - {}, 스레드 {}", new Object[] {
+					holder.kind, holder.elapsed(), holder.name,
+					holder.threadName, acquired });
+		}
+	}
+
+	/* 지금 잡고 있는 커넥션과 트랜잭션을 오래된 순서로 반환 하는 메서드
+	 *
+	 * [ { "kind": "transaction", "name": "...BoardServiceImpl.insertBoard",
+	 *     "thread": "http-nio-8080-exec-3", "threadState": "RUNNABLE",
+	 *     "elapsed": 5230, "stack": [ "com.springstudy...", ... ] }, ... ]
+	 **/
+	public List<Map<String, Object>> getHolders() {
+
+		List<Holder> snapshot = new ArrayList<Holder>(holders.values());
+		Collections.sort(snapshot, new Comparator<Holder>() {
+			@Override
+			public int compare(Holder a, Holder b) {
+				return Long.compare(a.started, b.started);
+			}
+		});
+
+		List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+		for(Holder holder : snapshot) {
+			Map<String, Object> map = new LinkedHashMap<String, Object>();
+			map.put("kind", holder.kind);
+			map.put("name", holder.name);
+			map.put("thread", holder.threadName);
+			map.put("threadState", holder.thread.getState().name());
+			map.put("elapsed", holder.elapsed());
+
+			List<String> frames = new ArrayList<String>();
+			for(StackTraceElement frame : holder.frames()) {
+				if(frames.size() == MAX_FRAMES) {
+					break;
+				}
+				frames.add(frame.toString());
+			}
+			map.put("stack", frames);
+			result.add(map);
+		}
+		return result;
+	}
+
+	// 커넥션 또는 트랜잭션을 잡고 있는 스레드와 잡은 위치
+	private static class Holder {
+
+		final String kind;
+		final String name;
+		final Thread thread;
+		final String threadName;
+		final long started = System.nanoTime();
+		final Throwable stack = new Throwable();
+		volatile boolean reported;
+
+		Holder(String kind, String name, Thread thread) {
+			this.kind = kind;
+			this.name = name;
+			this.thread = thread;
+			this.threadName = thread.getName();
+		}
+
+		// 이 클래스와 MonitoredDataSource 등 감시 코드의 호출 스택을 제외한 호출 스택
+		StackTraceElement[] frames() {
+			StackTraceElement[] frames = stack.getStackTrace();
+			int start = 0;
+			while(start < frames.length - 1 && frames[start].getClassName()
+					.startsWith(ConnectionWatchdog.class.getPackage().getName())) {
+				start++;
+			}
+			return Arrays.copyOfRange(frames, start, frames.length);
+		}
+
+		long elapsed() {
+			return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+		}
+	}
+}
@@ -0,0 +1,300 @@
+package com.springstudy.bbs.datasource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import com.springstudy.bbs.support.LatencyHistogram;
+
+/* DBCP 커넥션 풀의 사용 현황을 기록하는 DataSource
+ *
+ * BasicDataSource를 감싸서 커넥션을 구할 때 기다린 시간과 커넥션을 구한 후
+ * close() 할 때 까지 사용한 시간을 LatencyHistogram에 기록한다. 또한 커넥션을
+ * 구한 코드의 위치(DataSource와 DAO를 제외한 첫 번째 프로젝트 클래스의
+ * 메서드)별로 횟수를 세서 어떤 기능이 커넥션을 많이 사용하는지 알 수 있도록
+ * 한다. 위치를 구하려면 호출 스택을 만들어야 하므로 trackSites로 끌 수 있다.
+ *
+ * PoolAutoSizer는 이 클래스가 기록한 대기 시간으로 풀의 크기를 조정한다.
+ * watchdog을 지정하면 빌려 준 커넥션을 반환할 때 까지 ConnectionWatchdog에
+ * 등록해 오래 잡고 있는 코드를 찾을 수 있도록 한다.
+ **/
+public class MonitoredDataSource extends DelegatingDataSource {
+
+	// 커넥션을 구한 위치로 기록할 패키지
+	private static final String PROJECT_PACKAGE = "com.springstudy.bbs.";
+
+	// 커넥션을 구한 위치로 기록하지 않을 패키지
+	private static final String[] SKIP_PACKAGES = {
+		"com.springstudy.bbs.datasource.", "com.springstudy.bbs.dao."
+	};
+
+	// 기록할 커넥션 사용 위치의 최대 수
+	private static final int MAX_SITES = 200;
+
+	private String name;
+
+	private boolean trackSites = true;
+
+	private ConnectionWatchdog watchdog;
+
+	private final LatencyHistogram waitTime = new LatencyHistogram();
+	private final LatencyHistogram holdTime = new LatencyHistogram();
+
+	// 커넥션을 기다리고 있는 스레드 수와 사용 중인 커넥션 수
+	private final AtomicInteger waiting = new AtomicInteger();
+	private final AtomicInteger active = new AtomicInteger();
+
+	// PoolAutoSizer가 마지막으로 읽은 이후에 동시에 사용한 최대 커넥션 수
+	private final AtomicInteger peakActive = new AtomicInteger();
+
+	private final AtomicLong failures = new AtomicLong();
+
+	private final ConcurrentHashMap<String, LongAdder> sites =
+			new ConcurrentHashMap<String, LongAdder>();
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setTrackSites(boolean trackSites) {
+		this.trackSites = trackSites;
+	}
+
+	public void setWatchdog(ConnectionWatchdog watchdog) {
+		this.watchdog = watchdog;
+	}
+
+	// 감싸고 있는 DBCP 커넥션 풀을 반환한다.
+	public BasicDataSource getPool() {
+		return (BasicDataSource) getTargetDataSource();
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		super.afterPropertiesSet();
+		if(! (getTargetDataSource() instanceof BasicDataSource)) {
+			throw new IllegalArgumentException(
+					"targetDataSource는 BasicDataSource 이어야 합니다.");
+		}
+		if(name == null) {
+			name = getPool().getUrl();
+		}
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return monitor(null, null);
+	}
+
+	@Override
+	public Connection getConnection(String username, String password)
+			throws SQLException {
+		return monitor(username, password);
+	}
+
+	// 풀에서 커넥션을 구하면서 기다린 시간을 기록하고 커넥션을 감싸서 반환한다.
+	private Connection monitor(String username, String password)
+			throws SQLException {
+
+		String site = trackSites ? currentSite() : null;
+
+		Connection connection;
+		long start = System.nanoTime();
+		waiting.incrementAndGet();
+		try {
+			connection = username == null
+					? getTargetDataSource().getConnection()
+					: getTargetDataSource().getConnection(username, password);
+		} catch(SQLException e) {
+			failures.incrementAndGet();
+			throw e;
+		} finally {
+			waiting.decrementAndGet();
+			waitTime.record(System.nanoTime() - start);
+		}
+
+		int current = active.incrementAndGet();
+		int peak;
+		while(current > (peak = peakActive.get())) {
+			if(peakActive.compareAndSet(peak, current)) {
+				break;
+			}
+		}
+
+		if(site != null) {
+			countSite(site);
+		}
+
+		MonitoredConnection handler = new MonitoredConnection(connection);
+		if(watchdog != null) {
+			watchdog.acquired(handler, ConnectionWatchdog.CONNECTION, name);
+		}
+		return (Connection) Proxy.newProxyInstance(
+				MonitoredDataSource.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, handler);
+	}
+
+	/* 호출 스택에서 커넥션을 구한 코드의 위치를 찾는 메서드
+	 * 서비스 클래스의 메서드가 있으면 그 메서드를, 없으면 DAO의 메서드를
+	 * "클래스이름.메서드이름:줄번호" 형식으로 반환한다.
+	 **/
+	static String currentSite() {
+
+		String fallback = null;
+		for(StackTraceElement frame : new Throwable().getStackTrace()) {
+			String className = frame.getClassName();
+			if(! className.startsWith(PROJECT_PACKAGE)
+					|| className.indexOf('$') >= 0) {
+				continue;
+			}
+			boolean skip = false;
+			for(String skipPackage : SKIP_PACKAGES) {
+				if(className.startsWith(skipPackage)) {
+					skip = true;
+					break;
+				}
+			}
+			String site = className.substring(className.lastIndexOf('.') + 1)
+					+ "." + frame.getMethodName() + ":" + frame.getLineNumber();
+			if(! skip) {
+				return site;
+			}
+			if(fallback == null && ! className.startsWith(SKIP_PACKAGES[0])) {
+				fallback = site;
+			}
+		}
+		return fallback != null ? fallback : "unknown";
+	}
+
+	private void countSite(String site) {
+		LongAdder count = sites.get(site);
+		if(count == null) {
+			if(sites.size() >= MAX_SITES) {
+				site = "others";
+			}
+			LongAdder created = new LongAdder();
+			count = sites.putIfAbsent(site, created);
+			if(count == null) {
+				count = created;
+			}
+		}
+		count.increment();
+	}
+
+	// PoolAutoSizer가 사용 - 대기 시간의 구간별 개수
+	long[] waitSnapshot() {
+		return waitTime.snapshot();
+	}
+
+	// PoolAutoSizer가 사용 - 지난 호출 이후의 최대 사용 커넥션 수를 반환하고 초기화한다.
+	int drainPeakActive() {
+		return peakActive.getAndSet(active.get());
+	}
+
+	/* 커넥션 풀의 통계를 반환 하는 메서드
+	 *
+	 * { "name": "primary", "maxTotal": 10, "maxIdle": 3, "active": 2,
+	 *   "idle": 3, "waiting": 0, "failures": 0,
+	 *   "waitTime": { "count": 1520, "p95": 0.004, ... },
+	 *   "holdTime": { "count": 1518, "p95": 4.096, ... },
+	 *   "sites": { "BoardServiceImpl.boardList:120": 812, ... } }
+	 **/
+	public Map<String, Object> getStats() {
+
+		BasicDataSource pool = getPool();
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		stats.put("name", name);
+		stats.put("maxTotal", pool.getMaxTotal());
+		stats.put("maxIdle", pool.getMaxIdle());
+		stats.put("active", pool.getNumActive());
+		stats.put("idle", pool.getNumIdle());
+		stats.put("waiting", waiting.get());
+		stats.put("failures", failures.get());
+		stats.put("waitTime", waitTime.toMap());
+		stats.put("holdTime", holdTime.toMap());
+
+		// 커넥션을 많이 구한 위치 부터 정렬한다.
+		List<Map.Entry<String, Long>> entries =
+				new ArrayList<Map.Entry<String, Long>>();
+		Map<String, Long> counts = new HashMap<String, Long>();
+		for(Map.Entry<String, LongAdder> entry : sites.entrySet()) {
+			counts.put(entry.getKey(), entry.getValue().sum());
+		}
+		entries.addAll(counts.entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+			@Override
+			public int compare(Map.Entry<String, Long> a,
+					Map.Entry<String, Long> b) {
+				return Long.compare(b.getValue(), a.getValue());
+			}
+		});
+		Map<String, Long> sorted = new LinkedHashMap<String, Long>();
+		for(Map.Entry<String, Long> entry : entries) {
+			sorted.put(entry.getKey(), entry.getValue());
+		}
+		stats.put("sites", sorted);
+		return stats;
+	}
+
+	/* 풀에서 구한 커넥션을 감싸는 InvocationHandler
+	 * close()가 처음 호출될 때 커넥션을 사용한 시간을 기록한다.
+	 **/
+	private class MonitoredConnection implements InvocationHandler {
+
+		private final Connection target;
+		private final long borrowed = System.nanoTime();
+		private final AtomicBoolean closed = new AtomicBoolean();
+
+		MonitoredConnection(Connection target) {
+			this.target = target;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args)
+				throws Throwable {
+
+			String methodName = method.getName();
+			if("equals".equals(methodName)) {
+				return proxy == args[0];
+			} else if("hashCode".equals(methodName)) {
+				return System.identityHashCode(proxy);
+			} else if("close".equals(methodName)) {
+				if(closed.compareAndSet(false, true)) {
+					active.decrementAndGet();
+					holdTime.record(System.nanoTime() - borrowed);
+					if(watchdog != null) {
+						watchdog.released(this);
+					}
+				}
+			}
+
+			try {
+				return method.invoke(target, args);
+			} catch(InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+		}
+	}
+}
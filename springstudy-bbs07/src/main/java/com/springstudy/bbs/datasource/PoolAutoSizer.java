@@ -0,0 +1,199 @@
+package com.springstudy.bbs.datasource;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import com.springstudy.bbs.support.LatencyHistogram;
+
+/* 커넥션을 기다린 시간을 보고 커넥션 풀의 크기를 조정하는 클래스
+ *
+ * interval 밀리초 마다 MonitoredDataSource가 기록한 대기 시간 중 지난 기간의
+ * 95 백분위수를 구한다.
+ *   - 대기 시간이 targetWait를 넘고 그 동안 풀의 커넥션을 모두 사용했다면
+ *     커넥션이 부족한 것이므로 maxTotal과 maxIdle을 step 만큼 늘린다.
+ *   - shrinkAfter 번 연속으로 대기 시간이 targetWait 이하이고 사용한 최대
+ *     커넥션 수가 maxTotal 보다 step 이상 적었다면 하나씩 줄인다.
+ * maxTotal과 maxIdle은 각각 지정한 하한과 상한을 벗어나지 않는다.
+ *
+ * 커넥션 수를 늘려도 DB가 처리할 수 있는 양은 늘지 않으므로 상한은 DB의
+ * max_connections와 서버 수를 고려해서 정해야 한다. enabled가 false면
+ * 아무것도 하지 않으며 기본값은 false 이다.
+ **/
+public class PoolAutoSizer implements InitializingBean, DisposableBean {
+
+	private static final Logger logger =
+			LoggerFactory.getLogger(PoolAutoSizer.class);
+
+	private List<MonitoredDataSource> dataSources;
+
+	private boolean enabled;
+
+	// 풀의 크기를 검사하는 주기(밀리초)
+	private long interval = 10000;
+
+	// 허용하는 커넥션 대기 시간의 95 백분위수(밀리초)
+	private long targetWait = 10;
+
+	// 한 번에 늘릴 커넥션 수
+	private int step = 2;
+
+	// 이 횟수 만큼 연속으로 여유가 있으면 하나씩 줄인다.
+	private int shrinkAfter = 6;
+
+	private int totalLowerBound = 5;
+	private int totalUpperBound = 30;
+	private int idleLowerBound = 2;
+	private int idleUpperBound = 10;
+
+	private final Map<MonitoredDataSource, long[]> lastWaits =
+			new HashMap<MonitoredDataSource, long[]>();
+	private final Map<MonitoredDataSource, Integer> quietWindows =
+			new HashMap<MonitoredDataSource, Integer>();
+
+	private ScheduledExecutorService scheduler;
+
+	public void setDataSources(List<MonitoredDataSource> dataSources) {
+		this.dataSources = dataSources;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public void setInterval(long interval) {
+		this.interval = interval;
+	}
+
+	public void setTargetWait(long targetWait) {
+		this.targetWait = targetWait;
+	}
+
+	public void setStep(int step) {
+		this.step = step;
+	}
+
+	public void setShrinkAfter(int shrinkAfter) {
+		this.shrinkAfter = shrinkAfter;
+	}
+
+	public void setTotalLowerBound(int totalLowerBound) {
+		this.totalLowerBound = totalLowerBound;
+	}
+
+	public void setTotalUpperBound(int totalUpperBound) {
+		this.totalUpperBound = totalUpperBound;
+	}
+
+	public void setIdleLowerBound(int idleLowerBound) {
+		this.idleLowerBound = idleLowerBound;
+	}
+
+	public void setIdleUpperBound(int idleUpperBound) {
+		this.idleUpperBound = idleUpperBound;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+
+		if(! enabled) {
+			return;
+		}
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "pool-auto-sizer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				for(MonitoredDataSource dataSource : dataSources) {
+					try {
+						adjust(dataSource);
+					} catch(RuntimeException e) {
+						logger.warn("커넥션 풀 크기 조정 실패 : "
+								+ dataSource.getName(), e);
+					}
+				}
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void destroy() {
+		if(scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	// 지난 기간의 대기 시간과 최대 사용 커넥션 수로 풀의 크기를 조정한다.
+	void adjust(MonitoredDataSource dataSource) {
+
+		long[] waits = dataSource.waitSnapshot();
+		long[] window = LatencyHistogram.since(waits, lastWaits.get(dataSource));
+		lastWaits.put(dataSource, waits);
+
+		long p95 = LatencyHistogram.percentile(window, 0.95);
+		int peak = dataSource.drainPeakActive();
+
+		BasicDataSource pool = dataSource.getPool();
+		int maxTotal = pool.getMaxTotal();
+		int maxIdle = pool.getMaxIdle();
+
+		if(p95 > targetWait * 1000 && peak >= maxTotal) {
+			quietWindows.put(dataSource, 0);
+			resize(dataSource, maxTotal + step, maxIdle + step, p95, peak);
+			return;
+		}
+
+		if(p95 <= targetWait * 1000 && peak + step <= maxTotal) {
+			Integer quiet = quietWindows.get(dataSource);
+			quiet = quiet == null ? 1 : quiet + 1;
+			if(quiet >= shrinkAfter) {
+				quiet = 0;
+				resize(dataSource, maxTotal - 1, maxIdle - 1, p95, peak);
+			}
+			quietWindows.put(dataSource, quiet);
+		} else {
+			quietWindows.put(dataSource, 0);
+		}
+	}
+
+	private void resize(MonitoredDataSource dataSource, int maxTotal,
+			int maxIdle, long p95, int peak) {
+
+		BasicDataSource pool = dataSource.getPool();
+		int oldTotal = pool.getMaxTotal();
+		int oldIdle = pool.getMaxIdle();
+
+		maxTotal = Math.max(totalLowerBound, Math.min(totalUpperBound, maxTotal));
+		maxIdle = Math.max(idleLowerBound, Math.min(idleUpperBound, maxIdle));
+		maxIdle = Math.min(maxIdle, maxTotal);
+		if(maxTotal == oldTotal && maxIdle == oldIdle) {
+			return;
+		}
+
+		pool.setMaxTotal(maxTotal);
+		pool.setMaxIdle(maxIdle);
+		logger.info("커넥션 풀 크기 조정 - {} maxTotal {} -> {}, maxIdle {} -> {}"
+				+ " (대기 p95 {}ms, 최대 사용 {})", new Object[] {
+				dataSource.getName(), oldTotal, maxTotal, oldIdle, maxIdle,
+				p95 / 1000.0, peak });
+	}
+}
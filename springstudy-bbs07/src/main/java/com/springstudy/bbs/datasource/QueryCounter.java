@@ -0,0 +1,85 @@
+package com.springstudy.bbs.datasource;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/* 요청 하나에서 실행한 SQL의 수와 시간을 세는 유틸리티 클래스
+ *
+ * QueryBudgetInterceptor가 요청을 처리하기 전에 begin()을 호출하면 그 요청이
+ * 끝나서 end()를 호출할 때 까지 QueryCounterPlugin이 현재 스레드에서 실행한
+ * SQL을 매핑 구문 id 별로 기록한다. begin()을 호출하지 않은 스레드(배치
+ * 스레드 등)에서 실행한 SQL은 기록하지 않는다.
+ **/
+public final class QueryCounter {
+
+	private static final ThreadLocal<Queries> current =
+			new ThreadLocal<Queries>();
+
+	private QueryCounter() {
+	}
+
+	// 현재 스레드에서 SQL을 세기 시작한다.
+	public static void begin() {
+		current.set(new Queries());
+	}
+
+	// 현재 스레드에서 SQL 세기를 멈추고 지금까지 센 결과를 반환한다.
+	public static Queries end() {
+		Queries queries = current.get();
+		current.remove();
+		return queries;
+	}
+
+	// 현재 스레드에서 세고 있는 결과를 반환하고 세고 있지 않으면 null을 반환한다.
+	public static Queries current() {
+		return current.get();
+	}
+
+	static void record(String id, long nanos) {
+		Queries queries = current.get();
+		if(queries != null) {
+			queries.add(id, nanos);
+		}
+	}
+
+	// 요청 하나에서 실행한 SQL의 수와 시간
+	public static class Queries {
+
+		private int count;
+		private long nanos;
+		private final Map<String, Integer> statements =
+				new LinkedHashMap<String, Integer>();
+
+		// 응답 헤더를 이미 추가했는지 여부
+		private boolean reported;
+
+		void add(String id, long elapsed) {
+			count++;
+			nanos += elapsed;
+			Integer executed = statements.get(id);
+			statements.put(id, executed == null ? 1 : executed + 1);
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		// SQL을 실행하는데 걸린 전체 시간(밀리초)
+		public double getMillis() {
+			return nanos / 1000000.0;
+		}
+
+		// 매핑 구문 id 별 실행 횟수 - 처음 실행한 순서
+		public Map<String, Integer> getStatements() {
+			return statements;
+		}
+
+		public boolean isReported() {
+			return reported;
+		}
+
+		public void setReported(boolean reported) {
+			this.reported = reported;
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package com.springstudy.bbs.datasource;
+
+import java.util.Properties;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+/* 현재 요청에서 실행한 SQL을 QueryCounter에 기록하는 MyBatis 플러그인
+ *
+ * QueryCounter.begin()을 호출한 스레드에서만 시간을 재므로 요청을 처리하지
+ * 않는 스레드에서는 ThreadLocal을 한 번 읽는 비용만 든다.
+ **/
+@Intercepts({
+	@Signature(type=Executor.class, method="query", args={MappedStatement.class,
+			Object.class, RowBounds.class, ResultHandler.class}),
+	@Signature(type=Executor.class, method="query", args={MappedStatement.class,
+			Object.class, RowBounds.class, ResultHandler.class, CacheKey.class,
+			BoundSql.class}),
+	@Signature(type=Executor.class, method="update", args={
+			MappedStatement.class, Object.class})
+})
+public class QueryCounterPlugin implements Interceptor {
+
+	@Override
+	public Object intercept(Invocation invocation) throws Throwable {
+
+		if(QueryCounter.current() == null) {
+			return invocation.proceed();
+		}
+
+		MappedStatement statement = (MappedStatement) invocation.getArgs()[0];
+		long start = System.nanoTime();
+		try {
+			return invocation.proceed();
+		} finally {
+			QueryCounter.record(statement.getId(), System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public Object plugin(Object target) {
+		return target instanceof Executor ? Plugin.wrap(target, this) : target;
+	}
+
+	@Override
+	public void setProperties(Properties properties) {
+	}
+}
@@ -0,0 +1,84 @@
+package com.springstudy.bbs.datasource;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+/* MyBatis가 실행하는 SQL이 조회인지 변경인지 ReplicaRouting에 알려주는 플러그인
+ *
+ * Executor의 query() 메서드가 실행되는 동안에는 현재 스레드에 조회 중이라는
+ * 표시를 남겨서 트랜잭션 밖의 조회 SQL이 복제 DB의 커넥션을 사용하도록 하고
+ * update() 메서드(INSERT, UPDATE, DELETE)가 실행되면 세션에 DB를 변경한
+ * 시간을 기록해 잠시 동안 그 사용자의 조회를 주 DB로 보내도록 한다.
+ *
+ * 추천/땡큐처럼 <select>로 정의했지만 DB를 변경하는 프로시저를 호출하는
+ * 매핑 구문(statementType="CALLABLE")은 query()로 실행되더라도 변경으로
+ * 처리해 주 DB로 보내고 세션에 변경 시간을 기록한다.
+ *
+ * 게시 글 읽은 횟수 증가처럼 사용자가 결과를 바로 확인할 필요가 없는 변경은
+ * ignoredStatements에 매핑 구문의 id를 지정해 세션에 기록하지 않도록 한다.
+ **/
+@Intercepts({
+	@Signature(type=Executor.class, method="query", args={MappedStatement.class,
+			Object.class, RowBounds.class, ResultHandler.class}),
+	@Signature(type=Executor.class, method="query", args={MappedStatement.class,
+			Object.class, RowBounds.class, ResultHandler.class, CacheKey.class,
+			BoundSql.class}),
+	@Signature(type=Executor.class, method="queryCursor", args={
+			MappedStatement.class, Object.class, RowBounds.class}),
+	@Signature(type=Executor.class, method="update", args={
+			MappedStatement.class, Object.class})
+})
+public class ReadWriteRoutingPlugin implements Interceptor {
+
+	// 실행해도 세션에 변경 시간을 기록하지 않을 매핑 구문의 id
+	private Set<String> ignoredStatements = Collections.emptySet();
+
+	public void setIgnoredStatements(Set<String> ignoredStatements) {
+		this.ignoredStatements = new HashSet<String>(ignoredStatements);
+	}
+
+	@Override
+	public Object intercept(Invocation invocation) throws Throwable {
+
+		MappedStatement statement = (MappedStatement) invocation.getArgs()[0];
+		if("update".equals(invocation.getMethod().getName())
+				|| statement.getStatementType() == StatementType.CALLABLE) {
+			Object result = invocation.proceed();
+			if(! ignoredStatements.contains(statement.getId())) {
+				ReplicaRouting.markWritten();
+			}
+			return result;
+		}
+
+		Boolean previous = ReplicaRouting.beginRead();
+		try {
+			return invocation.proceed();
+		} finally {
+			ReplicaRouting.endRead(previous);
+		}
+	}
+
+	@Override
+	public Object plugin(Object target) {
+		return target instanceof Executor ? Plugin.wrap(target, this) : target;
+	}
+
+	@Override
+	public void setProperties(Properties properties) {
+	}
+}
@@ -0,0 +1,115 @@
+package com.springstudy.bbs.datasource;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/* 현재 스레드의 DB 작업을 어느 DB로 보낼지 판단하는데 필요한 정보를 다루는
+ * 유틸리티 클래스
+ *
+ * 트랜잭션 밖에서 실행되는 SQL은 커넥션을 구할 때 조회인지 변경인지 알 수
+ * 없으므로 ReadWriteRoutingPlugin이 조회 SQL을 실행하는 동안 현재 스레드에
+ * 조회 중이라는 표시를 남긴다.
+ *
+ * 복제 DB는 주 DB의 변경을 조금 늦게 반영하므로 글을 쓴 사용자가 바로 목록을
+ * 보면 방금 쓴 글이 보이지 않을 수 있다. 이를 막기 위해 변경 SQL을 실행하면
+ * 세션에 마지막으로 변경한 시간을 기록하고 ReplicaRoutingDataSource는 이
+ * 시간으로 부터 일정 시간 동안 그 사용자의 조회도 주 DB로 보낸다.
+ * 세션은 스프링의 RequestContextHolder로 구하므로 요청을 처리하는 스레드가
+ * 아닌 곳(배치 스레드 등)에서는 기록하지 않는다.
+ *
+ * 세션과 관계없이 항상 최신 값을 읽어야 하는 조회(여러 사용자가 공유하는
+ * 캐시를 채우거나 파일을 삭제하기 전에 참조 수를 확인하는 조회 등)는
+ * beginPrimary()와 endPrimary() 사이에서 실행해 주 DB로 보낸다.
+ **/
+public final class ReplicaRouting {
+
+	// 마지막으로 DB를 변경한 시간(밀리초)을 저장할 세션 속성 이름
+	public static final String LAST_WRITE =
+			ReplicaRouting.class.getName() + ".LAST_WRITE";
+
+	// 현재 스레드가 조회 SQL을 실행하는 중인지 여부
+	private static final ThreadLocal<Boolean> reading =
+			new ThreadLocal<Boolean>();
+
+	// 현재 스레드의 조회를 주 DB로 보내야 하는지 여부
+	private static final ThreadLocal<Boolean> primary =
+			new ThreadLocal<Boolean>();
+
+	private ReplicaRouting() {
+	}
+
+	// 조회 SQL을 실행하기 전에 호출하고 이전 값을 반환한다.
+	static Boolean beginRead() {
+		Boolean previous = reading.get();
+		reading.set(Boolean.TRUE);
+		return previous;
+	}
+
+	// 조회 SQL을 실행한 후에 beginRead()가 반환한 값으로 되돌린다.
+	static void endRead(Boolean previous) {
+		if(previous == null) {
+			reading.remove();
+		} else {
+			reading.set(previous);
+		}
+	}
+
+	public static boolean isReading() {
+		return reading.get() != null;
+	}
+
+	/* 현재 스레드의 조회를 주 DB로 보내기 시작하고 이전 값을 반환 하는 메서드
+	 * 반드시 finally 블록에서 endPrimary()에 반환 값을 지정해 호출해야 한다.
+	 **/
+	public static Boolean beginPrimary() {
+		Boolean previous = primary.get();
+		primary.set(Boolean.TRUE);
+		return previous;
+	}
+
+	// beginPrimary()가 반환한 값으로 되돌린다.
+	public static void endPrimary(Boolean previous) {
+		if(previous == null) {
+			primary.remove();
+		} else {
+			primary.set(previous);
+		}
+	}
+
+	public static boolean isPrimaryRequired() {
+		return primary.get() != null;
+	}
+
+	// 현재 요청의 세션에 DB를 변경한 시간을 기록한다.
+	public static void markWritten() {
+
+		RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+		if(attributes == null) {
+			return;
+		}
+		try {
+			attributes.setAttribute(LAST_WRITE, System.currentTimeMillis(),
+					RequestAttributes.SCOPE_SESSION);
+		} catch(IllegalStateException e) {
+			// 응답이 이미 커밋되어 세션을 만들 수 없거나 요청이 끝난 경우다.
+		}
+	}
+
+	/* 현재 요청의 세션에서 마지막으로 DB를 변경한 시간을 반환 하는 메서드
+	 * 세션이 없거나 변경한 적이 없으면 0을 반환한다.
+	 **/
+	public static long lastWritten() {
+
+		RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+		if(attributes == null) {
+			return 0;
+		}
+		try {
+			Object lastWrite = attributes.getAttribute(
+					LAST_WRITE, RequestAttributes.SCOPE_SESSION);
+			return lastWrite instanceof Long ? (Long) lastWrite : 0;
+		} catch(IllegalStateException e) {
+			return 0;
+		}
+	}
+}
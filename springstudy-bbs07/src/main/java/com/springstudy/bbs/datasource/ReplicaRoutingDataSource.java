@@ -0,0 +1,112 @@
+package com.springstudy.bbs.datasource;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/* 조회는 복제(replica) DB로, 나머지는 주(primary) DB로 보내는 DataSource
+ *
+ * 커넥션을 구할 때 마다 determineCurrentLookupKey()로 어느 DB의 커넥션 풀을
+ * 사용할지 결정한다.
+ *   - 읽기 전용 트랜잭션(@Transactional(readOnly=true))은 복제 DB
+ *   - 읽기 전용이 아닌 트랜잭션은 주 DB
+ *   - 트랜잭션 밖에서 실행하는 조회 SQL은 복제 DB
+ *   - 그 외에는 모두 주 DB
+ * 단, 현재 세션이 stickyWindow 밀리초 안에 DB를 변경했다면 자신이 쓴 글을
+ * 바로 볼 수 있도록 조회도 주 DB로 보내고 ReplicaRouting.beginPrimary()로
+ * 주 DB를 지정한 조회도 주 DB로 보낸다.
+ *
+ * 트랜잭션 매니저는 트랜잭션을 시작할 때 readOnly 속성을 현재 스레드에
+ * 설정하기 전에 커넥션을 먼저 구하므로 이 DataSource는 반드시
+ * LazyConnectionDataSourceProxy로 감싸서 첫 번째 SQL을 실행할 때 실제
+ * 커넥션을 구하도록 해야 한다. 트랜잭션 밖의 조회 SQL도 이 프록시 덕분에
+ * ReadWriteRoutingPlugin이 조회 표시를 남긴 후에 커넥션을 구하게 된다.
+ *
+ * replica를 지정하지 않으면 모든 커넥션을 주 DB에서 구한다.
+ **/
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+	static final String PRIMARY = "primary";
+	static final String REPLICA = "replica";
+
+	private DataSource primary;
+	private DataSource replica;
+
+	// 세션이 DB를 변경한 후 조회를 주 DB로 보낼 시간(밀리초)
+	private long stickyWindow = 5000;
+
+	private final AtomicLong primaryConnections = new AtomicLong();
+	private final AtomicLong replicaConnections = new AtomicLong();
+	private final AtomicLong stickyReads = new AtomicLong();
+
+	public void setPrimary(DataSource primary) {
+		this.primary = primary;
+	}
+
+	public void setReplica(DataSource replica) {
+		this.replica = replica;
+	}
+
+	public void setStickyWindow(long stickyWindow) {
+		this.stickyWindow = stickyWindow;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+
+		if(primary == null) {
+			throw new IllegalArgumentException("primary DataSource는 필수 입니다.");
+		}
+
+		Map<Object, Object> targets = new HashMap<Object, Object>();
+		targets.put(PRIMARY, primary);
+		targets.put(REPLICA, replica != null ? replica : primary);
+		setTargetDataSources(targets);
+		setDefaultTargetDataSource(primary);
+		super.afterPropertiesSet();
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+
+		boolean read;
+		if(TransactionSynchronizationManager.isActualTransactionActive()) {
+			read = TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+		} else {
+			read = ReplicaRouting.isReading();
+		}
+
+		if(read && replica != null && ! ReplicaRouting.isPrimaryRequired()) {
+			long lastWrite = ReplicaRouting.lastWritten();
+			if(lastWrite == 0
+					|| System.currentTimeMillis() - lastWrite >= stickyWindow) {
+				replicaConnections.incrementAndGet();
+				return REPLICA;
+			}
+			stickyReads.incrementAndGet();
+		}
+		primaryConnections.incrementAndGet();
+		return PRIMARY;
+	}
+
+	/* 어느 DB에서 커넥션을 구했는지 통계를 반환 하는 메서드
+	 *
+	 * { "replicaEnabled": true, "stickyWindow": 5000, "primary": 1024,
+	 *   "replica": 8120, "stickyReads": 35 }
+	 **/
+	public Map<String, Object> getStats() {
+
+		Map<String, Object> stats = new HashMap<String, Object>();
+		stats.put("replicaEnabled", replica != null);
+		stats.put("stickyWindow", stickyWindow);
+		stats.put("primary", primaryConnections.get());
+		stats.put("replica", replicaConnections.get());
+		stats.put("stickyReads", stickyReads.get());
+		return stats;
+	}
+}
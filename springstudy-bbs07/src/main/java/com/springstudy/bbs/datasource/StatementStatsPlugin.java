@@ -0,0 +1,205 @@
+package com.springstudy.bbs.datasource;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.springstudy.bbs.support.LatencyHistogram;
+
+/* 매핑 구문 별로 실행 시간과 결과 행 수, 오류 수를 기록하는 MyBatis 플러그인
+ *
+ * log4jdbc는 모든 JDBC 호출을 감싸고 SQL 전체를 로그로 남기므로 운영 중에
+ * 계속 켜 두기에는 부담이 크다. 이 플러그인은 Executor의 query()와 update()
+ * 호출 시간만 재서 매핑 구문의 id 별로 LatencyHistogram에 기록하므로 항상
+ * 켜 두어도 SQL 하나에 System.nanoTime() 두 번과 카운터 몇 개를 증가시키는
+ * 정도의 비용만 든다. namespaces에 지정한 매퍼의 매핑 구문만 기록한다.
+ *
+ * 실행 시간이 slowThreshold 밀리초를 넘으면 느린 SQL로 로그를 남기는데 같은
+ * 매핑 구문이 계속 느릴 때 로그가 쏟아지지 않도록 매핑 구문 별로
+ * slowLogInterval 밀리초에 한 번만 남기고 그 사이에 생략한 횟수를 함께
+ * 남긴다. 파라미터 값에는 개인 정보가 들어 있을 수 있으므로 SQL만 남긴다.
+ **/
+@Intercepts({
+	@Signature(type=Executor.class, method="query", args={MappedStatement.class,
+			Object.class, RowBounds.class, ResultHandler.class}),
+	@Signature(type=Executor.class, method="query", args={MappedStatement.class,
+			Object.class, RowBounds.class, ResultHandler.class, CacheKey.class,
+			BoundSql.class}),
+	@Signature(type=Executor.class, method="update", args={
+			MappedStatement.class, Object.class})
+})
+public class StatementStatsPlugin implements Interceptor {
+
+	private static final Logger logger =
+			LoggerFactory.getLogger(StatementStatsPlugin.class);
+
+	// 기록할 매퍼의 namespace
+	private List<String> namespaces = Collections.emptyList();
+
+	// 이 시간(밀리초) 보다 오래 걸리면 느린 SQL로 로그를 남긴다.
+	private long slowThreshold = 200;
+
+	// 같은 매핑 구문의 느린 SQL 로그를 남기는 최소 간격(밀리초)
+	private long slowLogInterval = 10000;
+
+	private final ConcurrentHashMap<String, StatementStats> statements =
+			new ConcurrentHashMap<String, StatementStats>();
+
+	public void setNamespaces(List<String> namespaces) {
+		this.namespaces = namespaces;
+	}
+
+	public void setSlowThreshold(long slowThreshold) {
+		this.slowThreshold = slowThreshold;
+	}
+
+	public void setSlowLogInterval(long slowLogInterval) {
+		this.slowLogInterval = slowLogInterval;
+	}
+
+	@Override
+	public Object intercept(Invocation invocation) throws Throwable {
+
+		MappedStatement statement = (MappedStatement) invocation.getArgs()[0];
+		StatementStats stats = statsOf(statement.getId());
+		if(stats == null) {
+			return invocation.proceed();
+		}
+
+		long start = System.nanoTime();
+		Object result;
+		try {
+			result = invocation.proceed();
+		} catch(Throwable e) {
+			stats.errors.increment();
+			stats.time.record(System.nanoTime() - start);
+			throw e;
+		}
+		long elapsed = System.nanoTime() - start;
+		stats.time.record(elapsed);
+
+		long rows = 0;
+		if(result instanceof List) {
+			rows = ((List<?>) result).size();
+		} else if(result instanceof Integer) {
+
+			// 드라이버가 변경된 행 수를 알 수 없으면 음수를 반환한다.
+			rows = Math.max(0, (Integer) result);
+		}
+		stats.rows.add(rows);
+
+		if(TimeUnit.NANOSECONDS.toMillis(elapsed) >= slowThreshold) {
+			stats.slow.increment();
+			logSlow(statement, invocation.getArgs(), stats, elapsed, rows);
+		}
+		return result;
+	}
+
+	/* 매핑 구문 id에 해당하는 통계를 반환 하는 메서드
+	 * namespaces에 해당하지 않는 매핑 구문이면 null을 반환한다.
+	 **/
+	private StatementStats statsOf(String id) {
+
+		StatementStats stats = statements.get(id);
+		if(stats != null) {
+			return stats;
+		}
+
+		boolean matched = false;
+		for(String namespace : namespaces) {
+			if(id.startsWith(namespace + ".")) {
+				matched = true;
+				break;
+			}
+		}
+		if(! matched) {
+			return null;
+		}
+
+		StatementStats created = new StatementStats();
+		stats = statements.putIfAbsent(id, created);
+		return stats != null ? stats : created;
+	}
+
+	// slowLogInterval에 한 번만 느린 SQL의 로그를 남긴다.
+	private void logSlow(MappedStatement statement, Object[] args,
+			StatementStats stats, long elapsed, long rows) {
+
+		long now = System.currentTimeMillis();
+		long last = stats.lastSlowLog.get();
+		if(now - last < slowLogInterval
+				|| ! stats.lastSlowLog.compareAndSet(last, now)) {
+			stats.suppressed.incrementAndGet();
+			return;
+		}
+
+		BoundSql boundSql = args.length == 6 ? (BoundSql) args[5]
+				: statement.getBoundSql(args[1]);
+		logger.warn("느린 SQL {} - {}ms, {}행, 생략된 로그 {}건 : {}", new Object[] {
+				statement.getId(), TimeUnit.NANOSECONDS.toMillis(elapsed), rows,
+				stats.suppressed.getAndSet(0),
+				boundSql.getSql().replaceAll("\\s+", " ").trim() });
+	}
+
+	/* 매핑 구문 별 통계를 반환 하는 메서드 - 시간은 밀리초
+	 *
+	 * { "com.springstudy.bbs.mapper.BoardMapper.boardList": {
+	 *     "count": 1520, "errors": 0, "rows": 15200, "slow": 2,
+	 *     "time": { "count": 1520, "mean": 1.8, "p50": 1.024, ... } }, ... }
+	 **/
+	public Map<String, Object> getStats() {
+
+		Map<String, Object> result = new TreeMap<String, Object>();
+		for(Map.Entry<String, StatementStats> entry : statements.entrySet()) {
+			StatementStats stats = entry.getValue();
+			Map<String, Object> map = new TreeMap<String, Object>();
+			map.put("count", stats.time.count());
+			map.put("errors", stats.errors.sum());
+			map.put("rows", stats.rows.sum());
+			map.put("slow", stats.slow.sum());
+			map.put("time", stats.time.toMap());
+			result.put(entry.getKey(), map);
+		}
+		return result;
+	}
+
+	@Override
+	public Object plugin(Object target) {
+		return target instanceof Executor ? Plugin.wrap(target, this) : target;
+	}
+
+	@Override
+	public void setProperties(Properties properties) {
+	}
+
+	// 매핑 구문 하나의 통계
+	private static class StatementStats {
+
+		final LatencyHistogram time = new LatencyHistogram();
+		final LongAdder rows = new LongAdder();
+		final LongAdder errors = new LongAdder();
+		final LongAdder slow = new LongAdder();
+		final AtomicLong lastSlowLog = new AtomicLong();
+		final AtomicLong suppressed = new AtomicLong();
+	}
+}
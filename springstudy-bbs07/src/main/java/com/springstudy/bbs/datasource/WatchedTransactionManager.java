@@ -0,0 +1,42 @@
+package com.springstudy.bbs.datasource;
+
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+/* 진행 중인 트랜잭션을 ConnectionWatchdog에 등록하는 트랜잭션 매니저
+ *
+ * 트랜잭션을 시작할 때 트랜잭션 객체를 키로 등록하고 커밋이나 롤백이 끝나면
+ * 등록을 해제한다. REQUIRES_NEW로 기존 트랜잭션이 일시 중지된 경우에도
+ * 트랜잭션 객체가 다르므로 각각 따로 감시된다.
+ **/
+public class WatchedTransactionManager extends DataSourceTransactionManager {
+
+	private ConnectionWatchdog watchdog;
+
+	public void setWatchdog(ConnectionWatchdog watchdog) {
+		this.watchdog = watchdog;
+	}
+
+	@Override
+	protected void doBegin(Object transaction, TransactionDefinition definition) {
+		super.doBegin(transaction, definition);
+		if(watchdog != null) {
+
+			// @Transactional은 "클래스이름.메서드이름"을 트랜잭션 이름으로 지정한다.
+			String name = definition.getName() != null
+					? definition.getName() : "TransactionTemplate";
+			watchdog.acquired(transaction, ConnectionWatchdog.TRANSACTION, name);
+		}
+	}
+
+	@Override
+	protected void doCleanupAfterCompletion(Object transaction) {
+		try {
+			super.doCleanupAfterCompletion(transaction);
+		} finally {
+			if(watchdog != null) {
+				watchdog.released(transaction);
+			}
+		}
+	}
+}
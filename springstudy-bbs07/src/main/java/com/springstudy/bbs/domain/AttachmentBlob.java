@@ -0,0 +1,39 @@
+package com.springstudy.bbs.domain;
+
+/* 내용(SHA-256 해시)으로 저장되는 첨부 파일 하나의 정보를 저장하는 클래스
+ *
+ * 같은 내용의 파일은 여러 게시 글에 첨부되어도 업로드 폴더에 한 번만 저장되며
+ * attachment_blob 테이블의 ref_count에 이 파일을 참조하는 게시 글의
+ * file1과 files 테이블의 file2 수를 저장한다.
+ **/
+public class AttachmentBlob {
+
+	private String hash;
+	private long size;
+	private int refCount;
+
+	public AttachmentBlob() { }
+	public AttachmentBlob(String hash, long size) {
+		this.hash = hash;
+		this.size = size;
+	}
+
+	public String getHash() {
+		return hash;
+	}
+	public void setHash(String hash) {
+		this.hash = hash;
+	}
+	public long getSize() {
+		return size;
+	}
+	public void setSize(long size) {
+		this.size = size;
+	}
+	public int getRefCount() {
+		return refCount;
+	}
+	public void setRefCount(int refCount) {
+		this.refCount = refCount;
+	}
+}
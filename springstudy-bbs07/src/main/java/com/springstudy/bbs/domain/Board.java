@@ -1,6 +1,7 @@
 package com.springstudy.bbs.domain;
 
 import java.sql.Timestamp;
+import java.util.List;
 
 /* 하나의 게시 글 정보를 저장하는 클래스(Domain, VO, Beans, DTO)
  * 게시 글 정보를 저장하고 있는 테이블의 필드와 1:1 맵핑되는 Domain 클래스
@@ -18,6 +19,9 @@ public class Board {
 	private int recommend;
 	private int thank;
 	
+	// 게시 글 상세보기에서 한 번의 쿼리로 같이 읽어 오는 댓글 리스트
+	private List<Reply> replyList;
+	
 	public Board() { }
 	public Board(int no, String title, String content, String writer,
 			Timestamp regDate, int readCount, String pass, String file1) {
@@ -91,4 +95,10 @@ public class Board {
 	public void setThank(int thank) {
 		this.thank = thank;
 	}	
+	public List<Reply> getReplyList() {
+		return replyList;
+	}
+	public void setReplyList(List<Reply> replyList) {
+		this.replyList = replyList;
+	}
 }
@@ -0,0 +1,63 @@
+package com.springstudy.bbs.domain;
+
+import java.sql.Timestamp;
+
+import com.fasterxml.jackson.annotation.JsonView;
+
+/* 게시 글 리스트의 한 행을 저장하는 클래스(DTO)
+ *
+ * 게시 글 리스트는 번호, 제목, 작성자, 작성일, 조회수만 출력하기 때문에
+ * 게시 글 내용(content)과 비밀번호(pass)까지 담는 Board 대신 이 클래스로
+ * 읽어 온다. 읽어 오는 컬럼이 줄어드는 만큼 DB에서 전송되는 데이터와 
+ * 객체의 크기가 작아지고 JSON으로 응답할 때도 응답 크기가 작아진다.
+ **/
+public class BoardSummary {
+
+	@JsonView(Views.Summary.class)
+	private int no;
+	
+	@JsonView(Views.Summary.class)
+	private String title;
+	
+	@JsonView(Views.Summary.class)
+	private String writer;
+	
+	@JsonView(Views.Summary.class)
+	private Timestamp regDate;
+	
+	@JsonView(Views.Summary.class)
+	private int readCount;
+	
+	public BoardSummary() { }
+	
+	public int getNo() {
+		return no;
+	}
+	public void setNo(int no) {
+		this.no = no;
+	}
+	public String getTitle() {
+		return title;
+	}
+	public void setTitle(String title) {
+		this.title = title;
+	}
+	public String getWriter() {
+		return writer;
+	}
+	public void setWriter(String writer) {
+		this.writer = writer;
+	}
+	public Timestamp getRegDate() {
+		return regDate;
+	}
+	public void setRegDate(Timestamp regDate) {
+		this.regDate = regDate;
+	}
+	public int getReadCount() {
+		return readCount;
+	}
+	public void setReadCount(int readCount) {
+		this.readCount = readCount;
+	}
+}
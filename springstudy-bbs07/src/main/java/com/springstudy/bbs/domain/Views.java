@@ -0,0 +1,15 @@
+package com.springstudy.bbs.domain;
+
+/* Jackson의 @JsonView에 지정하는 뷰 클래스
+ *
+ * 같은 도메인 객체라도 응답에 따라 JSON으로 변환할 프로퍼티가 다르기 때문에
+ * 프로퍼티와 컨트롤러 메서드에 @JsonView로 아래의 뷰를 지정하면 컨트롤러
+ * 메서드에 지정한 뷰에 포함된 프로퍼티만 JSON으로 변환된다.
+ * <mvc:annotation-driven />이 등록하는 ObjectMapper는 뷰가 지정되지 않은
+ * 프로퍼티를 변환하지 않는다(DEFAULT_VIEW_INCLUSION = false).
+ **/
+public class Views {
+
+	// 게시 글 리스트에 출력하는 프로퍼티
+	public interface Summary { }
+}
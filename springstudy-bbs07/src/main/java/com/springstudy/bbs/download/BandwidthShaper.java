@@ -0,0 +1,253 @@
+package com.springstudy.bbs.download;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/* 다운로드 대역폭을 토큰 버킷으로 제한하는 컴포넌트
+ *
+ * 큰 첨부 파일을 받는 몇몇 클라이언트가 서버의 업링크를 모두 차지하면 일반
+ * 페이지 요청의 응답이 늦어진다. 이 컴포넌트는 전체 다운로드에 하나, 클라이언트
+ * (IP 주소) 마다 하나의 토큰 버킷을 두고 두 버킷에 모두 토큰이 있을 때만
+ * 그 만큼의 바이트를 보낼 수 있도록 한다. 버킷에는 초당 rate 바이트의 토큰이
+ * 채워지며 burst 초 동안 보낼 수 있는 만큼까지 모아 둘 수 있다.
+ *
+ * 토큰이 부족하면 ShapedDownload는 요청 처리 스레드를 재우지 않고 토큰이
+ * 채워질 시간에 이 컴포넌트의 스케줄러로 다시 실행되도록 예약한다.
+ * 한동안 다운로드가 없는 클라이언트의 버킷은 스케줄러가 주기적으로 제거한다.
+ *
+ * 버킷에 모아 둔 토큰으로 한 번에 보낼 수 있는 응답은 제한할 필요가 없으므로
+ * FileSender는 admit()이 true를 반환하면 ShapedDownload를 거치지 않고
+ * sendfile이나 매핑된 메모리로 바로 보낸다. 대역폭 제한은 버킷 크기보다 큰
+ * 응답이나 토큰이 부족한 클라이언트의 응답에만 적용된다.
+ *
+ * 이 컴포넌트는 root-context.xml에 Bean으로 정의하며 사용 여부와 속도는
+ * config/bbs.properties의 download.shaper.* 값으로 지정한다.
+ **/
+public class BandwidthShaper implements InitializingBean, DisposableBean {
+
+	// 토큰을 기다리는 최소 시간(나노초) - 너무 짧은 예약이 반복되지 않도록 한다.
+	private static final long MIN_DELAY = TimeUnit.MILLISECONDS.toNanos(5);
+
+	// 다운로드가 없는 클라이언트의 버킷을 제거하기까지의 시간(밀리초)
+	private static final long IDLE_TIMEOUT = 60000;
+
+	// 대역폭 제한 사용 여부 - false면 FileSender는 이전과 같이 바로 보낸다.
+	private boolean enabled = false;
+
+	// 전체 다운로드의 초당 최대 바이트 수
+	private long globalRate = 50L * 1024 * 1024;
+
+	// 클라이언트 하나의 초당 최대 바이트 수
+	private long clientRate = 2L * 1024 * 1024;
+
+	// 버킷에 모아 둘 수 있는 토큰의 양(초) - 짧은 다운로드는 제한 없이 보낸다.
+	private double burst = 1.0;
+
+	// 토큰을 기다리는 다운로드를 다시 실행할 스레드 수
+	private int threads = 2;
+
+	private TokenBucket global;
+
+	private final ConcurrentHashMap<String, TokenBucket> clients =
+			new ConcurrentHashMap<String, TokenBucket>();
+
+	private ScheduledExecutorService scheduler;
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public void setGlobalRate(long globalRate) {
+		this.globalRate = globalRate;
+	}
+
+	public void setClientRate(long clientRate) {
+		this.clientRate = clientRate;
+	}
+
+	public void setBurst(double burst) {
+		this.burst = burst;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+
+		global = new TokenBucket(globalRate, burst);
+
+		final AtomicInteger count = new AtomicInteger();
+		scheduler = new ScheduledThreadPoolExecutor(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable,
+						"download-shaper-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				removeIdleClients();
+			}
+		}, IDLE_TIMEOUT, IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void destroy() {
+		scheduler.shutdownNow();
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/* client에게 length 바이트의 응답을 제한 없이 바로 보낼 수 있는지 여부
+	 *
+	 * length가 클라이언트 버킷에 모아 둘 수 있는 토큰의 양 이하이고 전체 버킷과
+	 * 클라이언트 버킷에 모두 length 만큼의 토큰이 있으면 그 토큰을 가져가고
+	 * true를 반환한다. 그렇지 않으면 가져간 토큰을 돌려주고 false를 반환하며
+	 * 이때는 ShapedDownload로 보내야 한다.
+	 **/
+	public boolean admit(String client, long length) {
+
+		if(! enabled) {
+			return true;
+		}
+
+		TokenBucket bucket = bucketOf(client);
+		if(length > bucket.capacity) {
+			return false;
+		}
+
+		long granted = bucket.take(length);
+		if(granted < length) {
+			bucket.refund(granted);
+			return false;
+		}
+
+		long allowed = global.take(length);
+		if(allowed < length) {
+			global.refund(allowed);
+			bucket.refund(length);
+			return false;
+		}
+		return true;
+	}
+
+	/* client가 wanted 바이트까지 보낼 수 있도록 토큰을 가져가는 메서드
+	 * 지금 보낼 수 있는 바이트 수를 반환하며 0이면 delay() 만큼 기다려야 한다.
+	 **/
+	public long acquire(String client, long wanted) {
+
+		TokenBucket bucket = bucketOf(client);
+		long granted = bucket.take(wanted);
+		if(granted == 0) {
+			return 0;
+		}
+
+		// 전체 버킷에서 가져오지 못한 만큼은 클라이언트 버킷에 돌려준다.
+		long allowed = global.take(granted);
+		if(allowed < granted) {
+			bucket.refund(granted - allowed);
+		}
+		return allowed;
+	}
+
+	// client가 wanted 바이트를 보낼 수 있을 때 까지 기다려야 하는 시간(나노초)
+	public long delay(String client, long wanted) {
+		return Math.max(MIN_DELAY, Math.max(
+				bucketOf(client).nanosUntil(wanted), global.nanosUntil(wanted)));
+	}
+
+	// task를 delay 나노초 후에 스케줄러 스레드에서 실행하는 메서드
+	public void schedule(Runnable task, long delay) {
+		scheduler.schedule(task, delay, TimeUnit.NANOSECONDS);
+	}
+
+	private TokenBucket bucketOf(String client) {
+		TokenBucket bucket = clients.get(client);
+		if(bucket == null) {
+			TokenBucket created = new TokenBucket(clientRate, burst);
+			bucket = clients.putIfAbsent(client, created);
+			if(bucket == null) {
+				bucket = created;
+			}
+		}
+		return bucket;
+	}
+
+	private void removeIdleClients() {
+		long idleSince = System.nanoTime()
+				- TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT);
+		Iterator<Map.Entry<String, TokenBucket>> it =
+				clients.entrySet().iterator();
+		while(it.hasNext()) {
+			if(it.next().getValue().lastUsed() - idleSince < 0) {
+				it.remove();
+			}
+		}
+	}
+
+	/* 토큰 버킷 하나
+	 * 토큰은 가져갈 때 마지막으로 채운 시간부터 지난 시간 만큼 채운다.
+	 **/
+	private static class TokenBucket {
+
+		private final long rate;
+		private final long capacity;
+		private long tokens;
+		private long refilled;
+
+		TokenBucket(long rate, double burst) {
+			this.rate = rate;
+			this.capacity = Math.max(1, (long) (rate * burst));
+			this.tokens = capacity;
+			this.refilled = System.nanoTime();
+		}
+
+		synchronized long take(long wanted) {
+			refill();
+			long granted = Math.min(wanted, tokens);
+			tokens -= granted;
+			return granted;
+		}
+
+		synchronized void refund(long amount) {
+			tokens = Math.min(capacity, tokens + amount);
+		}
+
+		synchronized long nanosUntil(long wanted) {
+			refill();
+			long needed = Math.min(wanted, capacity) - tokens;
+			return needed <= 0 ? 0
+					: (long) (needed * 1000000000.0 / rate);
+		}
+
+		synchronized long lastUsed() {
+			return refilled;
+		}
+
+		private void refill() {
+			long now = System.nanoTime();
+			long added = (long) ((now - refilled) / 1000000000.0 * rate);
+			if(added > 0) {
+				tokens = Math.min(capacity, tokens + added);
+				refilled = now;
+			}
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package com.springstudy.bbs.download;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/* 요청을 보낸 클라이언트의 주소를 구하는 클래스
+ *
+ * 로드 밸런서나 리버스 프록시 뒤에서는 request.getRemoteAddr()가 프록시의
+ * 주소이므로 이 주소로 클라이언트를 구분하면 모든 사용자가 같은 클라이언트가
+ * 된다. 이 클래스는 요청을 보낸 주소(peer)가 trustedProxies에 지정한 프록시일
+ * 때만 X-Forwarded-For 헤더를 읽고 오른쪽(가장 가까운 프록시)부터 신뢰하는
+ * 프록시가 아닌 첫 번째 주소를 클라이언트 주소로 사용한다. X-Forwarded-For
+ * 헤더는 클라이언트가 마음대로 보낼 수 있으므로 신뢰하지 않는 주소에서 온
+ * 요청의 헤더는 사용하지 않는다.
+ *
+ * 톰캣의 RemoteIpValve가 X-Forwarded-For를 처리하도록 설정했다면
+ * getRemoteAddr()가 이미 클라이언트 주소이므로 trustedProxies는 비워 둔다.
+ * 신뢰하는 프록시가 없는데 X-Forwarded-For 헤더가 있는 요청이 오면 프록시 설정이
+ * 빠진 것일 수 있으므로 처음 한 번 경고 로그를 남긴다.
+ **/
+public class ClientAddressResolver {
+
+	private static final Logger logger =
+			LoggerFactory.getLogger(ClientAddressResolver.class);
+
+	private static final String FORWARDED_FOR = "X-Forwarded-For";
+
+	// X-Forwarded-For 헤더를 신뢰하는 프록시의 주소
+	private Set<String> trustedProxies = Collections.emptySet();
+
+	private volatile boolean warned;
+
+	// 신뢰하는 프록시의 주소를 콤마로 구분해 지정한다.
+	public void setTrustedProxies(String trustedProxies) {
+		Set<String> proxies = new HashSet<String>();
+		for(String proxy : trustedProxies.split(",")) {
+			if(! proxy.trim().isEmpty()) {
+				proxies.add(proxy.trim());
+			}
+		}
+		this.trustedProxies = proxies;
+	}
+
+	public String resolve(HttpServletRequest request) {
+
+		String address = request.getRemoteAddr();
+		List<String> forwarded = forwardedFor(request);
+		if(forwarded.isEmpty()) {
+			return address;
+		}
+
+		if(! trustedProxies.contains(address)) {
+			if(! warned) {
+				warned = true;
+				logger.warn(FORWARDED_FOR + " 헤더를 " + address
+						+ "에서 받았지만 신뢰하는 프록시가 아니므로 무시합니다. "
+						+ "프록시 뒤에서 실행한다면 download.trustedProxies를 "
+						+ "지정하거나 RemoteIpValve를 설정하세요.");
+			}
+			return address;
+		}
+
+		for(int i = forwarded.size() - 1; i >= 0; i--) {
+			address = forwarded.get(i);
+			if(! trustedProxies.contains(address)) {
+				break;
+			}
+		}
+		return address;
+	}
+
+	// 여러 개의 X-Forwarded-For 헤더를 순서대로 이어서 주소 목록을 만든다.
+	private List<String> forwardedFor(HttpServletRequest request) {
+		List<String> addresses = new ArrayList<String>();
+		Enumeration<String> headers = request.getHeaders(FORWARDED_FOR);
+		while(headers != null && headers.hasMoreElements()) {
+			for(String address : headers.nextElement().split(",")) {
+				if(! address.trim().isEmpty()) {
+					addresses.add(address.trim());
+				}
+			}
+		}
+		return addresses;
+	}
+}
@@ -0,0 +1,577 @@
+package com.springstudy.bbs.download;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.springstudy.bbs.download.HotFileCache.HotFile;
+import com.springstudy.bbs.storage.AttachmentStore;
+import com.springstudy.bbs.storage.StoredAttachment;
+
+/* 파일을 HTTP 응답으로 보내는 컴포넌트
+ *
+ * 이전의 다운로드는 FileInputStream으로 읽은 파일을 FileCopyUtils로 응답
+ * 스트림에 복사했고 Content-Length를 int로 변환해 2GB가 넘는 파일은 크기가
+ * 잘못 전송되었다. 또한 Range 요청을 지원하지 않아 다운로드가 중간에 끊기면
+ * 처음부터 다시 받아야 했고 캐시 관련 헤더도 없어 같은 파일을 매번 다시 받았다.
+ * 이 클래스는 아래와 같이 파일을 보낸다.
+ *
+ * 1. 조건부 요청 - ETag와 Last-Modified 헤더를 보내고 If-None-Match나
+ *    If-Modified-Since 헤더의 값이 파일과 같으면 304(Not Modified)로 응답한다.
+ * 2. Range 요청 - "bytes=0-99", "bytes=100-", "bytes=-100" 형식의 범위를
+ *    지원하며 범위가 하나면 206(Partial Content)으로 그 범위만 보내고 여러 개면
+ *    multipart/byteranges로 보낸다. If-Range 헤더가 파일과 다르면 전체를 보낸다.
+ *    범위가 파일 밖이면 416(Range Not Satisfiable)으로 응답한다. 겹치는 범위는
+ *    합쳐서 보내고 범위 크기의 합이 파일보다 크면 전체를 한 번만 보낸다.
+ * 3. 전송 - 톰캣이 sendfile을 지원하면 파일 이름과 범위를 요청 속성에 지정해
+ *    톰캣이 커널의 sendfile로 직접 보내도록 하고 그렇지 않으면
+ *    FileChannel.transferTo()로 응답 스트림에 보낸다. 모든 크기는 long으로
+ *    처리하므로 2GB가 넘는 파일도 그대로 보낼 수 있다.
+ *
+ * 자주 다운로드 되는 작은 파일은 HotFileCache가 메모리에 매핑해 두며 매핑된
+ * 파일은 파일을 열지 않고 매핑된 메모리에서 바로 보낸다.
+ *
+ * BandwidthShaper가 켜져 있고 컨테이너가 서블릿 3.1의 비동기 I/O를 지원하면
+ * 버킷에 모아 둔 토큰으로 바로 보낼 수 없는 본문만 ShapedDownload가 대역폭을
+ * 제한하면서 WriteListener로 보낸다. 이때는 sendfile을 사용하지 않는다.
+ * 토큰이 충분한 응답과 서블릿 3.0 컨테이너(톰캣 7)의 응답은 이전과 같이
+ * 요청 처리 스레드에서 바로 보낸다. 클라이언트 별 버킷은 ClientAddressResolver가
+ * 신뢰하는 프록시의 X-Forwarded-For 헤더로 구한 클라이언트 주소로 구분한다.
+ *
+ * 파일은 AttachmentStore에서 찾는다. 로컬 파일이 아닌 첨부 파일(S3)은
+ * 보낼 범위만 AttachmentStore.read()로 읽어서 응답 스트림에 복사한다.
+ **/
+@Component
+public class FileSender {
+
+	// 톰캣이 sendfile 지원 여부와 보낼 파일 정보를 주고 받는 요청 속성 이름
+	private static final String SENDFILE_SUPPORT =
+			"org.apache.tomcat.sendfile.support";
+	private static final String SENDFILE_FILENAME =
+			"org.apache.tomcat.sendfile.filename";
+	private static final String SENDFILE_START =
+			"org.apache.tomcat.sendfile.start";
+	private static final String SENDFILE_END =
+			"org.apache.tomcat.sendfile.end";
+
+	// 한 요청에 허용하는 최대 범위 수 - 넘으면 Range 헤더를 무시하고 전체를 보낸다.
+	private static final int MAX_RANGES = 16;
+
+	// transferTo()를 한 번 호출할 때 보낼 최대 바이트 수
+	private static final long TRANSFER_CHUNK = 8L * 1024 * 1024;
+
+	// 원격 저장소의 첨부 파일을 응답으로 복사할 때 사용할 버퍼 크기
+	private static final int COPY_BUFFER = 64 * 1024;
+
+	private static final String CRLF = "\r\n";
+
+	private String contentType = "application/download";
+
+	@Autowired
+	private AttachmentStore attachmentStore;
+
+	@Autowired
+	private HotFileCache hotFileCache;
+
+	public void setAttachmentStore(AttachmentStore attachmentStore) {
+		this.attachmentStore = attachmentStore;
+	}
+
+	public void setHotFileCache(HotFileCache hotFileCache) {
+		this.hotFileCache = hotFileCache;
+	}
+
+	@Autowired
+	private BandwidthShaper bandwidthShaper;
+
+	public void setBandwidthShaper(BandwidthShaper bandwidthShaper) {
+		this.bandwidthShaper = bandwidthShaper;
+	}
+
+	@Autowired
+	private ClientAddressResolver clientAddressResolver;
+
+	public void setClientAddressResolver(
+			ClientAddressResolver clientAddressResolver) {
+		this.clientAddressResolver = clientAddressResolver;
+	}
+
+	public void setContentType(String contentType) {
+		this.contentType = contentType;
+	}
+
+	/* AttachmentStore에서 key에 해당하는 첨부 파일을 응답으로 보내는 메서드
+	 *
+	 * etag는 파일 내용이 바뀌면 함께 바뀌는 값으로 파일 내용의 해시처럼
+	 * 내용으로 만든 값이 있으면 지정하고 null이면 파일 크기와 수정 시간으로 만든다.
+	 * 응답 헤더 중 Content-Disposition과 같이 파일마다 다른 헤더는 이 메서드를
+	 * 호출하기 전에 설정해야 한다.
+	 **/
+	public void send(HttpServletRequest request, HttpServletResponse response,
+			String key, String etag) throws IOException {
+
+		StoredAttachment attachment = attachmentStore.stat(key);
+		if(attachment == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		long length = attachment.getLength();
+
+		// HTTP 날짜는 초 단위이므로 밀리초는 버린다.
+		long lastModified = attachment.getLastModified() / 1000 * 1000;
+		String entityTag = "\"" + (etag != null ? etag
+				: Long.toHexString(length) + "-" + Long.toHexString(lastModified))
+				+ "\"";
+
+		response.setHeader("Accept-Ranges", "bytes");
+		response.setHeader("ETag", entityTag);
+		response.setDateHeader("Last-Modified", lastModified);
+
+		if(notModified(request, entityTag, lastModified)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+
+		List<long[]> ranges = null;
+		String range = request.getHeader("Range");
+		if(range != null && ifRange(request, entityTag, lastModified)) {
+			ranges = parseRanges(range, length);
+		}
+
+		// 범위가 모두 파일 밖이면 416으로 응답한다.
+		if(ranges != null && ranges.isEmpty()) {
+			response.setHeader("Content-Range", "bytes */" + length);
+			response.sendError(416);
+			return;
+		}
+
+		boolean head = "HEAD".equals(request.getMethod());
+
+		// 본문을 보내는 요청만 요청 수로 기록하고 매핑된 파일이 있으면 사용한다.
+		HotFile hot = head ? null : hotFileCache.lookup(key, attachment);
+		String client = clientAddressResolver.resolve(request);
+
+		// Range 요청이 아니거나 잘못된 Range 헤더는 파일 전체를 보낸다.
+		if(ranges == null) {
+			response.setContentType(contentType);
+			setContentLength(response, length);
+			if(head) {
+				return;
+			}
+			if(isShaped(request, client, length)) {
+				startShaped(request, key, hot, client,
+						Collections.singletonList(
+								new ShapedDownload.Segment(null, 0, length)));
+			} else {
+				transfer(request, response, key, attachment, hot, 0, length);
+			}
+			return;
+		}
+
+		response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+
+		if(ranges.size() == 1) {
+			long start = ranges.get(0)[0];
+			long end = ranges.get(0)[1];
+			response.setContentType(contentType);
+			response.setHeader("Content-Range",
+					"bytes " + start + "-" + end + "/" + length);
+			setContentLength(response, end - start + 1);
+			if(head) {
+				return;
+			}
+			if(isShaped(request, client, end - start + 1)) {
+				startShaped(request, key, hot, client,
+						Collections.singletonList(new ShapedDownload.Segment(
+								null, start, end - start + 1)));
+			} else {
+				transfer(request, response, key, attachment, hot,
+						start, end - start + 1);
+			}
+			return;
+		}
+
+		sendMultipart(request, response, key, attachment, hot, ranges,
+				head, client);
+	}
+
+	/* 여러 범위를 multipart/byteranges로 보내는 메서드
+	 * 본문의 크기를 미리 계산해 Content-Length를 지정한다.
+	 **/
+	private void sendMultipart(HttpServletRequest request,
+			HttpServletResponse response, String key,
+			StoredAttachment attachment, HotFile hot, List<long[]> ranges,
+			boolean head, String client) throws IOException {
+
+		long length = attachment.getLength();
+		String boundary = UUID.randomUUID().toString().replace("-", "");
+		List<byte[]> partHeaders = new ArrayList<byte[]>();
+		long contentLength = 0;
+		for(long[] range : ranges) {
+			byte[] header = (CRLF + "--" + boundary + CRLF
+					+ "Content-Type: " + contentType + CRLF
+					+ "Content-Range: bytes " + range[0] + "-" + range[1]
+					+ "/" + length + CRLF + CRLF)
+					.getBytes(StandardCharsets.ISO_8859_1);
+			partHeaders.add(header);
+			contentLength += header.length + range[1] - range[0] + 1;
+		}
+		byte[] closing = (CRLF + "--" + boundary + "--" + CRLF)
+				.getBytes(StandardCharsets.ISO_8859_1);
+		contentLength += closing.length;
+
+		response.setContentType("multipart/byteranges; boundary=" + boundary);
+		setContentLength(response, contentLength);
+		if(head) {
+			return;
+		}
+
+		if(isShaped(request, client, contentLength)) {
+			List<ShapedDownload.Segment> segments =
+					new ArrayList<ShapedDownload.Segment>();
+			for(int i = 0; i < ranges.size(); i++) {
+				long[] range = ranges.get(i);
+				segments.add(new ShapedDownload.Segment(partHeaders.get(i),
+						range[0], range[1] - range[0] + 1));
+			}
+			segments.add(new ShapedDownload.Segment(closing, 0, 0));
+			startShaped(request, key, hot, client, segments);
+			return;
+		}
+
+		OutputStream out = response.getOutputStream();
+		if(hot != null || attachment.getFile() == null) {
+			for(int i = 0; i < ranges.size(); i++) {
+				long[] range = ranges.get(i);
+				out.write(partHeaders.get(i));
+				if(hot != null) {
+					hot.writeTo(range[0], range[1] - range[0] + 1, out);
+				} else {
+					copy(key, range[0], range[1] - range[0] + 1, out);
+				}
+			}
+			out.write(closing);
+			out.flush();
+			return;
+		}
+
+		WritableByteChannel target = Channels.newChannel(out);
+		FileChannel source = FileChannel.open(
+				attachment.getFile().toPath(), StandardOpenOption.READ);
+		try {
+			for(int i = 0; i < ranges.size(); i++) {
+				long[] range = ranges.get(i);
+				out.write(partHeaders.get(i));
+				transferTo(source, range[0], range[1] - range[0] + 1, target);
+			}
+			out.write(closing);
+		} finally {
+			source.close();
+		}
+		out.flush();
+	}
+
+	/* length 바이트의 본문을 대역폭을 제한하면서 비동기 I/O로 보내야 하는지 여부
+	 *
+	 * 컨테이너가 서블릿 3.1 이상이고 이 요청이 비동기 처리를 지원해야 한다.
+	 * 버킷에 모아 둔 토큰으로 바로 보낼 수 있는 본문은 BandwidthShaper.admit()이
+	 * 그 토큰을 가져가고 이 메서드는 false를 반환하므로 sendfile이나 매핑된
+	 * 메모리로 바로 보낸다.
+	 **/
+	private boolean isShaped(HttpServletRequest request, String client,
+			long length) {
+		if(! bandwidthShaper.isEnabled() || ! request.isAsyncSupported()) {
+			return false;
+		}
+		ServletContext context = request.getServletContext();
+		if(context.getMajorVersion() < 3 || (context.getMajorVersion() == 3
+				&& context.getMinorVersion() < 1)) {
+			return false;
+		}
+		return ! bandwidthShaper.admit(client, length);
+	}
+
+	/* 요청을 비동기 모드로 바꾸고 ShapedDownload로 segments를 보내는 메서드
+	 * 이 메서드가 반환되면 요청 처리 스레드는 바로 컨테이너로 돌아간다.
+	 **/
+	private void startShaped(HttpServletRequest request, final String key,
+			final HotFile hot, String client,
+			List<ShapedDownload.Segment> segments) throws IOException {
+
+		ShapedDownload.Source source = new ShapedDownload.Source() {
+			@Override
+			public InputStream open(long position, long count)
+					throws IOException {
+				return hot != null ? hot.open(position, count)
+						: attachmentStore.read(key, position, count);
+			}
+		};
+		ShapedDownload.start(request.startAsync(), source, segments,
+				client, bandwidthShaper);
+	}
+
+	/* 첨부 파일의 position 부터 count 바이트를 응답으로 보내는 메서드
+	 *
+	 * 톰캣이 sendfile을 지원하면 요청 속성에 파일과 범위를 지정하고 바로
+	 * 반환한다. 톰캣은 컨트롤러가 반환된 후에 커널의 sendfile로 파일을 소켓에
+	 * 직접 보내므로 파일 데이터가 JVM 힙을 거치지 않는다.
+	 * 매핑된 파일은 매핑된 메모리에서 보내고 로컬 파일이 아니면
+	 * AttachmentStore에서 그 범위만 읽어서 보낸다.
+	 **/
+	private void transfer(HttpServletRequest request,
+			HttpServletResponse response, String key,
+			StoredAttachment attachment, HotFile hot, long position, long count)
+					throws IOException {
+
+		if(hot != null) {
+			OutputStream out = response.getOutputStream();
+			hot.writeTo(position, count, out);
+			out.flush();
+			return;
+		}
+
+		File file = attachment.getFile();
+		if(file == null) {
+			OutputStream out = response.getOutputStream();
+			copy(key, position, count, out);
+			out.flush();
+			return;
+		}
+
+		if(Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+			request.setAttribute(SENDFILE_FILENAME, file.getCanonicalPath());
+			request.setAttribute(SENDFILE_START, position);
+			request.setAttribute(SENDFILE_END, position + count);
+			return;
+		}
+
+		OutputStream out = response.getOutputStream();
+		FileChannel source = FileChannel.open(
+				file.toPath(), StandardOpenOption.READ);
+		try {
+			transferTo(source, position, count, Channels.newChannel(out));
+		} finally {
+			source.close();
+		}
+		out.flush();
+	}
+
+	// AttachmentStore에서 position 부터 count 바이트를 읽어 out에 쓰는 메서드
+	private void copy(String key, long position, long count, OutputStream out)
+			throws IOException {
+
+		InputStream in = attachmentStore.read(key, position, count);
+		try {
+			byte[] buffer = new byte[COPY_BUFFER];
+			long copied = 0;
+			int read;
+			while((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+				copied += read;
+			}
+			if(copied != count) {
+				throw new IOException("파일을 끝까지 보내지 못했습니다.");
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/* FileChannel.transferTo()로 position 부터 count 바이트를 target에 쓰는 메서드
+	 * transferTo()는 요청한 바이트보다 적게 보낼 수 있으므로 모두 보낼 때 까지 반복한다.
+	 **/
+	private static void transferTo(FileChannel source, long position,
+			long count, WritableByteChannel target) throws IOException {
+
+		long end = position + count;
+		while(position < end) {
+			long sent = source.transferTo(
+					position, Math.min(TRANSFER_CHUNK, end - position), target);
+			if(sent <= 0) {
+				throw new IOException("파일을 끝까지 보내지 못했습니다.");
+			}
+			position += sent;
+		}
+	}
+
+	/* If-None-Match와 If-Modified-Since 헤더로 클라이언트의 캐시가
+	 * 유효한지 확인하는 메서드 - If-None-Match가 있으면 If-Modified-Since는
+	 * 무시한다.
+	 **/
+	private static boolean notModified(HttpServletRequest request,
+			String entityTag, long lastModified) {
+
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if(ifNoneMatch != null) {
+			return matches(ifNoneMatch, entityTag);
+		}
+
+		long ifModifiedSince = dateHeader(request, "If-Modified-Since");
+		return ifModifiedSince != -1 && lastModified <= ifModifiedSince;
+	}
+
+	/* If-Range 헤더가 없거나 파일과 같으면 true를 반환 하는 메서드
+	 * false면 Range 헤더를 무시하고 파일 전체를 보낸다.
+	 **/
+	private static boolean ifRange(HttpServletRequest request,
+			String entityTag, long lastModified) {
+
+		String ifRange = request.getHeader("If-Range");
+		if(ifRange == null) {
+			return true;
+		}
+		if(ifRange.trim().startsWith("\"") || ifRange.trim().startsWith("W/")) {
+			return ifRange.trim().equals(entityTag);
+		}
+		return dateHeader(request, "If-Range") == lastModified;
+	}
+
+	// 쉼표로 구분된 ETag 목록에 entityTag가 있는지 확인하는 메서드
+	private static boolean matches(String header, String entityTag) {
+		for(String tag : header.split(",")) {
+			tag = tag.trim();
+			if(tag.startsWith("W/")) {
+				tag = tag.substring(2);
+			}
+			if(tag.equals("*") || tag.equals(entityTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// 날짜 헤더를 밀리초로 반환 하는 메서드 - 없거나 형식이 잘못되었으면 -1
+	private static long dateHeader(HttpServletRequest request, String name) {
+		try {
+			return request.getDateHeader(name);
+		} catch(IllegalArgumentException e) {
+			return -1;
+		}
+	}
+
+	/* Range 헤더를 [시작, 끝] 위치의 리스트로 반환 하는 메서드
+	 *
+	 * 형식이 잘못되었거나 범위가 너무 많으면 null을 반환해 파일 전체를 보내고
+	 * 올바른 형식이지만 파일 안에 있는 범위가 하나도 없으면 빈 리스트를 반환한다.
+	 * 겹치거나 이어진 범위는 시작 위치 순으로 정렬해 하나로 합친다. 합치기 전
+	 * 범위 크기의 합이 파일 크기보다 크면 같은 데이터를 여러 번 보내게 되므로
+	 * null을 반환해 파일 전체를 한 번만 보낸다.
+	 **/
+	static List<long[]> parseRanges(String header, long length) {
+
+		if(! header.startsWith("bytes=")) {
+			return null;
+		}
+
+		String[] specs = header.substring("bytes=".length()).split(",");
+		if(specs.length > MAX_RANGES) {
+			return null;
+		}
+
+		List<long[]> ranges = new ArrayList<long[]>();
+		long total = 0;
+		for(String spec : specs) {
+			spec = spec.trim();
+			int dash = spec.indexOf('-');
+			if(dash < 0) {
+				return null;
+			}
+
+			long start;
+			long end;
+			try {
+				if(dash == 0) {
+					// bytes=-100 : 마지막 100 바이트
+					long suffix = position(spec.substring(1));
+					start = Math.max(0, length - suffix);
+					end = length - 1;
+					if(suffix == 0) {
+						continue;
+					}
+				} else {
+					start = position(spec.substring(0, dash));
+					end = dash == spec.length() - 1 ? length - 1
+							: position(spec.substring(dash + 1));
+				}
+			} catch(NumberFormatException e) {
+				return null;
+			}
+
+			// 파일 밖에서 시작하는 범위는 제외하고 끝은 파일 크기에 맞춘다.
+			if(start >= length) {
+				continue;
+			}
+
+			if(end < start) {
+				return null;
+			}
+			end = Math.min(end, length - 1);
+			total += end - start + 1;
+			ranges.add(new long[] { start, end });
+		}
+
+		if(total > length) {
+			return null;
+		}
+
+		Collections.sort(ranges, new Comparator<long[]>() {
+			@Override
+			public int compare(long[] range1, long[] range2) {
+				return Long.compare(range1[0], range2[0]);
+			}
+		});
+
+		List<long[]> merged = new ArrayList<long[]>();
+		for(long[] range : ranges) {
+			long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+			if(last != null && range[0] <= last[1] + 1) {
+				last[1] = Math.max(last[1], range[1]);
+			} else {
+				merged.add(range);
+			}
+		}
+		return merged;
+	}
+
+	/* Range 헤더의 위치 값을 long으로 반환 하는 메서드
+	 * 숫자로만 이루어지지 않은 값(음수, 부호, 빈 문자열)은 NumberFormatException
+	 **/
+	private static long position(String value) {
+		if(value.isEmpty()) {
+			throw new NumberFormatException(value);
+		}
+		for(int i = 0; i < value.length(); i++) {
+			if(value.charAt(i) < '0' || value.charAt(i) > '9') {
+				throw new NumberFormatException(value);
+			}
+		}
+		return Long.parseLong(value);
+	}
+
+	/* Content-Length 헤더를 long으로 지정하는 메서드
+	 * 서블릿 3.0의 setContentLength()는 int만 지정할 수 있어 헤더로 지정했다.
+	 **/
+	private static void setContentLength(
+			HttpServletResponse response, long length) {
+		response.setHeader("Content-Length", Long.toString(length));
+	}
+}
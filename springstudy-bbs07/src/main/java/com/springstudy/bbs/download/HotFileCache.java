@@ -0,0 +1,363 @@
+package com.springstudy.bbs.download;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Component;
+
+import com.springstudy.bbs.storage.StoredAttachment;
+
+/* 자주 다운로드 되는 작은 첨부 파일을 메모리 맵으로 유지하는 컴포넌트
+ *
+ * 공지 사항의 첨부 파일이나 서식 파일처럼 소수의 파일이 다운로드 요청의
+ * 대부분을 차지한다. 이전에는 요청마다 파일을 열고 읽어서 보냈지만 이 컴포넌트는
+ * 파일별 요청 수를 세고 요청이 가장 많은 maxFiles 개의 작은 파일을 전체 크기가
+ * budget을 넘지 않도록 MappedByteBuffer로 매핑해 둔다. 매핑된 파일은 파일을 열거나
+ * 읽는 시스템 호출 없이 매핑된 메모리에서 바로 응답 스트림으로 복사한다.
+ *
+ * 1. 요청 수 - 로컬 파일이고 maxFileSize 이하인 첨부 파일만 센다. 추적하는 파일
+ *    수는 maxTracked로 제한하며 오래전에 인기 있던 파일이 계속 남지 않도록
+ *    rebalanceInterval 마다 요청 수를 절반으로 줄인다.
+ * 2. 매핑 - rebalanceInterval 마다 요청 수가 많은 순서로 매핑할 파일을 다시
+ *    정한다. 매핑은 요청 처리 스레드가 아닌 별도의 스레드에서 하며 매핑된 파일의
+ *    맵은 통째로 바꾸므로 요청 처리 스레드는 락 없이 읽는다.
+ * 3. 검증 - 매핑할 때의 파일 크기와 수정 시간이 요청한 파일과 다르면 매핑을
+ *    사용하지 않는다.
+ *
+ * 자바 8에는 매핑을 바로 해제하는 API가 없으므로 제외된 파일의 매핑은 GC가
+ * MappedByteBuffer를 수거할 때 해제된다. 통계는 /monitor/hotFiles.ajax로 제공한다.
+ **/
+@Component
+public class HotFileCache implements InitializingBean, DisposableBean {
+
+	private static final Logger logger =
+			LoggerFactory.getLogger(HotFileCache.class);
+
+	// 통계에 보여줄 요청이 많은 파일의 수
+	private static final int TOP_STATS = 20;
+
+	// 매핑된 파일에서 응답 스트림으로 한 번에 복사할 크기
+	private static final int COPY_CHUNK = 64 * 1024;
+
+	// 매핑할 최대 파일 수
+	private int maxFiles = 32;
+
+	// 매핑할 파일의 전체 크기 한도(바이트)
+	private long budget = 64L * 1024 * 1024;
+
+	// 매핑할 파일 하나의 최대 크기(바이트)
+	private long maxFileSize = 4L * 1024 * 1024;
+
+	// 요청 수를 추적할 최대 파일 수
+	private int maxTracked = 10000;
+
+	// 매핑할 파일을 다시 정하는 주기(밀리초)
+	private long rebalanceInterval = 10000;
+
+	// 파일별 요청 수
+	private final ConcurrentHashMap<String, Counter> counters =
+			new ConcurrentHashMap<String, Counter>();
+
+	// 매핑된 파일 - rebalance()에서 새 맵으로 통째로 바꾼다.
+	private volatile Map<String, HotFile> mapped =
+			Collections.<String, HotFile>emptyMap();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	private ScheduledExecutorService scheduler;
+
+	public void setMaxFiles(int maxFiles) {
+		this.maxFiles = maxFiles;
+	}
+
+	public void setBudget(long budget) {
+		this.budget = budget;
+	}
+
+	public void setMaxFileSize(long maxFileSize) {
+		this.maxFileSize = Math.min(maxFileSize, Integer.MAX_VALUE);
+	}
+
+	public void setMaxTracked(int maxTracked) {
+		this.maxTracked = maxTracked;
+	}
+
+	public void setRebalanceInterval(long rebalanceInterval) {
+		this.rebalanceInterval = rebalanceInterval;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "hot-file-rebalance");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					rebalance();
+				} catch(RuntimeException e) {
+					logger.error("자주 다운로드 되는 파일 매핑 실패", e);
+				}
+			}
+		}, rebalanceInterval, rebalanceInterval, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void destroy() {
+		scheduler.shutdownNow();
+		mapped = Collections.<String, HotFile>emptyMap();
+	}
+
+	/* 다운로드 요청을 기록하고 매핑된 파일이 있으면 반환 하는 메서드
+	 * 로컬 파일이 아니거나 maxFileSize 보다 큰 파일은 기록하지 않고 null을 반환한다.
+	 **/
+	public HotFile lookup(String key, StoredAttachment attachment) {
+
+		if(attachment.getFile() == null
+				|| attachment.getLength() > maxFileSize) {
+			return null;
+		}
+
+		Counter counter = counters.get(key);
+		if(counter == null && counters.size() < maxTracked) {
+			Counter created = new Counter();
+			counter = counters.putIfAbsent(key, created);
+			if(counter == null) {
+				counter = created;
+			}
+		}
+		if(counter != null) {
+			counter.file = attachment.getFile();
+			counter.requests.increment();
+		}
+
+		HotFile hot = mapped.get(key);
+		if(hot != null && hot.length == attachment.getLength()
+				&& hot.lastModified == attachment.getLastModified()) {
+			hits.increment();
+			return hot;
+		}
+		misses.increment();
+		return null;
+	}
+
+	/* 요청 수가 많은 순서로 매핑할 파일을 다시 정하는 메서드
+	 * 이미 매핑된 파일은 크기와 수정 시간이 같으면 그대로 사용한다.
+	 **/
+	public void rebalance() {
+
+		List<Map.Entry<String, Counter>> ranking = ranking();
+		Map<String, HotFile> current = mapped;
+		Map<String, HotFile> next = new HashMap<String, HotFile>();
+		long total = 0;
+
+		for(Map.Entry<String, Counter> entry : ranking) {
+			if(next.size() >= maxFiles) {
+				break;
+			}
+			File file = entry.getValue().file;
+			long length = file.length();
+			if(entry.getValue().requests.sum() == 0 || length == 0
+					|| length > maxFileSize || total + length > budget) {
+				continue;
+			}
+
+			HotFile hot = current.get(entry.getKey());
+			if(hot == null || hot.length != length
+					|| hot.lastModified != file.lastModified()) {
+				hot = map(file);
+			}
+			if(hot != null) {
+				next.put(entry.getKey(), hot);
+				total += hot.length;
+			}
+		}
+		mapped = next;
+
+		// 요청 수를 절반으로 줄이고 요청이 없어진 파일은 더 이상 추적하지 않는다.
+		for(Map.Entry<String, Counter> entry : counters.entrySet()) {
+			LongAdder requests = entry.getValue().requests;
+			long remaining = requests.sumThenReset() / 2;
+			if(remaining > 0) {
+				requests.add(remaining);
+			} else if(! next.containsKey(entry.getKey())) {
+				counters.remove(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/* 자주 다운로드 되는 파일 캐시의 통계를 반환 하는 메서드
+	 *
+	 * { "mappedFiles": 12, "mappedBytes": 3145728, "budget": 67108864,
+	 *   "hits": 9120, "misses": 410, "hitRatio": 0.957, "tracked": 230,
+	 *   "top": [ { "key": "...", "requests": 512, "mapped": true }, ... ] }
+	 **/
+	public Map<String, Object> getStats() {
+
+		Map<String, HotFile> current = mapped;
+		long mappedBytes = 0;
+		for(HotFile hot : current.values()) {
+			mappedBytes += hot.length;
+		}
+		long hitCount = hits.sum();
+		long missCount = misses.sum();
+
+		List<Map<String, Object>> top = new ArrayList<Map<String, Object>>();
+		for(Map.Entry<String, Counter> entry : ranking()) {
+			if(top.size() >= TOP_STATS) {
+				break;
+			}
+			Map<String, Object> item = new LinkedHashMap<String, Object>();
+			item.put("key", entry.getKey());
+			item.put("requests", entry.getValue().requests.sum());
+			item.put("mapped", current.containsKey(entry.getKey()));
+			top.add(item);
+		}
+
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		stats.put("mappedFiles", current.size());
+		stats.put("mappedBytes", mappedBytes);
+		stats.put("budget", budget);
+		stats.put("hits", hitCount);
+		stats.put("misses", missCount);
+		stats.put("hitRatio", hitCount + missCount == 0
+				? 0.0 : (double) hitCount / (hitCount + missCount));
+		stats.put("tracked", counters.size());
+		stats.put("top", top);
+		return stats;
+	}
+
+	// 요청 수가 많은 순서로 정렬한 파일 리스트
+	private List<Map.Entry<String, Counter>> ranking() {
+
+		final Map<String, Long> snapshot = new HashMap<String, Long>();
+		List<Map.Entry<String, Counter>> ranking =
+				new ArrayList<Map.Entry<String, Counter>>();
+		for(Map.Entry<String, Counter> entry : counters.entrySet()) {
+			snapshot.put(entry.getKey(), entry.getValue().requests.sum());
+			ranking.add(entry);
+		}
+		Collections.sort(ranking, new Comparator<Map.Entry<String, Counter>>() {
+			@Override
+			public int compare(Map.Entry<String, Counter> a,
+					Map.Entry<String, Counter> b) {
+				return Long.compare(snapshot.get(b.getKey()),
+						snapshot.get(a.getKey()));
+			}
+		});
+		return ranking;
+	}
+
+	// 파일 전체를 읽기 전용으로 매핑하는 메서드 - 채널을 닫아도 매핑은 유지된다.
+	private static HotFile map(File file) {
+		try {
+			FileChannel channel = FileChannel.open(
+					file.toPath(), StandardOpenOption.READ);
+			try {
+				long lastModified = file.lastModified();
+				MappedByteBuffer buffer = channel.map(
+						FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				buffer.load();
+				return new HotFile(buffer, buffer.capacity(), lastModified);
+			} finally {
+				channel.close();
+			}
+		} catch(IOException e) {
+			logger.warn("파일 매핑 실패 : " + file, e);
+			return null;
+		}
+	}
+
+	// 파일 하나의 요청 수와 로컬 파일
+	private static class Counter {
+		final LongAdder requests = new LongAdder();
+		volatile File file;
+	}
+
+	// 메모리에 매핑된 파일 하나
+	public static class HotFile {
+
+		private final ByteBuffer buffer;
+		private final long length;
+		private final long lastModified;
+
+		HotFile(ByteBuffer buffer, long length, long lastModified) {
+			this.buffer = buffer;
+			this.length = length;
+			this.lastModified = lastModified;
+		}
+
+		// 매핑된 파일의 position 부터 count 바이트를 읽는 스트림을 반환 하는 메서드
+		public InputStream open(long position, long count) {
+			final ByteBuffer view = buffer.duplicate();
+			view.position((int) position);
+			view.limit((int) (position + count));
+			return new InputStream() {
+				@Override
+				public int read() {
+					return view.hasRemaining() ? view.get() & 0xff : -1;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) {
+					if(! view.hasRemaining()) {
+						return -1;
+					}
+					int size = Math.min(len, view.remaining());
+					view.get(b, off, size);
+					return size;
+				}
+			};
+		}
+
+		/* 매핑된 파일의 position 부터 count 바이트를 out에 쓰는 메서드
+		 * 여러 스레드가 동시에 보낼 수 있도록 버퍼를 복제해서 사용한다.
+		 **/
+		public void writeTo(long position, long count, OutputStream out)
+				throws IOException {
+
+			ByteBuffer view = buffer.duplicate();
+			view.position((int) position);
+			view.limit((int) (position + count));
+			byte[] chunk = new byte[(int) Math.min(COPY_CHUNK, count)];
+			while(view.hasRemaining()) {
+				int size = Math.min(chunk.length, view.remaining());
+				view.get(chunk, 0, size);
+				out.write(chunk, 0, size);
+			}
+		}
+	}
+}
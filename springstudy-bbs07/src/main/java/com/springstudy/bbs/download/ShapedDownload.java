@@ -0,0 +1,243 @@
+package com.springstudy.bbs.download;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/* 대역폭을 제한하면서 서블릿 비동기 I/O로 파일을 보내는 클래스
+ *
+ * 이전에는 요청 처리 스레드가 파일을 모두 보낼 때 까지 응답 스트림에 썼으므로
+ * 느린 클라이언트나 대역폭 제한으로 기다리는 다운로드가 스레드를 하나씩
+ * 차지했다. 이 클래스는 WriteListener로 응답 스트림에 쓸 수 있을 때만 쓰고
+ * 소켓 버퍼가 가득 차면 바로 반환한다. 컨테이너는 다시 쓸 수 있게 되면
+ * onWritePossible()을 호출한다. BandwidthShaper의 토큰이 부족하면 토큰이
+ * 채워질 시간에 BandwidthShaper의 스케줄러에서 다시 실행되도록 예약하고
+ * 반환하므로 기다리는 동안 어떤 스레드도 차지하지 않는다.
+ *
+ * 보낼 본문은 Segment의 리스트로 각 Segment는 먼저 보낼 바이트(multipart의
+ * 파트 헤더 등)와 파일에서 보낼 범위로 이루어진다. 파일은 Segment 마다
+ * Source.open()으로 연 스트림에서 CHUNK_SIZE 씩 읽는다.
+ *
+ * 컨테이너의 onWritePossible()과 스케줄러가 동시에 실행될 수 있으므로
+ * 본문을 보내는 pump()는 synchronized로 한 번에 하나만 실행된다.
+ **/
+public class ShapedDownload implements WriteListener, AsyncListener, Runnable {
+
+	private static final Logger logger =
+			LoggerFactory.getLogger(ShapedDownload.class);
+
+	// 한 번에 읽어서 보낼 최대 바이트 수
+	private static final int CHUNK_SIZE = 16 * 1024;
+
+	// 파일의 범위를 읽을 스트림을 여는 인터페이스
+	public interface Source {
+		InputStream open(long position, long count) throws IOException;
+	}
+
+	// 보낼 본문의 한 부분 - prefix를 보낸 후에 파일의 position 부터 count 바이트를 보낸다.
+	public static class Segment {
+
+		final byte[] prefix;
+		final long position;
+		final long count;
+
+		public Segment(byte[] prefix, long position, long count) {
+			this.prefix = prefix;
+			this.position = position;
+			this.count = count;
+		}
+	}
+
+	private final AsyncContext asyncContext;
+	private final ServletOutputStream out;
+	private final Source source;
+	private final List<Segment> segments;
+	private final String client;
+	private final BandwidthShaper shaper;
+
+	private final byte[] buffer = new byte[CHUNK_SIZE];
+
+	private int index;
+	private boolean prefixWritten;
+	private long remaining;
+	private InputStream stream;
+	private boolean finished;
+
+	private ShapedDownload(AsyncContext asyncContext, Source source,
+			List<Segment> segments, String client, BandwidthShaper shaper)
+					throws IOException {
+
+		this.asyncContext = asyncContext;
+		this.out = asyncContext.getResponse().getOutputStream();
+		this.source = source;
+		this.segments = segments;
+		this.client = client;
+		this.shaper = shaper;
+		this.remaining = segments.isEmpty() ? 0 : segments.get(0).count;
+	}
+
+	/* 요청을 비동기 모드로 바꾸고 segments를 보내기 시작하는 메서드
+	 * 응답 헤더는 이 메서드를 호출하기 전에 모두 설정해야 한다.
+	 **/
+	public static void start(AsyncContext asyncContext, Source source,
+			List<Segment> segments, String client, BandwidthShaper shaper)
+					throws IOException {
+
+		// 대역폭 제한으로 오래 걸리는 다운로드가 중간에 끊기지 않도록 제한 시간을 두지 않는다.
+		asyncContext.setTimeout(0);
+		ShapedDownload download = new ShapedDownload(
+				asyncContext, source, segments, client, shaper);
+		asyncContext.addListener(download);
+		download.out.setWriteListener(download);
+	}
+
+	// 응답 스트림에 쓸 수 있게 되면 컨테이너가 호출한다.
+	@Override
+	public void onWritePossible() {
+		pump();
+	}
+
+	// 토큰이 채워질 시간이 되면 BandwidthShaper의 스케줄러가 호출한다.
+	@Override
+	public void run() {
+		pump();
+	}
+
+	// 클라이언트가 연결을 끊는 등 응답을 쓰다가 에러가 발생하면 호출된다.
+	@Override
+	public void onError(Throwable t) {
+		logger.debug("다운로드 중단 : {}", t.toString());
+		finish(true);
+	}
+
+	@Override
+	public void onComplete(AsyncEvent event) {
+		finish(false);
+	}
+
+	@Override
+	public void onTimeout(AsyncEvent event) {
+		finish(true);
+	}
+
+	@Override
+	public void onError(AsyncEvent event) {
+		finish(true);
+	}
+
+	@Override
+	public void onStartAsync(AsyncEvent event) {
+	}
+
+	/* 응답 스트림에 쓸 수 있고 토큰이 있는 동안 본문을 보내는 메서드
+	 * out.isReady()가 false를 반환하면 컨테이너가 다시 onWritePossible()을
+	 * 호출하고 토큰이 부족하면 스케줄러에 예약하고 반환한다.
+	 **/
+	private synchronized void pump() {
+
+		if(finished) {
+			return;
+		}
+		try {
+			while(out.isReady()) {
+				if(index == segments.size()) {
+					finish(true);
+					return;
+				}
+
+				Segment segment = segments.get(index);
+				if(! prefixWritten) {
+					prefixWritten = true;
+					if(segment.prefix != null && segment.prefix.length > 0) {
+						out.write(segment.prefix);
+					}
+					continue;
+				}
+
+				if(remaining == 0) {
+					closeStream();
+					index++;
+					prefixWritten = false;
+					remaining = index < segments.size()
+							? segments.get(index).count : 0;
+					continue;
+				}
+
+				int wanted = (int) Math.min(CHUNK_SIZE, remaining);
+				long granted = shaper.acquire(client, wanted);
+				if(granted == 0) {
+					shaper.schedule(this, shaper.delay(client, wanted));
+					return;
+				}
+
+				if(stream == null) {
+					stream = source.open(segment.position, segment.count);
+				}
+				int read = fill((int) granted);
+				out.write(buffer, 0, read);
+				remaining -= read;
+			}
+		} catch(IOException e) {
+			logger.warn("다운로드 전송 실패 : {}", e.toString());
+			finish(true);
+		} catch(RuntimeException e) {
+
+			/* 타임아웃을 0으로 지정했으므로 여기서 완료하지 않으면 비동기 요청이
+			 * 끝나지 않고 열린 스트림도 닫히지 않는다.
+			 **/
+			logger.error("다운로드 전송 실패", e);
+			finish(true);
+		}
+	}
+
+	// 스트림에서 length 바이트를 모두 읽어 buffer에 채우는 메서드
+	private int fill(int length) throws IOException {
+		int filled = 0;
+		while(filled < length) {
+			int read = stream.read(buffer, filled, length - filled);
+			if(read < 0) {
+				throw new IOException("파일을 끝까지 읽지 못했습니다.");
+			}
+			filled += read;
+		}
+		return filled;
+	}
+
+	/* 스트림을 닫고 필요하면 비동기 요청을 완료하는 메서드
+	 * 컨테이너의 콜백과 pump()에서 여러 번 호출될 수 있으므로 한 번만 처리한다.
+	 **/
+	private synchronized void finish(boolean complete) {
+		if(finished) {
+			return;
+		}
+		finished = true;
+		closeStream();
+		if(complete) {
+			try {
+				asyncContext.complete();
+			} catch(IllegalStateException e) {
+				// 이미 완료된 요청이다.
+			}
+		}
+	}
+
+	private void closeStream() {
+		if(stream != null) {
+			try {
+				stream.close();
+			} catch(IOException e) {
+				logger.debug("스트림 닫기 실패", e);
+			}
+			stream = null;
+		}
+	}
+}
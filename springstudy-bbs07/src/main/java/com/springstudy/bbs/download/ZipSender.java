@@ -0,0 +1,170 @@
+package com.springstudy.bbs.download;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.springstudy.bbs.storage.AttachmentStore;
+import com.springstudy.bbs.storage.StoredAttachment;
+import com.springstudy.bbs.upload.BlobStore;
+
+/* 게시 글의 첨부 파일을 하나의 ZIP 파일로 묶어서 보내는 컴포넌트
+ *
+ * 첨부 파일을 임시 파일로 압축하지 않고 ZipOutputStream으로 응답 스트림에
+ * 바로 압축하면서 보낸다. 첨부 파일은 고정 크기의 버퍼로 나눠 읽으므로 첨부
+ * 파일의 수나 전체 크기와 상관없이 사용하는 메모리는 일정하다. 전체 크기를
+ * 미리 알 수 없으므로 Content-Length 없이 청크 방식으로 보낸다.
+ *
+ * 이미지, 동영상, 압축 파일처럼 이미 압축된 형식은 다시 압축해도 크기가
+ * 거의 줄지 않고 CPU만 사용하므로 압축하지 않고(STORED) 그대로 저장한다.
+ * STORED 항목은 항목의 헤더에 크기와 CRC를 먼저 기록해야 하므로 첨부 파일을
+ * 한 번 읽어 CRC를 계산한 후에 다시 읽어서 보낸다. 압축하는 항목은 응답
+ * 대기 시간을 줄이도록 가장 빠른 압축 레벨을 사용한다.
+ **/
+@Component
+public class ZipSender {
+
+	private static final Logger logger =
+			LoggerFactory.getLogger(ZipSender.class);
+
+	// 첨부 파일을 읽어서 ZIP 스트림에 쓸 때 사용할 버퍼 크기
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// 이미 압축된 형식이라 압축하지 않고 저장할 파일의 확장자
+	private static final Set<String> COMPRESSED = new HashSet<String>(
+			Arrays.asList("jpg", "jpeg", "png", "gif", "webp", "heic",
+					"mp3", "aac", "ogg", "m4a", "mp4", "m4v", "mov", "avi",
+					"mkv", "webm", "zip", "gz", "tgz", "bz2", "xz", "7z",
+					"rar", "jar", "docx", "xlsx", "pptx", "hwpx", "pdf"));
+
+	@Autowired
+	private AttachmentStore attachmentStore;
+
+	public void setAttachmentStore(AttachmentStore attachmentStore) {
+		this.attachmentStore = attachmentStore;
+	}
+
+	/* references의 첨부 파일을 zipName이라는 ZIP 파일로 응답에 보내는 메서드
+	 *
+	 * references는 게시 글에 저장된 참조 이름(해시_원본파일이름)의 리스트로
+	 * ZIP 안의 파일 이름은 원본 파일 이름을 사용하며 같은 이름이 있으면
+	 * 이름 뒤에 번호를 붙인다. 저장소에 없는 첨부 파일은 건너뛴다.
+	 **/
+	public void send(HttpServletResponse response, String zipName,
+			List<String> references) throws IOException {
+
+		response.setContentType("application/zip");
+		response.setHeader("Content-Disposition", "attachment; filename=\""
+				+ URLEncoder.encode(zipName, "UTF-8") + "\";");
+		response.setHeader("Content-Transfer-Encoding", "binary");
+
+		// ZIP 안의 파일 이름은 UTF-8로 저장되므로 한글 이름도 깨지지 않는다.
+		ZipOutputStream zip = new ZipOutputStream(response.getOutputStream());
+		zip.setLevel(Deflater.BEST_SPEED);
+
+		Set<String> names = new HashSet<String>();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		for(String reference : references) {
+			String key = BlobStore.key(reference);
+			StoredAttachment attachment = attachmentStore.stat(key);
+			if(attachment == null) {
+				logger.warn("ZIP에 추가할 첨부 파일이 없습니다 : {}", reference);
+				continue;
+			}
+
+			ZipEntry entry = new ZipEntry(
+					uniqueName(BlobStore.downloadName(reference), names));
+			entry.setTime(attachment.getLastModified());
+			if(isCompressed(entry.getName())) {
+				entry.setMethod(ZipEntry.STORED);
+				entry.setSize(attachment.getLength());
+				entry.setCompressedSize(attachment.getLength());
+				entry.setCrc(crc(key, attachment.getLength(), buffer));
+			}
+
+			zip.putNextEntry(entry);
+			copy(key, attachment.getLength(), zip, buffer);
+			zip.closeEntry();
+		}
+		zip.finish();
+		zip.flush();
+	}
+
+	// 첨부 파일을 읽어 CRC-32를 계산하는 메서드
+	private long crc(String key, long length, byte[] buffer)
+			throws IOException {
+
+		CRC32 crc = new CRC32();
+		InputStream in = attachmentStore.read(key, 0, length);
+		try {
+			int read;
+			while((read = in.read(buffer)) != -1) {
+				crc.update(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		return crc.getValue();
+	}
+
+	// 첨부 파일을 buffer 크기씩 읽어 out에 쓰는 메서드
+	private void copy(String key, long length, OutputStream out, byte[] buffer)
+			throws IOException {
+
+		InputStream in = attachmentStore.read(key, 0, length);
+		try {
+			int read;
+			while((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private static boolean isCompressed(String name) {
+		int dot = name.lastIndexOf('.');
+		return dot >= 0 && COMPRESSED.contains(
+				name.substring(dot + 1).toLowerCase(Locale.ROOT));
+	}
+
+	/* ZIP 안에서 겹치지 않는 파일 이름을 반환 하는 메서드
+	 * ZIP에는 같은 이름의 항목을 추가할 수 없으므로 이미 사용한 이름이면
+	 * "이름 (2).확장자" 형식으로 번호를 붙인다.
+	 **/
+	private static String uniqueName(String name, Set<String> names) {
+
+		// 파일 이름에 경로가 포함되어 있으면 압축을 풀 때 다른 폴더에 파일이 생긴다.
+		name = name.replace('\\', '_').replace('/', '_');
+		if(names.add(name)) {
+			return name;
+		}
+
+		int dot = name.lastIndexOf('.');
+		String base = dot > 0 ? name.substring(0, dot) : name;
+		String extension = dot > 0 ? name.substring(dot) : "";
+		for(int i = 2; ; i++) {
+			String candidate = base + " (" + i + ")" + extension;
+			if(names.add(candidate)) {
+				return candidate;
+			}
+		}
+	}
+}
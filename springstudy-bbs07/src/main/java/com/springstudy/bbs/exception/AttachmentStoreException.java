@@ -0,0 +1,8 @@
+package com.springstudy.bbs.exception;
+
+// 게시 글이 등록된 후에 첨부 파일을 저장소에 저장하지 못하면 발생하는 예외처리 클래스
+public class AttachmentStoreException extends RuntimeException {
+	public AttachmentStoreException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -1,5 +1,7 @@
 package com.springstudy.bbs.exception;
 
+import javax.servlet.http.HttpServletResponse;
+
 import org.springframework.beans.TypeMismatchException;
 import org.springframework.ui.Model;
 import org.springframework.web.HttpRequestMethodNotSupportedException;
@@ -58,6 +60,32 @@ public class ControllerAdviceExceptionHandler {
 		return "errors/runtimeException";
 	}
 	
+	/* Payload Too Large(413)
+	 * 업로드 크기 제한을 넘은 요청은 본문을 끝까지 읽지 않았으므로 응답 후에
+	 * 남은 본문을 읽지 않도록 Connection: close 헤더를 보내 연결을 닫는다.
+	 **/
+	@ExceptionHandler(UploadQuotaExceededException.class)
+	public String uploadQuotaExceeded(
+			HttpServletResponse response, Model model) {
+		response.setStatus(413);
+		response.setHeader("Connection", "close");
+		model.addAttribute("title", "업로드 파일의 크기가 너무 큽니다.");
+		return "errors/commonException";
+	}
+	
+	/* 게시 글은 등록되었지만 첨부 파일을 저장소에 저장하지 못한 경우
+	 * 첨부 파일이 없는 게시 글을 성공으로 보여주지 않도록 에러 페이지로 알린다.
+	 **/
+	@ExceptionHandler(AttachmentStoreException.class)
+	public String attachmentStoreFailed(
+			HttpServletResponse response, Model model) {
+		response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		model.addAttribute("title", 
+				"게시 글은 등록되었지만 첨부 파일을 저장하지 못했습니다. "
+				+ "게시 글을 삭제하고 다시 등록해 주세요.");
+		return "errors/commonException";
+	}
+	
 	// Not Found(404)
 	@ExceptionHandler(NoSuchRequestHandlingMethodException.class)
 	public String notFoundException(Model model) {
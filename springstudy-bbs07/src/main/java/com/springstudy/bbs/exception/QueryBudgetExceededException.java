@@ -0,0 +1,8 @@
+package com.springstudy.bbs.exception;
+
+// 컨트롤러가 요청 하나에서 실행한 SQL이 허용된 수를 넘으면 발생하는 예외처리 클래스
+public class QueryBudgetExceededException extends RuntimeException {
+	public QueryBudgetExceededException(String message) {
+		super(message);
+	}
+}
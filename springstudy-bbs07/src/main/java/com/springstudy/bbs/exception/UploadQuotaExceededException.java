@@ -0,0 +1,8 @@
+package com.springstudy.bbs.exception;
+
+// 업로드 파일 하나 또는 요청 전체의 크기가 허용된 크기를 넘으면 발생하는 예외처리 클래스
+public class UploadQuotaExceededException extends RuntimeException {
+	public UploadQuotaExceededException(String message) {
+		super(message);
+	}
+}
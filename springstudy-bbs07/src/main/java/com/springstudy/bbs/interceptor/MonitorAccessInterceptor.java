@@ -0,0 +1,41 @@
+package com.springstudy.bbs.interceptor;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+/* 운영 상태를 응답하는 /monitor 요청을 허용된 주소에서만 처리하는 인터셉터
+ *
+ * /monitor 요청은 스레드 이름과 호출 스택, 파일 키, 코드의 위치 등 내부
+ * 정보를 응답하므로 로그인한 회원이라도 볼 수 없어야 한다. 이 게시판에는
+ * 관리자 권한이 없으므로 기본적으로 서버 자신(localhost)에서 보낸 요청만
+ * 허용하고 그 외의 주소는 403 응답을 보낸다. 프록시의 X-Forwarded-For
+ * 헤더는 클라이언트가 조작할 수 있으므로 사용하지 않는다.
+ **/
+public class MonitorAccessInterceptor extends HandlerInterceptorAdapter {
+
+	// 요청을 허용할 클라이언트 주소
+	private Set<String> allowedAddresses = new HashSet<String>(Arrays.asList(
+			"127.0.0.1", "0:0:0:0:0:0:0:1", "::1"));
+
+	public void setAllowedAddresses(List<String> allowedAddresses) {
+		this.allowedAddresses = new HashSet<String>(allowedAddresses);
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request,
+			HttpServletResponse response, Object handler) throws Exception {
+
+		if(allowedAddresses.contains(request.getRemoteAddr())) {
+			return true;
+		}
+		response.sendError(HttpServletResponse.SC_FORBIDDEN);
+		return false;
+	}
+}
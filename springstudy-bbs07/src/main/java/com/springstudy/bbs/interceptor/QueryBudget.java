@@ -0,0 +1,27 @@
+package com.springstudy.bbs.interceptor;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/* 컨트롤러 메서드가 요청 하나를 처리하면서 실행할 수 있는 SQL의 수를 지정하는
+ * 애노테이션
+ *
+ * QueryBudgetInterceptor는 이 애노테이션이 적용된 메서드가 value 보다 많은
+ * SQL을 실행하거나 같은 매핑 구문을 repeatLimit 번 보다 많이 실행하면
+ * 경고 로그를 남기고 enforce가 true면 QueryBudgetExceededException을
+ * 발생시킨다. repeatLimit을 지정하지 않으면 인터셉터의 repeatLimit을 사용한다.
+ **/
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface QueryBudget {
+
+	// 요청 하나에서 실행할 수 있는 최대 SQL 수
+	int value();
+
+	// 같은 매핑 구문을 실행할 수 있는 최대 횟수 - 음수면 인터셉터의 설정을 사용한다.
+	int repeatLimit() default -1;
+}
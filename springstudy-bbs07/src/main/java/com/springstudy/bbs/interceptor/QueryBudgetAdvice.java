@@ -0,0 +1,48 @@
+package com.springstudy.bbs.interceptor;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/* @ResponseBody 컨트롤러의 응답 본문을 쓰기 직전에 QueryBudgetInterceptor가
+ * SQL 수를 응답 헤더에 추가하고 허용된 수를 넘는지 검사하도록 하는 클래스
+ *
+ * @ResponseBody 컨트롤러는 인터셉터의 postHandle()이 호출되기 전에 응답
+ * 본문을 쓰기 때문에 postHandle()에서는 응답 헤더를 추가할 수 없다.
+ **/
+@ControllerAdvice("com.springstudy.bbs")
+public class QueryBudgetAdvice implements ResponseBodyAdvice<Object> {
+
+	@Autowired(required=false)
+	private QueryBudgetInterceptor queryBudgetInterceptor;
+
+	public void setQueryBudgetInterceptor(
+			QueryBudgetInterceptor queryBudgetInterceptor) {
+		this.queryBudgetInterceptor = queryBudgetInterceptor;
+	}
+
+	@Override
+	public boolean supports(MethodParameter returnType,
+			Class<? extends HttpMessageConverter<?>> converterType) {
+		return queryBudgetInterceptor != null;
+	}
+
+	@Override
+	public Object beforeBodyWrite(Object body, MethodParameter returnType,
+			MediaType selectedContentType,
+			Class<? extends HttpMessageConverter<?>> selectedConverterType,
+			ServerHttpRequest request, ServerHttpResponse response) {
+
+		if(response instanceof ServletServerHttpResponse) {
+			queryBudgetInterceptor.report(returnType.getMethod(),
+					((ServletServerHttpResponse) response).getServletResponse());
+		}
+		return body;
+	}
+}
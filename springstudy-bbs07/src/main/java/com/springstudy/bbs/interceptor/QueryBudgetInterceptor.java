@@ -0,0 +1,152 @@
+package com.springstudy.bbs.interceptor;
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import com.springstudy.bbs.datasource.QueryCounter;
+import com.springstudy.bbs.exception.QueryBudgetExceededException;
+
+/* 요청 하나에서 실행한 SQL의 수와 시간을 응답 헤더로 알려주고 허용된 수를
+ * 넘는지 검사하는 인터셉터
+ *
+ * 컨트롤러를 실행하기 전에 QueryCounter로 SQL을 세기 시작하고 응답 헤더에
+ * X-Query-Count(SQL 수)와 X-Query-Time(SQL을 실행한 전체 시간, 밀리초)을
+ * 추가한다. 뷰를 사용하는 컨트롤러는 postHandle()에서 헤더를 추가하지만
+ * @ResponseBody 컨트롤러는 postHandle()이 호출되기 전에 응답 본문을 쓰므로
+ * QueryBudgetAdvice가 본문을 쓰기 직전에 헤더를 추가한다.
+ *
+ * 컨트롤러 메서드에 @QueryBudget을 지정하면 그 수 보다 많은 SQL을 실행했는지
+ * 검사하고, 모든 컨트롤러에 대해 같은 매핑 구문을 repeatLimit 번 보다 많이
+ * 실행했는지(N+1 문제) 검사한다. 위반하면 경고 로그를 남기고 테스트 환경에서
+ * enforce를 true로 지정하면 QueryBudgetExceededException을 발생시켜 요청이
+ * 실패하도록 한다.
+ **/
+public class QueryBudgetInterceptor extends HandlerInterceptorAdapter {
+
+	private static final Logger logger =
+			LoggerFactory.getLogger(QueryBudgetInterceptor.class);
+
+	public static final String COUNT_HEADER = "X-Query-Count";
+	public static final String TIME_HEADER = "X-Query-Time";
+
+	// 위반하면 예외를 발생시킬지 여부 - false면 경고 로그만 남긴다.
+	private boolean enforce;
+
+	// 같은 매핑 구문을 실행할 수 있는 최대 횟수
+	private int repeatLimit = 3;
+
+	public void setEnforce(boolean enforce) {
+		this.enforce = enforce;
+	}
+
+	public void setRepeatLimit(int repeatLimit) {
+		this.repeatLimit = repeatLimit;
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request,
+			HttpServletResponse response, Object handler) {
+		QueryCounter.begin();
+		return true;
+	}
+
+	@Override
+	public void postHandle(HttpServletRequest request,
+			HttpServletResponse response, Object handler,
+			ModelAndView modelAndView) {
+
+		if(handler instanceof HandlerMethod) {
+			report(((HandlerMethod) handler).getMethod(), response);
+		}
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request,
+			HttpServletResponse response, Object handler, Exception ex) {
+
+		// 예외가 발생해 report()가 호출되지 않은 경우에는 로그만 남긴다.
+		QueryCounter.Queries queries = QueryCounter.end();
+		if(queries != null && ! queries.isReported()
+				&& handler instanceof HandlerMethod) {
+			String violation = check(((HandlerMethod) handler).getMethod(), queries);
+			if(violation != null) {
+				logger.warn(violation);
+			}
+		}
+	}
+
+	// 비동기 요청은 다른 스레드에서 응답하므로 요청 스레드에서 세기를 멈춘다.
+	@Override
+	public void afterConcurrentHandlingStarted(HttpServletRequest request,
+			HttpServletResponse response, Object handler) {
+		QueryCounter.end();
+	}
+
+	/* 지금까지 실행한 SQL의 수와 시간을 응답 헤더에 추가하고 허용된 수를 넘는지
+	 * 검사하는 메서드 - 요청마다 처음 호출될 때만 처리한다.
+	 **/
+	void report(Method method, HttpServletResponse response) {
+
+		QueryCounter.Queries queries = QueryCounter.current();
+		if(queries == null || queries.isReported()) {
+			return;
+		}
+		queries.setReported(true);
+
+		if(! response.isCommitted()) {
+			response.setHeader(COUNT_HEADER, String.valueOf(queries.getCount()));
+			response.setHeader(TIME_HEADER,
+					String.format(Locale.ROOT, "%.1f", queries.getMillis()));
+		}
+
+		String violation = check(method, queries);
+		if(violation != null) {
+			if(enforce) {
+				throw new QueryBudgetExceededException(violation);
+			}
+			logger.warn(violation);
+		}
+	}
+
+	/* 컨트롤러 메서드가 실행한 SQL이 허용된 수를 넘는지 검사하는 메서드
+	 * 위반하지 않았으면 null을, 위반했으면 그 내용을 반환한다.
+	 **/
+	String check(Method method, QueryCounter.Queries queries) {
+
+		QueryBudget budget = AnnotationUtils.findAnnotation(method, QueryBudget.class);
+		if(budget == null) {
+			budget = AnnotationUtils.findAnnotation(
+					method.getDeclaringClass(), QueryBudget.class);
+		}
+
+		String handler = method.getDeclaringClass().getSimpleName()
+				+ "." + method.getName();
+		if(budget != null && queries.getCount() > budget.value()) {
+			return handler + " - SQL " + queries.getCount() + "개 실행, 허용 "
+					+ budget.value() + "개 : " + queries.getStatements();
+		}
+
+		int limit = budget != null && budget.repeatLimit() >= 0
+				? budget.repeatLimit() : repeatLimit;
+		for(Map.Entry<String, Integer> entry
+				: queries.getStatements().entrySet()) {
+			if(entry.getValue() > limit) {
+				return handler + " - " + entry.getKey() + " 매핑 구문을 "
+						+ entry.getValue() + "번 반복 실행(N+1 의심), 허용 "
+						+ limit + "번";
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,540 @@
+package com.springstudy.bbs.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import com.springstudy.bbs.datasource.ReplicaRouting;
+import com.springstudy.bbs.domain.Board;
+
+/* 게시 글의 제목, 작성자, 내용을 검색하기 위한 메모리 역인덱스
+ *
+ * LIKE CONCAT('%', #{keyword}, '%') 조건은 인덱스를 사용할 수 없어서
+ * 검색할 때마다 테이블 전체를 읽게 된다. 이 컴포넌트는 NGramTokenizer로
+ * 만든 gram 마다 그 gram이 포함된 게시 글 번호의 포스팅 리스트를 관리하고
+ * 검색어의 gram이 모두 포함된 게시 글을 후보로 찾은 후 원문과 비교해
+ * LIKE 검색과 같은 결과를 게시 글 번호의 내림차순으로 반환한다.
+ *
+ * 애플리케이션이 시작되면 별도의 스레드에서 테이블 전체를 스트리밍으로 읽어
+ * 인덱스를 만들고 그 이후에는 BoardServiceImpl의 게시 글 추가, 수정, 삭제가
+ * 커밋될 때마다 인덱스에 반영한다. 인덱스가 준비되기 전에는 search() 메서드가
+ * null을 반환하므로 IndexSearchBackend는 기존 LIKE 쿼리로 검색한다.
+ *
+ * 커밋될 때 반영하는 변경은 이 서버에서 처리한 변경뿐이므로 여러 서버를 로드
+ * 밸런서 뒤에 두면 다른 서버의 변경은 인덱스에 없다. 이를 보완하기 위해
+ * catchUpInterval 마다 인덱스의 가장 큰 게시 글 번호 보다 번호가 큰 게시 글을
+ * 읽어 인덱스에 추가하고 rebuildInterval 마다 인덱스를 다시 만든다. 다른
+ * 서버에서 수정하거나 삭제한 게시 글과 늦게 커밋되어 번호가 앞선 게시 글은
+ * 다음에 인덱스를 다시 만들 때까지 검색 결과에 반영되지 않는다. 삭제된 게시
+ * 글은 IndexSearchBackend가 게시 글을 읽어올 때 빠지지만 이 서버에서 인덱스를
+ * 다시 만들기 전까지 한 페이지의 게시 글 수가 모자랄 수 있다. 검색 결과가 항상
+ * DB와 같아야 하면 LikeSearchBackend나 FulltextSearchBackend를 사용한다.
+ *
+ * IndexSearchBackend를 검색 백엔드로 사용할 때만 root-context.xml에서
+ * 내부 빈으로 정의해 인덱스를 만든다.
+ **/
+public class BoardSearchIndex implements InitializingBean, DisposableBean {
+
+	private static final Logger logger =
+			LoggerFactory.getLogger(BoardSearchIndex.class);
+
+	private static final String NAME_SPACE =
+			"com.springstudy.bbs.mapper.BoardMapper";
+
+	// 인덱싱하는 검색 타입 - 요청 파라미터 type의 값과 같다.
+	private static final String[] FIELDS = { "title", "writer", "content" };
+
+	private SqlSessionTemplate sqlSession;
+
+	// 인덱스 사용 여부
+	private boolean enabled = true;
+
+	// 다른 서버에서 등록한 게시 글을 인덱스에 추가하는 주기(밀리초), 0이면 하지 않는다.
+	private long catchUpInterval;
+
+	// 인덱스를 다시 만드는 주기(밀리초), 0이면 시작할 때만 만든다.
+	private long rebuildInterval;
+
+	// 인덱스를 만들고 다른 서버의 변경을 반영하는 스레드
+	private ScheduledExecutorService scheduler;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	// 현재 사용 중인 인덱스, 준비되기 전에는 null
+	private IndexData data;
+
+	/* 인덱스를 다시 만들거나 다른 서버의 게시 글을 읽는 동안 들어온 변경 사항
+	 * 테이블을 읽는 도중에 커밋된 변경이 빠지지 않도록 인덱스에 다시 적용한다.
+	 **/
+	private List<Change> pending;
+
+	public void setSqlSession(SqlSessionTemplate sqlSession) {
+		this.sqlSession = sqlSession;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public void setCatchUpInterval(long catchUpInterval) {
+		this.catchUpInterval = catchUpInterval;
+	}
+
+	public void setRebuildInterval(long rebuildInterval) {
+		this.rebuildInterval = rebuildInterval;
+	}
+
+	/* 애플리케이션이 시작되면 별도의 스레드에서 인덱스를 만든다.
+	 * 같은 스레드에서 주기적으로 다른 서버의 변경을 반영하므로 인덱스를 만드는
+	 * 작업과 게시 글을 추가하는 작업이 동시에 실행되지 않는다.
+	 **/
+	@Override
+	public void afterPropertiesSet() {
+
+		if(! enabled) {
+			return;
+		}
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "board-search-index");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		scheduler.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					rebuild();
+				} catch(RuntimeException e) {
+					logger.error("게시 글 검색 인덱스 생성 실패", e);
+				}
+			}
+		});
+
+		if(catchUpInterval > 0) {
+			scheduler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						catchUp();
+					} catch(RuntimeException e) {
+						logger.error("게시 글 검색 인덱스 갱신 실패", e);
+					}
+				}
+			}, catchUpInterval, catchUpInterval, TimeUnit.MILLISECONDS);
+		}
+
+		if(rebuildInterval > 0) {
+			scheduler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						rebuild();
+					} catch(RuntimeException e) {
+						logger.error("게시 글 검색 인덱스 생성 실패", e);
+					}
+				}
+			}, rebuildInterval, rebuildInterval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	public void destroy() {
+		if(scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	/* 게시 글 테이블 전체를 스트리밍으로 읽어 인덱스를 새로 만드는 메서드
+	 *
+	 * scanBoards 맵핑 구문은 fetchSize를 Integer.MIN_VALUE로 지정해
+	 * MySQL 드라이버가 결과를 한 행씩 읽어 오도록 했기 때문에 게시 글이
+	 * 많아도 전체 결과를 메모리에 올리지 않는다.
+	 **/
+	public synchronized void rebuild() {
+
+		lock.writeLock().lock();
+		try {
+			pending = new ArrayList<Change>();
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		long start = System.currentTimeMillis();
+		final IndexData newData = new IndexData();
+		try {
+			sqlSession.select(NAME_SPACE + ".scanBoards",
+					new ResultHandler<Board>() {
+				@Override
+				public void handleResult(
+						ResultContext<? extends Board> context) {
+					Board board = context.getResultObject();
+					newData.put(board.getNo(), board.getTitle(),
+							board.getWriter(), board.getContent());
+				}
+			});
+		} catch(RuntimeException e) {
+			lock.writeLock().lock();
+			try {
+				pending = null;
+			} finally {
+				lock.writeLock().unlock();
+			}
+			throw e;
+		}
+
+		lock.writeLock().lock();
+		try {
+			for(Change change : pending) {
+				change.applyTo(newData);
+			}
+			pending = null;
+			data = newData;
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		logger.info("게시 글 검색 인덱스 생성 완료 - 게시 글 : {}, gram : {}, {}ms",
+				new Object[] { newData.docs.size(), newData.gramCount(),
+				System.currentTimeMillis() - start });
+	}
+
+	/* 인덱스의 가장 큰 게시 글 번호 보다 번호가 큰 게시 글을 인덱스에 추가하는 메서드
+	 *
+	 * 다른 서버에서 등록한 게시 글을 찾기 위해 catchUpInterval 마다 호출한다.
+	 * 복제 DB에 아직 반영되지 않은 게시 글을 건너뛰지 않도록 주 DB에서 읽는다.
+	 * rebuild()와 같이 읽는 동안 커밋된 변경은 읽어온 게시 글을 추가한 후에
+	 * 다시 적용해 이 서버에서 삭제한 게시 글이 다시 추가되지 않도록 한다.
+	 **/
+	public synchronized void catchUp() {
+
+		int maxNo;
+		lock.writeLock().lock();
+		try {
+			if(data == null) {
+				return;
+			}
+			maxNo = data.maxNo;
+			pending = new ArrayList<Change>();
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		final List<Change> changes = new ArrayList<Change>();
+		Boolean previous = ReplicaRouting.beginPrimary();
+		try {
+			sqlSession.select(NAME_SPACE + ".scanBoardsAfter", maxNo,
+					new ResultHandler<Board>() {
+				@Override
+				public void handleResult(
+						ResultContext<? extends Board> context) {
+					Board board = context.getResultObject();
+					changes.add(new Change(board.getNo(), board.getTitle(),
+							board.getWriter(), board.getContent(), false));
+				}
+			});
+		} finally {
+			ReplicaRouting.endPrimary(previous);
+			lock.writeLock().lock();
+			try {
+				for(Change change : changes) {
+					change.applyTo(data);
+				}
+				for(Change change : pending) {
+					change.applyTo(data);
+				}
+				pending = null;
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+
+		if(! changes.isEmpty()) {
+			logger.info("게시 글 검색 인덱스 갱신 - 추가된 게시 글 : {}",
+					changes.size());
+		}
+	}
+
+	// 인덱스가 준비되어 검색에 사용할 수 있는지 여부
+	public boolean isReady() {
+		lock.readLock().lock();
+		try {
+			return data != null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// 게시 글 추가가 커밋되면 호출되는 메서드
+	public void add(Board board) {
+		apply(new Change(board.getNo(), board.getTitle(),
+				board.getWriter(), board.getContent(), false));
+	}
+
+	/* 게시 글 수정이 커밋되면 호출되는 메서드
+	 * Board 객체에서 null인 항목은 기존에 인덱싱된 값을 유지한다.
+	 **/
+	public void update(Board board) {
+		add(board);
+	}
+
+	// 게시 글 삭제가 커밋되면 호출되는 메서드
+	public void remove(int no) {
+		apply(new Change(no, null, null, null, true));
+	}
+
+	private void apply(Change change) {
+		lock.writeLock().lock();
+		try {
+			if(data != null) {
+				change.applyTo(data);
+			}
+			if(pending != null) {
+				pending.add(change);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/* type에 해당하는 항목에 keyword가 포함된 게시 글 번호를 내림차순으로
+	 * 반환 하는 메서드 - 인덱스가 준비되지 않았거나 인덱싱하지 않는
+	 * type이면 null을 반환한다.
+	 **/
+	public int[] search(String type, String keyword) {
+
+		int field = fieldIndex(type);
+		if(field < 0 || keyword == null) {
+			return null;
+		}
+
+		String query = NGramTokenizer.normalize(keyword);
+		Set<String> grams = NGramTokenizer.queryGrams(query);
+
+		lock.readLock().lock();
+		try {
+			if(data == null) {
+				return null;
+			}
+			return data.search(field, query, grams);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// 인덱스 상태 정보를 반환 하는 메서드
+	public Map<String, Object> getStats() {
+
+		Map<String, Object> stats = new HashMap<String, Object>();
+		lock.readLock().lock();
+		try {
+			stats.put("ready", data != null);
+			stats.put("rebuilding", pending != null);
+			stats.put("documents", data == null ? 0 : data.docs.size());
+			stats.put("grams", data == null ? 0 : data.gramCount());
+			stats.put("maxNo", data == null ? 0 : data.maxNo);
+		} finally {
+			lock.readLock().unlock();
+		}
+		return stats;
+	}
+
+	private static int fieldIndex(String type) {
+		for(int i = 0; i < FIELDS.length; i++) {
+			if(FIELDS[i].equals(type)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	// 인덱스에 적용할 게시 글의 변경 사항
+	private static class Change {
+
+		private final int no;
+		private final String title;
+		private final String writer;
+		private final String content;
+		private final boolean removed;
+
+		Change(int no, String title, String writer,
+				String content, boolean removed) {
+			this.no = no;
+			this.title = title;
+			this.writer = writer;
+			this.content = content;
+			this.removed = removed;
+		}
+
+		void applyTo(IndexData target) {
+			if(removed) {
+				target.remove(no);
+			} else {
+				target.put(no, title, writer, content);
+			}
+		}
+	}
+
+	/* 포스팅 리스트와 정규화된 원문을 저장하는 인덱스 데이터
+	 * 동기화는 BoardSearchIndex의 락으로 처리한다.
+	 **/
+	private static class IndexData {
+
+		private final List<Map<String, PostingList>> postings =
+				new ArrayList<Map<String, PostingList>>();
+
+		// 게시 글 번호별 정규화된 제목, 작성자, 내용
+		private final Map<Integer, String[]> docs =
+				new HashMap<Integer, String[]>();
+
+		// 인덱스에 추가한 가장 큰 게시 글 번호 - 삭제해도 줄이지 않는다.
+		private int maxNo;
+
+		IndexData() {
+			for(int i = 0; i < FIELDS.length; i++) {
+				postings.add(new HashMap<String, PostingList>());
+			}
+		}
+
+		void put(int no, String title, String writer, String content) {
+
+			String[] old = docs.get(no);
+			String[] values = { title, writer, content };
+			String[] doc = new String[FIELDS.length];
+
+			for(int i = 0; i < FIELDS.length; i++) {
+				if(values[i] == null) {
+					doc[i] = old == null ? "" : old[i];
+					continue;
+				}
+				doc[i] = NGramTokenizer.normalize(values[i]);
+				if(old != null && old[i].equals(doc[i])) {
+					continue;
+				}
+				if(old != null) {
+					removeGrams(i, no, old[i]);
+				}
+				Map<String, PostingList> fieldPostings = postings.get(i);
+				for(String gram : NGramTokenizer.indexGrams(doc[i])) {
+					PostingList list = fieldPostings.get(gram);
+					if(list == null) {
+						list = new PostingList();
+						fieldPostings.put(gram, list);
+					}
+					list.add(no);
+				}
+			}
+			docs.put(no, doc);
+			maxNo = Math.max(maxNo, no);
+		}
+
+		void remove(int no) {
+			String[] old = docs.remove(no);
+			if(old == null) {
+				return;
+			}
+			for(int i = 0; i < FIELDS.length; i++) {
+				removeGrams(i, no, old[i]);
+			}
+		}
+
+		private void removeGrams(int field, int no, String text) {
+			Map<String, PostingList> fieldPostings = postings.get(field);
+			for(String gram : NGramTokenizer.indexGrams(text)) {
+				PostingList list = fieldPostings.get(gram);
+				if(list != null) {
+					list.remove(no);
+					if(list.isEmpty()) {
+						fieldPostings.remove(gram);
+					}
+				}
+			}
+		}
+
+		int[] search(int field, String query, Set<String> grams) {
+
+			// 가장 짧은 포스팅 리스트를 기준으로 나머지 리스트와 교집합을 구한다.
+			Map<String, PostingList> fieldPostings = postings.get(field);
+			List<PostingList> lists = new ArrayList<PostingList>();
+			PostingList shortest = null;
+			for(String gram : grams) {
+				PostingList list = fieldPostings.get(gram);
+				if(list == null) {
+					return new int[0];
+				}
+				lists.add(list);
+				if(shortest == null || list.size() < shortest.size()) {
+					shortest = list;
+				}
+			}
+
+			int[] result;
+			int count = 0;
+			if(shortest == null) {
+				// 공백만 입력된 경우 후보를 좁힐 수 없으므로 모든 게시 글과 비교한다.
+				result = new int[docs.size()];
+				for(Map.Entry<Integer, String[]> entry : docs.entrySet()) {
+					if(entry.getValue()[field].contains(query)) {
+						result[count++] = entry.getKey();
+					}
+				}
+				result = Arrays.copyOf(result, count);
+				Arrays.sort(result);
+			} else {
+				result = new int[shortest.size()];
+				candidates:
+				for(int i = 0; i < shortest.size(); i++) {
+					int no = shortest.get(i);
+					for(PostingList list : lists) {
+						if(list != shortest && ! list.contains(no)) {
+							continue candidates;
+						}
+					}
+					// gram이 모두 포함되어도 연속되지 않을 수 있어 원문과 비교한다.
+					if(docs.get(no)[field].contains(query)) {
+						result[count++] = no;
+					}
+				}
+				result = Arrays.copyOf(result, count);
+			}
+
+			// 게시 글 리스트와 같이 번호의 내림차순으로 반환한다.
+			for(int i = 0, j = result.length - 1; i < j; i++, j--) {
+				int temp = result[i];
+				result[i] = result[j];
+				result[j] = temp;
+			}
+			return result;
+		}
+
+		int gramCount() {
+			int count = 0;
+			for(Map<String, PostingList> fieldPostings : postings) {
+				count += fieldPostings.size();
+			}
+			return count;
+		}
+	}
+}
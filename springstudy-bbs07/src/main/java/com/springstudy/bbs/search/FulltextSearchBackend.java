@@ -0,0 +1,121 @@
+package com.springstudy.bbs.search;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.springstudy.bbs.domain.BoardSummary;
+
+/* MySQL의 FULLTEXT 인덱스로 검색하는 검색 백엔드
+ *
+ * springbbs 테이블의 title, writer, content 컬럼에 각각 ngram 파서를
+ * 사용하는 FULLTEXT 인덱스를 만들고(SQL/springbbs_fulltext.sql 참고)
+ * MATCH ... AGAINST 조건으로 검색한다. 검색어 전체를 큰 따옴표로 감싼
+ * BOOLEAN MODE의 구문(phrase) 검색을 사용해 검색어의 n-gram이 연속해서
+ * 나타나는 게시 글만 찾기 때문에 LIKE 검색과 같은 결과를 얻을 수 있다.
+ *
+ * ngram 파서는 ngram_token_size(기본 2) 보다 짧은 단어를 검색할 수 없으므로
+ * 검색어에 minTokenSize 보다 짧은 단어가 있으면 LIKE 검색으로 처리한다.
+ **/
+public class FulltextSearchBackend extends LikeSearchBackend {
+
+	// MySQL 서버의 ngram_token_size와 같은 값으로 지정한다.
+	private int minTokenSize = 2;
+
+	public void setMinTokenSize(int minTokenSize) {
+		this.minTokenSize = minTokenSize;
+	}
+
+	@Override
+	public List<BoardSummary> boardList(
+			int startRow, int num, String type, String keyword) {
+
+		// 커서가 없는 boardListBefore와 같은 결과이다.
+		return boardListBefore(0, startRow, num, type, keyword);
+	}
+
+	@Override
+	public List<BoardSummary> boardListBefore(int beforeNo,
+			int skip, int num, String type, String keyword) {
+
+		Map<String, Object> params = fulltextParams(type, keyword);
+		if(params == null) {
+			return super.boardListBefore(beforeNo, skip, num, type, keyword);
+		}
+		params.put("beforeNo", beforeNo);
+		params.put("skip", skip);
+		params.put("num", num);
+
+		return sqlSession.selectList(
+				NAME_SPACE + ".fulltextListBefore", params);
+	}
+
+	@Override
+	public List<BoardSummary> boardListAfter(int afterNo,
+			int skip, int num, String type, String keyword) {
+
+		Map<String, Object> params = fulltextParams(type, keyword);
+		if(params == null) {
+			return super.boardListAfter(afterNo, skip, num, type, keyword);
+		}
+		params.put("afterNo", afterNo);
+		params.put("skip", skip);
+		params.put("num", num);
+
+		List<BoardSummary> boardList = sqlSession.selectList(
+				NAME_SPACE + ".fulltextListAfter", params);
+		Collections.reverse(boardList);
+		return boardList;
+	}
+
+	@Override
+	public int getBoardCount(String type, String keyword) {
+
+		Map<String, Object> params = fulltextParams(type, keyword);
+		if(params == null) {
+			return super.getBoardCount(type, keyword);
+		}
+		return sqlSession.selectOne(NAME_SPACE + ".fulltextCount", params);
+	}
+
+	@Override
+	public int getBoardCountLimited(String type, String keyword, int limit) {
+
+		Map<String, Object> params = fulltextParams(type, keyword);
+		if(params == null) {
+			return super.getBoardCountLimited(type, keyword, limit);
+		}
+		params.put("limit", limit);
+
+		return sqlSession.selectOne(
+				NAME_SPACE + ".fulltextCountLimited", params);
+	}
+
+	/* FULLTEXT 검색에 사용할 파라미터를 만드는 메서드
+	 * FULLTEXT 인덱스로 검색할 수 없는 검색어면 null을 반환한다.
+	 **/
+	private Map<String, Object> fulltextParams(String type, String keyword) {
+
+		if(! "title".equals(type) && ! "writer".equals(type)
+				&& ! "content".equals(type)) {
+			return null;
+		}
+
+		// 큰 따옴표가 있으면 구문 검색의 따옴표가 닫히므로 LIKE로 검색한다.
+		String phrase = keyword.trim();
+		if(phrase.isEmpty() || phrase.indexOf('"') >= 0) {
+			return null;
+		}
+		for(String word : phrase.split("\\s+")) {
+			if(word.codePointCount(0, word.length()) < minTokenSize) {
+				return null;
+			}
+		}
+
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("type", type);
+		params.put("phrase", "\"" + phrase + "\"");
+		return params;
+	}
+}
@@ -0,0 +1,131 @@
+package com.springstudy.bbs.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.springstudy.bbs.domain.Board;
+import com.springstudy.bbs.domain.BoardSummary;
+
+/* 메모리 역인덱스(BoardSearchIndex)로 검색하는 검색 백엔드
+ *
+ * 인덱스에서 검색어가 포함된 게시 글 번호를 내림차순으로 찾은 후에 한 페이지에
+ * 해당하는 게시 글만 PRIMARY KEY로 DB에서 읽어 온다. 게시 글 수는 인덱스의
+ * 검색 결과로 바로 계산하므로 COUNT 쿼리를 실행하지 않는다.
+ *
+ * 애플리케이션이 시작된 후 인덱스가 준비되기 전에는 LIKE 검색으로 처리한다.
+ **/
+public class IndexSearchBackend extends LikeSearchBackend {
+
+	private BoardSearchIndex searchIndex;
+
+	public void setSearchIndex(BoardSearchIndex searchIndex) {
+		this.searchIndex = searchIndex;
+	}
+
+	public BoardSearchIndex getSearchIndex() {
+		return searchIndex;
+	}
+
+	@Override
+	public List<BoardSummary> boardList(
+			int startRow, int num, String type, String keyword) {
+
+		int[] nos = searchIndex.search(type, keyword);
+		if(nos == null) {
+			return super.boardList(startRow, num, type, keyword);
+		}
+		return boardListByNos(nos, startRow, num);
+	}
+
+	// 인덱스의 결과는 내림차순이므로 beforeNo 보다 작은 첫 번째 위치를 찾는다.
+	@Override
+	public List<BoardSummary> boardListBefore(int beforeNo,
+			int skip, int num, String type, String keyword) {
+
+		int[] nos = searchIndex.search(type, keyword);
+		if(nos == null) {
+			return super.boardListBefore(beforeNo, skip, num, type, keyword);
+		}
+
+		int from = 0;
+		if(beforeNo > 0) {
+			while(from < nos.length && nos[from] >= beforeNo) {
+				from++;
+			}
+		}
+		return boardListByNos(nos, from + skip, num);
+	}
+
+	/* 인덱스의 결과는 내림차순이므로 afterNo 보다 큰 번호는 배열의
+	 * 앞쪽에 있고 afterNo에 가까운 번호부터 skip 개를 건너뛰어야 한다.
+	 **/
+	@Override
+	public List<BoardSummary> boardListAfter(int afterNo,
+			int skip, int num, String type, String keyword) {
+
+		int[] nos = searchIndex.search(type, keyword);
+		if(nos == null) {
+			return super.boardListAfter(afterNo, skip, num, type, keyword);
+		}
+
+		int end = 0;
+		while(end < nos.length && nos[end] > afterNo) {
+			end++;
+		}
+		int to = end - skip;
+		int from = Math.max(to - num, 0);
+		return boardListByNos(nos, from, to - from);
+	}
+
+	@Override
+	public int getBoardCount(String type, String keyword) {
+
+		int[] nos = searchIndex.search(type, keyword);
+		if(nos == null) {
+			return super.getBoardCount(type, keyword);
+		}
+		return nos.length;
+	}
+
+	@Override
+	public int getBoardCountLimited(String type, String keyword, int limit) {
+
+		int[] nos = searchIndex.search(type, keyword);
+		if(nos == null) {
+			return super.getBoardCountLimited(type, keyword, limit);
+		}
+		return Math.min(nos.length, limit);
+	}
+
+	@Override
+	public void boardInserted(Board board) {
+		searchIndex.add(board);
+	}
+
+	@Override
+	public void boardUpdated(Board board) {
+		searchIndex.update(board);
+	}
+
+	@Override
+	public void boardDeleted(int no) {
+		searchIndex.remove(no);
+	}
+
+	/* 인덱스에서 찾은 게시 글 번호 중에서 from 부터 num 개의
+	 * 게시 글을 DB에서 PRIMARY KEY로 읽어 오는 메서드
+	 **/
+	private List<BoardSummary> boardListByNos(int[] nos, int from, int num) {
+
+		List<Integer> pageNos = new ArrayList<Integer>();
+		for(int i = Math.max(from, 0);
+				i < nos.length && pageNos.size() < num; i++) {
+			pageNos.add(nos[i]);
+		}
+
+		if(pageNos.isEmpty()) {
+			return new ArrayList<BoardSummary>();
+		}
+		return sqlSession.selectList(NAME_SPACE + ".boardListByNos", pageNos);
+	}
+}
@@ -0,0 +1,109 @@
+package com.springstudy.bbs.search;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mybatis.spring.SqlSessionTemplate;
+
+import com.springstudy.bbs.domain.Board;
+import com.springstudy.bbs.domain.BoardSummary;
+
+/* LIKE CONCAT('%', #{keyword}, '%') 조건으로 DB에서 바로 검색하는 검색 백엔드
+ *
+ * 게시 글 리스트에 사용하는 BoardMapper.xml의 맵핑 구문을 그대로 사용하기
+ * 때문에 별도의 인덱스가 필요 없지만 검색할 때마다 테이블 전체를 읽는다.
+ * 다른 검색 백엔드가 검색할 수 없는 검색어를 처리할 때도 이 클래스를 사용한다.
+ **/
+public class LikeSearchBackend implements SearchBackend {
+
+	protected static final String NAME_SPACE =
+			"com.springstudy.bbs.mapper.BoardMapper";
+
+	protected SqlSessionTemplate sqlSession;
+
+	public void setSqlSession(SqlSessionTemplate sqlSession) {
+		this.sqlSession = sqlSession;
+	}
+
+	@Override
+	public List<BoardSummary> boardList(
+			int startRow, int num, String type, String keyword) {
+
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("startRow", startRow);
+		params.put("num", num);
+		params.put("type", type);
+		params.put("keyword", keyword);
+
+		return sqlSession.selectList(NAME_SPACE + ".boardList", params);
+	}
+
+	@Override
+	public List<BoardSummary> boardListBefore(int beforeNo,
+			int skip, int num, String type, String keyword) {
+
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("beforeNo", beforeNo);
+		params.put("skip", skip);
+		params.put("num", num);
+		params.put("type", type);
+		params.put("keyword", keyword);
+
+		return sqlSession.selectList(NAME_SPACE + ".boardListBefore", params);
+	}
+
+	// 맵핑 구문은 오름차순으로 읽어 오기 때문에 순서를 뒤집어 반환한다.
+	@Override
+	public List<BoardSummary> boardListAfter(int afterNo,
+			int skip, int num, String type, String keyword) {
+
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("afterNo", afterNo);
+		params.put("skip", skip);
+		params.put("num", num);
+		params.put("type", type);
+		params.put("keyword", keyword);
+
+		List<BoardSummary> boardList =
+				sqlSession.selectList(NAME_SPACE + ".boardListAfter", params);
+		Collections.reverse(boardList);
+		return boardList;
+	}
+
+	@Override
+	public int getBoardCount(String type, String keyword) {
+
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("type", type);
+		params.put("keyword", keyword);
+
+		return sqlSession.selectOne(NAME_SPACE + ".getBoardCount", params);
+	}
+
+	@Override
+	public int getBoardCountLimited(String type, String keyword, int limit) {
+
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("type", type);
+		params.put("keyword", keyword);
+		params.put("limit", limit);
+
+		return sqlSession.selectOne(
+				NAME_SPACE + ".getBoardCountLimited", params);
+	}
+
+	// DB에서 바로 검색하므로 게시 글이 변경되어도 할 일이 없다.
+	@Override
+	public void boardInserted(Board board) {
+	}
+
+	@Override
+	public void boardUpdated(Board board) {
+	}
+
+	@Override
+	public void boardDeleted(int no) {
+	}
+}
@@ -0,0 +1,80 @@
+package com.springstudy.bbs.search;
+
+import java.text.Normalizer;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/* 검색 인덱스에 사용할 n-gram 토크나이저
+ *
+ * 한글은 띄어쓰기 단위의 단어에 조사가 붙어 형태가 바뀌기 때문에 공백으로
+ * 단어를 나눠서는 "회원"으로 "회원님들께서"를 찾을 수 없다. 그래서 형태소
+ * 분석 대신 글자 단위의 uni-gram과 연속된 두 글자의 bi-gram을 인덱싱한다.
+ * 검색어가 한 글자면 uni-gram으로, 두 글자 이상이면 검색어의 모든 bi-gram이
+ * 포함된 게시 글을 후보로 찾고 마지막에 원문과 비교해 LIKE와 같은 결과를 만든다.
+ *
+ * 대소문자와 전각/반각 문자의 차이를 없애기 위해 NFKC로 정규화하고
+ * 소문자로 변환해서 인덱싱과 검색에 모두 사용한다.
+ **/
+public final class NGramTokenizer {
+
+	private NGramTokenizer() {
+	}
+
+	// 인덱싱과 검색에 사용할 수 있도록 문자열을 정규화하는 메서드
+	public static String normalize(String text) {
+		if(text == null) {
+			return "";
+		}
+		return Normalizer.normalize(text, Normalizer.Form.NFKC)
+				.toLowerCase(Locale.ROOT);
+	}
+
+	/* 정규화된 문자열을 인덱싱할 uni-gram과 bi-gram으로 나누는 메서드
+	 * 공백이 포함된 gram은 검색에 도움이 되지 않으므로 제외한다.
+	 **/
+	public static Set<String> indexGrams(String normalized) {
+
+		Set<String> grams = new LinkedHashSet<String>();
+		int length = normalized.length();
+		for(int i = 0; i < length; i++) {
+			char c = normalized.charAt(i);
+			if(Character.isWhitespace(c)) {
+				continue;
+			}
+			grams.add(String.valueOf(c));
+			if(i + 1 < length
+					&& ! Character.isWhitespace(normalized.charAt(i + 1))) {
+				grams.add(normalized.substring(i, i + 2));
+			}
+		}
+		return grams;
+	}
+
+	/* 정규화된 검색어에서 후보 게시 글을 찾을 gram을 만드는 메서드
+	 * 공백이 아닌 글자가 하나 뿐이면 uni-gram을, 그 외에는 bi-gram을 사용한다.
+	 * 반환된 gram이 없으면 후보를 좁힐 수 없으므로 모든 게시 글이 후보가 된다.
+	 **/
+	public static Set<String> queryGrams(String normalized) {
+
+		Set<String> bigrams = new LinkedHashSet<String>();
+		String unigram = null;
+		int length = normalized.length();
+		for(int i = 0; i < length; i++) {
+			char c = normalized.charAt(i);
+			if(Character.isWhitespace(c)) {
+				continue;
+			}
+			unigram = String.valueOf(c);
+			if(i + 1 < length
+					&& ! Character.isWhitespace(normalized.charAt(i + 1))) {
+				bigrams.add(normalized.substring(i, i + 2));
+			}
+		}
+
+		if(bigrams.isEmpty() && unigram != null) {
+			bigrams.add(unigram);
+		}
+		return bigrams;
+	}
+}
@@ -0,0 +1,66 @@
+package com.springstudy.bbs.search;
+
+import java.util.Arrays;
+
+/* 하나의 n-gram이 포함된 게시 글 번호를 오름차순으로 저장하는 포스팅 리스트
+ *
+ * 게시 글 번호는 AUTO_INCREMENT로 계속 증가하기 때문에 대부분의 추가는
+ * 배열의 끝에 붙이는 것으로 끝나고 Integer 객체를 만들지 않도록 int 배열을
+ * 직접 관리한다. 동기화는 BoardSearchIndex의 락으로 처리한다.
+ **/
+final class PostingList {
+
+	private int[] nos = new int[4];
+	private int size;
+
+	// 게시 글 번호를 정렬 순서에 맞게 추가하는 메서드
+	void add(int no) {
+
+		if(size > 0 && nos[size - 1] >= no) {
+			int index = Arrays.binarySearch(nos, 0, size, no);
+			if(index >= 0) {
+				return;
+			}
+			index = -index - 1;
+			ensureCapacity();
+			System.arraycopy(nos, index, nos, index + 1, size - index);
+			nos[index] = no;
+			size++;
+			return;
+		}
+		ensureCapacity();
+		nos[size++] = no;
+	}
+
+	// 게시 글 번호를 제거하는 메서드
+	void remove(int no) {
+
+		int index = Arrays.binarySearch(nos, 0, size, no);
+		if(index >= 0) {
+			System.arraycopy(nos, index + 1, nos, index, size - index - 1);
+			size--;
+		}
+	}
+
+	boolean contains(int no) {
+		return Arrays.binarySearch(nos, 0, size, no) >= 0;
+	}
+
+	int get(int index) {
+		return nos[index];
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	private void ensureCapacity() {
+		if(size == nos.length) {
+			nos = Arrays.copyOf(nos, size + (size >> 1) + 1);
+		}
+	}
+}
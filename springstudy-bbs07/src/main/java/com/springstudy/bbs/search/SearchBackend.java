@@ -0,0 +1,54 @@
+package com.springstudy.bbs.search;
+
+import java.util.List;
+
+import com.springstudy.bbs.domain.Board;
+import com.springstudy.bbs.domain.BoardSummary;
+
+/* 게시 글 검색을 처리하는 검색 백엔드 인터페이스
+ *
+ * BoardService는 검색 요청(type과 keyword가 모두 있는 요청)의 게시 글
+ * 리스트와 게시 글 수를 이 인터페이스를 통해 가져온다. 구현 클래스는
+ * root-context.xml에 searchBackend라는 이름으로 하나만 정의하며 배포 환경에
+ * 따라 LIKE 검색, MySQL FULLTEXT 검색, 메모리 역인덱스 검색 중에서 선택할 수 있다.
+ *
+ * 게시 글 리스트는 모두 게시 글 번호의 내림차순으로 반환해야 한다.
+ **/
+public interface SearchBackend {
+
+	/* 검색 결과에서 startRow 번째 행부터 num 개의 게시 글을 반환 하는 메서드
+	 **/
+	public abstract List<BoardSummary> boardList(
+			int startRow, int num, String type, String keyword);
+
+	/* keyset 페이징 - 검색 결과에서 beforeNo 보다 작은 번호의 게시 글을
+	 * skip 개 건너뛰고 num 개 만큼 반환 하는 메서드
+	 * beforeNo가 0 이하면 가장 최근 게시 글부터 찾는다.
+	 **/
+	public abstract List<BoardSummary> boardListBefore(int beforeNo,
+			int skip, int num, String type, String keyword);
+
+	/* keyset 페이징 - 검색 결과에서 afterNo 보다 큰 번호의 게시 글을
+	 * afterNo에 가까운 순서로 skip 개 건너뛰고 num 개 만큼 반환 하는 메서드
+	 **/
+	public abstract List<BoardSummary> boardListAfter(int afterNo,
+			int skip, int num, String type, String keyword);
+
+	// 검색 결과의 게시 글 수를 반환 하는 메서드
+	public abstract int getBoardCount(String type, String keyword);
+
+	/* 검색 결과의 게시 글 수를 limit 개 까지만 세어 반환 하는 메서드
+	 * 반환 값이 limit과 같으면 실제 게시 글 수는 limit 이상이다.
+	 **/
+	public abstract int getBoardCountLimited(
+			String type, String keyword, int limit);
+
+	/* 게시 글의 추가, 수정, 삭제가 커밋되면 호출되는 메서드
+	 * DB에서 바로 검색하는 백엔드는 아무 일도 하지 않는다.
+	 **/
+	public abstract void boardInserted(Board board);
+
+	public abstract void boardUpdated(Board board);
+
+	public abstract void boardDeleted(int no);
+}
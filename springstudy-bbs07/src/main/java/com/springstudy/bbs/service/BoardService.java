@@ -6,8 +6,10 @@ import java.util.Map;
 import org.springframework.web.multipart.MultipartFile;
 
 import com.springstudy.bbs.domain.Board;
+import com.springstudy.bbs.domain.BoardSummary;
 import com.springstudy.bbs.domain.FileName;
 import com.springstudy.bbs.domain.Reply;
+import com.springstudy.bbs.upload.StagedUploads;
 
 public interface BoardService {
 	
@@ -17,10 +19,24 @@ public interface BoardService {
 	public abstract Map<String, Object> boardList(
 			int pageNum, String type, String keyword);
 
+	/* keyset 페이징을 적용해 한 페이지에 해당하는 게시 글 리스트와
+	 * 페이징 처리에 필요한 데이터를 Map 객체로 반환 하는 메소드
+	 * anchorPage, firstNo, lastNo는 링크를 만든 페이지와 그 페이지의
+	 * 첫 번째, 마지막 게시 글 번호로 없으면 0을 지정한다.
+	 **/
+	public abstract Map<String, Object> boardList(int pageNum, String type, 
+			String keyword, int anchorPage, int firstNo, int lastNo);
+	
+	/* keyset 페이징 - beforeNo 보다 작은 번호의 게시 글 한 페이지를 반환 하는 메서드
+	 * beforeNo가 0 이하면 가장 최근 게시 글부터 한 페이지를 반환한다.
+	 **/
+	public abstract List<BoardSummary> boardListBefore(
+			int beforeNo, String type, String keyword);
+
 	/* BoardDao를 이용해 게시판 테이블에서
 	 * 현재 페이지에 해당하는 게시 글 리스트를 읽어와 반환 하는 메소드
 	 **/
-	public abstract List<Board> boardList();
+	public abstract List<BoardSummary> boardList();
 	
 	/* BoardDao를 이용해 게시판 테이블에서
 	 * no에 해당하는 게시 글 을 읽어와 반환하는 메서드 
@@ -31,6 +47,20 @@ public interface BoardService {
 	// 게시 글 번호에 해당하는 댓글 리스트를 반환하는 메서드
 	public abstract List<Reply> replyList(int no);
 	
+	// 댓글 번호에 해당하는 댓글을 반환하는 메서드 - 댓글이 없으면 null
+	public abstract Reply getReply(int no);
+	
+	/* 게시 글 번호에 해당하는 첨부 파일의 참조 이름 리스트를 반환하는 메서드
+	 * 게시 글의 file1과 files 테이블의 file2를 합쳐서 반환한다.
+	 **/
+	public abstract List<String> attachmentList(int no);
+	
+	/* 게시 글 상세보기 요청 시 호출되는 메서드
+	 * no에 해당하는 게시 글과 댓글 리스트를 읽어와 댓글 리스트가 replyList
+	 * 프로퍼티에 담긴 Board 객체로 반환하고 게시 글 읽은 횟수를 1 증가시킨다.
+	 **/
+	public abstract Board getBoardDetail(int no);
+	
 	/* BoardDao를 이용해 게시판 테이블에서 - 코드기반 트랜잭션 처리 메서드
 	 * no에 해당하는 게시 글 을 읽어와 반환하는 메서드 
  	 * isCount == true 면 게시 상세보기, false 면 게시 글 수정 폼 요청임 
@@ -53,20 +83,27 @@ public interface BoardService {
 	// BoardDao를 이용해 no에 해당하는 게시 글을 삭제하는 메서드
 	public abstract void deleteBoard(int no);
 	
-	/* @Transactional 애노테이션을 이용한 트랜잭션 처리 메서드
+	/* 트랜잭션 처리 메서드
 	 * 다중 파일 정보를 files 테이블에 저장하는 메서드 
+	 * 업로드된 파일은 트랜잭션 밖에서 저장하고 커밋된 후에 업로드 폴더로 옮긴다.
 	 */
 	public abstract void insertBoardMulti(
-						String filePath,
 						Board board, 
 						MultipartFile multipartFile, 
 						MultipartFile[] multiFiles)  throws Exception;
 	
+	/* 스테이징 폴더에 저장된 업로드 파일로 게시 글과 다중 파일 정보를 
+	 * 저장하는 메서드 - 커밋된 후에 스테이징 파일을 업로드 폴더로 옮긴다.
+	 **/
+	public abstract void insertBoardStaged(
+						Board board, 
+						StagedUploads uploads, 
+						List<String> saveNames);
+	
 	/* 코드기반 트랜잭션 처리 메서드
 	 * 다중 파일 정보를 files 테이블에 저장하는 메서드 
 	 **/
 	public abstract Object insertBoardMultiCode(
-						String filePath,
 						Board board, 
 						MultipartFile multipartFile, 
 						MultipartFile[] multiFiles)  throws Exception;
@@ -74,12 +111,22 @@ public interface BoardService {
 	// 추천/땡큐 정보를 업데이트하고 갱신된 추천/땡큐를 가져오는 메서드
 	public Map<String, Integer> recommend(int no, String recommend);
 	
-	// BoardDao를 이용해 게시 글 번호에 해당하는 댓글을 등록하는 메서드
-	public void addReply(Reply reply);
+	/* BoardDao를 이용해 게시 글 번호에 해당하는 댓글을 등록하는 메서드
+	 * 등록된 댓글의 번호와 작성일은 reply에 저장되고 증가된 댓글 리스트의
+	 * 버전을 반환한다. 트랜잭션이 아직 커밋되지 않았으면 0을 반환한다.
+	 **/
+	public long addReply(Reply reply);
+	
+	/* BoardDao를 이용해 댓글을 수정하는 메서드
+	 * 증가된 댓글 리스트의 버전을 반환한다.
+	 **/
+	public long updateReply(Reply reply);
 	
-	// BoardDao를 이용해 댓글을 수정하는 메서드
-	public void updateReply(Reply reply);
+	/* BoardDao를 이용해 댓글 번호에 해당하는 댓글을 삭제하는 메서드
+	 * bbsNo는 댓글이 달린 게시 글 번호이고 증가된 댓글 리스트의 버전을 반환한다.
+	 **/
+	public long deleteReply(int no, int bbsNo);
 	
-	// BoardDao를 이용해 댓글 번호에 해당하는 댓글을 삭제하는 메서드
-	public void deleteReply(int no);
+	// 게시 글 번호에 해당하는 댓글 리스트의 현재 버전을 반환하는 메서드
+	public long replyVersion(int bbsNo);
 }
@@ -1,13 +1,14 @@
 package com.springstudy.bbs.service;
 
-import java.io.File;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -16,13 +17,28 @@ import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.springstudy.bbs.cache.BoardCountCache;
+import com.springstudy.bbs.cache.BoardDetailCache;
+import com.springstudy.bbs.cache.BoardCountCache.CachedCount;
+import com.springstudy.bbs.cache.ReplyVersionTracker;
+import com.springstudy.bbs.counter.ReadCountBuffer;
+import com.springstudy.bbs.counter.RecommendCounter;
 import com.springstudy.bbs.dao.BoardDao;
+import com.springstudy.bbs.datasource.ReplicaRouting;
+import com.springstudy.bbs.domain.AttachmentBlob;
 import com.springstudy.bbs.domain.Board;
+import com.springstudy.bbs.domain.BoardSummary;
 import com.springstudy.bbs.domain.FileName;
 import com.springstudy.bbs.domain.Reply;
+import com.springstudy.bbs.search.SearchBackend;
+import com.springstudy.bbs.support.AfterCommit;
+import com.springstudy.bbs.upload.BlobStore;
+import com.springstudy.bbs.upload.StagedUploads;
+import com.springstudy.bbs.upload.UploadStager;
 
 // 이 클래스가 서비스 계층(비즈니스 로직)의 컴포넌트(Bean) 임을 선언하고 있다.
 @Service
@@ -36,6 +52,12 @@ public class BoardServiceImpl implements BoardService {
 	 **/
 	private static final int PAGE_GROUP = 10;
 	
+	/* keyset 페이징으로 이동할 수 있는 최대 페이지 거리
+	 * 현재 페이지 그룹 안의 페이지와 [이전], [다음] 페이지 그룹으로 이동하는
+	 * 링크는 모두 이 거리 안에 있으므로 커서를 기준으로 바로 찾아갈 수 있다.
+	 **/
+	private static final int MAX_SEEK_PAGES = PAGE_GROUP * 2;
+	
 	/* 인스턴스 필드에 @Autowired annotation을 사용하면 접근지정자가 
 	 * private이고 setter 메서드가 없다 하더라도 문제없이 주입 된다.
 	 * 하지만 우리는 항상 setter 메서드를 준비하는 습관을 들일 수 있도록 하자.
@@ -51,16 +73,96 @@ public class BoardServiceImpl implements BoardService {
 	@Autowired
 	private TransactionTemplate transactionTemplate;
 	
+	// 페이징 처리에 사용하는 게시 글 수 캐시
+	@Autowired
+	private BoardCountCache boardCountCache;
+	
 	public void setBoardDao(BoardDao boardDao) {
 		this.boardDao = boardDao;
 	}
 	
+	public void setBoardCountCache(BoardCountCache boardCountCache) {
+		this.boardCountCache = boardCountCache;
+	}
+	
+	// 게시 글 읽은 횟수의 증가분을 모아 두었다가 DB에 반영하는 버퍼
+	@Autowired
+	private ReadCountBuffer readCountBuffer;
+	
+	public void setReadCountBuffer(ReadCountBuffer readCountBuffer) {
+		this.readCountBuffer = readCountBuffer;
+	}
+	
+	// 게시 글 상세보기에 사용하는 게시 글과 댓글 리스트 캐시
+	@Autowired
+	private BoardDetailCache boardDetailCache;
+	
+	public void setBoardDetailCache(BoardDetailCache boardDetailCache) {
+		this.boardDetailCache = boardDetailCache;
+	}
+	
+	// 게시 글 마다 댓글 리스트의 버전을 관리하는 트래커
+	@Autowired
+	private ReplyVersionTracker replyVersionTracker;
+	
+	public void setReplyVersionTracker(
+			ReplyVersionTracker replyVersionTracker) {
+		this.replyVersionTracker = replyVersionTracker;
+	}
+	
+	// 게시 글의 추천/땡큐 수를 나눠서 저장하고 증가시키는 카운터
+	@Autowired
+	private RecommendCounter recommendCounter;
+	
+	public void setRecommendCounter(RecommendCounter recommendCounter) {
+		this.recommendCounter = recommendCounter;
+	}
+	
+	// 업로드된 파일을 트랜잭션 밖에서 스테이징 폴더에 저장하는 컴포넌트
+	@Autowired
+	private UploadStager uploadStager;
+	
+	public void setUploadStager(UploadStager uploadStager) {
+		this.uploadStager = uploadStager;
+	}
+	
+	@Autowired
+	private BlobStore blobStore;
+	
+	public void setBlobStore(BlobStore blobStore) {
+		this.blobStore = blobStore;
+	}
+	
+	/* 제목, 작성자, 내용 검색을 처리하는 검색 백엔드
+	 * root-context.xml에 searchBackend라는 이름으로 정의한 빈이 주입된다.
+	 **/
+	@Autowired
+	private SearchBackend searchBackend;
+	
+	public void setSearchBackend(SearchBackend searchBackend) {
+		this.searchBackend = searchBackend;
+	}
+	
 	/* BoardDao를 이용해 게시판 테이블에서 한 페이지에 해당하는 게시 글
 	 * 리스트와 페이징 처리에 필요한 데이터를 Map 객체로 반환 하는 메소드
 	 **/
 	@Override
 	public Map<String, Object> boardList(
 			int pageNum, String type, String keyword) {
+		return boardList(pageNum, type, keyword, 0, 0, 0);
+	}
+	
+	/* keyset 페이징을 적용해 한 페이지에 해당하는 게시 글 리스트와
+	 * 페이징 처리에 필요한 데이터를 Map 객체로 반환 하는 메소드
+	 * 
+	 * anchorPage는 링크를 만든 페이지(이전에 보고 있던 페이지) 번호이고
+	 * firstNo, lastNo는 그 페이지의 첫 번째와 마지막 게시 글 번호이다.
+	 * 커서 정보가 없거나 커서에서 너무 먼 페이지를 요청하면 기존과 같이
+	 * LIMIT startRow, num 방식으로 게시 글 리스트를 읽어 온다.
+	 **/
+	@Override
+	public Map<String, Object> boardList(int pageNum, String type, 
+			String keyword, int anchorPage, int firstNo, int lastNo) {
 		
 		// 요청 파라미터의 pageNum을 현재 페이지로 설정
 		int currentPage = pageNum;
@@ -85,11 +187,22 @@ public class BoardServiceImpl implements BoardService {
 		boolean searchOption = (type.equals("null") 
 				|| keyword.equals("null")) ? false : true; 
 		
-		/* 맵핑 구문 안에서 동적쿼리를 사용해 type이 없으면 전체 게시 글의
-		 * 수를 반환하고, type이 존재하면 제목이나 내용 또는 작성자를 기준으로
-		 * 검색어가 포함된 게시 글 수를 반환한다.
+		/* type이 없으면 전체 게시 글의 수를, type이 존재하면 제목이나 내용
+		 * 또는 작성자를 기준으로 검색어가 포함된 게시 글 수를 구한다.
+		 * 게시 글 수는 BoardCountCache에 캐싱된 값을 우선 사용하고
+		 * 캐싱된 값이 없을 때만 DB에서 읽어 온다.
+		 * 
+		 * approximate가 true면 검색 결과의 게시 글 수를 현재 페이지 그룹과
+		 * [다음] 링크를 출력하는 데 필요한 만큼만 센 근사치 이다.
 		 **/
-		listCount = boardDao.getBoardCount(type, keyword);		
+		boolean approximate = false;
+		if(searchOption) {
+			CachedCount count = getSearchCount(type, keyword, currentPage);
+			listCount = count.getCount();
+			approximate = count.isApproximate();
+		} else {
+			listCount = getTotalCount();
+		}
 		System.out.println("listCount : " + listCount + ", type : " 
 					+ type + ", keyword : " + keyword);
 		
@@ -103,8 +216,8 @@ public class BoardServiceImpl implements BoardService {
 			 * LIMIT 명령을 제공하고 있다. LIMIT의 첫 번째 매개변수에 가져올 데이터의
 			 * 시작 행을 지정하고 두 번째 매개변수에 가져올 데이터의 개수를 지정하면 된다.
 			 **/
-			List<Board> boardList = boardDao.boardList(
-					startRow, PAGE_SIZE, type, keyword);
+			List<BoardSummary> boardList = seekBoardList(currentPage, startRow, 
+					type, keyword, anchorPage, firstNo, lastNo);
 			
 			/* 페이지 그룹 이동 처리를 위해 전체 페이지를 계산 한다.
 			 * [이전] 11 12 13...   또는   ... 8 9 10 [다음] 과 같은 페이징 처리
@@ -162,6 +275,16 @@ public class BoardServiceImpl implements BoardService {
 			modelMap.put("listCount", listCount);
 			modelMap.put("pageGroup", PAGE_GROUP);
 			modelMap.put("searchOption", searchOption);
+			modelMap.put("approximate", approximate);
+			
+			/* 다음 페이지 링크에서 keyset 페이징의 커서로 사용할 수 있도록
+			 * 현재 페이지의 첫 번째와 마지막 게시 글 번호를 저장한다.
+			 **/
+			if(! boardList.isEmpty()) {
+				modelMap.put("firstNo", boardList.get(0).getNo());
+				modelMap.put("lastNo", 
+						boardList.get(boardList.size() - 1).getNo());
+			}
 			
 			// 검색 요청이면 type과 keyword를 모델에 저장한다.
 			if(searchOption) {
@@ -189,11 +312,132 @@ public class BoardServiceImpl implements BoardService {
 		}
 	}
 
+	/* 전체 게시 글 수를 반환 하는 메서드
+	 * 캐싱된 값이 없을 때만 COUNT 쿼리를 실행한다.
+	 **/
+	private int getTotalCount() {
+		
+		int total = boardCountCache.getTotal();
+		if(total < 0) {
+			long generation = boardCountCache.beginLoad();
+			total = boardDao.getBoardCount("null", "null");
+			boardCountCache.setTotal(total, generation);
+		}
+		return total;
+	}
+	
+	/* 검색 결과의 게시 글 수를 반환 하는 메서드
+	 * 
+	 * 근사치 모드에서는 현재 페이지가 속한 페이지 그룹의 마지막 페이지까지 채우고
+	 * 한 건이 더 있는지(다음 페이지 그룹이 있는지)만 알면 되므로 그 개수까지만 센다.
+	 * 캐싱된 값이 정확한 값이거나 필요한 개수 이상을 센 근사치이면 그대로 사용한다.
+	 **/
+	private CachedCount getSearchCount(
+			String type, String keyword, int currentPage) {
+		
+		int groupEndPage = ((currentPage - 1) / PAGE_GROUP + 1) * PAGE_GROUP;
+		int limit = groupEndPage * PAGE_SIZE + 1;
+		
+		CachedCount count = boardCountCache.getFiltered(type, keyword);
+		if(count != null && (! count.isApproximate() 
+				|| count.getCount() >= limit)) {
+			return count;
+		}
+		
+		if(boardCountCache.isApproximateSearch()) {
+			int limited = 
+					searchBackend.getBoardCountLimited(type, keyword, limit);
+			return boardCountCache.putFiltered(
+					type, keyword, limited, limited >= limit);
+		}
+		return boardCountCache.putFiltered(type, keyword, 
+				searchBackend.getBoardCount(type, keyword), false);
+	}
+	
+	/* 요청한 페이지의 게시 글 리스트를 커서(anchorPage의 첫 번째, 마지막 게시 글
+	 * 번호)를 기준으로 읽어오는 메서드
+	 * 
+	 * - 다음 쪽 페이지 : lastNo 보다 작은 번호를 (거리 - 1) 페이지 만큼 건너뛰고 읽는다.
+	 * - 이전 쪽 페이지 : firstNo 보다 큰 번호를 (거리 - 1) 페이지 만큼 건너뛰고 읽는다.
+	 * - 첫 페이지 : 커서 없이 가장 최근 게시 글부터 읽는다.
+	 * 
+	 * 건너뛰는 행은 MAX_SEEK_PAGES 페이지 이내로 제한되기 때문에 페이지가
+	 * 아무리 깊어도 PRIMARY KEY 인덱스에서 일정한 범위만 읽게 된다.
+	 **/
+	private List<BoardSummary> seekBoardList(int currentPage, int startRow, 
+			String type, String keyword, 
+			int anchorPage, int firstNo, int lastNo) {
+		
+		int distance = currentPage - anchorPage;
+		
+		if(anchorPage > 0 && distance > 0 
+				&& distance <= MAX_SEEK_PAGES && lastNo > 0) {
+			return boardListBefore(lastNo, 
+					(distance - 1) * PAGE_SIZE, PAGE_SIZE, type, keyword);
+			
+		} else if(anchorPage > 0 && distance < 0 
+				&& -distance <= MAX_SEEK_PAGES && firstNo > 0) {
+			return boardListAfter(firstNo, 
+					(-distance - 1) * PAGE_SIZE, PAGE_SIZE, type, keyword);
+			
+		} else if(anchorPage > 0 && distance == 0 && firstNo > 0) {
+			return boardListBefore(
+					firstNo + 1, 0, PAGE_SIZE, type, keyword);
+			
+		} else if(currentPage == 1) {
+			return boardListBefore(0, 0, PAGE_SIZE, type, keyword);
+		}
+		
+		// 커서가 없는 깊은 페이지 요청은 기존 방식으로 읽어 온다.
+		if(isSearch(type, keyword)) {
+			return searchBackend.boardList(startRow, PAGE_SIZE, type, keyword);
+		}
+		return boardDao.boardList(startRow, PAGE_SIZE, type, keyword);
+	}
+	
+	// type과 keyword가 모두 있는 검색 요청인지 여부
+	private boolean isSearch(String type, String keyword) {
+		return ! "null".equals(type) && ! "null".equals(keyword);
+	}
+	
+	/* 검색 요청이면 검색 백엔드에서, 그렇지 않으면 DAO에서 
+	 * beforeNo 보다 작은 번호의 게시 글을 읽어 오는 메서드
+	 **/
+	private List<BoardSummary> boardListBefore(int beforeNo, 
+			int skip, int num, String type, String keyword) {
+		if(isSearch(type, keyword)) {
+			return searchBackend.boardListBefore(
+					beforeNo, skip, num, type, keyword);
+		}
+		return boardDao.boardListBefore(beforeNo, skip, num, type, keyword);
+	}
+	
+	/* 검색 요청이면 검색 백엔드에서, 그렇지 않으면 DAO에서 
+	 * afterNo 보다 큰 번호의 게시 글을 읽어 오는 메서드
+	 **/
+	private List<BoardSummary> boardListAfter(int afterNo, 
+			int skip, int num, String type, String keyword) {
+		if(isSearch(type, keyword)) {
+			return searchBackend.boardListAfter(
+					afterNo, skip, num, type, keyword);
+		}
+		return boardDao.boardListAfter(afterNo, skip, num, type, keyword);
+	}
+	
+	/* keyset 페이징 - beforeNo 보다 작은 번호의 게시 글 한 페이지를 반환 하는 메서드
+	 * beforeNo가 0 이하면 가장 최근 게시 글부터 한 페이지를 반환한다.
+	 **/
+	@Override
+	public List<BoardSummary> boardListBefore(
+			int beforeNo, String type, String keyword) {
+		return boardListBefore(beforeNo, 0, PAGE_SIZE, type, keyword);
+	}
+
 	/* ajax 용 테스트 메서드
 	 **/
 	@Override
-	public List<Board> boardList() {
-		return boardDao.boardList(0, 10, "null", "null");
+	public List<BoardSummary> boardList() {
+		return boardDao.boardListBefore(0, 0, PAGE_SIZE, "null", "null");
 	}
 	
 	/* @Transactional 애노테이션을 이용한 트랜잭션 처리는 아주 간단하다.
@@ -287,21 +531,130 @@ public class BoardServiceImpl implements BoardService {
 	 * 	정교하게 예외를 제어할 수 있다.
 	 **/
 	@Transactional(propagation=Propagation.REQUIRED,
-			isolation=Isolation.DEFAULT,
-			rollbackFor= {Exception.class, RuntimeException.class})
+			isolation=Isolation.DEFAULT, readOnly=true)
 	
 	/* BoardDao를 이용해 게시판 테이블에서
 	 * no에 해당하는 게시 글 을 읽어와 반환하는 메서드 
  	 * isCount == true 면 게시 상세보기, false 면 게시 글 수정 폼 요청임 
+ 	 * 
+ 	 * 게시 글 읽은 횟수는 ReadCountBuffer에 모아 두었다가 주기적으로 DB에
+ 	 * 반영하므로 게시 글을 읽기만 하는 읽기 전용 트랜잭션으로 처리한다.
 	 **/
 	@Override
 	public Board getBoard(int no, boolean isCount) {		
-		return boardDao.getBoard(no, isCount);
+		return countRead(loadBoard(no), isCount);
+	}
+	
+	/* 게시 글 상세보기 캐시에서 게시 글을 찾고 캐싱된 게시 글이 없으면
+	 * DB에서 읽어와 캐시에 저장하는 메서드
+	 * 
+	 * 캐시는 모든 사용자가 공유하므로 캐시에 저장할 값은 주 DB에서 읽는다.
+	 * 복제 DB에서 읽으면 변경 직후에 캐시가 제거되더라도 아직 변경이
+	 * 반영되지 않은 값이 다시 캐싱되어 다음 변경까지 남아 있게 된다.
+	 **/
+	private Board loadBoard(int no) {
+		
+		Board board = boardDetailCache.getBoard(no);
+		if(board == null) {
+			long generation = boardDetailCache.beginLoad();
+			Boolean previous = ReplicaRouting.beginPrimary();
+			try {
+				board = boardDao.getBoard(no, false);
+			} finally {
+				ReplicaRouting.endPrimary(previous);
+			}
+			boardDetailCache.putBoard(board, generation);
+		}
+		return board;
+	}
+	
+	/* 게시 글 상세보기 요청이면 읽은 횟수를 1 증가시키고 아직 DB에
+	 * 반영되지 않은 증가분을 게시 글의 readCount에 더해주는 메서드
+	 **/
+	private Board countRead(Board board, boolean isCount) {
+		
+		if(board == null) {
+			return null;
+		}
+		if(isCount) {
+			readCountBuffer.increment(board.getNo());
+		}
+		board.setReadCount(
+				board.getReadCount() + readCountBuffer.pending(board.getNo()));
+		return board;
+	}
+	
+	/* 게시 글 번호에 해당하는 첨부 파일의 참조 이름 리스트를 반환하는 메서드
+	 * 게시 글의 file1과 files 테이블의 file2를 합쳐서 반환한다.
+	 **/
+	@Override
+	public List<String> attachmentList(int no) {
+		return boardDao.fileReferences(no);
 	}
 	
 	// 게시 글 번호에 해당하는 댓글 리스트를 반환하는 메서드
 	public List<Reply> replyList(int no) {
-		return boardDao.replyList(no);
+		
+		// 게시 글 상세보기 캐시에 댓글 리스트가 없을 때만 DB에서 읽어 온다.
+		List<Reply> replyList = boardDetailCache.getReplyList(no);
+		if(replyList == null) {
+			long generation = boardDetailCache.beginLoad();
+			Boolean previous = ReplicaRouting.beginPrimary();
+			try {
+				replyList = boardDao.replyList(no);
+			} finally {
+				ReplicaRouting.endPrimary(previous);
+			}
+			boardDetailCache.putReplyList(no, replyList, generation);
+		}
+		return replyList;
+	}
+	
+	/* 댓글 번호에 해당하는 댓글을 반환하는 메서드 - 댓글이 없으면 null
+	 * 방금 변경한 댓글을 다시 읽을 때 사용하므로 주 DB에서 읽는다.
+	 **/
+	@Override
+	public Reply getReply(int no) {
+		Boolean previous = ReplicaRouting.beginPrimary();
+		try {
+			return boardDao.getReply(no);
+		} finally {
+			ReplicaRouting.endPrimary(previous);
+		}
+	}
+	
+	/* 게시 글 상세보기 요청 시 게시 글과 댓글 리스트를 반환 하는 메서드
+	 * 
+	 * 게시 글과 댓글 리스트가 모두 캐싱되어 있으면 캐시에서 가져오고 하나라도
+	 * 없으면 BoardDao의 getBoardDetail()로 게시 글과 댓글 리스트를 한 번의
+	 * 쿼리로 읽어와 캐시에 저장한다. 게시 글 읽은 횟수는 getBoard()와 같이
+	 * ReadCountBuffer로 증가시킨다. 캐시에 저장할 값은 loadBoard()와 같이
+	 * 주 DB에서 읽는다.
+	 **/
+	@Transactional(readOnly=true)
+	@Override
+	public Board getBoardDetail(int no) {
+		
+		Board board = boardDetailCache.getBoardDetail(no);
+		if(board == null) {
+			long generation = boardDetailCache.beginLoad();
+			Boolean previous = ReplicaRouting.beginPrimary();
+			try {
+				board = boardDao.getBoardDetail(no);
+			} finally {
+				ReplicaRouting.endPrimary(previous);
+			}
+			if(board == null) {
+				return null;
+			}
+			if(board.getReplyList() == null) {
+				board.setReplyList(new ArrayList<Reply>());
+			}
+			boardDetailCache.putBoard(board, generation);
+			boardDetailCache.putReplyList(
+					no, board.getReplyList(), generation);
+		}
+		return countRead(board, true);
 	}
 	
 	// 코드기반 트랜잭션 메서드
@@ -335,7 +688,7 @@ public class BoardServiceImpl implements BoardService {
 			public Board doInTransaction(
 					TransactionStatus transactionStatus) {
 				
-				Board board = boardDao.getBoard(no, isCount);
+				Board board = countRead(loadBoard(no), isCount);
 				
 				/* TransactionTemplate은 doInTransaction() 메서드 안에서
 				 * RuntimeException이 발생하면 PlatformTransactionManager의
@@ -364,7 +717,7 @@ public class BoardServiceImpl implements BoardService {
 	public void insertBoard(Board board) {			
 			// 파일 업로드가 완료되면 BoardDao를 이용해 게시 글을 DB에 저장한다.
 			boardDao.insertBoard(board);
-	
+			boardInserted(board);
 	}
 	
 	/* 게시 글 수정, 삭제 시 비밀번호 입력을 체크하는 메서드
@@ -380,63 +733,248 @@ public class BoardServiceImpl implements BoardService {
 	@Override
 	public void updateBoard(Board board) {
 		boardDao.updateBoard(board);
+		boardUpdated(board);
 	}
 
-	// BoardDao를 이용해 no에 해당하는 게시 글을 삭제하는 메서드
+	/* BoardDao를 이용해 no에 해당하는 게시 글을 삭제하는 메서드
+	 * 
+	 * 첨부 파일은 다른 게시 글에서도 참조할 수 있으므로 바로 삭제하지 않고
+	 * 게시 글의 file1과 files 테이블의 file2가 참조하는 파일의 참조 수를
+	 * 줄인다. 참조가 모두 없어진 파일만 트랜잭션이 커밋된 후에 삭제한다.
+	 * 
+	 * 삭제 요청이 두 번 전송되거나 다른 요청이 먼저 삭제해 삭제된 게시 글이
+	 * 없으면 참조 수와 게시 글 수 캐시를 다시 줄이지 않도록 그대로 끝낸다.
+	 **/
 	@Override
+	@Transactional
 	public void deleteBoard(int no) {
-		boardDao.deleteBoard(no);
+		List<String> references = boardDao.fileReferences(no);
+		if(boardDao.deleteBoard(no) == 0) {
+			return;
+		}
+		releaseBlobs(references);
+		boardDeleted(no);
 	}
 		
-	@Transactional
-	/* @Transactional 애노테이션을 이용한 트랜잭션 처리 메서드
+	/* 첨부 파일의 참조 이름으로 attachment_blob 테이블의 참조 수를 줄이는 메서드
+	 * 해시 이름으로 저장되기 전의 파일(UUID_원본파일이름)은 참조 수가 없으므로
+	 * 이전과 같이 그대로 둔다.
+	 **/
+	private void releaseBlobs(List<String> references) {
+		for(String reference : references) {
+			final String hash = BlobStore.hashOf(reference);
+			if(hash == null) {
+				continue;
+			}
+			boardDao.releaseBlobReference(hash);
+			if(boardDao.deleteUnreferencedBlob(hash) > 0) {
+				AfterCommit.execute(new Runnable() {
+					@Override
+					public void run() {
+						blobStore.deleteIfUnreferenced(hash);
+					}
+				});
+			}
+		}
+	}
+	
+	/* 게시 글이 추가되면 호출되는 메서드
+	 * 트랜잭션이 커밋된 후에 게시 글 수 캐시와 검색 백엔드에 반영한다.
+	 **/
+	private void boardInserted(final Board board) {
+		AfterCommit.execute(new Runnable() {
+			@Override
+			public void run() {
+				boardCountCache.increment();
+				searchBackend.boardInserted(board);
+			}
+		});
+	}
+	
+	/* 게시 글이 수정되면 호출되는 메서드
+	 * 트랜잭션이 커밋된 후에 검색 백엔드와 게시 글 상세보기 캐시에 반영한다.
+	 **/
+	private void boardUpdated(final Board board) {
+		AfterCommit.execute(new Runnable() {
+			@Override
+			public void run() {
+				searchBackend.boardUpdated(board);
+				boardDetailCache.invalidate(board.getNo());
+			}
+		});
+	}
+	
+	/* 게시 글이 삭제되면 호출되는 메서드
+	 * 트랜잭션이 커밋된 후에 게시 글 수 캐시, 검색 백엔드와 게시 글 상세보기
+	 * 캐시에 반영하고 댓글 리스트의 버전을 제거한다.
+	 **/
+	private void boardDeleted(final int no) {
+		AfterCommit.execute(new Runnable() {
+			@Override
+			public void run() {
+				boardCountCache.decrement();
+				searchBackend.boardDeleted(no);
+				boardDetailCache.invalidate(no);
+				replyVersionTracker.remove(no);
+			}
+		});
+	}
+		
+	/* 트랜잭션 처리 메서드
 	 * 다중 파일 정보를 files 테이블에 저장하는 메서드 
-	 */
+	 * 
+	 * 이전에는 메서드 전체에 @Transactional을 적용했기 때문에 업로드된 파일을
+	 * 모두 저장할 때까지 DB 커넥션을 잡고 있었다. 커넥션 풀의 커넥션 수는 많지
+	 * 않기 때문에 업로드가 느린 요청 몇 개만으로 다른 요청이 커넥션을 얻지
+	 * 못하게 된다. 그래서 아래와 같이 두 단계로 나눠서 처리한다.
+	 * 
+	 * 1. 트랜잭션 밖에서 업로드된 파일을 스테이징 폴더에 저장한다.
+	 * 2. TransactionTemplate으로 짧은 트랜잭션을 시작해 게시 글과 파일 정보만
+	 *    DB에 추가한다. 트랜잭션이 롤백되면 스테이징 파일을 삭제한다.
+	 * 3. 트랜잭션이 커밋되고 커넥션을 반환한 후에 스테이징 파일을 업로드
+	 *    폴더로 옮긴다.
+	 * 
+	 * @Transactional은 메서드가 시작될 때 커넥션을 얻기 때문에 이 메서드에는
+	 * 적용할 수 없어 트랜잭션 구간만 TransactionTemplate으로 처리했다.
+	 **/
 	@Override
 	public void insertBoardMulti(
-						String filePath,
-						Board board, 
+						final Board board, 
 						MultipartFile multipartFile, 
 						MultipartFile[] multiFiles) throws Exception {		
 		
-		/* 업로드한 Multipart 데이터(파일)에 접근하기
-		 * 스프링은 MultipartResolver를 사용해 멀티파트 데이터에
-		 * 접근할 수 있는 아래와 같은 다양한 방법을 제공하고 있다.
-		 * 
-		 * - MultipartFile 인터페이스를 이용한 접근
-		 * - @RequestParam 애노테이션을 이용한 접근
-		 * - MultipartHttpServletRequest를 이용한 접근
-		 * - 커맨드 객체를 이용한 접근
-		 *   커맨드 클래스에 MultipartFile 타입의 프로퍼티가 있어야 한다. 
-		 * - 서블릿 3의 Part를 이용한 접근
-		 * 
-		 * 이 예제는 MultipartFile을 이용한 파일 업로드 방법을
-		 * 소개하고 있다.
-		 **/		
-		if(!multipartFile.isEmpty()) { // 업로드된 파일 데이터가 존재하면
+		final StagedUploads uploads = uploadStager.begin();
+		try {
+			insertBoardStaged(board, uploads, 
+					stageFiles(uploads, board, multipartFile, multiFiles));
+		} finally {
+			// 트랜잭션을 시작하지 못했을 때 남은 스테이징 파일을 삭제한다.
+			uploads.discard();
+		}
+	}
 			
-			/* UUID(Universally Unique Identifier, 범용 고유 식별자)
-			 * 소프트웨어 구축에 쓰이는 식별자의 표준으로 네트워크 상에서 서로 모르는
-			 * 개체들을 식별하고 구별하기 위해서 사용된다. UUID 표준에 따라 이름을
-			 * 부여하면 고유성을 완벽하게 보장할 수는 없지만 실제 사용상에서 중복될 
-			 * 가능성이 거의 없다고 인정되기 때문에 실무에서 많이 사용되고 있다.
-			 * 
-			 * 파일 이름의 중복을 막고 고유한 파일 이름으로 저장하기 위해 java.util
-			 * 패키지의 UUID 클래스를 이용해 랜덤한 UUID 값을 생성한다.
+	/* 이미 스테이징 폴더에 저장된 업로드 파일로 게시 글을 등록하는 메서드
+	 * 
+	 * MultipartIngestor가 요청 본문을 읽으면서 스테이징 폴더에 바로 저장한
+	 * 파일의 정보를 짧은 트랜잭션으로 DB에 추가한다. 트랜잭션이 롤백되면
+	 * 스테이징 파일을 삭제하고 커밋되면 커넥션을 반환한 후에 스테이징 파일을
+	 * 업로드 폴더로 옮긴다.
+	 **/
+	@Override
+	public void insertBoardStaged(final Board board, 
+			final StagedUploads uploads, final List<String> saveNames) {
+		
+		transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(
+					TransactionStatus transactionStatus) {
+				uploads.trackCommit();
+				insertBoardFiles(board, uploads, saveNames);
+			}
+		});
+		uploads.promoteIfCommitted();
+	}
+	
+	/* 코드기반 트랜잭션 처리 메서드
+	 * 다중 파일 정보를 files 테이블에 저장하는 메서드 
+	 * 
+	 * insertBoardMulti()와 같이 파일은 트랜잭션을 시작하기 전에 스테이징
+	 * 폴더에 저장하고 트랜잭션 안에서는 DB 작업만 처리한다.
+	 **/
+	@Override
+	public Object insertBoardMultiCode(			
+						final Board board, 
+						MultipartFile multipartFile, 
+						MultipartFile[] multiFiles) throws Exception {		
+		
+		final StagedUploads uploads = uploadStager.begin();
+		try {
+			final List<String> saveNames = 
+					stageFiles(uploads, board, multipartFile, multiFiles);
+			
+			/* 스프링이 지원하는 트랜잭션 기능을 코드에서 직접 처리 하려면 아래와 같이
+			 * TransactionTemplate 클래스의 execute() 메서드를 이용한다.
+			 * execute() 메서드는 그 내부에서 PlaformTransactionManager를
+			 * 이용해 트랜잭션을 시작하고 매개변수로 넘겨 받은 TransactionCallback
+			 * 객체의 doInTransaction() 메서드를 호출한다. doInTransaction()
+			 * 메서드가 정상적으로 완료되면 execute() 메서드는 트랜잭션을 커밋하고 
+			 * doInTransaction() 메서드가 반환한 데이터를 받아 그대로 반환한다. 
+			 * doInTranscation() 메서드 내부에서 RuntimeException이
+			 * 발생하면 execute() 메서드는 PlaformTransactionManager를
+			 * 이용해 트랜잭션을 롤백하고 예외를 전파 시킨다.
+			 * Checked 계열 예외가 발생하면 catch 블록안에서 매개변수로 넘겨 받은
+			 * TransactionStatus 객체의 setRollbackOnly() 메서드를 호출해
+			 * 트랜잭션을 롤백하면 된다. 이 때 반환되는 타입은 메서드가 정상적으로
+			 * 실행이 완료될 때 반환할 타입과 예외가 발생되면 반환할 타입 모두를
+			 * 적용해야 하므로 Object 타입을 지정하는 것이 좋다.
 			 **/
-			UUID uid = UUID.randomUUID();
-			String saveName = 
-					uid.toString() + "_" + multipartFile.getOriginalFilename();
+			Object result = transactionTemplate.execute(
+				new TransactionCallback<Object>() {
+				@Override
+				public Object doInTransaction(
+							TransactionStatus transactionStatus) {
 			
-			File file = new File(filePath, saveName);
-			System.out.println("insertBoardMulti - newName : " + file.getName());			
+					Object obj = null;
 			
-			// 업로드 되는 파일을 upload 폴더로 저장한다.
-			multipartFile.transferTo(file);
+					try {
+						uploads.trackCommit();
+						insertBoardFiles(board, uploads, saveNames);
+			
+					}catch(Exception e) {
+						transactionStatus.setRollbackOnly();
+						obj = e;
+						e.printStackTrace();
+					}
+					
+					return obj;
+				}
+			});
 			
-			// 업로드된 파일 명을 Board 객체에 저장한다.
-			board.setFile1(saveName);
+			// 커넥션을 반환한 후에 스테이징 파일을 업로드 폴더로 옮긴다.
+			uploads.promoteIfCommitted();
+			return result;
+		} catch(IOException e) {
+			e.printStackTrace();
+			return e;
+		} finally {
+			// 트랜잭션을 시작하지 못했을 때 남은 스테이징 파일을 삭제한다.
+			uploads.discard();
+		}
+	}
+	
+	/* 업로드된 파일을 스테이징 폴더에 저장하는 메서드
+	 * 
+	 * file1로 업로드된 파일의 이름은 Board 객체에 저장하고 다중 파일로 업로드된
+	 * 파일의 이름은 리스트로 반환한다. 트랜잭션을 시작하기 전에 호출해야 한다.
+	 **/
+	private List<String> stageFiles(StagedUploads uploads, Board board,
+			MultipartFile multipartFile, MultipartFile[] multiFiles) 
+					throws IOException {
+		
+		// 업로드된 파일 데이터가 존재하면
+		if(multipartFile != null && ! multipartFile.isEmpty()) {
+			board.setFile1(uploads.stage(multipartFile));
+		}
+		
+		List<String> saveNames = new ArrayList<String>();
+		if(multiFiles != null) {
+			for(MultipartFile uploadFile : multiFiles) {
+				
+				// 다중 업로드된 파일 데이터가 존재하면
+				if(! uploadFile.isEmpty()) {
+					saveNames.add(uploads.stage(uploadFile));
+				}
+			}
 		}
+		return saveNames;
+	}
+	
+	/* 게시 글과 다중 파일 정보를 DB에 추가하는 메서드
+	 * 트랜잭션 안에서 호출되며 파일 저장과 같은 I/O 작업은 하지 않는다.
+	 * 스테이징 된 첨부 파일 마다 attachment_blob 테이블의 참조 수를 증가시킨다.
+	 **/
+	private void insertBoardFiles(Board board, 
+			StagedUploads uploads, List<String> saveNames) {
 		
 		/* BoardService 클래스를 이용해
 		 * 폼에서 넘어온 게시 글 정보를 게시 글 테이블에 추가한다.
@@ -448,238 +986,96 @@ public class BoardServiceImpl implements BoardService {
 		 * 	<insert id="insertBoard" parameterType="Board"
 		 * 		useGeneratedKeys="true" keyProperty="no">
 		 * 
-		 * 테이블에 하나의 레코드를 INSERT 할때 자동으로 증가되는 컬럼이나
-		 * Sequence를 사용하는 컬럼의 값을 읽어와야 할 때도 있다.
-		 * 보통 자동 증가되는 컬럼의 값은 데이터가 INSERT 된 후에 읽어오고
-		 * Sequence일 경우 INSERT 이전에 값을 읽어와야 한다.
-		 * 이렇게 INSERT 작업을 하면서 생성된 키의 값을 읽어와야 할 경우
-		 * 아래와 같이 useGeneratedKeys="true"를 지정하고 자동 생성된
-		 * 키의 값을 설정할 자바 모델 객체의 프로퍼티 이름을 keyProperty에
-		 * 지정하면 Board 객체의 no 프로퍼티에 값을 설정해 준다.
+		 * useGeneratedKeys="true"를 지정하고 자동 생성된 키의 값을 설정할
+		 * 자바 모델 객체의 프로퍼티 이름을 keyProperty에 지정하면 Board 객체의
+		 * no 프로퍼티에 값을 설정해 준다.
 		 **/
 		System.out.println("insert No : " + board.getNo());	
+		boardInserted(board);
 		
-		// 다중 파일 업로드 처리
+		/* FileName 객체를 생성해 파일 하나의 정보를 저장하여 리스트에 담고
+		 * 다중 파일 정보가 비어있지 않으면 files 테이블에 추가한다.
+		 **/
 		ArrayList<FileName> fileNames = new ArrayList<FileName>();	
-		
-		// Exception 강제 발생		
-		//throw new RuntimeException("RuntimeException 발생");
-				
-		for(int i = 0; i < multiFiles.length; i++) {
-			
-			MultipartFile uploadFile = multiFiles[i];
-			
-			// 다중 업로드된 파일 데이터가 존재하면
-			if(!uploadFile.isEmpty()) { 
-
-				UUID uid = UUID.randomUUID();
-				String saveName = 
-						uid.toString() + "_" + uploadFile.getOriginalFilename();
-				
-				File file = new File(filePath, saveName);
-				System.out.println("multiNewName : " + file.getName());			
-				
-				// 업로드 되는 파일을 upload 폴더로 저장한다.
-				uploadFile.transferTo(file);
-				
-				/* FileName 객체를 생성해 파일 하나의 정보를 저장하여
-				 * 리스트에 담는다. 
-				 **/
-				FileName fileName = new FileName(saveName, board.getNo());
-				fileNames.add(fileName);
-			}
+		for(String saveName : saveNames) {
+			fileNames.add(new FileName(saveName, board.getNo()));
 		}		
 		
-		/* 다중 파일 정보가 비어있지 않으면 BoardService 클래스를
-		 * 이용해 폼에서 넘어온 다중 파일 정보를 files 테이블에 추가한다.
-		 **/
 		if(! fileNames.isEmpty()) {
 			boardDao.insertFiles(fileNames);
 		}
-	}
-	
-	/* 코드기반 트랜잭션 처리 메서드
-	 * 다중 파일 정보를 files 테이블에 저장하는 메서드 
-	 **/
-	@Override
-	public Object insertBoardMultiCode(			
-						String filePath,
-						Board board, 
-						MultipartFile multipartFile, 
-						MultipartFile[] multiFiles) throws Exception {		
 		
-		/* 스프링이 지원하는 트랜잭션 기능을 코드에서 직접 처리 하려면 아래와 같이
-		 * TransactionTemplate 클래스의 execute() 메서드를 이용한다.
-		 * execute() 메서드는 그 내부에서 PlaformTransactionManager를
-		 * 이용해 트랜잭션을 시작하고 매개변수로 넘겨 받은 TransactionCallback
-		 * 객체의 doInTransaction() 메서드를 호출한다. doInTransaction()
-		 * 메서드가 정상적으로 완료되면 execute() 메서드는 트랜잭션을 커밋하고 
-		 * doInTransaction() 메서드가 반환한 데이터를 받아 그대로 반환한다. 
-		 * 우리가 처리할 트랜잭션 코드를 doInTransaction() 메서드 안에 기술하면
-		 * 된다. doInTranscation() 메서드 내부에서 RuntimeException이
-		 * 발생하면 execute() 메서드는 PlaformTransactionManager를
-		 * 이용해 트랜잭션을 롤백하고 예외를 전파 시킨다. doInTransaction()
-		 * 메서드는 throws를 이용해 예외를 정의하지 않았기 때문에 Error 계열
-		 * 예외와 RuntimeException만 트랜잭션 처리가 가능하다.
-		 * 만약 Checked 계열 예외를 처리하고 싶다면 doInTransaction()
-		 * 메서드 안에서 try{ }catch{ } 구문을 이용해 예외를 처리하면 된다.
-		 * Checked 계열 예외가 발생하면 catch 블록안에서 매개변수로 넘겨 받은
-		 * TransactionStatus 객체의 setRollbackOnly() 메서드를 호출해
-		 * 트랜잭션을 롤백하면 된다. 이 때 반환되는 타입은 메서드가 정상적으로
-		 * 실행이 완료될 때 반환할 타입과 예외가 발생되면 반환할 타입 모두를
-		 * 적용해야 하므로 Object 타입을 지정하는 것이 좋다.
-		 **/
-		return transactionTemplate.execute(
-			new TransactionCallback<Object>() {
-			@Override
-			public Object doInTransaction(
-						TransactionStatus transactionStatus) {
-				
-				Object obj = null;
-				
-				try {
-					/* 업로드한 Multipart 데이터(파일)에 접근하기
-					 * 스프링은 MultipartResolver를 사용해 멀티파트 
-					 * 데이터에 접근할 수 있는 아래와 같은 다양한 방법을
-					 * 제공하고 있다.
-					 * 
-					 * - MultipartFile 인터페이스를 이용한 접근
-					 * - @RequestParam 애노테이션을 이용한 접근
-					 * - MultipartHttpServletRequest를 이용한 접근
-					 * - 커맨드 객체를 이용한 접근
-					 *   커맨드 클래스에 MultipartFile 타입의 프로퍼티가
-					 *   있어야 한다. 
-					 * - 서블릿 3의 Part를 이용한 접근
-					 * 
-					 * 이 예제는 MultipartFile을 이용한 파일 업로드 방법을
-					 * 소개하고 있다.
-					 **/		
-					if(!multipartFile.isEmpty()) { // 업로드된 파일 데이터가 존재하면
-						
-						/* UUID(Universally Unique Identifier, 범용 고유 식별자)
-						 * 소프트웨어 구축에 쓰이는 식별자의 표준으로 네트워크
-						 * 상에서 서로 모르는 개체들을 식별하고 구별하기 위해서
-						 * 사용된다. UUID 표준에 따라 이름을 부여하면 고유성을
-						 * 완벽하게 보장할 수는 없지만 실제 사용상에서 중복될 
-						 * 가능성이 거의 없다고 인정되기 때문에 실무에서 많이
-						 * 사용되고 있다.
-						 * 
-						 * 파일 이름의 중복을 막고 고유한 파일 이름으로 저장하기
-						 * 위해 java.util 패키지의 UUID 클래스를 이용해 
-						 * 랜덤한 UUID 값을 생성한다.
-						 **/
-						UUID uid = UUID.randomUUID();
-						String saveName = uid.toString() + "_" 
-								+ multipartFile.getOriginalFilename();
-						
-						File file = new File(filePath, saveName);
-						System.out.println("insertBoardMultiCode - newName : " 
-									+ file.getName());			
-						
-						// 업로드 되는 파일을 upload 폴더로 저장한다.					
-						multipartFile.transferTo(file);
-						
-						// 업로드된 파일 명을 Board 객체에 저장한다.
-						board.setFile1(saveName);
-					}
-					
-					/* BoardService 클래스를 이용해
-					 * 폼에서 넘어온 게시 글 정보를 게시 글 테이블에 추가한다.
-					 **/
-					boardDao.insertBoard(board);
-					
-					/* BoardMapper에서 게시 글 추가하는 맵핑 구문을
-					 * 아래와 같이 작성했다.
-					 *
-					 * 	<insert id="insertBoard" parameterType="Board"
-					 * 		useGeneratedKeys="true" keyProperty="no">
-					 * 
-					 * 테이블에 하나의 레코드를 INSERT 할때 자동으로 증가되는
-					 * 컬럼이나 Sequence를 사용하는 컬럼의 값을 읽어와야
-					 * 할 때도 있다. 보통 자동 증가되는 컬럼의 값은 데이터가 
-					 * INSERT 된 후에 읽어오고 Sequence일 경우 INSERT
-					 * 이전에 값을 읽어와야 한다. 이렇게 INSERT 작업을 하면서
-					 * 생성된 키의 값을 읽어와야 할 경우 아래와 같이 
-					 * useGeneratedKeys="true"를 지정하고 자동 생성된
-					 * 키의 값을 설정할 자바 모델 객체의 프로퍼티 이름을 keyProperty에
-					 * 지정하면 Board 객체의 no 프로퍼티에 값을 설정해 준다.
-					 **/
-					System.out.println("Code insert No : " + board.getNo());	
-					
-					// 다중 파일 업로드 처리
-					ArrayList<FileName> fileNames = new ArrayList<FileName>();	
-					
-					// Exception 강제 발생		
-					//throw new RuntimeException("RuntimeException 발생");
-							
-					for(int i = 0; i < multiFiles.length; i++) {
-						
-						MultipartFile uploadFile = multiFiles[i];
-						
-						// 다중 업로드된 파일 데이터가 존재하면
-						if(!uploadFile.isEmpty()) {
-							
-							UUID uid = UUID.randomUUID();
-							String saveName = uid.toString() + "_" 
-									+ uploadFile.getOriginalFilename();
-							
-							File file = new File(filePath, saveName);
-							System.out.println(
-									"Code multiNewName : " + file.getName());			
-							
-							// 업로드 되는 파일을 upload 폴더로 저장한다.
-							uploadFile.transferTo(file);
-							
-							/* FileName 객체를 생성해 파일 하나의 정보를 저장하여
-							 * 리스트에 담는다. 
-							 **/
-							FileName fileName = 
-									new FileName(saveName, board.getNo());
-							fileNames.add(fileName);
-						}
-					}		
-					
-					/* 다중 파일 정보가 비어있지 않으면 BoardService 클래스를
-					 * 이용해 폼에서 넘어온 다중 파일 정보를 files 테이블에 추가한다.
-					 **/
-					if(! fileNames.isEmpty()) {
-						boardDao.insertFiles(fileNames);
-					}
-				}catch(Exception e) {
-					transactionStatus.setRollbackOnly();
-					obj = e;
-					e.printStackTrace();
-				}
-				
-				return obj;
-			}
-		});
+		// 같은 내용의 파일은 한 번만 저장되고 참조 수만 증가한다.
+		for(AttachmentBlob blob : uploads.getBlobs()) {
+			boardDao.addBlobReference(blob);
+		}
 	}
 	
-	// 추천/땡큐 정보를 업데이트하고 갱신된 추천/땡큐를 가져오는 메서드
+	/* 추천/땡큐 정보를 업데이트하고 갱신된 추천/땡큐를 가져오는 메서드
+	 * 추천/땡큐 수의 증가와 합계 조회는 RecommendCounter가 한 번의 
+	 * 프로시저 호출로 처리한다.
+	 **/
 	public Map<String, Integer> recommend(int no, String recommend) {
-		
-		boardDao.updateRecommend(no, recommend);
-		Board board = boardDao.getRecommend(no);
-		
-		Map<String, Integer> map = new HashMap<String, Integer>(); 
-		map.put("recommend", board.getRecommend());
-		map.put("thank", board.getThank());
+		Map<String, Integer> map = recommendCounter.increment(no, recommend);
+		boardDetailCache.invalidate(no);
 		return map;
 	}
 	
-	// BoardDao를 이용해 게시 글 번호에 해당하는 댓글을 등록하는 메서드
-	public void addReply(Reply reply) {
+	/* BoardDao를 이용해 게시 글 번호에 해당하는 댓글을 등록하는 메서드
+	 * 
+	 * 댓글 쓰기 응답으로 등록된 댓글 하나만 보낼 수 있도록 작성일을 여기서
+	 * 지정하고 자동 증가된 댓글 번호는 addReply 맵핑 구문이 reply에 저장한다.
+	 * DB의 DATETIME 컬럼에는 초 단위까지만 저장되므로 밀리초는 버린다.
+	 **/
+	public long addReply(Reply reply) {
+		reply.setRegDate(now());
 		boardDao.addReply(reply);
+		return replyChanged(reply.getBbsNo());
 	}
 	
 	// BoardDao를 이용해 댓글을 수정하는 메서드
-	public void updateReply(Reply reply) {
+	public long updateReply(Reply reply) {
+		reply.setRegDate(now());
 		boardDao.updateReply(reply);
+		return replyChanged(reply.getBbsNo());
 	}
 
-	// BoardDao를 이용해 댓글 번호에 해당하는 댓글을 삭제하는 메서드
-	public void deleteReply(int no) {
+	/* BoardDao를 이용해 댓글 번호에 해당하는 댓글을 삭제하는 메서드
+	 * bbsNo는 댓글이 달린 게시 글 번호로 캐싱된 댓글 리스트를 제거할 때 사용한다.
+	 **/
+	public long deleteReply(int no, int bbsNo) {
 		boardDao.deleteReply(no);
+		return replyChanged(bbsNo);
+	}
+	
+	// 게시 글 번호에 해당하는 댓글 리스트의 현재 버전을 반환하는 메서드
+	@Override
+	public long replyVersion(int bbsNo) {
+		return replyVersionTracker.version(bbsNo);
+	}
+	
+	/* 댓글이 등록, 수정, 삭제되면 호출되는 메서드
+	 * 트랜잭션이 커밋된 후에 캐싱된 댓글 리스트를 제거하고 댓글 리스트의 버전을
+	 * 증가시킨다. 캐시를 먼저 제거해야 새 버전을 받은 클라이언트가 댓글 리스트를
+	 * 다시 읽을 때 변경 전의 댓글 리스트를 받지 않는다.
+	 * 
+	 * 트랜잭션 안에서 호출되면 커밋 전에는 버전이 증가하지 않았으므로 0을
+	 * 반환하고 이 경우 클라이언트는 댓글 리스트 전체를 다시 받게 된다.
+	 **/
+	private long replyChanged(final int bbsNo) {
+		final AtomicLong version = new AtomicLong();
+		AfterCommit.execute(new Runnable() {
+			@Override
+			public void run() {
+				boardDetailCache.invalidateReplyList(bbsNo);
+				version.set(replyVersionTracker.increment(bbsNo));
+			}
+		});
+		return version.get();
+	}
+	
+	// 초 단위로 자른 현재 시간
+	private static Timestamp now() {
+		return new Timestamp(System.currentTimeMillis() / 1000 * 1000);
 	}
 }
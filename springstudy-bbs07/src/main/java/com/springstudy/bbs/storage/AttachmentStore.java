@@ -0,0 +1,40 @@
+package com.springstudy.bbs.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/* 첨부 파일을 저장하고 읽는 저장소 인터페이스
+ *
+ * 첨부 파일을 서버의 로컬 폴더에만 저장하면 여러 서버를 로드 밸런서 뒤에
+ * 두었을 때 A 서버에 올린 파일을 B 서버에서 찾지 못한다. BlobStore와
+ * FileSender는 이 인터페이스로 첨부 파일을 저장하고 읽으며 구현 클래스는
+ * root-context.xml에 attachmentStore라는 이름으로 하나만 정의한다.
+ *
+ * - LocalAttachmentStore : StorageLayout이 정한 로컬 폴더에 저장한다.
+ * - S3AttachmentStore : S3 API를 지원하는 오브젝트 스토리지에 저장한다.
+ *
+ * key는 저장 이름으로 첨부 파일 내용의 SHA-256 해시나 이전 버전의
+ * 저장 이름(UUID_원본파일이름)이다.
+ **/
+public interface AttachmentStore {
+
+	/* key에 해당하는 첨부 파일의 정보를 반환 하는 메서드
+	 * 첨부 파일이 없으면 null을 반환한다.
+	 **/
+	public abstract StoredAttachment stat(String key) throws IOException;
+
+	/* source 파일을 key로 저장하는 메서드
+	 * 저장이 끝나면 source 파일은 없어진다(이동하거나 삭제한다).
+	 **/
+	public abstract void put(String key, File source) throws IOException;
+
+	/* key에 해당하는 첨부 파일의 position 부터 count 바이트를 읽는
+	 * 스트림을 반환 하는 메서드 - 스트림은 호출한 쪽에서 닫아야 한다.
+	 **/
+	public abstract InputStream read(String key, long position, long count)
+			throws IOException;
+
+	// key에 해당하는 첨부 파일을 삭제하는 메서드 - 없으면 아무 일도 하지 않는다.
+	public abstract void delete(String key) throws IOException;
+}
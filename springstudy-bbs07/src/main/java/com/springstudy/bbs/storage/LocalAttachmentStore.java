@@ -0,0 +1,76 @@
+package com.springstudy.bbs.storage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.commons.io.input.BoundedInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.springstudy.bbs.upload.StorageLayout;
+
+/* 첨부 파일을 이 서버의 로컬 폴더에 저장하는 저장소
+ *
+ * 저장할 위치는 StorageLayout이 정하며 스테이징 파일은 같은 파일 시스템에
+ * 있으므로 복사하지 않고 이름만 바꿔서 옮긴다. stat()은 로컬 파일을 함께
+ * 반환하므로 FileSender가 sendfile이나 transferTo()로 바로 보낼 수 있다.
+ **/
+public class LocalAttachmentStore implements AttachmentStore {
+
+	private static final Logger logger =
+			LoggerFactory.getLogger(LocalAttachmentStore.class);
+
+	private StorageLayout storageLayout;
+
+	public void setStorageLayout(StorageLayout storageLayout) {
+		this.storageLayout = storageLayout;
+	}
+
+	@Override
+	public StoredAttachment stat(String key) {
+		File file = storageLayout.locate(key);
+		if(! file.isFile()) {
+			return null;
+		}
+		return new StoredAttachment(file.length(), file.lastModified(), file);
+	}
+
+	@Override
+	public void put(String key, File source) throws IOException {
+		File target = storageLayout.resolve(key);
+		try {
+			Files.move(source.toPath(), target.toPath(),
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch(AtomicMoveNotSupportedException e) {
+			Files.move(source.toPath(), target.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	@Override
+	public InputStream read(String key, long position, long count)
+			throws IOException {
+
+		FileInputStream in = new FileInputStream(storageLayout.locate(key));
+		try {
+			in.getChannel().position(position);
+		} catch(IOException e) {
+			in.close();
+			throw e;
+		}
+		return new BoundedInputStream(in, count);
+	}
+
+	@Override
+	public void delete(String key) {
+		File file = storageLayout.locate(key);
+		if(file.exists() && ! file.delete()) {
+			logger.warn("첨부 파일 삭제 실패 : {}", file);
+		}
+	}
+}
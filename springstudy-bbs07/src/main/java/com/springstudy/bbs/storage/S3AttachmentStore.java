@@ -0,0 +1,430 @@
+package com.springstudy.bbs.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.input.BoundedInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+
+/* 첨부 파일을 S3 API를 지원하는 오브젝트 스토리지에 저장하는 저장소
+ *
+ * 여러 서버가 같은 버킷을 사용하므로 어느 서버에 올린 첨부 파일이든 모든
+ * 서버에서 읽을 수 있다. AWS SDK를 추가하지 않고 HttpURLConnection으로
+ * S3 REST API를 직접 호출하며 요청은 S3Signer로 서명한다. 버킷은 경로 방식
+ * (endpoint/bucket/key)으로 지정하므로 MinIO와 같은 S3 호환 서버에도 사용할 수 있다.
+ *
+ * 첨부 파일 전체를 메모리에 올리지 않도록 아래와 같이 처리한다.
+ * - 저장 : partSize 이하의 파일은 PUT 한 번으로, 그보다 큰 파일은 멀티파트
+ *   업로드로 partSize 씩 나눠서 보낸다. 본문은 고정 길이 스트리밍 모드로 파일에서
+ *   바로 보내고 본문의 해시는 계산하지 않는다(UNSIGNED-PAYLOAD).
+ * - 읽기 : Range 헤더로 필요한 범위만 GET 하고 응답 스트림을 그대로 반환한다.
+ **/
+public class S3AttachmentStore implements AttachmentStore, InitializingBean {
+
+	private static final Logger logger =
+			LoggerFactory.getLogger(S3AttachmentStore.class);
+
+	// 멀티파트 업로드의 마지막 파트를 제외한 파트의 최소 크기
+	private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+
+	private static final Pattern UPLOAD_ID =
+			Pattern.compile("<UploadId>([^<]+)</UploadId>");
+
+	// S3 서버의 주소 - 예) http://localhost:9000
+	private String endpoint;
+
+	private String region = "us-east-1";
+
+	private String bucket;
+
+	private String accessKey;
+
+	private String secretKey;
+
+	// 버킷 안에서 첨부 파일의 키 앞에 붙일 경로 - 예) attachments/
+	private String prefix = "";
+
+	private long partSize = 8L * 1024 * 1024;
+
+	private int connectTimeout = 5000;
+
+	private int readTimeout = 30000;
+
+	private S3Signer signer;
+
+	public void setEndpoint(String endpoint) {
+		this.endpoint = endpoint;
+	}
+
+	public void setRegion(String region) {
+		this.region = region;
+	}
+
+	public void setBucket(String bucket) {
+		this.bucket = bucket;
+	}
+
+	public void setAccessKey(String accessKey) {
+		this.accessKey = accessKey;
+	}
+
+	public void setSecretKey(String secretKey) {
+		this.secretKey = secretKey;
+	}
+
+	public void setPrefix(String prefix) {
+		this.prefix = prefix;
+	}
+
+	public void setPartSize(long partSize) {
+		this.partSize = partSize;
+	}
+
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		if(endpoint == null || bucket == null
+				|| accessKey == null || secretKey == null) {
+			throw new IllegalStateException(
+					"endpoint, bucket, accessKey, secretKey를 지정해야 합니다.");
+		}
+		if(partSize < MIN_PART_SIZE) {
+			throw new IllegalStateException(
+					"partSize는 " + MIN_PART_SIZE + " 바이트 이상이어야 합니다.");
+		}
+		while(endpoint.endsWith("/")) {
+			endpoint = endpoint.substring(0, endpoint.length() - 1);
+		}
+		signer = new S3Signer(accessKey, secretKey, region);
+	}
+
+	// HEAD 요청으로 첨부 파일의 크기와 수정 시간을 읽어 온다.
+	@Override
+	public StoredAttachment stat(String key) throws IOException {
+
+		HttpURLConnection con = open("HEAD", key, noQuery(),
+				S3Signer.sha256Hex(new byte[0]));
+		try {
+			if(con.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+				return null;
+			}
+			check(con, HttpURLConnection.HTTP_OK);
+			return new StoredAttachment(
+					con.getHeaderFieldLong("Content-Length", 0),
+					con.getHeaderFieldDate("Last-Modified", 0), null);
+		} finally {
+			con.disconnect();
+		}
+	}
+
+	/* source 파일을 key로 저장하는 메서드
+	 * partSize 보다 큰 파일은 멀티파트 업로드로 나눠서 보내고 저장이 끝나면
+	 * source 파일을 삭제한다.
+	 **/
+	@Override
+	public void put(String key, File source) throws IOException {
+
+		long length = source.length();
+		FileChannel channel = FileChannel.open(
+				source.toPath(), StandardOpenOption.READ);
+		try {
+			if(length <= partSize) {
+				HttpURLConnection con = open("PUT", key, noQuery(),
+						S3Signer.UNSIGNED_PAYLOAD);
+				upload(con, channel, 0, length);
+				check(con, HttpURLConnection.HTTP_OK);
+				consume(con);
+			} else {
+				multipartUpload(key, channel, length);
+			}
+		} finally {
+			channel.close();
+		}
+		Files.deleteIfExists(source.toPath());
+	}
+
+	// Range 헤더로 position 부터 count 바이트만 GET 한다.
+	@Override
+	public InputStream read(String key, long position, long count)
+			throws IOException {
+
+		if(count <= 0) {
+			return new ByteArrayInputStream(new byte[0]);
+		}
+
+		HttpURLConnection con = open("GET", key, noQuery(),
+				S3Signer.sha256Hex(new byte[0]));
+		con.setRequestProperty("Range",
+				"bytes=" + position + "-" + (position + count - 1));
+		int status = con.getResponseCode();
+
+		// 파일 전체를 요청했으면 서버가 200으로 응답할 수도 있다.
+		if(status != HttpURLConnection.HTTP_PARTIAL
+				&& ! (status == HttpURLConnection.HTTP_OK && position == 0)) {
+			check(con, HttpURLConnection.HTTP_PARTIAL);
+		}
+		return new BoundedInputStream(con.getInputStream(), count);
+	}
+
+	@Override
+	public void delete(String key) throws IOException {
+		HttpURLConnection con = open("DELETE", key, noQuery(),
+				S3Signer.sha256Hex(new byte[0]));
+		if(con.getResponseCode() != HttpURLConnection.HTTP_NOT_FOUND) {
+			check(con, HttpURLConnection.HTTP_NO_CONTENT,
+					HttpURLConnection.HTTP_OK);
+		}
+		consume(con);
+	}
+
+	/* 멀티파트 업로드로 파일을 partSize 씩 나눠서 보내는 메서드
+	 * 파트를 보내다가 실패하면 업로드를 취소해 서버에 남은 파트를 삭제한다.
+	 **/
+	private void multipartUpload(String key, FileChannel channel, long length)
+			throws IOException {
+
+		String uploadId = createMultipartUpload(key);
+		boolean completed = false;
+		try {
+			List<String> etags = new ArrayList<String>();
+			int partNumber = 1;
+			for(long position = 0; position < length; position += partSize) {
+				Map<String, String> query = new HashMap<String, String>();
+				query.put("partNumber", String.valueOf(partNumber++));
+				query.put("uploadId", uploadId);
+
+				HttpURLConnection con = open("PUT", key, query,
+						S3Signer.UNSIGNED_PAYLOAD);
+				upload(con, channel, position,
+						Math.min(partSize, length - position));
+				check(con, HttpURLConnection.HTTP_OK);
+				etags.add(con.getHeaderField("ETag"));
+				consume(con);
+			}
+			completeMultipartUpload(key, uploadId, etags);
+			completed = true;
+		} finally {
+			if(! completed) {
+				abortMultipartUpload(key, uploadId);
+			}
+		}
+	}
+
+	private String createMultipartUpload(String key) throws IOException {
+
+		Map<String, String> query = new HashMap<String, String>();
+		query.put("uploads", "");
+		HttpURLConnection con = open("POST", key, query,
+				S3Signer.sha256Hex(new byte[0]));
+		con.setDoOutput(true);
+		con.setFixedLengthStreamingMode(0);
+		con.getOutputStream().close();
+		check(con, HttpURLConnection.HTTP_OK);
+
+		Matcher matcher = UPLOAD_ID.matcher(body(con));
+		if(! matcher.find()) {
+			throw new IOException("멀티파트 업로드를 시작하지 못했습니다 : " + key);
+		}
+		return matcher.group(1);
+	}
+
+	private void completeMultipartUpload(String key, String uploadId,
+			List<String> etags) throws IOException {
+
+		StringBuilder xml = new StringBuilder("<CompleteMultipartUpload>");
+		for(int i = 0; i < etags.size(); i++) {
+			xml.append("<Part><PartNumber>").append(i + 1)
+					.append("</PartNumber><ETag>").append(etags.get(i))
+					.append("</ETag></Part>");
+		}
+		xml.append("</CompleteMultipartUpload>");
+		byte[] body = xml.toString().getBytes(StandardCharsets.UTF_8);
+
+		Map<String, String> query = new HashMap<String, String>();
+		query.put("uploadId", uploadId);
+		HttpURLConnection con = open("POST", key, query,
+				S3Signer.sha256Hex(body));
+		con.setRequestProperty("Content-Type", "application/xml");
+		con.setDoOutput(true);
+		con.setFixedLengthStreamingMode(body.length);
+		OutputStream out = con.getOutputStream();
+		try {
+			out.write(body);
+		} finally {
+			out.close();
+		}
+		check(con, HttpURLConnection.HTTP_OK);
+
+		// 완료 요청은 200으로 응답한 후에도 본문에 에러를 보낼 수 있다.
+		String response = body(con);
+		if(response.contains("<Error>")) {
+			throw new IOException("멀티파트 업로드를 완료하지 못했습니다 : " + response);
+		}
+	}
+
+	private void abortMultipartUpload(String key, String uploadId) {
+		Map<String, String> query = new HashMap<String, String>();
+		query.put("uploadId", uploadId);
+		try {
+			HttpURLConnection con = open("DELETE", key, query,
+					S3Signer.sha256Hex(new byte[0]));
+			con.getResponseCode();
+			consume(con);
+		} catch(IOException e) {
+			logger.warn("멀티파트 업로드 취소 실패 : " + key, e);
+		}
+	}
+
+	/* 파일의 position 부터 count 바이트를 요청 본문으로 보내는 메서드
+	 * 고정 길이 스트리밍 모드를 지정해 HttpURLConnection이 본문을
+	 * 메모리에 모으지 않고 바로 보내도록 했다.
+	 **/
+	private static void upload(HttpURLConnection con, FileChannel channel,
+			long position, long count) throws IOException {
+
+		con.setDoOutput(true);
+		con.setFixedLengthStreamingMode(count);
+		OutputStream out = con.getOutputStream();
+		try {
+			WritableByteChannel target = Channels.newChannel(out);
+			long end = position + count;
+			while(position < end) {
+				long sent = channel.transferTo(position, end - position, target);
+				if(sent <= 0) {
+					throw new IOException("파일을 끝까지 보내지 못했습니다.");
+				}
+				position += sent;
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	// 서명한 요청을 보낼 HttpURLConnection을 생성하는 메서드
+	private HttpURLConnection open(String method, String key,
+			Map<String, String> query, String payloadHash) throws IOException {
+
+		String canonicalUri = "/" + S3Signer.encode(bucket, true)
+				+ "/" + S3Signer.encode(prefix + key, false);
+		String queryString = S3Signer.canonicalQuery(query);
+		URL url = new URL(endpoint + canonicalUri
+				+ (queryString.isEmpty() ? "" : "?" + queryString));
+
+		SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd'T'HHmmss'Z'");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		String amzDate = format.format(new Date());
+
+		Map<String, String> headers = new HashMap<String, String>();
+		headers.put("host", url.getPort() == -1
+				? url.getHost() : url.getHost() + ":" + url.getPort());
+		headers.put("x-amz-date", amzDate);
+		headers.put("x-amz-content-sha256", payloadHash);
+
+		HttpURLConnection con = (HttpURLConnection) url.openConnection();
+		con.setRequestMethod(method);
+		con.setConnectTimeout(connectTimeout);
+		con.setReadTimeout(readTimeout);
+		con.setRequestProperty("x-amz-date", amzDate);
+		con.setRequestProperty("x-amz-content-sha256", payloadHash);
+		con.setRequestProperty("Authorization", signer.authorization(
+				method, canonicalUri, query, headers, payloadHash, amzDate));
+		return con;
+	}
+
+	private static Map<String, String> noQuery() {
+		return Collections.emptyMap();
+	}
+
+	// 응답 코드가 expected 중 하나가 아니면 에러 본문과 함께 예외를 발생시킨다.
+	private static void check(HttpURLConnection con, int... expected)
+			throws IOException {
+
+		int status = con.getResponseCode();
+		for(int code : expected) {
+			if(status == code) {
+				return;
+			}
+		}
+
+		String error = "";
+		InputStream in = con.getErrorStream();
+		if(in != null) {
+			error = read(in, 1024);
+		}
+		con.disconnect();
+		throw new IOException("S3 요청 실패 : " + con.getRequestMethod() + " "
+				+ con.getURL() + " " + status + " " + error);
+	}
+
+	// 응답 본문을 문자열로 읽는 메서드
+	private static String body(HttpURLConnection con) throws IOException {
+		return read(con.getInputStream(), Integer.MAX_VALUE);
+	}
+
+	/* 응답 본문을 끝까지 읽고 닫는 메서드
+	 * 본문을 모두 읽어야 HttpURLConnection이 연결을 다시 사용할 수 있다.
+	 * 응답 코드가 400 이상이면 getInputStream()이 예외를 발생시키므로
+	 * 에러 본문을 읽는다.
+	 **/
+	private static void consume(HttpURLConnection con) throws IOException {
+		InputStream in =
+				con.getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST
+				? con.getErrorStream() : con.getInputStream();
+		if(in == null) {
+			return;
+		}
+		try {
+			byte[] buffer = new byte[4096];
+			while(in.read(buffer) != -1) {
+				continue;
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private static String read(InputStream in, int limit) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			byte[] buffer = new byte[4096];
+			int read;
+			while(out.size() < limit && (read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,148 @@
+package com.springstudy.bbs.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.springstudy.bbs.upload.BlobStore;
+
+/* S3 요청에 AWS 서명 버전 4(AWS4-HMAC-SHA256)로 서명하는 클래스
+ *
+ * 1. 메서드, 경로, 쿼리 문자열, 서명할 헤더, 본문의 해시로 정규 요청을 만든다.
+ * 2. 요청 시간, 범위(날짜/리전/s3/aws4_request), 정규 요청의 해시로
+ *    서명할 문자열을 만든다.
+ * 3. 비밀 키에서 날짜, 리전, 서비스 순서로 HMAC을 계산해 서명 키를 만들고
+ *    서명할 문자열의 HMAC을 서명으로 사용한다.
+ *
+ * 본문을 스트리밍으로 보내는 요청은 본문의 해시를 미리 계산하지 않도록
+ * UNSIGNED-PAYLOAD를 지정한다.
+ **/
+final class S3Signer {
+
+	static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+
+	private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+
+	private final String accessKey;
+	private final String secretKey;
+	private final String region;
+
+	S3Signer(String accessKey, String secretKey, String region) {
+		this.accessKey = accessKey;
+		this.secretKey = secretKey;
+		this.region = region;
+	}
+
+	/* 요청에 지정할 Authorization 헤더의 값을 반환 하는 메서드
+	 *
+	 * canonicalUri는 인코딩 된 경로, query는 인코딩 되지 않은 쿼리 파라미터,
+	 * headers는 서명할 헤더로 host, x-amz-date, x-amz-content-sha256을
+	 * 포함해야 한다. amzDate는 yyyyMMdd'T'HHmmss'Z' 형식의 UTC 시간이다.
+	 **/
+	String authorization(String method, String canonicalUri,
+			Map<String, String> query, Map<String, String> headers,
+			String payloadHash, String amzDate) {
+
+		// 헤더 이름은 소문자로 바꿔서 이름 순서로 정렬한다.
+		Map<String, String> sortedHeaders = new TreeMap<String, String>();
+		for(Map.Entry<String, String> header : headers.entrySet()) {
+			sortedHeaders.put(header.getKey().toLowerCase(),
+					header.getValue().trim());
+		}
+
+		StringBuilder canonicalHeaders = new StringBuilder();
+		StringBuilder signedHeaders = new StringBuilder();
+		for(Map.Entry<String, String> header : sortedHeaders.entrySet()) {
+			canonicalHeaders.append(header.getKey()).append(':')
+					.append(header.getValue()).append('\n');
+			if(signedHeaders.length() > 0) {
+				signedHeaders.append(';');
+			}
+			signedHeaders.append(header.getKey());
+		}
+
+		String canonicalRequest = method + "\n"
+				+ canonicalUri + "\n"
+				+ canonicalQuery(query) + "\n"
+				+ canonicalHeaders + "\n"
+				+ signedHeaders + "\n"
+				+ payloadHash;
+
+		String dateStamp = amzDate.substring(0, 8);
+		String scope = dateStamp + "/" + region + "/s3/aws4_request";
+		String stringToSign = ALGORITHM + "\n"
+				+ amzDate + "\n"
+				+ scope + "\n"
+				+ sha256Hex(canonicalRequest);
+
+		byte[] key = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8),
+				dateStamp);
+		key = hmac(key, region);
+		key = hmac(key, "s3");
+		key = hmac(key, "aws4_request");
+		String signature = BlobStore.hex(hmac(key, stringToSign));
+
+		return ALGORITHM + " Credential=" + accessKey + "/" + scope
+				+ ", SignedHeaders=" + signedHeaders
+				+ ", Signature=" + signature;
+	}
+
+	// 쿼리 파라미터를 이름 순서로 정렬하고 인코딩 한 쿼리 문자열
+	static String canonicalQuery(Map<String, String> query) {
+		StringBuilder sb = new StringBuilder();
+		for(Map.Entry<String, String> param
+				: new TreeMap<String, String>(query).entrySet()) {
+			if(sb.length() > 0) {
+				sb.append('&');
+			}
+			sb.append(encode(param.getKey(), true)).append('=')
+					.append(encode(param.getValue(), true));
+		}
+		return sb.toString();
+	}
+
+	/* S3 서명 규칙에 따라 URI 인코딩 하는 메서드
+	 * 영문자, 숫자, '-', '_', '.', '~'를 제외한 문자는 UTF-8 바이트를 %XX로
+	 * 인코딩 하며 encodeSlash가 false면 경로 구분자 '/'는 그대로 둔다.
+	 **/
+	static String encode(String value, boolean encodeSlash) {
+		StringBuilder sb = new StringBuilder();
+		for(byte b : value.getBytes(StandardCharsets.UTF_8)) {
+			char c = (char) (b & 0xff);
+			if((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z')
+					|| (c >= '0' && c <= '9')
+					|| c == '-' || c == '_' || c == '.' || c == '~'
+					|| (c == '/' && ! encodeSlash)) {
+				sb.append(c);
+			} else {
+				sb.append('%').append(Character.toUpperCase(
+						Character.forDigit((c >> 4) & 0x0f, 16)))
+						.append(Character.toUpperCase(
+						Character.forDigit(c & 0x0f, 16)));
+			}
+		}
+		return sb.toString();
+	}
+
+	static String sha256Hex(String value) {
+		return sha256Hex(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	static String sha256Hex(byte[] value) {
+		return BlobStore.hex(BlobStore.newDigest().digest(value));
+	}
+
+	private static byte[] hmac(byte[] key, String data) {
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(new SecretKeySpec(key, "HmacSHA256"));
+			return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+		} catch(GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
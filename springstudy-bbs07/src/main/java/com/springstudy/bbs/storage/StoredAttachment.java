@@ -0,0 +1,34 @@
+package com.springstudy.bbs.storage;
+
+import java.io.File;
+
+/* 저장소에 저장된 첨부 파일 하나의 정보를 저장하는 클래스
+ *
+ * file은 첨부 파일이 이 서버의 로컬 파일이면 그 파일이고 원격 저장소에
+ * 있으면 null이다. FileSender는 로컬 파일이면 sendfile이나
+ * FileChannel.transferTo()로 보내고 그렇지 않으면 read()로 읽어서 보낸다.
+ **/
+public class StoredAttachment {
+
+	private final long length;
+	private final long lastModified;
+	private final File file;
+
+	public StoredAttachment(long length, long lastModified, File file) {
+		this.length = length;
+		this.lastModified = lastModified;
+		this.file = file;
+	}
+
+	public long getLength() {
+		return length;
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	public File getFile() {
+		return file;
+	}
+}
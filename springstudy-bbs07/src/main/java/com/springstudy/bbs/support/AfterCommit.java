@@ -0,0 +1,34 @@
+package com.springstudy.bbs.support;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/* 트랜잭션이 커밋된 이후에 실행해야 할 작업을 등록하는 유틸리티 클래스
+ *
+ * 캐시나 인덱스처럼 DB 밖에 있는 상태는 트랜잭션이 롤백될 수 있기 때문에
+ * DB 작업과 함께 바로 변경하면 안 되고 커밋이 완료된 후에 변경해야 한다.
+ * 현재 스레드에서 진행 중인 트랜잭션이 있으면 TransactionSynchronization의
+ * afterCommit() 메서드에서 작업을 실행하고 트랜잭션이 없으면 DB 작업이
+ * 이미 자동 커밋 되었으므로 바로 실행한다.
+ **/
+public final class AfterCommit {
+
+	private AfterCommit() {
+	}
+
+	// 트랜잭션이 커밋된 후에 task를 실행한다.
+	public static void execute(final Runnable task) {
+
+		if(TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(
+				new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					task.run();
+				}
+			});
+		} else {
+			task.run();
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package com.springstudy.bbs.support;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/* 걸린 시간의 분포를 기록하는 히스토그램
+ *
+ * 시간을 마이크로초 단위로 2의 거듭제곱 크기의 구간(1, 2, 4 ... 약 67초)에
+ * 나눠 세므로 메모리는 항상 일정하고 기록은 카운터 하나를 증가시키는 것으로
+ * 끝나 여러 스레드가 동시에 기록해도 락을 사용하지 않는다. 백분위수는
+ * 구간의 상한으로 계산하므로 실제 값보다 최대 두 배까지 크게 나온다.
+ *
+ * 일정 기간 동안의 분포가 필요하면 snapshot()으로 구한 구간별 개수의 차이를
+ * percentile() 메서드에 지정해 계산한다.
+ **/
+public class LatencyHistogram {
+
+	// 구간의 수 - 마지막 구간은 2^(BUCKETS-1) 마이크로초를 넘는 모든 값을 센다.
+	private static final int BUCKETS = 28;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder total = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	// nanos 나노초 걸린 작업 하나를 기록한다.
+	public void record(long nanos) {
+
+		long micros = Math.max(0, nanos / 1000);
+		counts.incrementAndGet(bucketOf(micros));
+		total.add(micros);
+
+		long current;
+		while(micros > (current = max.get())) {
+			if(max.compareAndSet(current, micros)) {
+				break;
+			}
+		}
+	}
+
+	// 구간별 개수를 복사해서 반환한다.
+	public long[] snapshot() {
+		long[] copy = new long[BUCKETS];
+		for(int i = 0; i < BUCKETS; i++) {
+			copy[i] = counts.get(i);
+		}
+		return copy;
+	}
+
+	public long count() {
+		long count = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			count += counts.get(i);
+		}
+		return count;
+	}
+
+	/* 구간별 개수 buckets에서 q(0.0 ~ 1.0) 백분위수를 마이크로초로 반환 하는 메서드
+	 * 기록된 값이 없으면 0을 반환한다.
+	 **/
+	public static long percentile(long[] buckets, double q) {
+
+		long count = 0;
+		for(long bucket : buckets) {
+			count += bucket;
+		}
+		if(count == 0) {
+			return 0;
+		}
+
+		long rank = (long) Math.ceil(count * q);
+		long seen = 0;
+		for(int i = 0; i < buckets.length; i++) {
+			seen += buckets[i];
+			if(seen >= Math.max(1, rank)) {
+				return upperBound(i);
+			}
+		}
+		return upperBound(buckets.length - 1);
+	}
+
+	// old 이후에 기록된 구간별 개수를 반환한다.
+	public static long[] since(long[] current, long[] old) {
+		long[] delta = new long[current.length];
+		for(int i = 0; i < current.length; i++) {
+			delta[i] = current[i] - (old != null ? old[i] : 0);
+		}
+		return delta;
+	}
+
+	/* 통계를 밀리초 단위로 반환 하는 메서드
+	 *
+	 * { "count": 1520, "mean": 0.82, "p50": 0.512, "p95": 4.096,
+	 *   "p99": 16.384, "max": 23.1 }
+	 **/
+	public Map<String, Object> toMap() {
+
+		long[] buckets = snapshot();
+		long count = 0;
+		for(long bucket : buckets) {
+			count += bucket;
+		}
+
+		// 구간의 상한이 실제 최대값 보다 크면 최대값을 사용한다.
+		long maxMicros = max.get();
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		stats.put("count", count);
+		stats.put("mean", count == 0 ? 0.0 : total.sum() / 1000.0 / count);
+		stats.put("p50", Math.min(maxMicros, percentile(buckets, 0.50)) / 1000.0);
+		stats.put("p95", Math.min(maxMicros, percentile(buckets, 0.95)) / 1000.0);
+		stats.put("p99", Math.min(maxMicros, percentile(buckets, 0.99)) / 1000.0);
+		stats.put("max", maxMicros / 1000.0);
+		return stats;
+	}
+
+	private static int bucketOf(long micros) {
+		if(micros <= 1) {
+			return 0;
+		}
+		int bucket = 64 - Long.numberOfLeadingZeros(micros - 1);
+		return Math.min(bucket, BUCKETS - 1);
+	}
+
+	// i 번째 구간의 상한(마이크로초)
+	private static long upperBound(int i) {
+		return 1L << i;
+	}
+}
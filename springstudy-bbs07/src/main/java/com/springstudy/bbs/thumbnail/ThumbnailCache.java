@@ -0,0 +1,447 @@
+package com.springstudy.bbs.thumbnail;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureTask;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import com.springstudy.bbs.storage.AttachmentStore;
+import com.springstudy.bbs.storage.StoredAttachment;
+import com.springstudy.bbs.upload.BlobStore;
+import com.springstudy.bbs.upload.StorageLayout;
+
+/* 이미지 첨부 파일의 썸네일을 만들어 디스크에 캐싱하는 컴포넌트
+ *
+ * 게시 글 상세보기에서 미리보기만 필요할 때도 원본 이미지를 그대로 보내면
+ * 네트워크 대역폭과 브라우저의 디코딩 시간이 낭비된다. 이 컴포넌트는 처음
+ * 요청될 때 ImageIO로 가로, 세로 중 긴 쪽이 maxSize 이하인 JPEG 썸네일을 만들어
+ * 업로드 폴더 아래의 .thumbnails 폴더에 원본과 같은 두 단계 하위 폴더로 저장하고
+ * 다음 요청부터는 저장된 파일을 보낸다. 원본이 S3에 있어도 썸네일은 이 서버의
+ * 로컬 디스크에 캐싱한다.
+ *
+ * 1. 썸네일은 크기가 정해진 작업 스레드 풀에서 만든다. 큐가 가득 차면 바로
+ *    RejectedExecutionException이 발생하므로 이미지 디코딩이 요청 처리 스레드를
+ *    차지하지 않는다. 같은 썸네일을 동시에 요청하면 한 번만 만든다.
+ * 2. 큰 이미지는 ImageReader의 서브샘플링으로 필요한 해상도까지만 읽어 힙
+ *    사용량을 줄인다. 픽셀 수가 MAX_PIXELS를 넘는 이미지는 만들지 않는다.
+ * 3. 썸네일 전체 크기가 quota를 넘으면 가장 오래 사용하지 않은 썸네일부터
+ *    quota의 90%가 될 때 까지 삭제한다(LRU). 사용 시간은 파일의 수정 시간에
+ *    기록하며 디스크 쓰기를 줄이기 위해 TOUCH_INTERVAL이 지났을 때만 갱신한다.
+ *
+ * 썸네일의 이름은 원본의 SHA-256 해시와 maxSize로 정하므로 내용이 바뀌지
+ * 않아 브라우저에 오래 캐싱할 수 있다.
+ **/
+@Component
+public class ThumbnailCache implements InitializingBean, DisposableBean {
+
+	private static final Logger logger =
+			LoggerFactory.getLogger(ThumbnailCache.class);
+
+	// 업로드 폴더 아래에 썸네일을 저장할 폴더 이름
+	private static final String THUMBNAIL_DIR = ".thumbnails";
+
+	// 썸네일을 만들 이미지 파일의 확장자
+	private static final Set<String> IMAGE_EXTENSIONS = new HashSet<String>(
+			Arrays.asList("jpg", "jpeg", "png", "gif", "bmp"));
+
+	// 썸네일을 만들 원본 이미지의 최대 픽셀 수 - 압축 폭탄 이미지를 막는다.
+	private static final long MAX_PIXELS = 100L * 1000 * 1000;
+
+	// 썸네일의 사용 시간(파일 수정 시간)을 갱신하는 최소 간격
+	private static final long TOUCH_INTERVAL = 60L * 60 * 1000;
+
+	@Autowired
+	private StorageLayout storageLayout;
+
+	@Autowired
+	private AttachmentStore attachmentStore;
+
+	// 썸네일의 가로, 세로 중 긴 쪽의 최대 크기(픽셀)
+	private int maxSize = 320;
+
+	// 썸네일이 사용할 수 있는 최대 디스크 용량(바이트)
+	private long quota = 256L * 1024 * 1024;
+
+	// 썸네일을 만드는 작업 스레드 수
+	private int threads = 2;
+
+	// 작업 스레드가 모두 사용 중일 때 대기할 수 있는 최대 작업 수
+	private int queueCapacity = 64;
+
+	private File thumbnailDir;
+
+	private ThreadPoolExecutor executor;
+
+	// 만들고 있는 중인 썸네일 - 같은 썸네일을 동시에 요청하면 한 번만 만든다.
+	private final ConcurrentHashMap<String, ListenableFuture<File>> inflight =
+			new ConcurrentHashMap<String, ListenableFuture<File>>();
+
+	// 썸네일 폴더의 전체 크기
+	private final AtomicLong usedBytes = new AtomicLong();
+
+	private final AtomicBoolean evicting = new AtomicBoolean();
+
+	public void setStorageLayout(StorageLayout storageLayout) {
+		this.storageLayout = storageLayout;
+	}
+
+	public void setAttachmentStore(AttachmentStore attachmentStore) {
+		this.attachmentStore = attachmentStore;
+	}
+
+	public void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	public void setQuota(long quota) {
+		this.quota = quota;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+
+		thumbnailDir = new File(storageLayout.getRootDir(), THUMBNAIL_DIR);
+		if(! thumbnailDir.isDirectory() && ! thumbnailDir.mkdirs()) {
+			throw new IllegalStateException(
+					"썸네일 폴더를 만들 수 없습니다 : " + thumbnailDir);
+		}
+
+		final AtomicInteger count = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads,
+				60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity),
+				new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable,
+						"thumbnail-worker-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		}, new ThreadPoolExecutor.AbortPolicy());
+		executor.allowCoreThreadTimeOut(true);
+
+		// 이전에 만든 썸네일의 전체 크기는 작업 스레드에서 계산한다.
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				evict();
+			}
+		});
+	}
+
+	@Override
+	public void destroy() {
+		executor.shutdownNow();
+	}
+
+	// 썸네일을 만들 수 있는 이미지 첨부 파일인지 여부
+	public static boolean isImage(String reference) {
+		String name = BlobStore.downloadName(reference);
+		int dot = name.lastIndexOf('.');
+		return dot >= 0 && IMAGE_EXTENSIONS.contains(
+				name.substring(dot + 1).toLowerCase(Locale.ROOT));
+	}
+
+	/* 참조 이름에 해당하는 썸네일의 ETag를 반환 하는 메서드
+	 * 썸네일의 이름과 같이 원본의 해시와 maxSize로 만든다.
+	 **/
+	public String etag(String reference) {
+		return "\"" + thumbnailName(reference) + "\"";
+	}
+
+	/* 참조 이름에 해당하는 썸네일 파일을 반환 하는 ListenableFuture를 반환 하는 메서드
+	 *
+	 * 썸네일이 캐싱되어 있으면 완료된 ListenableFuture를 바로 반환하고 그렇지
+	 * 않으면 작업 스레드에서 썸네일을 만든다. 원본이 없거나 이미지가 아니면
+	 * 결과는 null이다. 작업 큐가 가득 차면 RejectedExecutionException이 발생한다.
+	 **/
+	public ListenableFuture<File> thumbnail(final String reference) {
+
+		final String name = thumbnailName(reference);
+		File cached = file(name);
+		if(cached.isFile()) {
+			touch(cached);
+			SettableListenableFuture<File> done =
+					new SettableListenableFuture<File>();
+			done.set(cached);
+			return done;
+		}
+
+		ListenableFutureTask<File> task = new ListenableFutureTask<File>(
+				new Callable<File>() {
+			@Override
+			public File call() throws IOException {
+				try {
+					return generate(reference, name);
+				} finally {
+					inflight.remove(name);
+				}
+			}
+		});
+
+		ListenableFuture<File> running = inflight.putIfAbsent(name, task);
+		if(running != null) {
+			return running;
+		}
+
+		try {
+			executor.execute(task);
+		} catch(RejectedExecutionException e) {
+			inflight.remove(name, task);
+			throw e;
+		}
+		return task;
+	}
+
+	// 원본 이미지를 읽어 썸네일을 만들고 썸네일 폴더에 저장하는 메서드
+	private File generate(String reference, String name) throws IOException {
+
+		File target = file(name);
+		if(target.isFile()) {
+			return target;
+		}
+
+		String key = BlobStore.key(reference);
+		StoredAttachment attachment = attachmentStore.stat(key);
+		if(attachment == null) {
+			return null;
+		}
+
+		BufferedImage source;
+		InputStream in = attachmentStore.read(key, 0, attachment.getLength());
+		try {
+			source = read(in);
+		} finally {
+			in.close();
+		}
+		if(source == null) {
+			logger.warn("썸네일을 만들 수 없는 이미지입니다 : {}", reference);
+			return null;
+		}
+
+		// 긴 쪽이 maxSize가 되도록 비율을 유지해서 줄이고 작은 이미지는 늘리지 않는다.
+		double scale = Math.min(1.0, (double) maxSize
+				/ Math.max(source.getWidth(), source.getHeight()));
+		int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+		int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+
+		// JPEG는 투명도를 지원하지 않으므로 흰색 배경에 그린다.
+		BufferedImage thumbnail = new BufferedImage(
+				width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = thumbnail.createGraphics();
+		try {
+			graphics.setColor(Color.WHITE);
+			graphics.fillRect(0, 0, width, height);
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+					RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			graphics.setRenderingHint(RenderingHints.KEY_RENDERING,
+					RenderingHints.VALUE_RENDER_QUALITY);
+			graphics.drawImage(source, 0, 0, width, height, null);
+		} finally {
+			graphics.dispose();
+		}
+
+		// 임시 파일에 저장한 후에 이름을 바꿔서 만들다 만 썸네일이 보이지 않도록 한다.
+		File dir = target.getParentFile();
+		if(! dir.isDirectory() && ! dir.mkdirs() && ! dir.isDirectory()) {
+			throw new IOException("썸네일 폴더를 만들 수 없습니다 : " + dir);
+		}
+		File temp = File.createTempFile("thumbnail", ".tmp", dir);
+		try {
+			if(! ImageIO.write(thumbnail, "jpg", temp)) {
+				throw new IOException("JPEG 이미지를 저장할 수 없습니다.");
+			}
+			try {
+				Files.move(temp.toPath(), target.toPath(),
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch(AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), target.toPath(),
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp.toPath());
+		}
+
+		if(usedBytes.addAndGet(target.length()) > quota) {
+			evict();
+		}
+		return target;
+	}
+
+	/* 이미지를 썸네일에 필요한 해상도까지만 읽는 메서드
+	 * 원본이 썸네일의 두 배보다 크면 서브샘플링으로 픽셀을 건너뛰며 읽는다.
+	 **/
+	private BufferedImage read(InputStream in) throws IOException {
+
+		ImageInputStream input = ImageIO.createImageInputStream(in);
+		if(input == null) {
+			return null;
+		}
+		try {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+			if(! readers.hasNext()) {
+				return null;
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(input, true, true);
+				int width = reader.getWidth(0);
+				int height = reader.getHeight(0);
+				if((long) width * height > MAX_PIXELS) {
+					return null;
+				}
+
+				ImageReadParam param = reader.getDefaultReadParam();
+				int subsampling = Math.max(1,
+						Math.max(width, height) / (maxSize * 2));
+				param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+				return reader.read(0, param);
+			} finally {
+				reader.dispose();
+			}
+		} finally {
+			input.close();
+		}
+	}
+
+	/* 썸네일 전체 크기가 quota를 넘으면 오래 사용하지 않은 썸네일부터 삭제하는 메서드
+	 * 썸네일 폴더를 모두 읽어 전체 크기를 다시 계산하므로 여러 스레드가
+	 * 동시에 실행하지 않도록 했다.
+	 **/
+	private void evict() {
+
+		if(! evicting.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			final List<Path> files = new ArrayList<Path>();
+			final List<BasicFileAttributes> attributes =
+					new ArrayList<BasicFileAttributes>();
+			Files.walkFileTree(thumbnailDir.toPath(),
+					new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path file,
+						BasicFileAttributes attrs) {
+					if(attrs.isRegularFile()) {
+						files.add(file);
+						attributes.add(attrs);
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+
+			long total = 0;
+			List<Integer> order = new ArrayList<Integer>();
+			for(int i = 0; i < files.size(); i++) {
+				total += attributes.get(i).size();
+				order.add(i);
+			}
+
+			if(total > quota) {
+				Collections.sort(order, new Comparator<Integer>() {
+					@Override
+					public int compare(Integer a, Integer b) {
+						return attributes.get(a).lastModifiedTime().compareTo(
+								attributes.get(b).lastModifiedTime());
+					}
+				});
+
+				long target = quota / 10 * 9;
+				int deleted = 0;
+				for(int i = 0; i < order.size() && total > target; i++) {
+					int index = order.get(i);
+					if(Files.deleteIfExists(files.get(index))) {
+						total -= attributes.get(index).size();
+						deleted++;
+					}
+				}
+				logger.info("썸네일 {}개 삭제, 남은 크기 : {} 바이트", deleted, total);
+			}
+			usedBytes.set(total);
+		} catch(IOException e) {
+			logger.warn("썸네일 폴더 정리 실패", e);
+		} finally {
+			evicting.set(false);
+		}
+	}
+
+	// 썸네일을 사용한 시간을 파일의 수정 시간으로 기록하는 메서드
+	private static void touch(File file) {
+		long now = System.currentTimeMillis();
+		if(now - file.lastModified() > TOUCH_INTERVAL) {
+			file.setLastModified(now);
+		}
+	}
+
+	/* 참조 이름에 해당하는 썸네일 파일 이름
+	 * 해시 참조는 원본의 해시를, 이전 파일은 저장된 이름의 SHA-256 해시를 사용한다.
+	 **/
+	private String thumbnailName(String reference) {
+		String hash = BlobStore.hashOf(reference);
+		if(hash == null) {
+			hash = BlobStore.hex(BlobStore.newDigest().digest(
+					reference.getBytes(StandardCharsets.UTF_8)));
+		}
+		return hash + "_" + maxSize + ".jpg";
+	}
+
+	// 썸네일 이름의 해시 앞 4자리로 정한 두 단계 하위 폴더의 파일
+	private File file(String name) {
+		return new File(new File(new File(thumbnailDir,
+				name.substring(0, 2)), name.substring(2, 4)), name);
+	}
+}
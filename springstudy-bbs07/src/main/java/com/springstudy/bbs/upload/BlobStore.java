@@ -0,0 +1,174 @@
+package com.springstudy.bbs.upload;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.springstudy.bbs.dao.BoardDao;
+import com.springstudy.bbs.datasource.ReplicaRouting;
+import com.springstudy.bbs.storage.AttachmentStore;
+
+/* 첨부 파일을 내용(SHA-256 해시)으로 저장하는 컴포넌트
+ *
+ * 이전에는 업로드 파일을 UUID_원본파일이름으로 저장했기 때문에 같은 이미지가
+ * 만 번 올라오면 디스크와 페이지 캐시에 만 개의 복사본이 생겼다. 이 컴포넌트는
+ * 업로드 폴더에 파일 내용의 SHA-256 해시를 이름으로 파일을 한 번만 저장하고
+ * 게시 글의 file1과 files 테이블의 file2에는 "해시_원본파일이름" 형식의
+ * 참조 이름을 저장한다. 같은 파일을 몇 번 참조하는지는 attachment_blob 테이블의
+ * ref_count로 관리하며 참조가 모두 없어진 파일만 삭제한다.
+ *
+ * 파일을 저장하는 쪽(store)과 삭제하는 쪽(deleteIfUnreferenced)이 동시에
+ * 같은 해시의 파일을 다루면 방금 등록된 파일이 삭제될 수 있으므로 해시 별로
+ * 락을 나눠 잡고 삭제할 때는 락을 잡은 상태에서 참조 수를 다시 확인한다.
+ *
+ * 해시가 아닌 이름(UUID_원본파일이름)으로 저장된 이전 파일은 그 이름 그대로
+ * 찾는다. 파일은 root-context.xml에 정의된 AttachmentStore에 저장하므로
+ * 로컬 폴더와 S3 중 어디에 저장하든 이 클래스는 바뀌지 않는다. 단 락은 이 서버
+ * 안에서만 유효하므로 여러 서버가 같은 저장소를 사용하면 삭제와 재등록이
+ * 동시에 일어나는 드문 경우를 막지 못한다.
+ **/
+@Component
+public class BlobStore {
+
+	private static final Logger logger =
+			LoggerFactory.getLogger(BlobStore.class);
+
+	// 참조 이름 - SHA-256 해시(소문자 16진수 64자리)_원본파일이름
+	private static final Pattern REFERENCE =
+			Pattern.compile("^[0-9a-f]{64}_.*$", Pattern.DOTALL);
+
+	private static final int HASH_LENGTH = 64;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	// 해시 별로 나눠 잡는 락의 수
+	private static final int LOCK_STRIPES = 64;
+
+	private final Object[] locks = new Object[LOCK_STRIPES];
+
+	@Autowired
+	private AttachmentStore attachmentStore;
+
+	@Autowired
+	private BoardDao boardDao;
+
+	public BlobStore() {
+		for(int i = 0; i < locks.length; i++) {
+			locks[i] = new Object();
+		}
+	}
+
+	public void setBoardDao(BoardDao boardDao) {
+		this.boardDao = boardDao;
+	}
+
+	public void setAttachmentStore(AttachmentStore attachmentStore) {
+		this.attachmentStore = attachmentStore;
+	}
+
+	// 파일 내용의 해시를 계산할 MessageDigest를 생성하는 메서드
+	public static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	// MessageDigest로 계산한 해시를 소문자 16진수 문자열로 반환 하는 메서드
+	public static String hex(byte[] digest) {
+		char[] chars = new char[digest.length * 2];
+		for(int i = 0; i < digest.length; i++) {
+			chars[i * 2] = HEX[(digest[i] >> 4) & 0x0f];
+			chars[i * 2 + 1] = HEX[digest[i] & 0x0f];
+		}
+		return new String(chars);
+	}
+
+	// 해시와 원본 파일 이름으로 게시 글에 저장할 참조 이름을 만드는 메서드
+	public static String reference(String hash, String originalFilename) {
+		return hash + "_" + originalFilename;
+	}
+
+	// 해시로 저장된 파일을 가리키는 참조 이름인지 여부
+	public static boolean isBlobReference(String reference) {
+		return reference != null && REFERENCE.matcher(reference).matches();
+	}
+
+	// 참조 이름에서 해시를 반환 하는 메서드 - 해시 참조가 아니면 null
+	public static String hashOf(String reference) {
+		return isBlobReference(reference)
+				? reference.substring(0, HASH_LENGTH) : null;
+	}
+
+	/* 참조 이름에서 다운로드 할 때 사용할 파일 이름을 반환 하는 메서드
+	 * 해시 참조는 원본 파일 이름을, 이전 파일은 저장된 이름을 그대로 반환한다.
+	 **/
+	public static String downloadName(String reference) {
+		return isBlobReference(reference)
+				? reference.substring(HASH_LENGTH + 1) : reference;
+	}
+
+	/* 참조 이름에 해당하는 AttachmentStore의 키를 반환 하는 메서드
+	 * 해시 참조는 해시를, 이전 파일은 저장된 이름을 그대로 반환한다.
+	 **/
+	public static String key(String reference) {
+		String hash = hashOf(reference);
+		return hash != null ? hash : reference;
+	}
+
+	/* 스테이징 파일을 해시를 키로 AttachmentStore에 저장하는 메서드
+	 *
+	 * 같은 해시의 파일이 이미 있으면 내용이 같으므로 스테이징 파일만 삭제한다.
+	 * attachment_blob 테이블의 참조 수가 커밋된 후에 호출해야 한다.
+	 * 저장하지 못하면 스테이징 파일을 그대로 두고 IOException을 발생시킨다.
+	 **/
+	public void store(File staged, String hash) throws IOException {
+
+		synchronized(lockFor(hash)) {
+			if(attachmentStore.stat(hash) != null) {
+				Files.delete(staged.toPath());
+				return;
+			}
+			attachmentStore.put(hash, staged);
+		}
+	}
+
+	/* 참조가 모두 없어진 해시의 파일을 삭제하는 메서드
+	 *
+	 * 참조 수를 줄인 트랜잭션이 커밋된 후에 호출한다. 그 사이에 같은 파일이
+	 * 다시 등록되었을 수 있으므로 락을 잡고 attachment_blob 테이블에
+	 * 행이 없는 것을 확인한 후에 삭제한다. 복제 DB는 주 DB의 변경을 늦게
+	 * 반영하므로 참조 수는 반드시 주 DB에서 확인한다.
+	 **/
+	public void deleteIfUnreferenced(String hash) {
+
+		synchronized(lockFor(hash)) {
+			Boolean previous = ReplicaRouting.beginPrimary();
+			try {
+				if(boardDao.getBlobRefCount(hash) > 0) {
+					return;
+				}
+			} finally {
+				ReplicaRouting.endPrimary(previous);
+			}
+			try {
+				attachmentStore.delete(hash);
+			} catch(IOException e) {
+				logger.warn("업로드 파일 삭제 실패 : " + hash, e);
+			}
+		}
+	}
+
+	private Object lockFor(String hash) {
+		return locks[(hash.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+	}
+}
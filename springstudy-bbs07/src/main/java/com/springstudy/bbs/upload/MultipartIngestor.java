@@ -0,0 +1,230 @@
+package com.springstudy.bbs.upload;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadBase;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.apache.commons.fileupload.util.Streams;
+
+import com.springstudy.bbs.exception.UploadQuotaExceededException;
+
+/* 멀티파트 요청 본문을 스트리밍으로 읽어 업로드 파일을 바로 스테이징 파일에
+ * 쓰는 클래스
+ *
+ * CommonsMultipartResolver는 요청 본문 전체를 읽어 업로드 파일을 자신의
+ * 임시 파일에 저장한 후에 컨트롤러를 호출하고 컨트롤러의 transferTo()가 이
+ * 파일을 업로드 폴더로 한 번 더 복사한다. 이 클래스는 Commons FileUpload의
+ * 스트리밍 API(FileItemIterator)로 요청 본문을 순서대로 읽으면서 파일 필드의
+ * 데이터를 NIO FileChannel로 스테이징 파일에 바로 쓰기 때문에 임시 파일이 없다.
+ * 파일에 쓰는 동안 내용의 SHA-256 해시도 함께 계산해 파일을 다시 읽지 않는다.
+ * 스테이징 파일은 트랜잭션이 커밋되면 해시 이름으로 업로드 폴더에 옮겨진다.
+ *
+ * 업로드 크기 제한
+ * - maxRequestSize : 요청 본문 전체의 최대 크기, Content-Length 헤더가 이
+ *   값보다 크면 본문을 읽지 않고 바로 거절한다.
+ * - maxFileSize : 업로드 파일 하나의 최대 크기
+ * 크기는 데이터를 읽는 동안 계속 확인하기 때문에 Content-Length 헤더가 없는
+ * 요청도 제한을 넘는 순간 읽기를 멈추고 UploadQuotaExceededException을
+ * 발생시킨다. 이미 쓴 스테이징 파일은 StagedUploads의 discard()로 삭제된다.
+ *
+ * 이 클래스로 읽을 요청은 StreamingMultipartResolver가 멀티파트 요청을
+ * 미리 해석하지 않도록 streamingPaths에 경로를 지정해야 한다.
+ **/
+public class MultipartIngestor {
+
+	// NIO 버퍼의 크기
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private long maxFileSize = 10L * 1024 * 1024;
+
+	private long maxRequestSize = 50L * 1024 * 1024;
+
+	private String defaultEncoding = "UTF-8";
+
+	public void setMaxFileSize(long maxFileSize) {
+		this.maxFileSize = maxFileSize;
+	}
+
+	public void setMaxRequestSize(long maxRequestSize) {
+		this.maxRequestSize = maxRequestSize;
+	}
+
+	public void setDefaultEncoding(String defaultEncoding) {
+		this.defaultEncoding = defaultEncoding;
+	}
+
+	public long getMaxFileSize() {
+		return maxFileSize;
+	}
+
+	public long getMaxRequestSize() {
+		return maxRequestSize;
+	}
+
+	/* 멀티파트 요청 본문을 읽어 폼 필드는 MultipartUpload에 저장하고
+	 * 업로드 파일은 stagedUploads의 스테이징 파일에 쓰는 메서드
+	 * 실패하면 이미 쓴 스테이징 파일을 삭제하고 예외를 발생시킨다.
+	 **/
+	public MultipartUpload ingest(HttpServletRequest request,
+			StagedUploads stagedUploads) throws IOException {
+
+		if(! ServletFileUpload.isMultipartContent(request)) {
+			throw new IllegalArgumentException("멀티파트 요청이 아닙니다.");
+		}
+
+		// 본문을 읽기 전에 Content-Length로 요청 전체의 크기를 확인한다.
+		long contentLength = contentLength(request);
+		if(maxRequestSize >= 0 && contentLength > maxRequestSize) {
+			throw new UploadQuotaExceededException("요청 크기 " + contentLength
+					+ " 바이트가 최대 크기 " + maxRequestSize + " 바이트를 넘었습니다.");
+		}
+
+		String encoding = request.getCharacterEncoding() != null
+				? request.getCharacterEncoding() : defaultEncoding;
+
+		// FileItemFactory를 지정하지 않으면 스트리밍 API만 사용할 수 있다.
+		ServletFileUpload upload = new ServletFileUpload();
+		upload.setHeaderEncoding(encoding);
+		upload.setSizeMax(maxRequestSize);
+
+		MultipartUpload result = new MultipartUpload(stagedUploads);
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		long totalBytes = 0;
+
+		boolean success = false;
+		try {
+			FileItemIterator items = upload.getItemIterator(request);
+			while(items.hasNext()) {
+				FileItemStream item = items.next();
+				InputStream in = item.openStream();
+
+				if(item.isFormField()) {
+					result.addParameter(
+							item.getFieldName(), Streams.asString(in, encoding));
+					continue;
+				}
+
+				// 파일을 선택하지 않은 파일 필드는 건너뛴다.
+				String originalFilename = originalFilename(item.getName());
+				if(originalFilename.isEmpty()) {
+					in.close();
+					continue;
+				}
+
+				String stagingName = stagedUploads.reserve(originalFilename);
+				MessageDigest digest = BlobStore.newDigest();
+				long written = write(Channels.newChannel(in),
+						stagedUploads.stagedFile(stagingName), buffer, digest,
+						maxRequestSize < 0 ? -1 : maxRequestSize - totalBytes);
+
+				// 내용이 없는 파일은 업로드 하지 않은 것으로 처리한다.
+				if(written == 0) {
+					stagedUploads.cancel(stagingName);
+					continue;
+				}
+				totalBytes += written;
+				result.addFileName(item.getFieldName(), stagedUploads.complete(
+						stagingName, BlobStore.hex(digest.digest()), written));
+			}
+			success = true;
+			return result;
+
+		} catch(FileUploadBase.FileUploadIOException e) {
+			throw quotaExceeded(e.getCause(), e);
+		} catch(FileUploadException e) {
+			throw quotaExceeded(e, e);
+		} finally {
+			if(! success) {
+				stagedUploads.discard();
+			}
+		}
+	}
+
+	/* 채널에서 읽은 데이터를 FileChannel로 파일에 쓰고 쓴 바이트 수를 반환 하는 메서드
+	 * 파일에 쓰는 데이터로 digest에 파일 내용의 해시를 함께 계산한다.
+	 * 파일 크기가 maxFileSize를 넘거나 요청에 남은 크기(remaining)를 넘으면
+	 * 파일을 더 읽지 않고 UploadQuotaExceededException을 발생시킨다.
+	 **/
+	private long write(ReadableByteChannel source, File file,
+			ByteBuffer buffer, MessageDigest digest, long remaining)
+					throws IOException {
+
+		long written = 0;
+		FileChannel target = FileChannel.open(file.toPath(),
+				StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		try {
+			buffer.clear();
+			while(source.read(buffer) != -1) {
+				buffer.flip();
+				written += buffer.remaining();
+
+				if(maxFileSize >= 0 && written > maxFileSize) {
+					throw new UploadQuotaExceededException(
+							"업로드 파일 하나의 최대 크기 " + maxFileSize
+							+ " 바이트를 넘었습니다.");
+				}
+				if(remaining >= 0 && written > remaining) {
+					throw new UploadQuotaExceededException(
+							"요청 전체의 최대 크기 " + maxRequestSize
+							+ " 바이트를 넘었습니다.");
+				}
+
+				digest.update(buffer.duplicate());
+				while(buffer.hasRemaining()) {
+					target.write(buffer);
+				}
+				buffer.clear();
+			}
+		} finally {
+			target.close();
+			source.close();
+		}
+		return written;
+	}
+
+	// Commons FileUpload의 크기 제한 예외를 UploadQuotaExceededException으로 바꾼다.
+	private RuntimeException quotaExceeded(Throwable cause, Exception e) {
+		if(cause instanceof FileUploadBase.SizeLimitExceededException
+				|| cause instanceof FileUploadBase.FileSizeLimitExceededException) {
+			return new UploadQuotaExceededException(cause.getMessage());
+		}
+		return new IllegalStateException("멀티파트 요청을 읽지 못했습니다.", e);
+	}
+
+	/* IE는 파일 이름에 클라이언트의 전체 경로를 포함해 보내기 때문에
+	 * 마지막 경로 구분자 뒤의 이름만 사용한다.
+	 **/
+	private static String originalFilename(String name) {
+		if(name == null) {
+			return "";
+		}
+		int separator = Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\'));
+		return name.substring(separator + 1);
+	}
+
+	// Content-Length 헤더의 값을 반환 하는 메서드 - 헤더가 없으면 -1
+	private static long contentLength(HttpServletRequest request) {
+		String header = request.getHeader("Content-Length");
+		if(header == null) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(header.trim());
+		} catch(NumberFormatException e) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package com.springstudy.bbs.upload;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/* MultipartIngestor가 요청 본문을 읽은 결과를 저장하는 클래스
+ *
+ * 일반 폼 필드의 값과 파일 필드 마다 게시 글에 저장할 참조 이름
+ * (해시_원본파일이름)을 저장한다. 저장된 파일은 stagedUploads의 스테이징 파일이므로 트랜잭션 안에서
+ * trackCommit()을 호출하고 커밋된 후에 promoteIfCommitted()를 호출해야 업로드
+ * 폴더로 옮겨진다.
+ **/
+public class MultipartUpload {
+
+	private final StagedUploads stagedUploads;
+
+	private final Map<String, String> parameters = new HashMap<String, String>();
+
+	private final Map<String, List<String>> fileNames =
+			new HashMap<String, List<String>>();
+
+	MultipartUpload(StagedUploads stagedUploads) {
+		this.stagedUploads = stagedUploads;
+	}
+
+	public StagedUploads getStagedUploads() {
+		return stagedUploads;
+	}
+
+	// 폼 필드의 값을 반환 하는 메서드 - 같은 이름의 필드가 여러 개면 첫 번째 값
+	public String getParameter(String name) {
+		return parameters.get(name);
+	}
+
+	/* 파일 필드로 업로드된 파일의 참조 이름을 반환 하는 메서드
+	 * 업로드된 파일이 없으면 null을 반환한다.
+	 **/
+	public String getFileName(String name) {
+		List<String> names = fileNames.get(name);
+		return names == null ? null : names.get(0);
+	}
+
+	// 같은 이름의 파일 필드로 업로드된 파일의 참조 이름을 모두 반환 하는 메서드
+	public List<String> getFileNames(String name) {
+		List<String> names = fileNames.get(name);
+		return names == null ? new ArrayList<String>() : names;
+	}
+
+	void addParameter(String name, String value) {
+		if(! parameters.containsKey(name)) {
+			parameters.put(name, value);
+		}
+	}
+
+	void addFileName(String name, String saveName) {
+		List<String> names = fileNames.get(name);
+		if(names == null) {
+			names = new ArrayList<String>();
+			fileNames.put(name, names);
+		}
+		names.add(saveName);
+	}
+}
@@ -0,0 +1,260 @@
+package com.springstudy.bbs.upload;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.springstudy.bbs.domain.AttachmentBlob;
+import com.springstudy.bbs.exception.AttachmentStoreException;
+
+/* 게시 글 하나를 등록할 때 업로드된 파일을 스테이징 영역에 저장해 두었다가
+ * 트랜잭션의 결과에 따라 업로드 폴더로 옮기거나 삭제하는 클래스
+ *
+ * 1. stage() - 트랜잭션을 시작하기 전에 업로드된 파일을 스테이징 폴더에 저장하고
+ *    게시 글에 저장할 참조 이름(해시_원본파일이름)을 반환한다. DB 커넥션을 잡지
+ *    않은 상태에서 파일을 저장하기 때문에 업로드가 느려도 커넥션 풀에 영향을
+ *    주지 않는다. 파일을 저장하면서 내용의 SHA-256 해시를 함께 계산한다.
+ * 2. trackCommit() - 트랜잭션 안에서 호출해 트랜잭션이 커밋되었는지 기록하고
+ *    롤백되면 스테이징 파일을 삭제하도록 등록한다. 같은 트랜잭션에서
+ *    getBlobs()로 얻은 해시의 참조 수를 증가시켜야 한다.
+ * 3. promoteIfCommitted() - 트랜잭션이 끝나 커넥션을 반환한 후에 호출해
+ *    트랜잭션이 커밋되었으면 스테이징 파일을 BlobStore로 옮긴다.
+ * 4. discard() - 트랜잭션을 시작하지도 못하고 실패하면 스테이징 파일을 삭제한다.
+ *
+ * UploadStager의 begin() 메서드로 생성하며 스레드 간에 공유하지 않는다.
+ **/
+public class StagedUploads {
+
+	private static final Logger logger =
+			LoggerFactory.getLogger(StagedUploads.class);
+
+	// 스테이징 파일을 저장소에 저장하는 최대 시도 횟수
+	private static final int STORE_ATTEMPTS = 3;
+
+	// 저장에 실패한 후 다시 시도하기 전에 기다리는 시간(밀리초) - 시도마다 늘어난다.
+	private static final long RETRY_DELAY = 200;
+
+	private final File stagingDir;
+	private final BlobStore blobStore;
+
+	// 스테이징 파일 이름(UUID_원본파일이름)을 키로 스테이징 파일의 정보를 저장한다.
+	private final Map<String, Staged> staged = new LinkedHashMap<String, Staged>();
+
+	// trackCommit()으로 등록한 트랜잭션이 커밋되었는지 여부
+	private volatile boolean committed;
+
+	StagedUploads(File stagingDir, BlobStore blobStore) {
+		this.stagingDir = stagingDir;
+		this.blobStore = blobStore;
+	}
+
+	/* 업로드된 파일을 스테이징 폴더에 저장하고 게시 글에 저장할
+	 * 참조 이름(해시_원본파일이름)을 반환 하는 메서드
+	 **/
+	public String stage(MultipartFile multipartFile) throws IOException {
+
+		String stagingName = reserve(multipartFile.getOriginalFilename());
+		MessageDigest digest = BlobStore.newDigest();
+
+		InputStream in = new DigestInputStream(
+				multipartFile.getInputStream(), digest);
+		long size;
+		try {
+			size = Files.copy(in, stagedFile(stagingName).toPath());
+		} finally {
+			in.close();
+		}
+		return complete(stagingName, BlobStore.hex(digest.digest()), size);
+	}
+
+	/* 스테이징 파일 이름(UUID_원본파일이름)을 만들고 스테이징 파일로
+	 * 등록하는 메서드 - 요청 본문을 직접 읽어 스테이징 파일에 쓰는
+	 * MultipartIngestor가 사용한다. 파일에 쓰다가 실패해도 등록된
+	 * 스테이징 파일은 discard()에서 삭제된다.
+	 **/
+	public String reserve(String originalFilename) {
+
+		String stagingName = UUID.randomUUID().toString() + "_" + originalFilename;
+		staged.put(stagingName, new Staged(originalFilename));
+		return stagingName;
+	}
+
+	/* reserve()로 등록한 스테이징 파일에 내용을 모두 쓴 후에 호출해 해시와
+	 * 크기를 저장하고 게시 글에 저장할 참조 이름(해시_원본파일이름)을 반환 하는 메서드
+	 **/
+	public String complete(String stagingName, String hash, long size) {
+
+		Staged file = staged.get(stagingName);
+		if(file == null) {
+			throw new IllegalArgumentException(
+					"등록되지 않은 스테이징 파일 : " + stagingName);
+		}
+		file.hash = hash;
+		file.size = size;
+		return BlobStore.reference(hash, file.originalFilename);
+	}
+
+	// reserve()로 등록한 스테이징 파일을 삭제하고 등록을 취소하는 메서드
+	public void cancel(String stagingName) {
+		if(staged.remove(stagingName) != null) {
+			delete(stagedFile(stagingName));
+		}
+	}
+
+	// reserve()로 등록한 이름에 해당하는 스테이징 파일을 반환 하는 메서드
+	public File stagedFile(String stagingName) {
+		return new File(stagingDir, stagingName);
+	}
+
+	/* complete()까지 마친 스테이징 파일의 해시와 크기를 반환 하는 메서드
+	 * 트랜잭션 안에서 attachment_blob 테이블의 참조 수를 증가시킬 때 사용한다.
+	 * 같은 내용의 파일을 여러 번 첨부하면 참조 수 만큼 여러 번 들어 있다.
+	 **/
+	public List<AttachmentBlob> getBlobs() {
+		List<AttachmentBlob> blobs = new ArrayList<AttachmentBlob>();
+		for(Staged file : staged.values()) {
+			if(file.hash != null) {
+				blobs.add(new AttachmentBlob(file.hash, file.size));
+			}
+		}
+		return blobs;
+	}
+
+	/* 현재 트랜잭션이 커밋되었는지 기록하고 롤백되면 스테이징 파일을
+	 * 삭제하도록 등록하는 메서드 - 진행 중인 트랜잭션이 없으면 커밋된 것으로 본다.
+	 * 
+	 * 트랜잭션 매니저는 afterCompletion()을 호출한 후에 커넥션을 반환하므로
+	 * 여기서 파일을 옮기면 S3 업로드처럼 오래 걸리는 작업을 하는 동안 커넥션을
+	 * 잡고 있게 된다. 그래서 파일은 트랜잭션이 끝난 후에 promoteIfCommitted()로
+	 * 옮긴다.
+	 **/
+	public void trackCommit() {
+
+		if(! TransactionSynchronizationManager.isSynchronizationActive()) {
+			committed = true;
+			return;
+		}
+
+		TransactionSynchronizationManager.registerSynchronization(
+			new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCompletion(int status) {
+				if(status == TransactionSynchronization.STATUS_COMMITTED) {
+					committed = true;
+				} else {
+					discard();
+				}
+			}
+		});
+	}
+
+	/* trackCommit()으로 등록한 트랜잭션이 커밋되었으면 스테이징 파일을
+	 * BlobStore로 옮기는 메서드 - 트랜잭션이 끝나 커넥션을 반환한 후에 호출한다.
+	 * 저장하지 못한 파일이 있으면 AttachmentStoreException이 발생한다.
+	 **/
+	public void promoteIfCommitted() {
+		if(committed) {
+			promote();
+		}
+	}
+
+	// 스테이징 파일을 모두 삭제하는 메서드 - 여러 번 호출해도 된다.
+	public void discard() {
+		for(String stagingName : staged.keySet()) {
+			delete(stagedFile(stagingName));
+		}
+		staged.clear();
+	}
+
+	/* 스테이징 파일을 BlobStore로 옮기는 메서드
+	 * 해시를 계산하지 못한 스테이징 파일은 옮기지 않고 삭제한다.
+	 *
+	 * S3 같은 원격 저장소는 일시적으로 실패할 수 있으므로 STORE_ATTEMPTS 번까지
+	 * 다시 시도한다. 끝내 저장하지 못한 파일은 staged에 남겨 discard()에서
+	 * 스테이징 파일이 삭제되도록 하고 AttachmentStoreException을 발생시켜
+	 * 첨부 파일 없이 게시 글이 등록되었음을 알린다. 같은 파일을 다시 첨부하면
+	 * store()가 저장소에 파일이 없는 것을 확인하고 다시 저장한다.
+	 **/
+	private void promote() {
+
+		IOException failure = null;
+		Iterator<Map.Entry<String, Staged>> iterator =
+				staged.entrySet().iterator();
+		while(iterator.hasNext()) {
+			Map.Entry<String, Staged> entry = iterator.next();
+			File file = stagedFile(entry.getKey());
+			if(entry.getValue().hash == null) {
+				delete(file);
+				iterator.remove();
+				continue;
+			}
+			try {
+				store(file, entry.getValue().hash);
+				iterator.remove();
+			} catch(IOException e) {
+				logger.error("업로드 파일을 저장하지 못했습니다 : "
+						+ entry.getValue().hash, e);
+				failure = e;
+			}
+		}
+
+		if(failure != null) {
+			throw new AttachmentStoreException(
+					"첨부 파일을 저장하지 못했습니다.", failure);
+		}
+	}
+
+	// 실패하면 잠시 기다렸다가 STORE_ATTEMPTS 번까지 다시 저장하는 메서드
+	private void store(File file, String hash) throws IOException {
+		for(int attempt = 1; ; attempt++) {
+			try {
+				blobStore.store(file, hash);
+				return;
+			} catch(IOException e) {
+				if(attempt == STORE_ATTEMPTS) {
+					throw e;
+				}
+				logger.warn("업로드 파일 저장 재시도 {} : {}", attempt, e.toString());
+				try {
+					Thread.sleep(RETRY_DELAY * attempt);
+				} catch(InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+			}
+		}
+	}
+
+	private void delete(File file) {
+		if(file.exists() && ! file.delete()) {
+			logger.warn("스테이징 파일 삭제 실패 : {}", file);
+		}
+	}
+
+	// 스테이징 파일 하나의 정보
+	private static class Staged {
+		private final String originalFilename;
+		private String hash;
+		private long size;
+
+		private Staged(String originalFilename) {
+			this.originalFilename = originalFilename;
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package com.springstudy.bbs.upload;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.regex.Pattern;
+
+import javax.servlet.ServletContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.web.context.ServletContextAware;
+
+/* 업로드 파일이 저장될 위치를 정하는 클래스
+ *
+ * 이전에는 모든 업로드 파일을 웹 애플리케이션의 /resources/upload/ 폴더
+ * 하나에 저장했다. 파일이 수백만 개가 되면 폴더 하나에서 파일을 찾고 백업하는
+ * 작업이 아주 느려지고 웹 애플리케이션 폴더 안에 있어 다시 배포할 때마다
+ * 업로드 파일이 지워질 위험이 있었다. 이 클래스는 웹 애플리케이션 밖의
+ * rootPath 아래에 저장 이름의 해시로 두 단계의 하위 폴더를 만들어 저장한다.
+ *
+ *   rootPath/ab/cd/저장이름
+ *
+ * 저장 이름이 SHA-256 해시(BlobStore)면 해시의 앞 4자리를 그대로 사용하고
+ * 그렇지 않으면(UUID_원본파일이름) 저장 이름의 SHA-256 해시 앞 4자리를 사용한다.
+ * 폴더 하나에는 최대 256개의 하위 폴더가 생기므로 파일이 많아도 폴더 하나의
+ * 크기가 일정하게 유지된다.
+ *
+ * 스테이징 폴더도 rootPath 아래에 두어 스테이징 파일을 복사하지 않고 이름만
+ * 바꿔서 옮길 수 있도록 했다.
+ *
+ * 애플리케이션이 시작되면 이전 업로드 폴더(legacyPath)에 남은 파일을 별도의
+ * 스레드에서 새 위치로 옮긴다. 옮긴 파일은 이전 폴더에서 없어지므로 다시
+ * 시작해도 남은 파일만 옮기며 옮기는 동안에는 locate()가 이전 폴더에서도
+ * 파일을 찾는다.
+ *
+ * root-context.xml에서 config/bbs.properties의 값으로 Bean을 정의한다.
+ **/
+public class StorageLayout implements ServletContextAware, InitializingBean {
+
+	private static final Logger logger =
+			LoggerFactory.getLogger(StorageLayout.class);
+
+	private static final Pattern HASH_NAME = Pattern.compile("^[0-9a-f]{64}$");
+
+	// 스테이징 폴더 이름 - 해시 폴더 이름(16진수 2자리)과 겹치지 않는다.
+	private static final String STAGING_DIR = ".staging";
+
+	// 업로드 파일을 저장할 웹 애플리케이션 밖의 폴더
+	private String rootPath;
+
+	// 웹 애플리케이션 루트를 기준으로 한 이전 업로드 폴더의 경로
+	private String legacyPath = "/resources/upload/";
+
+	private File rootDir;
+
+	private File stagingDir;
+
+	private File legacyDir;
+
+	public void setRootPath(String rootPath) {
+		this.rootPath = rootPath;
+	}
+
+	public void setLegacyPath(String legacyPath) {
+		this.legacyPath = legacyPath;
+	}
+
+	@Override
+	public void setServletContext(ServletContext servletContext) {
+		String realPath = servletContext.getRealPath(legacyPath);
+		legacyDir = realPath != null ? new File(realPath) : null;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+
+		if(rootPath == null || rootPath.trim().isEmpty()) {
+			throw new IllegalStateException("업로드 폴더(rootPath)를 지정해야 합니다.");
+		}
+
+		rootDir = new File(rootPath.trim());
+		stagingDir = new File(rootDir, STAGING_DIR);
+		if(! stagingDir.isDirectory() && ! stagingDir.mkdirs()) {
+			throw new IllegalStateException(
+					"업로드 폴더를 만들 수 없습니다 : " + stagingDir);
+		}
+		logger.info("업로드 폴더 : {}", rootDir);
+
+		if(legacyDir == null || ! legacyDir.isDirectory()
+				|| legacyDir.equals(rootDir)) {
+			return;
+		}
+
+		// 이전 업로드 폴더의 파일은 별도의 스레드에서 새 위치로 옮긴다.
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					migrate();
+				} catch(IOException e) {
+					logger.error("이전 업로드 파일 이동 실패", e);
+				}
+			}
+		}, "upload-layout-migration");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public File getRootDir() {
+		return rootDir;
+	}
+
+	// 스테이징 폴더 - 업로드 폴더와 같은 파일 시스템에 있다.
+	public File getStagingDir() {
+		return stagingDir;
+	}
+
+	/* 저장 이름에 해당하는 파일의 위치를 반환 하는 메서드
+	 * 파일을 저장할 때 사용하며 하위 폴더가 없으면 만든다.
+	 **/
+	public File resolve(String storedName) {
+		File file = file(storedName);
+		File dir = file.getParentFile();
+		if(! dir.isDirectory() && ! dir.mkdirs() && ! dir.isDirectory()) {
+			logger.warn("업로드 폴더를 만들 수 없습니다 : {}", dir);
+		}
+		return file;
+	}
+
+	/* 저장 이름에 해당하는 파일을 찾아 반환 하는 메서드
+	 * 파일을 읽을 때 사용하며 이전 업로드 폴더에서 아직 옮기지 못한 파일은
+	 * 이전 폴더의 파일을 반환한다.
+	 **/
+	public File locate(String storedName) {
+		File file = file(storedName);
+		if(! file.exists() && legacyDir != null) {
+			File legacy = new File(legacyDir, storedName);
+			if(legacy.exists()) {
+				return legacy;
+			}
+		}
+		return file;
+	}
+
+	/* 이전 업로드 폴더의 파일을 모두 새 위치로 옮기는 메서드
+	 * 새 위치에 같은 이름의 파일이 있으면 옮기지 않고 이전 파일을 그대로 둔다.
+	 **/
+	public void migrate() throws IOException {
+
+		long start = System.currentTimeMillis();
+		int moved = 0;
+		int skipped = 0;
+
+		DirectoryStream<Path> files = Files.newDirectoryStream(legacyDir.toPath());
+		try {
+			for(Path source : files) {
+				if(! Files.isRegularFile(source)) {
+					continue;
+				}
+				File target = resolve(source.getFileName().toString());
+				if(target.exists()) {
+					skipped++;
+					continue;
+				}
+				try {
+					try {
+						Files.move(source, target.toPath(),
+								StandardCopyOption.ATOMIC_MOVE);
+					} catch(AtomicMoveNotSupportedException e) {
+						// 다른 파일 시스템이면 복사한 후에 삭제한다.
+						Files.move(source, target.toPath());
+					}
+					moved++;
+				} catch(IOException e) {
+					logger.warn("업로드 파일 이동 실패 : " + source, e);
+					skipped++;
+				}
+			}
+		} finally {
+			files.close();
+		}
+
+		if(moved > 0 || skipped > 0) {
+			logger.info("이전 업로드 파일 이동 : {}개 이동, {}개 남음, {}ms",
+					new Object[] { moved, skipped,
+							System.currentTimeMillis() - start });
+		}
+	}
+
+	// 저장 이름의 해시로 정한 두 단계 하위 폴더의 파일
+	private File file(String storedName) {
+		
+		// 저장 이름에 경로가 포함되면 업로드 폴더 밖의 파일에 접근할 수 있다.
+		if(storedName.isEmpty() || storedName.indexOf('/') >= 0
+				|| storedName.indexOf('\\') >= 0 || storedName.equals("..")) {
+			throw new IllegalArgumentException("잘못된 파일 이름 : " + storedName);
+		}
+		String hash = HASH_NAME.matcher(storedName).matches()
+				? storedName : BlobStore.hex(BlobStore.newDigest().digest(
+						storedName.getBytes(StandardCharsets.UTF_8)));
+		File dir = new File(new File(rootDir, hash.substring(0, 2)),
+				hash.substring(2, 4));
+		return new File(dir, storedName);
+	}
+}
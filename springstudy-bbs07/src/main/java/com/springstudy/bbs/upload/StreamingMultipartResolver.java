@@ -0,0 +1,43 @@
+package com.springstudy.bbs.upload;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.web.multipart.commons.CommonsMultipartResolver;
+import org.springframework.web.util.UrlPathHelper;
+
+/* 지정한 경로의 요청은 멀티파트 요청을 미리 해석하지 않는 MultipartResolver
+ *
+ * DispatcherServlet은 멀티파트 요청이 들어오면 컨트롤러를 호출하기 전에
+ * MultipartResolver로 요청 본문 전체를 읽어 업로드 파일을 임시 파일에 저장한다.
+ * streamingPaths에 지정한 경로의 요청은 멀티파트 요청이 아닌 것으로 처리해
+ * 요청 본문을 읽지 않은 상태로 컨트롤러에 전달하고 컨트롤러에서
+ * MultipartIngestor로 요청 본문을 스트리밍으로 읽는다.
+ * 그 밖의 요청은 CommonsMultipartResolver와 같이 처리한다.
+ **/
+public class StreamingMultipartResolver extends CommonsMultipartResolver {
+
+	// 멀티파트 요청을 해석하지 않을 경로 - 컨텍스트 경로를 제외한 경로
+	private List<String> streamingPaths = new ArrayList<String>();
+
+	/* 요청 URI에서 컨텍스트 경로를 제외한 경로를 구한다.
+	 * ;jsessionid=와 같은 경로 파라미터를 제거하고 URL 인코딩을 디코딩한다.
+	 **/
+	private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+	public void setStreamingPaths(List<String> streamingPaths) {
+		this.streamingPaths = streamingPaths;
+	}
+
+	@Override
+	public boolean isMultipart(HttpServletRequest request) {
+
+		String path = urlPathHelper.getPathWithinApplication(request);
+		if(streamingPaths.contains(path)) {
+			return false;
+		}
+		return super.isMultipart(request);
+	}
+}
@@ -0,0 +1,62 @@
+package com.springstudy.bbs.upload;
+
+import java.io.File;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/* 업로드된 파일을 트랜잭션 밖에서 저장하기 위한 스테이징 폴더를 관리하는 컴포넌트
+ *
+ * 게시 글과 첨부 파일을 등록할 때 트랜잭션 안에서 파일을 저장하면 파일이 저장되는
+ * 동안 DB 커넥션을 계속 잡고 있게 되어 업로드가 느린 요청 몇 개만으로 커넥션
+ * 풀이 바닥날 수 있다. 그래서 파일은 트랜잭션을 시작하기 전에 스테이징 폴더에
+ * 저장하고 트랜잭션이 커밋된 후에 업로드 폴더로 옮긴다(StagedUploads 참고).
+ *
+ * 스테이징 폴더는 StorageLayout이 업로드 폴더 아래에 만든다. 업로드 폴더와
+ * 같은 파일 시스템에 있어야 파일을 복사하지 않고 이름만 바꿔서 옮길 수 있다.
+ * 서버가 비정상 종료되어 남은 스테이징 파일은 애플리케이션이 시작될 때 삭제한다.
+ **/
+@Component
+public class UploadStager implements InitializingBean {
+
+	private static final Logger logger =
+			LoggerFactory.getLogger(UploadStager.class);
+
+	@Autowired
+	private StorageLayout storageLayout;
+
+	@Autowired
+	private BlobStore blobStore;
+
+	public void setStorageLayout(StorageLayout storageLayout) {
+		this.storageLayout = storageLayout;
+	}
+
+	public void setBlobStore(BlobStore blobStore) {
+		this.blobStore = blobStore;
+	}
+
+	// 이전에 실행하다 남은 스테이징 파일을 삭제한다.
+	@Override
+	public void afterPropertiesSet() {
+
+		File[] leftovers = storageLayout.getStagingDir().listFiles();
+		if(leftovers != null) {
+			for(File leftover : leftovers) {
+				if(! leftover.delete()) {
+					logger.warn("스테이징 파일 삭제 실패 : {}", leftover);
+				}
+			}
+		}
+	}
+
+	/* 게시 글 하나의 업로드 파일을 스테이징 할 StagedUploads를 생성하는 메서드
+	 * 트랜잭션이 커밋되면 스테이징 파일은 BlobStore의 업로드 폴더로 옮겨진다.
+	 **/
+	public StagedUploads begin() {
+		return new StagedUploads(storageLayout.getStagingDir(), blobStore);
+	}
+}
@@ -0,0 +1,21 @@
+use spring;
+
+-- 첨부 파일을 내용(SHA-256 해시)으로 한 번만 저장하고 참조 수를 관리하는 테이블
+-- 업로드 폴더에는 해시를 이름으로 파일이 하나만 저장되고 springbbs 테이블의 file1과
+-- files 테이블의 file2에는 "해시_원본파일이름" 형식의 참조 이름이 저장된다.
+-- ref_count는 이 파일을 참조하는 file1, file2의 수로 게시 글이 삭제되면 감소하고
+-- 0이 되면 행을 삭제한 후 업로드 폴더의 파일을 삭제한다.
+DROP TABLE IF EXISTS attachment_blob;
+CREATE TABLE IF NOT EXISTS attachment_blob(
+	hash CHAR(64) NOT NULL PRIMARY KEY,
+	size BIGINT NOT NULL,
+	ref_count INTEGER NOT NULL DEFAULT 0,
+	reg_date TIMESTAMP NOT NULL
+)ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+-- 참조 이름은 해시 64자에 원본 파일 이름이 붙으므로 파일 이름 컬럼의 크기를 늘린다.
+ALTER TABLE springbbs MODIFY file1 VARCHAR(255);
+ALTER TABLE files MODIFY file2 VARCHAR(255);
+
+-- 확인
+SELECT * FROM attachment_blob;
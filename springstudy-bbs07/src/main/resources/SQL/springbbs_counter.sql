@@ -0,0 +1,52 @@
+use spring;
+
+-- 게시 글의 추천, 땡큐 수를 나눠서 저장하는 테이블
+-- 게시 글 하나의 추천, 땡큐 수를 slot 별로 여러 행에 나눠 저장하고 읽을 때 합산한다.
+-- 여러 사용자가 같은 게시 글을 동시에 추천해도 서로 다른 slot 행을 증가시키므로
+-- springbbs 테이블의 게시 글 행 하나에 쓰기 락이 몰리지 않는다.
+-- springbbs 테이블의 recommend, thank 컬럼은 이 테이블을 만들기 전의 값으로 유지하고
+-- 게시 글의 추천, 땡큐 수는 springbbs의 값과 이 테이블의 합계를 더해서 구한다.
+DROP TABLE IF EXISTS springbbs_counter;
+CREATE TABLE IF NOT EXISTS springbbs_counter(
+	bbs_no INTEGER NOT NULL,
+	slot TINYINT NOT NULL,
+	recommend INTEGER NOT NULL DEFAULT 0,
+	thank INTEGER NOT NULL DEFAULT 0,
+	PRIMARY KEY(bbs_no, slot)
+)ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+-- 추천, 땡큐 수를 증가시키고 합계를 반환하는 프로시저
+-- p_type이 recommend면 추천 수를, thank면 땡큐 수를 p_slot 행에서 1 증가시키고
+-- 게시 글의 추천, 땡큐 수 합계를 하나의 결과 셋으로 반환한다.
+-- 애플리케이션에서 증가와 합계 조회를 한 번의 호출로 처리할 수 있다.
+-- springbbs 테이블에 없는(삭제된) 게시 글이면 slot 행을 만들지 않고
+-- 빈 결과 셋을 반환한다.
+DROP PROCEDURE IF EXISTS springbbs_recommend;
+DELIMITER //
+CREATE PROCEDURE springbbs_recommend(
+	IN p_no INTEGER, IN p_type VARCHAR(10), IN p_slot TINYINT)
+BEGIN
+	IF p_type = 'recommend' THEN
+		INSERT INTO springbbs_counter(bbs_no, slot, recommend, thank)
+		SELECT b.no, p_slot, 1, 0 FROM springbbs b WHERE b.no = p_no
+		ON DUPLICATE KEY UPDATE
+			springbbs_counter.recommend = springbbs_counter.recommend + 1;
+	ELSEIF p_type = 'thank' THEN
+		INSERT INTO springbbs_counter(bbs_no, slot, recommend, thank)
+		SELECT b.no, p_slot, 0, 1 FROM springbbs b WHERE b.no = p_no
+		ON DUPLICATE KEY UPDATE
+			springbbs_counter.thank = springbbs_counter.thank + 1;
+	END IF;
+
+	SELECT
+		b.recommend + COALESCE(SUM(c.recommend), 0) AS recommend,
+		b.thank + COALESCE(SUM(c.thank), 0) AS thank
+	FROM springbbs b
+		LEFT JOIN springbbs_counter c ON c.bbs_no = b.no
+	WHERE b.no = p_no
+	GROUP BY b.no, b.recommend, b.thank;
+END //
+DELIMITER ;
+
+-- 확인
+SELECT * FROM springbbs_counter;
@@ -0,0 +1,27 @@
+use spring;
+
+-- FulltextSearchBackend에서 사용할 FULLTEXT 인덱스를 만든다. (MySQL 5.7.6 이상)
+-- 한글은 공백으로 단어를 나눌 수 없으므로 ngram 파서를 사용한다.
+-- ngram 파서는 ngram_token_size(기본 2) 글자씩 인덱싱하며 이 값은 my.cnf에서
+-- 서버 시작 옵션으로만 바꿀 수 있다. 바꾸면 FulltextSearchBackend의
+-- minTokenSize도 같은 값으로 지정하고 인덱스를 다시 만들어야 한다.
+-- 
+-- [mysqld]
+-- ngram_token_size=2
+-- innodb_ft_enable_stopword=OFF
+--
+-- 기본 불용어(a, the, ...)가 포함된 n-gram은 인덱싱되지 않아 LIKE 검색과
+-- 결과가 달라지므로 innodb_ft_enable_stopword를 OFF로 지정하고 인덱스를 만든다.
+SET SESSION innodb_ft_enable_stopword = OFF;
+
+ALTER TABLE springbbs ADD FULLTEXT INDEX ft_springbbs_title (title) WITH PARSER ngram;
+ALTER TABLE springbbs ADD FULLTEXT INDEX ft_springbbs_writer (writer) WITH PARSER ngram;
+ALTER TABLE springbbs ADD FULLTEXT INDEX ft_springbbs_content (content) WITH PARSER ngram;
+
+-- 인덱스 확인
+SHOW INDEX FROM springbbs;
+
+-- 검색 확인 - 제목에 '관심'이 포함된 게시 글
+SELECT no, title FROM springbbs 
+WHERE MATCH(title) AGAINST('"관심"' IN BOOLEAN MODE)
+ORDER BY no DESC;
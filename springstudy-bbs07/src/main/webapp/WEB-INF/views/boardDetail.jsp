@@ -56,9 +56,15 @@
 			첨부파일 없음
 		</c:if>
 		<c:if test="${ not empty board.file1 }">
+			<c:if test="${ thumbnail }">
+				<a href="fileDownload?fileName=${ fileName }"><img 
+					src="thumbnail?fileName=${ fileName }" alt="미리보기" /></a><br/>
+			</c:if>
 			<a href="fileDownload?fileName=${ board.file1 }">file1 다운로드</a>
 			&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;
 			<a href="fileDownload?fileName=${ fileName }">fileName 다운로드</a>
+			&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;
+			<a href="fileDownloadAll?no=${ board.no }">첨부파일 모두 다운로드(ZIP)</a>
 		</c:if>
 		</td>		
 	</tr>
@@ -156,6 +162,8 @@
 	<div id="replyForm">
 		<form name="replyWriteForm" id="replyWriteForm">				
 			<input type="hidden" name="bbsNo" value="${ board.no }"/>
+			<input type="hidden" name="version" id="replyVersion"
+				value="${ replyVersion }"/>
 			<input type="hidden" name="replyWriter" 
 				value="${ sessionScope.member.id }" />			
 			<table id="replyWriteTable">
@@ -32,7 +32,11 @@
 	<c:if test="${ searchOption }">
 	<tr>
 		<td colspan="5" id="searchComment">
-			"${ word  }" 검색 결과</td>
+			"${ word  }" 검색 결과
+			<%-- 근사치 모드에서는 현재 페이지 그룹까지 센 게시 글 수만 알 수 있다. --%>
+			<c:if test="${ approximate }">(${ listCount }건 이상)</c:if>
+			<c:if test="${ not approximate and not empty listCount }">(${ listCount }건)</c:if>
+		</td>
 	</tr>
 	<tr>
 		<%-- 검색 요청일 경우 일반 게시 글 리스트로 이동할 수 있도록 링크를 설정했다. --%>
@@ -63,6 +67,10 @@
 	게시 글 상세보기로 링크를 적용할 때 type과 keyword 
 	파라미터를 적용해 링크를 설정한다. 
 --%>	
+<%-- 
+	페이지 링크에 현재 페이지 번호(anchor)와 현재 페이지의 첫 번째, 마지막 게시 글
+	번호(firstNo, lastNo)를 함께 전달해 keyset 페이징의 커서로 사용한다.
+--%>	
 <c:if test="${ searchOption and not empty boardList }">
 	<c:forEach var="b" items="${ boardList }" varStatus="status">		
 	<tr class="listTr">
@@ -99,7 +107,8 @@
 		 	 --%>
 		 	<c:if test="${ startPage > pageGroup }">
 				<a href="boardList?pageNum=${ startPage - pageGroup }
-					&type=${ type }&keyword=${ keyword }">[이전]</a>
+					&type=${ type }&keyword=${ keyword }
+					&anchor=${ currentPage }&firstNo=${ firstNo }&lastNo=${ lastNo }">[이전]</a>
 			</c:if>	
 			<%--
 			/* 현재 페이지 그룹의 startPage 부터 endPage 만큼 반복하면서
@@ -113,7 +122,7 @@
 				</c:if>			
 				<c:if test="${ i != currentPage }">
 					<a href="boardList?pageNum=${ i }&type=${ type }
-						&keyword=${ keyword }">[ ${ i } ]</a>
+						&keyword=${ keyword }&anchor=${ currentPage }&firstNo=${ firstNo }&lastNo=${ lastNo }">[ ${ i } ]</a>
 				</c:if>			
 			</c:forEach>
 			<%-- 
@@ -125,7 +134,8 @@
 		 	 --%>
 			<c:if test="${ endPage < pageCount }">
 				<a href="boardList?pageNum=${ startPage + pageGroup }
-					&type=${ type }&keyword=${ keyword }">[다음]</a>
+					&type=${ type }&keyword=${ keyword }
+					&anchor=${ currentPage }&firstNo=${ firstNo }&lastNo=${ lastNo }">[다음]</a>
 			</c:if>		
 		</td>
 	</tr>
@@ -159,7 +169,8 @@
 		 	 **/
 		 	 --%>
 		 	<c:if test="${ startPage > pageGroup }"> 
-				<a href="boardList?pageNum=${ startPage - pageGroup }">
+				<a href="boardList?pageNum=${ startPage - pageGroup }
+					&anchor=${ currentPage }&firstNo=${ firstNo }&lastNo=${ lastNo }">
 					[이전]</a>
 			</c:if>	
 			<%--
@@ -173,7 +184,8 @@
 					[ ${ i } ]
 				</c:if>			
 				<c:if test="${ i != currentPage }">
-					<a href="boardList?pageNum=${ i }">[ ${ i } ]</a>
+					<a href="boardList?pageNum=${ i }
+						&anchor=${ currentPage }&firstNo=${ firstNo }&lastNo=${ lastNo }">[ ${ i } ]</a>
 				</c:if>			
 			</c:forEach>
 			<%-- 
@@ -184,7 +196,8 @@
 		 	 **/
 		 	 --%>
 			<c:if test="${ endPage < pageCount }">
-				<a href="boardList?pageNum=${ startPage + pageGroup }">
+				<a href="boardList?pageNum=${ startPage + pageGroup }
+					&anchor=${ currentPage }&firstNo=${ firstNo }&lastNo=${ lastNo }">
 					[다음]</a>
 			</c:if>		
 		</td>
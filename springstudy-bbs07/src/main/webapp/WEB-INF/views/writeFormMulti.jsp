@@ -2,7 +2,7 @@
     pageEncoding="UTF-8"%>
 <%@ taglib prefix="spring" uri="http://www.springframework.org/tags" %>    
 <article>
-<form name="writeForm" action="writeMultiFile" id="writeForm" 
+<form name="writeForm" action="writeMultiFileStream" id="writeForm" 
 	method="post" enctype="multipart/form-data">
 	<table class="readTable">
 		<tr>
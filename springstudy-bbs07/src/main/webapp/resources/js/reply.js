@@ -121,73 +121,23 @@ $(document).ready(function() {
 		
 		var params = $(this).serialize();
 		
+		/* 댓글 쓰기 폼에 화면에 출력한 댓글 리스트의 버전(version)이 
+		 * hidden으로 들어 있어 같이 전송된다. 서버는 새로 등록된 댓글 하나만
+		 * 응답하고 버전이 다를 때만 댓글 리스트 전체를 응답한다.
+		 **/
 		$.ajax({
-			url: "replyWrite.ajax",
+			url: "replyWriteDelta.ajax",
 			type: "post",
 			data: params,
 			dataType: "json",
 			success: function(resultData, status, xhr) {								
-				/* 기존에 화면에 출력되었던 댓글 리스트를 비운다.
-				 * 새로운 댓글이 추가되어 댓글 리스트가 변경되었기 때문에 
-				 * 기존에 Table 안에 들어있던 댓글을 비우고 서버에서 새롭게 받은
-				 * 댓글 리스트를 아래에서  동적으로 추가하면 된다.
-				 **/
-				$("#replyTable").empty();
 				console.log(resultData);
-				$.each(resultData, function(index, value) {					
-					// 날짜 데이터를 출력 포맷에 맞게 수정
-					var date = new Date(value.regDate);
-					var strDate = date.getFullYear() + "-" + ((date.getMonth() + 1 < 10) 
-							? "0" + (date.getMonth() + 1) : (date.getMonth() + 1)) + "-"  
-							+ date.getDate() + "-" + ((date.getHours() < 10) 
-							? "0" + date.getHours() : date.getHours()) + ":" 
-							+ (date.getMinutes() < 10 ? "0" + date.getMinutes() 
-							: date.getMinutes()) + ":" + (date.getSeconds() < 10 
-							? "0" + date.getSeconds() : date.getSeconds());				
 										
-					var result = 
-						"<tr class='reply_" + value.no + "'>" 
-						+ "<td>"
-						+ "	<div class='replyUser'>"
-						+ "		<span class='member'>" + value.replyWriter + "</span>"
-						+ "	</div>"
-						+ "	<div class='replyModify'>"
-						+ "		<span class='replyDate'>" + strDate + "</span>"
-						+ "		<a href='#' class='modifyReply' data-no='" + value.no + "'>"
-						+ "			<img src='resources/images/reply_btn_modify.gif' alt='댓글 수정하기'/>"
-						+ "		</a>"
-						+ "		<a href='#' class='deleteReply' data-no='" + value.no + "'>"
-						+ "			<img src='resources/images/reply_btn_delete.gif' alt='댓글 삭제하기'/>"
-						+ "		</a>"
-						+ "		<a href='javascript:reportReply('div_" + value.no + "');'>"
-						+ "			<img src='resources/images/reply_btn_notify.gif' alt='신고하기'/>"
-						+ "		</a>"
-						+ "	</div>"
-						+ "	<div class='replyContent' id='div_" + value.no + "'>"
-						+ "		<pre><span>" + value.replyContent + "</span></pre>"
-						+ "	</div>"
-						+ "</td>"
-					+ "</tr>";
-					
-					/* 위에서 Table에 있는 모든 댓글을 비웠기 때문에 
-					 * 새롭게 작성된 댓글 리스트를 Table에 추가하면 된다. 
-					 **/
-					$("#replyTable").append(result);								
-				});				
 				// 댓글 쓰기가 완료되면 댓글 쓰기 폼을 숨긴다.
-				$("#replyForm").slideUp(300).add("#replyContent").val("");
-				
-				/* jQuery() 함수는 문서에서 선택자를 통해 문서 객체를 선택해 jQuery
-				 * 객체로 반환하기 때문에 문서에 선택자로 지정한 요소(문서 객체)가 존재하지
-				 * 않아도 jQuery 객체가 반환되어 자바 스크립트 객체로 취급 된다.
-				 * if($("#replyForm")) { } 일 때 jQuery 객체 이므로 true가 된다.
-				 * 그래서 선택한 요소의 갯수를 반환하는 jQuery의 length 속성을 
-				 * 활용해 아래와 같이 현재 문서에 요소가 존재하는지 판단할 수 있다.
-				 * if($("#replyForm").length) { } 일 때 0이 반환되면 false가
-				 * 되여 if문이 실행되지 않지만 1 이상이 반환되면 true가 되어 if문을
-				 * 실행하게 된다.
-				 **/
-				console.log("write : " + $("#replyForm").length);
+				resetReplyForm();
+					
+				// 새로 등록된 댓글을 댓글 리스트에 반영한다.
+				applyReplyDelta(resultData);
 			},
 			error: function(xhr, status, error) {
 				alert("ajax 실패 : " + status + " - " + xhr.status);
@@ -274,104 +224,21 @@ $(document).ready(function() {
 		 * 댓글 번호를 서버로 전송해야 댓글 번호에 해당하는 댓글을 수정할 수 있다. 
 		 **/
 		var params = $(this).serialize() + "&no=" + $(this).attr("data-no");
-		var updateForm;
 		
 		$.ajax({
-			url: "replyUpdate.ajax",
+			url: "replyUpdateDelta.ajax",
 			type: "post",
 			data: params,
 			dataType: "json",
 			success: function(resultData, status, xhr) {								
 	
-				/* 아래에서 $("#replyTable").empty(); 가 호출되면
-				 * 댓글 쓰기 폼도 같이 문서에서 삭제되기 때문에 백업을 받아야 한다.
+				/* 댓글 수정 폼은 수정하는 댓글 안에 들어 있기 때문에 댓글을
+				 * 다시 출력하기 전에 댓글 쓰기 폼으로 바꿔 원래 위치로 옮긴다.
 				 **/				
-				$updateForm = $("#replyForm");
-				
-				/* jQuery() 함수는 문서에서 선택자를 통해 문서 객체를 선택해 jQuery
-				 * 객체로 반환하기 때문에 문서에 선택자로 지정한 요소(문서 객체)가 존재하지
-				 * 않아도 jQuery 객체가 반환되어 자바 스크립트 객체로 취급 된다.
-				 * if($("#replyForm")) { } 일 때 jQuery 객체 이므로 true가 된다.
-				 * 그래서 선택한 요소의 갯수를 반환하는 jQuery의 length 속성을 
-				 * 활용해 아래와 같이 현재 문서에 요소가 존재하는지 판단할 수 있다.
-				 * if($("#replyForm").length) { } 일 때 0이 반환되면 false가
-				 * 되여 if문이 실행되지 않지만 1 이상이 반환되면 true가 되어 if문을
-				 * 실행하게 된다.
-				 **/
-				console.log("update - before empty() : " + $updateForm.length);
-				
-				// 기존에 화면에 출력되었던 댓글을 비운다.
-				$("#replyTable").empty();
+				resetReplyForm();
 				
-				/* 아래는 댓글 쓰기와 댓글 수정이 동일하기 때문에 별도의
-				 * 함수로 나누는 것이 중복 코드를 최소화 할 수 있다.
-				 **/
-				$.each(resultData, function(index, value) {
-					// 날짜 데이터를 출력 포맷에 맞게 수정
-					var date = new Date(value.regDate);
-					var strDate = date.getFullYear() + "-" + ((date.getMonth() + 1 < 10) 
-							? "0" + (date.getMonth() + 1) : (date.getMonth() + 1)) + "-"  
-							+ date.getDate() + "-" + ((date.getHours() < 10) 
-							? "0" + date.getHours() : date.getHours()) + ":" 
-							+ (date.getMinutes() < 10 ? "0" + date.getMinutes() 
-							: date.getMinutes()) + ":" + (date.getSeconds() < 10 
-							? "0" + date.getSeconds() : date.getSeconds());			
-										
-					var result = 
-						"<tr class='reply_" + value.no + "'>" 
-						+ "<td>"
-						+ "	<div class='replyUser'>"
-						+ "		<span class='member'>" + value.replyWriter + "</span>"
-						+ "	</div>"
-						+ "	<div class='replyModify'>"
-						+ "		<span class='replyDate'>" + strDate + "</span>"
-						+ "		<a href='#' class='modifyReply' data-no='" + value.no + "'>"
-						+ "			<img src='resources/images/reply_btn_modify.gif' alt='댓글 수정하기'/>"
-						+ "		</a>"
-						+ "		<a href='#' class='deleteReply' data-no='" + value.no + "'>"
-						+ "			<img src='resources/images/reply_btn_delete.gif' alt='댓글 삭제하기'/>"
-						+ "		</a>"
-						+ "		<a href='javascript:reportReply('div_" + value.no + "');'>"
-						+ "			<img src='resources/images/reply_btn_notify.gif' alt='신고하기'/>"
-						+ "		</a>"
-						+ "	</div>"
-						+ "	<div class='replyContent' id='div_" + value.no + "'>"
-						+ "		<pre><span>" + value.replyContent + "</span></pre>"
-						+ "	</div>"
-						+ "</td>"
-					+ "</tr>";
-					
-					// 댓글 테이블의 기존 내용을 삭제하고 다시 추가한다.
-					$("#replyTable").append(result);					
-				});				
-				
-				/* jQuery() 함수는 문서에서 선택자를 통해 문서 객체를 선택해 jQuery
-				 * 객체로 반환하기 때문에 문서에 선택자로 지정한 요소(문서 객체)가 존재하지
-				 * 않아도 jQuery 객체가 반환되어 자바 스크립트 객체로 취급 된다.
-				 * if($("#replyForm")) { } 일 때 jQuery 객체 이므로 true가 된다.
-				 * 그래서 선택한 요소의 갯수를 반환하는 jQuery의 length 속성을 
-				 * 활용해 아래와 같이 현재 문서에 요소가 존재하는지 판단할 수 있다.
-				 * if($("#replyForm").length) { } 일 때 0이 반환되면 false가
-				 * 되여 if문이 실행되지 않지만 1 이상이 반환되면 true가 되어 if문을
-				 * 실행하게 된다.
-				 **/
-				console.log("update after empty() : #replyForm - " 
-						+ $("#replyForm").length 
-						+ ", $updateFrom : " + $updateForm.length);
-				
-				/* 댓글 쓰기 폼과 댓글 수정 폼을 같이 사용하기 때문에 아래와 같이 id를
-				 * 동적으로 댓글 쓰기 폼으로 변경하고 댓글 수정 버튼이 클릭될 때 추가한 
-				 * data-no라는 속성을 삭제 한다. 그리고 end() 메서드를 사용해
-				 * 현재 선택된 form의 이전인 #replyForm을 선택하고 이 요소를
-				 * article에 추가하기 전에 화면에 보이지 않도록 display 속성을
-				 * none로 설정했다. article에 추가한 후 댓글 입력 상자의 내용을
-				 * 삭제하기 위해 다시 find() 메서드를 사용해 하위 요소인 댓글 입력
-				 * 상자를 찾아 value 값을 초기화 했다.
-				 **/
-				$updateForm.find("form")
-					.attr("id", "replyWriteForm").removeAttr("data-no")
-					.end().css("display", "none").appendTo("article")
-					.find("#replyContent").val("");
+				// 수정된 댓글만 댓글 리스트에 반영한다.
+				applyReplyDelta(resultData);
 			},
 			error: function(xhr, status, error) {
 				alert("ajax 실패 : " + status + " - " + xhr.status);
@@ -393,76 +260,24 @@ $(document).ready(function() {
 		var bbsNo = $("#replyForm input[name=bbsNo]").val();
 		var result = confirm(writer + "님이 작성한 " + no +"번 댓글을 삭제하시겠습니까?");
 		
-		var params = "no=" + no + "&bbsNo=" + bbsNo;	
+		var params = "no=" + no + "&bbsNo=" + bbsNo 
+				+ "&version=" + $("#replyVersion").val();
 		if(result) {
 			$.ajax({
-				url: "replyDelete.ajax",
+				url: "replyDeleteDelta.ajax",
 				type: "post",
 				data: params,
 				dataType: "json",
 				success: function(resultData, status, xhr) {			
 					
-					/* 아래에서 $("#replyTable").empty(); 가 호출되면
-					 * 댓글 쓰기 폼도 같이 문서에서 삭제되기 때문에 먼저 기존 위치로 옮겼다. 					
-					 * 댓글 쓰기 폼과 댓글 수정 폼을 같이 사용하기 때문에 댓글 수정하기를
-					 * 선택한 상태에서 그 댓글의 삭제하기 버튼을 클릭하면 아래와 같이 id를
-					 * 동적으로 댓글 쓰기 폼으로 변경하고 댓글 수정 버튼이 클릭될 때 추가한 
-					 * data-no라는 속성을 삭제 한다. 그리고 end() 메서드를 사용해
-					 * 현재 선택된 form의 이전인 #replyForm을 선택하고 이 요소를
-					 * article에 추가하기 전에 화면에 보이지 않도록 display 속성을
-					 * none로 설정했다. article에 추가한 후 댓글 입력 상자의 내용을
-					 * 삭제하기 위해 다시 find() 메서드를 사용해 하위 요소인 댓글 입력
-					 * 상자를 찾아 value 값을 초기화 했다.
+					/* 댓글 수정하기를 선택한 상태에서 그 댓글의 삭제하기 버튼을
+					 * 클릭하면 댓글 수정 폼이 삭제할 댓글 안에 들어 있기 때문에
+					 * 댓글을 삭제하기 전에 댓글 쓰기 폼으로 바꿔 원래 위치로 옮긴다.
 					 **/
-					$("#replyForm").find("form")
-						.attr("id", "replyWriteForm").removeAttr("data-no")
-						.end().css("display", "none").appendTo("article")
-						.find("#replyContent").val("");
+					resetReplyForm();
 					
-					// 기존에 화면에 출력되었던 댓글을 비운다.
-					$("#replyTable").empty();
-					
-					/* 아래는 댓글 쓰기와 댓글 수정/삭제가 동일하기 때문에 별도의
-					 * 함수로 나누는 것이 중복 코드를 최소화 할 수 있다.
-					 **/
-					$.each(resultData, function(index, value) {
-						// 날짜 데이터를 출력 포맷에 맞게 수정
-						var date = new Date(value.regDate);
-						var strDate = date.getFullYear() + "-" + ((date.getMonth() + 1 < 10) 
-								? "0" + (date.getMonth() + 1) : (date.getMonth() + 1)) + "-"  
-								+ date.getDate() + "-" + ((date.getHours() < 10) 
-								? "0" + date.getHours() : date.getHours()) + ":" 
-								+ (date.getMinutes() < 10 ? "0" + date.getMinutes() 
-								: date.getMinutes()) + ":" + (date.getSeconds() < 10 
-								? "0" + date.getSeconds() : date.getSeconds());
-											
-						var result = 
-							"<tr class='reply_" + value.no + "'>" 
-							+ "<td>"
-							+ "	<div class='replyUser'>"
-							+ "		<span class='member'>" + value.replyWriter + "</span>"
-							+ "	</div>"
-							+ "	<div class='replyModify'>"
-							+ "		<span class='replyDate'>" + strDate + "</span>"
-							+ "		<a href='#' class='modifyReply' data-no='" + value.no + "'>"
-							+ "			<img src='resources/images/reply_btn_modify.gif' alt='댓글 수정하기'/>"
-							+ "		</a>"
-							+ "		<a href='#' class='deleteReply' data-no='" + value.no + "'>"
-							+ "			<img src='resources/images/reply_btn_delete.gif' alt='댓글 삭제하기'/>"
-							+ "		</a>"
-							+ "		<a href='javascript:reportReply('div_" + value.no + "');'>"
-							+ "			<img src='resources/images/reply_btn_notify.gif' alt='신고하기'/>"
-							+ "		</a>"
-							+ "	</div>"
-							+ "	<div class='replyContent' id='div_" + value.no + "'>"
-							+ "		<pre><span>" + value.replyContent + "</span></pre>"
-							+ "	</div>"
-							+ "</td>"
-						+ "</tr>";
-						
-						// 댓글 테이블의 기존 내용을 삭제하고 다시 추가한다.
-						$("#replyTable").append(result);					
-					});
+					// 삭제된 댓글을 댓글 리스트에서 제거한다.
+					applyReplyDelta(resultData);
 				},
 				error: function(xhr, status, error) {
 					alert("ajax 실패 : " + status + " - " + xhr.status);
@@ -480,4 +295,101 @@ function reportReply(elemId) {
 	if(result == true) {
 		alert("report - " + result);
 	}	
+}
+
+/* 댓글 쓰기 폼과 댓글 수정 폼을 같이 사용하기 때문에 아래와 같이 id를
+ * 동적으로 댓글 쓰기 폼으로 변경하고 댓글 수정 버튼이 클릭될 때 추가한 
+ * data-no라는 속성을 삭제 한다. 그리고 end() 메서드를 사용해 현재 선택된
+ * form의 이전인 #replyForm을 선택하고 이 요소를 article에 추가하기 전에
+ * 화면에 보이지 않도록 display 속성을 none로 설정했다. article에 추가한 후
+ * 댓글 입력 상자의 내용을 삭제하기 위해 다시 find() 메서드를 사용해 하위
+ * 요소인 댓글 입력 상자를 찾아 value 값을 초기화 했다.
+ **/
+function resetReplyForm() {
+	$("#replyForm").find("form")
+		.attr("id", "replyWriteForm").removeAttr("data-no")
+		.end().css("display", "none").appendTo("article")
+		.find("#replyContent").val("");
+}
+
+/* 댓글 delta 응답을 화면에 출력된 댓글 리스트에 반영하는 함수
+ * 
+ * 응답의 baseVersion이 화면에 출력한 댓글 리스트의 버전과 같으면 응답으로 받은
+ * 댓글 하나만 추가, 수정하거나 삭제된 댓글 번호의 댓글을 제거한다. 버전이 다르면
+ * 그 사이에 다른 사용자가 댓글을 변경한 것이므로 서버가 응답에 같이 보낸 댓글
+ * 리스트 전체로 다시 출력한다. 반영이 끝나면 화면의 버전을 응답의 버전으로 바꾼다.
+ **/
+function applyReplyDelta(data) {
+	
+	if(data.replyList || data.baseVersion != $("#replyVersion").val()) {
+		renderReplyList(data.replyList || []);
+		
+	} else if(data.op == "add") {
+		replyTable().prepend(replyRow(data.reply));
+		
+	} else if(data.op == "update") {
+		$("#reply_" + data.reply.no).replaceWith(replyRow(data.reply));
+		
+	} else if(data.op == "delete") {
+		$("#reply_" + data.no).remove();
+	}
+	$("#replyVersion").val(data.version);
+}
+
+// 댓글 리스트 전체를 다시 출력하는 함수
+function renderReplyList(replyList) {
+	
+	var $table = replyTable().empty();
+	$.each(replyList, function(index, value) {
+		$table.append(replyRow(value));
+	});
+}
+
+/* 댓글을 출력할 Table을 반환하는 함수
+ * 댓글이 하나도 없던 게시 글은 Table 대신 댓글이 없다는 메시지가 출력되어
+ * 있으므로 메시지를 Table로 바꾼다.
+ **/
+function replyTable() {
+	
+	if(! $("#replyTable").length) {
+		$("#replyList > td").empty().append("<table id='replyTable'></table>");
+	}
+	return $("#replyTable");
+}
+
+// 댓글 하나를 출력하는 tr 요소의 html을 만드는 함수
+function replyRow(value) {
+	
+	// 날짜 데이터를 출력 포맷에 맞게 수정
+	var date = new Date(value.regDate);
+	var strDate = date.getFullYear() + "-" + ((date.getMonth() + 1 < 10) 
+			? "0" + (date.getMonth() + 1) : (date.getMonth() + 1)) + "-"  
+			+ date.getDate() + " " + ((date.getHours() < 10) 
+			? "0" + date.getHours() : date.getHours()) + ":" 
+			+ (date.getMinutes() < 10 ? "0" + date.getMinutes() 
+			: date.getMinutes()) + ":" + (date.getSeconds() < 10 
+			? "0" + date.getSeconds() : date.getSeconds());
+	
+	return "<tr id='reply_" + value.no + "'>" 
+		+ "<td>"
+		+ "	<div class='replyUser'>"
+		+ "		<span class='member'>" + value.replyWriter + "</span>"
+		+ "	</div>"
+		+ "	<div class='replyModify'>"
+		+ "		<span class='replyDate'>" + strDate + "</span>"
+		+ "		<a href='#' class='modifyReply' data-no='" + value.no + "'>"
+		+ "			<img src='resources/images/reply_btn_modify.gif' alt='댓글 수정하기'/>"
+		+ "		</a>"
+		+ "		<a href='#' class='deleteReply' data-no='" + value.no + "'>"
+		+ "			<img src='resources/images/reply_btn_delete.gif' alt='댓글 삭제하기'/>"
+		+ "		</a>"
+		+ "		<a href=\"javascript:reportReply('div_" + value.no + "');\">"
+		+ "			<img src='resources/images/reply_btn_notify.gif' alt='신고하기'/>"
+		+ "		</a>"
+		+ "	</div>"
+		+ "	<div class='replyContent' id='div_" + value.no + "'>"
+		+ "		<pre><span>" + value.replyContent + "</span></pre>"
+		+ "	</div>"
+		+ "</td>"
+	+ "</tr>";
 }
\ No newline at end of file
@@ -0,0 +1,123 @@
+package com.springstudy.bbs.download;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/* FileSender.parseRanges()의 Range 헤더 해석을 확인하는 테스트
+ *
+ * null은 Range 헤더를 무시하고 파일 전체(200)를 보내는 경우이고
+ * 빈 리스트는 416(Range Not Satisfiable)으로 응답하는 경우이다.
+ **/
+public class FileSenderTest {
+
+	@Test
+	public void closedRange() {
+		List<long[]> ranges = FileSender.parseRanges("bytes=0-99", 1000);
+		assertEquals(1, ranges.size());
+		assertArrayEquals(new long[] { 0, 99 }, ranges.get(0));
+	}
+
+	@Test
+	public void suffixRange() {
+		List<long[]> ranges = FileSender.parseRanges("bytes=-100", 1000);
+		assertEquals(1, ranges.size());
+		assertArrayEquals(new long[] { 900, 999 }, ranges.get(0));
+	}
+
+	@Test
+	public void suffixLongerThanFile() {
+		List<long[]> ranges = FileSender.parseRanges("bytes=-5000", 1000);
+		assertEquals(1, ranges.size());
+		assertArrayEquals(new long[] { 0, 999 }, ranges.get(0));
+	}
+
+	@Test
+	public void negativeSuffixIsIgnored() {
+		assertNull(FileSender.parseRanges("bytes=--5", 1000));
+		assertNull(FileSender.parseRanges("bytes=-+5", 1000));
+	}
+
+	@Test
+	public void openEndedRange() {
+		List<long[]> ranges = FileSender.parseRanges("bytes=100-", 1000);
+		assertEquals(1, ranges.size());
+		assertArrayEquals(new long[] { 100, 999 }, ranges.get(0));
+	}
+
+	@Test
+	public void endPastFileIsClamped() {
+		List<long[]> ranges = FileSender.parseRanges("bytes=500-5000", 1000);
+		assertEquals(1, ranges.size());
+		assertArrayEquals(new long[] { 500, 999 }, ranges.get(0));
+	}
+
+	@Test
+	public void outOfBoundsIsUnsatisfiable() {
+		assertTrue(FileSender.parseRanges("bytes=1000-", 1000).isEmpty());
+		assertTrue(FileSender.parseRanges("bytes=2000-3000", 1000).isEmpty());
+	}
+
+	@Test
+	public void outOfBoundsRangeIsDropped() {
+		List<long[]> ranges =
+				FileSender.parseRanges("bytes=2000-3000,0-9", 1000);
+		assertEquals(1, ranges.size());
+		assertArrayEquals(new long[] { 0, 9 }, ranges.get(0));
+	}
+
+	@Test
+	public void zeroLengthFile() {
+		assertTrue(FileSender.parseRanges("bytes=0-", 0).isEmpty());
+		assertTrue(FileSender.parseRanges("bytes=-100", 0).isEmpty());
+		assertTrue(FileSender.parseRanges("bytes=0-0", 0).isEmpty());
+	}
+
+	@Test
+	public void malformedHeaderIsIgnored() {
+		assertNull(FileSender.parseRanges("items=0-99", 1000));
+		assertNull(FileSender.parseRanges("bytes=abc", 1000));
+		assertNull(FileSender.parseRanges("bytes=99-0", 1000));
+		assertNull(FileSender.parseRanges("bytes=-", 1000));
+	}
+
+	@Test
+	public void tooManyRangesAreIgnored() {
+		StringBuilder header = new StringBuilder("bytes=0-0");
+		for(int i = 1; i <= 16; i++) {
+			header.append(",").append(i * 10).append("-").append(i * 10);
+		}
+		assertNull(FileSender.parseRanges(header.toString(), 1000));
+	}
+
+	@Test
+	public void overlappingRangesAreMerged() {
+		List<long[]> ranges = FileSender.parseRanges(
+				"bytes=500-599,0-99,50-149,150-199,550-649", 1000);
+		assertEquals(2, ranges.size());
+		assertArrayEquals(new long[] { 0, 199 }, ranges.get(0));
+		assertArrayEquals(new long[] { 500, 649 }, ranges.get(1));
+	}
+
+	@Test
+	public void duplicateRangesAreMerged() {
+		List<long[]> ranges = FileSender.parseRanges("bytes=0-99,0-99", 1000);
+		assertEquals(1, ranges.size());
+		assertArrayEquals(new long[] { 0, 99 }, ranges.get(0));
+	}
+
+	@Test
+	public void rangesLargerThanFileSendWholeFile() {
+		StringBuilder header = new StringBuilder("bytes=0-");
+		for(int i = 1; i < 16; i++) {
+			header.append(",0-");
+		}
+		assertNull(FileSender.parseRanges(header.toString(), 1000));
+		assertNull(FileSender.parseRanges("bytes=0-599,400-999", 1000));
+	}
+}